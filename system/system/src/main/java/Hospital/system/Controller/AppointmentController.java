@@ -3,6 +3,7 @@ package Hospital.system.Controller;
 import Hospital.system.DTO.AppointmentDto;
 import Hospital.system.Entity.AppointmentStatus;
 import Hospital.system.Service.AppointmentService;
+import Hospital.system.Service.IdempotencyService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
@@ -18,11 +19,13 @@ import java.util.List;
 @RequiredArgsConstructor
 public class AppointmentController {
     private final AppointmentService appointmentService;
+    private final IdempotencyService idempotencyService;
 
     @PostMapping("/patient")
-    public ResponseEntity<AppointmentDto> bookAppointment(@Valid @RequestBody AppointmentDto appointmentDto) {
-        return ResponseEntity.status(HttpStatus.CREATED).body(appointmentService.bookAppointment(appointmentDto));
-
+    public ResponseEntity<AppointmentDto> bookAppointment(@RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                                          @Valid @RequestBody AppointmentDto appointmentDto) {
+        return idempotencyService.execute(idempotencyKey, "POST /api/appointments/patient", appointmentDto, AppointmentDto.class,
+                () -> ResponseEntity.status(HttpStatus.CREATED).body(appointmentService.bookAppointment(appointmentDto)));
     }
 
     @GetMapping("/patient")
@@ -2,8 +2,8 @@ package Hospital.system.Controller;
 
 import Hospital.system.DTO.AuthResponseDto;
 import Hospital.system.DTO.LoginDto;
+import Hospital.system.DTO.RefreshTokenDto;
 import Hospital.system.DTO.UserRegistrationDto;
-import Hospital.system.Repository.UserRepository;
 import Hospital.system.Service.AuthService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -20,32 +20,34 @@ import org.springframework.web.bind.annotation.*;
 public class AuthController {
 
     private final AuthService authService;
-    private final UserRepository userRepository;
 
     @PostMapping("/register")
     public ResponseEntity<AuthResponseDto> register(@Valid @RequestBody UserRegistrationDto dto)
             throws BadRequestException {
         String token = authService.registerUser(dto);
-        AuthResponseDto response = new AuthResponseDto(token, dto.getEmail(), dto.getRole(), "Registration successful");
+        AuthResponseDto response = new AuthResponseDto(token, null, dto.getEmail(), dto.getRole(), "Registration successful");
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
     @PostMapping("/login")
     public ResponseEntity<AuthResponseDto> login(@Valid @RequestBody LoginDto dto) {
-        String token = authService.login(dto);
-        AuthResponseDto response = new AuthResponseDto(token, dto.getEmail(),
-                userRepository.findByEmail(dto.getEmail()).get().getRole().name(), "Login successful");
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok(authService.login(dto));
+    }
+
+    @PostMapping("/refresh")
+    public ResponseEntity<AuthResponseDto> refresh(@Valid @RequestBody RefreshTokenDto dto) {
+        return ResponseEntity.ok(authService.refresh(dto.getRefreshToken()));
     }
 
     @PostMapping("/logout")
-    public ResponseEntity<AuthResponseDto> logout(@RequestHeader("Authorization") String authHeader) {
+    public ResponseEntity<AuthResponseDto> logout(@RequestHeader("Authorization") String authHeader,
+                                                  @RequestBody(required = false) RefreshTokenDto dto) {
         try {
-            String message = authService.logout(authHeader);
-            AuthResponseDto response = new AuthResponseDto(null, null, null, message);
+            String message = authService.logout(authHeader, dto != null ? dto.getRefreshToken() : null);
+            AuthResponseDto response = new AuthResponseDto(null, null, null, null, message);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
-            AuthResponseDto response = new AuthResponseDto(null, null, null, "Logout failed: " + e.getMessage());
+            AuthResponseDto response = new AuthResponseDto(null, null, null, null, "Logout failed: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
         }
     }
@@ -1,6 +1,7 @@
 package Hospital.system.Controller;
 
 import Hospital.system.DTO.DoctorAvailabilityDto;
+import Hospital.system.DTO.DoctorAvailabilityRangeDto;
 import Hospital.system.Service.DoctorAvailabilityService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -16,11 +17,25 @@ public class DoctorAvailabilityController {
 
     private final DoctorAvailabilityService availabilityService;
 
-    // GET /api/patient/available-doctors?day=2025-09-01
+    // GET /api/patient/available-doctors?day=2025-09-01[&doctorIds=1,2][&page=0&size=50]
     @GetMapping("/available-doctors")
     public List<DoctorAvailabilityDto> getAllDoctorsAvailability(
-            @RequestParam("day") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate day) {
-        return availabilityService.getAllDoctorsAvailability(day);
+            @RequestParam("day") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate day,
+            @RequestParam(value = "doctorIds", required = false) List<Long> doctorIds,
+            @RequestParam(value = "page", required = false) Integer page,
+            @RequestParam(value = "size", required = false) Integer size) {
+        return availabilityService.getAllDoctorsAvailability(day, doctorIds, page, size);
+    }
+
+    // GET /api/patients/available-doctors/range?from=2025-09-01&to=2025-09-07[&doctorIds=1,2][&page=0&size=50]
+    @GetMapping("/available-doctors/range")
+    public List<DoctorAvailabilityRangeDto> getDoctorsAvailabilityRange(
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "doctorIds", required = false) List<Long> doctorIds,
+            @RequestParam(value = "page", required = false) Integer page,
+            @RequestParam(value = "size", required = false) Integer size) {
+        return availabilityService.getDoctorsAvailabilityRange(from, to, doctorIds, page, size);
     }
 
     // GET /api/patient/available-doctors/{id}?day=2025-09-01
@@ -1,6 +1,10 @@
 package Hospital.system.Controller;
 
+import Hospital.system.DTO.InboxEntryDto;
+import Hospital.system.DTO.MarkReadDto;
 import Hospital.system.DTO.MessageDto;
+import Hospital.system.DTO.UnreadSummaryDto;
+import Hospital.system.Service.MessageBatchWriter;
 import Hospital.system.Service.MessageService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -9,6 +13,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/messages")
@@ -17,21 +22,56 @@ import java.util.List;
 public class MessageController {
 
     private final MessageService messageService;
+    private final MessageBatchWriter messageBatchWriter;
 
+    // with group commit the response waits for the message's batch, without holding on to the request thread
     @PostMapping
-    public ResponseEntity<MessageDto> sendMessage(@Valid @RequestBody MessageDto dto) {
-        return ResponseEntity.ok(messageService.sendMessage(dto));
+    public CompletableFuture<ResponseEntity<MessageDto>> sendMessage(@Valid @RequestBody MessageDto dto) {
+        if (messageBatchWriter.isEnabled()) {
+            return messageBatchWriter.submit(dto).thenApply(ResponseEntity::ok);
+        }
+        return CompletableFuture.completedFuture(ResponseEntity.ok(messageService.sendMessage(dto)));
     }
 
+    // GET /api/messages/user/20[?before=<cursor>|after=<cursor>][&size=50]
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<MessageDto>> getMessagesByUser(@PathVariable Long userId) {
-        return ResponseEntity.ok(messageService.getMessagesByUser(userId));
+    public ResponseEntity<List<MessageDto>> getMessagesByUser(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(messageService.getMessagesByUser(userId, before, after, size));
     }
 
+    // GET /api/messages/conversation?senderId=10&receiverId=20[&before=<cursor>|after=<cursor>][&size=50]
     @GetMapping("/conversation")
     public ResponseEntity<List<MessageDto>> getConversation(
             @RequestParam Long senderId,
-            @RequestParam Long receiverId) {
-        return ResponseEntity.ok(messageService.getConversation(senderId, receiverId));
+            @RequestParam Long receiverId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(messageService.getConversation(senderId, receiverId, before, after, size));
+    }
+
+    // GET /api/messages/inbox[?before=<cursor>][&size=50] -> the logged in user's conversations, latest first
+    @GetMapping("/inbox")
+    public ResponseEntity<List<InboxEntryDto>> getInbox(
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(messageService.getInbox(before, size));
+    }
+
+    // GET /api/messages/unread -> unread counts of the logged in user, per sender
+    @GetMapping("/unread")
+    public ResponseEntity<UnreadSummaryDto> getUnreadSummary() {
+        return ResponseEntity.ok(messageService.getUnreadSummary());
+    }
+
+    // PATCH /api/messages/read {"senderId": 10, "upToMessageId": 123}
+    @PatchMapping("/read")
+    public ResponseEntity<Void> markRead(@Valid @RequestBody MarkReadDto dto) {
+        messageService.markRead(dto);
+        return ResponseEntity.noContent().build();
     }
 }
@@ -0,0 +1,54 @@
+package Hospital.system.Controller;
+
+import Hospital.system.Security.JwtAuthFilter;
+import Hospital.system.Security.TokenBlacklistService;
+import Hospital.system.Service.MessageHub;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+// Push only: messages are still sent with POST /api/messages, the socket delivers them to the receiver.
+@Component
+@RequiredArgsConstructor
+public class MessageWebSocketHandler extends TextWebSocketHandler implements SubProtocolCapable {
+
+    public static final String USER_ID = "userId";
+    public static final String TOKEN_ID = "tokenId";
+    public static final String TOKEN_EXPIRES_AT = "tokenExpiresAt";
+
+    private final MessageHub messageHub;
+    private final TokenBlacklistService tokenBlacklistService;
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        UUID tokenId = (UUID) session.getAttributes().get(TOKEN_ID);
+        messageHub.register(userId(session), tokenId, (Instant) session.getAttributes().get(TOKEN_EXPIRES_AT),
+                session);
+        // a logout between the handshake and the registration found no session to close
+        if (tokenBlacklistService.isRevoked(tokenId)) {
+            messageHub.closeSessionsOf(tokenId);
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        messageHub.unregister(userId(session), session);
+    }
+
+    // the token itself rides along as a second offered subprotocol and is never echoed back
+    @Override
+    public List<String> getSubProtocols() {
+        return List.of(JwtAuthFilter.TOKEN_SUBPROTOCOL);
+    }
+
+    private static Long userId(WebSocketSession session) {
+        return (Long) session.getAttributes().get(USER_ID);
+    }
+}
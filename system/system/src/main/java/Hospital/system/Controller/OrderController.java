@@ -1,7 +1,10 @@
 package Hospital.system.Controller;
 
+import Hospital.system.DTO.BulkOrderTransitionDto;
 import Hospital.system.DTO.OrderDto;
+import Hospital.system.DTO.OrderTransitionResultDto;
 import Hospital.system.Entity.OrderStatus;
+import Hospital.system.Service.IdempotencyService;
 import Hospital.system.Service.OrderService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -18,10 +21,13 @@ import java.util.List;
 @RequiredArgsConstructor
 public class OrderController {
     private final OrderService orderService;
+    private final IdempotencyService idempotencyService;
 
     @PostMapping("/patient")
-    public ResponseEntity<OrderDto> createOrder(@Valid @RequestBody OrderDto orderDto){
-        return ResponseEntity.status(HttpStatus.CREATED).body(orderService.createOrder(orderDto));
+    public ResponseEntity<OrderDto> createOrder(@RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                                @Valid @RequestBody OrderDto orderDto){
+        return idempotencyService.execute(idempotencyKey, "POST /api/orders/patient", orderDto, OrderDto.class,
+                () -> ResponseEntity.status(HttpStatus.CREATED).body(orderService.createOrder(orderDto)));
     }
 
     @GetMapping("/patient")
@@ -65,4 +71,16 @@ public class OrderController {
         return ResponseEntity.ok(orderService.completeOrder(id));
     }
 
+    @PatchMapping("/pharmacy/ship")
+    @PreAuthorize("hasRole('PHARMACY')")
+    public ResponseEntity<List<OrderTransitionResultDto>> shipOrders(@Valid @RequestBody BulkOrderTransitionDto dto) {
+        return ResponseEntity.ok(orderService.shipOrders(dto.getOrderIds()));
+    }
+
+    @PatchMapping("/pharmacy/complete")
+    @PreAuthorize("hasRole('PHARMACY')")
+    public ResponseEntity<List<OrderTransitionResultDto>> completeOrders(@Valid @RequestBody BulkOrderTransitionDto dto) {
+        return ResponseEntity.ok(orderService.completeOrders(dto.getOrderIds()));
+    }
+
 }
@@ -9,6 +9,7 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 public class AuthResponseDto {
     private String token;
+    private String refreshToken;
     private String email;
     private String role;
     private String message;
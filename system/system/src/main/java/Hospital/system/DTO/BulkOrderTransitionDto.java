@@ -0,0 +1,15 @@
+package Hospital.system.DTO;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BulkOrderTransitionDto {
+    @NotEmpty
+    @Size(max = 1000)
+    private List<@NotNull Long> orderIds;
+}
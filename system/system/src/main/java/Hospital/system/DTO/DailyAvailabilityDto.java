@@ -0,0 +1,16 @@
+package Hospital.system.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class DailyAvailabilityDto {
+    //only a response dto
+    private LocalDate day;
+    private List<LocalDateTime> availableTimes;
+}
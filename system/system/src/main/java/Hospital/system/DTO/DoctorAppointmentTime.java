@@ -0,0 +1,7 @@
+package Hospital.system.DTO;
+
+import java.time.LocalDateTime;
+
+// (doctorId, appointmentTime) row of the batched calendar query
+public record DoctorAppointmentTime(Long doctorId, LocalDateTime appointmentTime) {
+}
@@ -0,0 +1,15 @@
+package Hospital.system.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class DoctorAvailabilityRangeDto {
+    //only a response dto
+    private Long doctorId;
+    private String doctorName;
+    private List<DailyAvailabilityDto> days;
+}
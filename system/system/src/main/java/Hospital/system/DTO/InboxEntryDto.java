@@ -0,0 +1,22 @@
+package Hospital.system.DTO;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class InboxEntryDto {
+    // who the conversation is with
+    private Long otherUserId;
+
+    private Long lastMessageId;
+    private Long lastSenderId;
+
+    // the start of the last message, at most ConversationHead.PREVIEW_LENGTH characters
+    private String preview;
+
+    private LocalDateTime time;
+
+    // pass as before to get the conversations older than this one
+    private String cursor;
+}
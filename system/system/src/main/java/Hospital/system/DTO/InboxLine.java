@@ -0,0 +1,7 @@
+package Hospital.system.DTO;
+
+import java.time.LocalDateTime;
+
+// one conversation_heads row as seen by one of its users
+public record InboxLine(Long otherUserId, Long lastMessageId, Long lastSenderId, String preview, LocalDateTime time) {
+}
@@ -0,0 +1,15 @@
+package Hospital.system.DTO;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+@Data
+public class MarkReadDto {
+    // whose messages to acknowledge
+    @NotNull
+    private Long senderId;
+
+    // the last message the reader has seen, in either direction; everything up to it counts as read
+    @NotNull
+    private Long upToMessageId;
+}
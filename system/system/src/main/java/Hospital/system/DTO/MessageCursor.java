@@ -0,0 +1,41 @@
+package Hospital.system.DTO;
+
+import Hospital.system.exception.BadRequestException;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Comparator;
+
+/**
+ * Position of a message in (time, id) order, written as {@code 2025-09-01T10:15:30.123456_123456789}.
+ * The id breaks ties between messages sent in the same microsecond.
+ */
+public record MessageCursor(LocalDateTime time, Long id) implements Comparable<MessageCursor> {
+
+    private static final Comparator<MessageCursor> ORDER =
+            Comparator.comparing(MessageCursor::time).thenComparing(MessageCursor::id);
+
+    public static MessageCursor of(MessageLine line) {
+        return new MessageCursor(line.time(), line.id());
+    }
+
+    public static MessageCursor parse(String cursor) {
+        int separator = cursor.lastIndexOf('_');
+        try {
+            return new MessageCursor(LocalDateTime.parse(cursor.substring(0, separator)),
+                    Long.parseLong(cursor.substring(separator + 1)));
+        } catch (DateTimeParseException | IndexOutOfBoundsException | NumberFormatException e) {
+            throw new BadRequestException("Invalid message cursor: " + cursor);
+        }
+    }
+
+    @Override
+    public int compareTo(MessageCursor other) {
+        return ORDER.compare(this, other);
+    }
+
+    @Override
+    public String toString() {
+        return time + "_" + id;
+    }
+}
@@ -3,13 +3,23 @@ package Hospital.system.DTO;
 import jakarta.validation.constraints.*;
 import lombok.Data;
 
+import java.time.LocalDateTime;
 
 @Data
 public class MessageDto {
+    private Long id;
     private Long senderId;
     private Long receiverId;
 
     @NotBlank
     @Size(min = 5, max = 1000)
     private String content;
+
+    private LocalDateTime time;
+
+    // read receipt: when the receiver marked it read, null while unread
+    private LocalDateTime readAt;
+
+    // pass as before/after to page from this message
+    private String cursor;
 }
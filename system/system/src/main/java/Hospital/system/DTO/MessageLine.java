@@ -0,0 +1,8 @@
+package Hospital.system.DTO;
+
+import java.time.LocalDateTime;
+
+// one message with the columns MessageDto needs, read without loading sender and receiver
+public record MessageLine(Long id, Long senderId, Long receiverId, String content, LocalDateTime time,
+                          LocalDateTime readAt) {
+}
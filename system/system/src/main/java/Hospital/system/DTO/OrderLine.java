@@ -0,0 +1,8 @@
+package Hospital.system.DTO;
+
+import Hospital.system.Entity.OrderStatus;
+
+// one order item with the order columns OrderDto needs, read flat instead of loading the entity graph
+public record OrderLine(Long orderId, Long patientId, Long pharmacyId, Double totalPrice, OrderStatus status,
+                        String medicineName, Integer quantity, Double price) {
+}
@@ -0,0 +1,7 @@
+package Hospital.system.DTO;
+
+import Hospital.system.Entity.OrderStatus;
+
+// what a bulk status change needs to check an order, without loading it
+public record OrderState(Long id, Long pharmacyId, OrderStatus status) {
+}
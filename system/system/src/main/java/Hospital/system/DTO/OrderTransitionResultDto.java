@@ -0,0 +1,19 @@
+package Hospital.system.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OrderTransitionResultDto {
+    private Long orderId;
+
+    // false when the order was skipped, message says why
+    private boolean updated;
+
+    // status after the call, null when the order does not exist
+    private String status;
+    private String message;
+}
@@ -0,0 +1,10 @@
+package Hospital.system.DTO;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+@Data
+public class RefreshTokenDto {
+    @NotBlank
+    private String refreshToken;
+}
@@ -0,0 +1,4 @@
+package Hospital.system.DTO;
+
+public record StockLedgerEntry(Long id, Integer quantity) {
+}
@@ -0,0 +1,5 @@
+package Hospital.system.DTO;
+
+// newest settled ledger row of a medicine, the point a fold or flush can run up to
+public record StockLedgerHead(Long medicineId, Long lastMovementId) {
+}
@@ -0,0 +1,5 @@
+package Hospital.system.DTO;
+
+// what a stripe can still give: its snapshot plus the ledger rows logged against it since
+public record StockStripeBudget(Integer stripe, Long budget) {
+}
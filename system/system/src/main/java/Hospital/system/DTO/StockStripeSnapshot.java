@@ -0,0 +1,5 @@
+package Hospital.system.DTO;
+
+// one stripe of a medicine's stock snapshot: stripe 0 is the medicine row, the others stock_stripes rows
+public record StockStripeSnapshot(Integer stripe, Integer stock, Long ledgerPosition) {
+}
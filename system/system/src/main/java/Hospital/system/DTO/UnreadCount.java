@@ -0,0 +1,5 @@
+package Hospital.system.DTO;
+
+// unread messages from one sender
+public record UnreadCount(Long senderId, Integer unread) {
+}
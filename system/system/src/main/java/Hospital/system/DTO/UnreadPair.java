@@ -0,0 +1,5 @@
+package Hospital.system.DTO;
+
+// how many of the messages from sender to receiver in some range are still unread
+public record UnreadPair(Long receiverId, Long senderId, Long unread) {
+}
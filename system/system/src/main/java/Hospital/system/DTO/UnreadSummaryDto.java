@@ -0,0 +1,17 @@
+package Hospital.system.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UnreadSummaryDto {
+    private int total;
+
+    // only senders with something unread
+    private List<UnreadCount> senders;
+}
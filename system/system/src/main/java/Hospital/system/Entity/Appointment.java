@@ -8,11 +8,19 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "appointments")
+@Table(name = "appointments",
+        indexes = {
+                @Index(name = "idx_appointments_doctor_time_status", columnList = "doctor_id, appointment_time, status"),
+                @Index(name = "idx_appointments_doctor_status", columnList = "doctor_id, status"),
+                @Index(name = "idx_appointments_patient_status", columnList = "patient_id, status")
+        },
+        uniqueConstraints = @UniqueConstraint(name = Appointment.SLOT_CONSTRAINT, columnNames = {"doctor_id", "active_slot"}))
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 public class Appointment {
+    public static final String SLOT_CONSTRAINT = "uk_appointments_doctor_slot";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @TimeSortedId
     private Long id;
 
     @ManyToOne
@@ -29,11 +37,21 @@ public class Appointment {
     @Enumerated(EnumType.STRING)
     private AppointmentStatus status;
 
+    // appointmentTime while the appointment holds its slot, null once cancelled; unique per doctor
+    @Column(name = "active_slot")
+    private LocalDateTime activeSlot;
+
     @PrePersist
     protected void onCreate() {
         if (this.status == null) {
             this.status = AppointmentStatus.PENDING;
         }
+        updateActiveSlot();
+    }
+
+    @PreUpdate
+    protected void updateActiveSlot() {
+        this.activeSlot = status == AppointmentStatus.CANCELLED ? null : appointmentTime;
     }
 
 
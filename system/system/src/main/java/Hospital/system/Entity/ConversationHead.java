@@ -0,0 +1,48 @@
+package Hospital.system.Entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// the latest message of a conversation, one row per user pair; see MessageService
+@Entity
+@Table(name = "conversation_heads", uniqueConstraints = @UniqueConstraint(
+        name = "uk_conversation_heads_key", columnNames = "conversation_key"), indexes = {
+        @Index(name = "idx_conversation_heads_lower_time", columnList = "lower_user_id, last_time, last_message_id"),
+        @Index(name = "idx_conversation_heads_higher_time", columnList = "higher_user_id, last_time, last_message_id")
+})
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class ConversationHead {
+    public static final int PREVIEW_LENGTH = 100;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Message.conversationKey of the pair
+    @Column(name = "conversation_key", nullable = false, length = 40)
+    private String conversationKey;
+
+    @Column(name = "lower_user_id", nullable = false)
+    private Long lowerUserId;
+
+    @Column(name = "higher_user_id", nullable = false)
+    private Long higherUserId;
+
+    @Column(name = "last_message_id", nullable = false)
+    private Long lastMessageId;
+
+    @Column(name = "last_sender_id", nullable = false)
+    private Long lastSenderId;
+
+    @Column(nullable = false, length = PREVIEW_LENGTH)
+    private String preview;
+
+    @Column(name = "last_time", nullable = false)
+    private LocalDateTime lastTime;
+
+    public static String preview(String content) {
+        return content.length() <= PREVIEW_LENGTH ? content : content.substring(0, PREVIEW_LENGTH);
+    }
+}
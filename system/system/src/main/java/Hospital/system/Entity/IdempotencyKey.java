@@ -0,0 +1,37 @@
+package Hospital.system.Entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+// first response to a request sent with an Idempotency-Key; see IdempotencyService
+@Entity
+@Table(name = "idempotency_keys",
+        uniqueConstraints = @UniqueConstraint(name = "uk_idempotency_keys_key_hash", columnNames = "key_hash"),
+        indexes = @Index(name = "idx_idempotency_keys_expires_at", columnList = "expires_at"))
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class IdempotencyKey {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // SHA-256 of caller, endpoint and key, so the row size does not depend on what clients send
+    @Column(name = "key_hash", nullable = false, length = 64)
+    private String keyHash;
+
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    // null while the first request is still running
+    @Column(name = "response_status")
+    private Integer responseStatus;
+
+    // longtext in the migration; the length only sizes the column Hibernate creates for H2
+    @Column(name = "response_body", length = 65535)
+    private String responseBody;
+
+    // end of the in-flight lease while running, end of the replay window once completed
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+}
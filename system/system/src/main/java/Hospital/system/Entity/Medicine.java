@@ -5,13 +5,14 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import lombok.*;
+import org.hibernate.annotations.Formula;
 @Entity
 @Table(name = "medicines")
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 public class Medicine {
 
         @Id
-        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        @TimeSortedId
         private Long id;
 
         @NotBlank(message = "Medicine name is required")
@@ -21,10 +22,30 @@ public class Medicine {
         @Min(value = 1, message = "Price must be greater than 0")
         private Double price;
 
-        @Min(value = 0, message = "Stock cannot be negative")
+        // stripe 0 of the stock snapshot, only written by StockStripes.compact
+        @Column(updatable = false)
         private Integer stock;
 
+        // last stripe 0 stock_movements id folded into stock
+        @Column(name = "ledger_position", nullable = false, updatable = false)
+        @Builder.Default
+        private Long ledgerPosition = 0L;
+
+        // the rest of the stock: stripe 0's rows since ledger_position, and the other stripes with their rows
+        @Formula("(select coalesce(sum(s.quantity), 0) from stock_movements s " +
+                "where s.medicine_id = id and s.stripe = 0 and s.id > ledger_position)" +
+                " + (select coalesce(sum(t.stock), 0) from stock_stripes t where t.medicine_id = id)" +
+                " + (select coalesce(sum(s.quantity), 0) from stock_stripes t, stock_movements s " +
+                "where t.medicine_id = id and s.medicine_id = t.medicine_id and s.stripe = t.stripe " +
+                "and s.id > t.ledger_position)")
+        @Builder.Default
+        private Integer pendingStock = 0;
+
         @ManyToOne
         @JoinColumn(name = "pharmacy_id")
         private User pharmacy;
+
+        public int getAvailableStock() {
+                return stock + pendingStock;
+        }
 }
@@ -6,13 +6,20 @@ import jakarta.validation.constraints.Size;
 import lombok.*;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        @Index(name = "idx_messages_conversation_time", columnList = "conversation_key, time, id"),
+        @Index(name = "idx_messages_sender_time", columnList = "sender_id, time, id"),
+        @Index(name = "idx_messages_receiver_time", columnList = "receiver_id, time, id"),
+        @Index(name = "idx_messages_unread", columnList = "receiver_id, sender_id, read_at, time"),
+        @Index(name = "idx_messages_time", columnList = "time, id")
+})
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 public class Message {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @TimeSortedId
     private Long id;
 
     @ManyToOne
@@ -29,8 +36,22 @@ public class Message {
 
     private LocalDateTime time;
 
+    // when the receiver acknowledged it, null while unread
+    @Column(name = "read_at")
+    private LocalDateTime readAt;
+
+    // both directions of a conversation share one key, so a thread is one index range
+    @Column(name = "conversation_key", nullable = false, length = 40)
+    private String conversationKey;
+
+    public static String conversationKey(Long userId, Long otherUserId) {
+        return Math.min(userId, otherUserId) + ":" + Math.max(userId, otherUserId);
+    }
+
     @PrePersist
     protected void onCreate() {
-        this.time = LocalDateTime.now();
+        // stored with microseconds, keep the same value here so cursors built from it match the row
+        this.time = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        this.conversationKey = conversationKey(sender.getId(), receiver.getId());
     }
 }
@@ -0,0 +1,24 @@
+package Hospital.system.Entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// how many of sender's messages receiver has not read yet; see MessageService
+@Entity
+@Table(name = "message_unread_counters", uniqueConstraints = @UniqueConstraint(
+        name = "uk_message_unread_counters_receiver_sender", columnNames = {"receiver_id", "sender_id"}))
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class MessageUnreadCounter {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "receiver_id", nullable = false)
+    private Long receiverId;
+
+    @Column(name = "sender_id", nullable = false)
+    private Long senderId;
+
+    @Column(name = "unread_count", nullable = false)
+    private Integer unreadCount;
+}
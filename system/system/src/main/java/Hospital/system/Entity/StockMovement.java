@@ -0,0 +1,48 @@
+package Hospital.system.Entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+// append-only ledger row; quantity is signed and counts against the stock stripe it was logged on until
+// StockStripes.compact folds it into that stripe's snapshot
+@Entity
+@Table(name = "stock_movements", indexes = {
+        @Index(name = "idx_stock_movements_stripe", columnList = "medicine_id, stripe, id"),
+        @Index(name = "idx_stock_movements_reservation", columnList = "reservation_node, id")
+})
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class StockMovement {
+    public static final int NO_STRIPE = -1;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // plain ids so the history outlives deleted medicines and orders
+    @Column(name = "medicine_id", nullable = false)
+    private Long medicineId;
+
+    @Column(nullable = false)
+    private Integer quantity;
+
+    // NO_STRIPE for rows that do not move medicine stock (orders served from a node's reservation)
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer stripe = 0;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private StockMovementReason reason;
+
+    @Column(name = "order_id")
+    private Long orderId;
+
+    // node whose stock reservation the row belongs to; orders served from one have NO_STRIPE
+    @Column(name = "reservation_node", length = 64)
+    private String reservationNode;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+}
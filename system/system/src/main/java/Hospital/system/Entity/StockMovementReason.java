@@ -0,0 +1,6 @@
+package Hospital.system.Entity;
+
+public enum StockMovementReason {
+    ORDER_PLACED, ORDER_UPDATED, ORDER_CANCELLED, RESTOCK, RESERVED, RESERVATION_RELEASED,
+    RESERVATION_SERVED, RESERVATION_WRITTEN_OFF
+}
@@ -0,0 +1,27 @@
+package Hospital.system.Entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// what one node holds of a medicine, as of the ledger rows up to flushedThrough; see StockReservationService
+@Entity
+@Table(name = "stock_reservations", uniqueConstraints = @UniqueConstraint(
+        name = "uk_stock_reservations_node_medicine", columnNames = {"node_id", "medicine_id"}))
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class StockReservation {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "node_id", nullable = false, length = 64)
+    private String nodeId;
+
+    @Column(name = "medicine_id", nullable = false)
+    private Long medicineId;
+
+    @Column(nullable = false)
+    private Integer quantity;
+
+    @Column(name = "flushed_through", nullable = false)
+    private Long flushedThrough;
+}
@@ -0,0 +1,28 @@
+package Hospital.system.Entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// stripes 1..n of a medicine's stock snapshot, stripe 0 being medicines.stock; only StockStripes.compact
+// writes them. A stripe's stock is its snapshot plus the ledger rows with its stripe after ledger_position.
+@Entity
+@Table(name = "stock_stripes", uniqueConstraints = @UniqueConstraint(
+        name = "uk_stock_stripes_medicine_stripe", columnNames = {"medicine_id", "stripe"}))
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class StockStripe {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "medicine_id", nullable = false)
+    private Long medicineId;
+
+    @Column(nullable = false)
+    private Integer stripe;
+
+    @Column(nullable = false)
+    private Integer stock;
+
+    @Column(name = "ledger_position", nullable = false)
+    private Long ledgerPosition;
+}
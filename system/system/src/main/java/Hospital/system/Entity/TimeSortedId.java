@@ -0,0 +1,18 @@
+package Hospital.system.Entity;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Id assigned in the application by {@link TimeSortedIdGenerator} before the insert, so Hibernate can batch
+ * inserts of the entity; {@code GenerationType.IDENTITY} turns batching off.
+ */
+@IdGeneratorType(TimeSortedIdGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface TimeSortedId {
+}
@@ -29,7 +29,7 @@ public class MedicineMapper {
         MedicineDto dto = new MedicineDto();
         dto.setName(medicine.getName());
         dto.setPrice(medicine.getPrice());
-        dto.setStock(medicine.getStock());
+        dto.setStock(medicine.getAvailableStock());
         dto.setPharmacyId(
                 medicine.getPharmacy() != null ? medicine.getPharmacy().getId() : null
         );
@@ -1,6 +1,10 @@
 package Hospital.system.Mapper;
 
+import Hospital.system.DTO.InboxEntryDto;
+import Hospital.system.DTO.InboxLine;
+import Hospital.system.DTO.MessageCursor;
 import Hospital.system.DTO.MessageDto;
+import Hospital.system.DTO.MessageLine;
 import Hospital.system.Entity.Message;
 import Hospital.system.Entity.User;
 
@@ -25,10 +29,30 @@ public class MessageMapper {
             return null;
         }
 
+        return toDto(new MessageLine(message.getId(), message.getSender().getId(), message.getReceiver().getId(),
+                message.getContent(), message.getTime(), message.getReadAt()));
+    }
+
+    public static MessageDto toDto(MessageLine line) {
         MessageDto dto = new MessageDto();
-        dto.setSenderId(message.getSender().getId());
-        dto.setReceiverId(message.getReceiver().getId());
-        dto.setContent(message.getContent());
+        dto.setId(line.id());
+        dto.setSenderId(line.senderId());
+        dto.setReceiverId(line.receiverId());
+        dto.setContent(line.content());
+        dto.setTime(line.time());
+        dto.setReadAt(line.readAt());
+        dto.setCursor(new MessageCursor(line.time(), line.id()).toString());
+        return dto;
+    }
+
+    public static InboxEntryDto toInboxEntry(InboxLine line) {
+        InboxEntryDto dto = new InboxEntryDto();
+        dto.setOtherUserId(line.otherUserId());
+        dto.setLastMessageId(line.lastMessageId());
+        dto.setLastSenderId(line.lastSenderId());
+        dto.setPreview(line.preview());
+        dto.setTime(line.time());
+        dto.setCursor(new MessageCursor(line.time(), line.lastMessageId()).toString());
         return dto;
     }
 }
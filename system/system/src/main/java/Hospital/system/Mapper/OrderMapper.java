@@ -2,12 +2,16 @@ package Hospital.system.Mapper;
 
 import Hospital.system.DTO.OrderDto;
 import Hospital.system.DTO.OrderItemDto;
+import Hospital.system.DTO.OrderLine;
 import Hospital.system.Entity.Order;
 import Hospital.system.Entity.OrderItem;
 import Hospital.system.Entity.User;
 import Hospital.system.Entity.OrderStatus;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 public class OrderMapper {
@@ -40,4 +44,22 @@ public class OrderMapper {
 
         return dto;
     }
+
+    // Convert flat order lines -> DTOs, one per order, keeping the query's order
+    public static List<OrderDto> toDtos(List<OrderLine> lines) {
+        Map<Long, OrderDto> orders = new LinkedHashMap<>();
+        for (OrderLine line : lines) {
+            OrderDto dto = orders.computeIfAbsent(line.orderId(), id -> {
+                OrderDto order = new OrderDto();
+                order.setPatientId(line.patientId());
+                order.setPharmacyId(line.pharmacyId());
+                order.setTotalPrice(line.totalPrice());
+                order.setStatus(line.status().name());
+                order.setItems(new ArrayList<>());
+                return order;
+            });
+            dto.getItems().add(new OrderItemDto(line.medicineName(), line.quantity(), line.price()));
+        }
+        return new ArrayList<>(orders.values());
+    }
 }
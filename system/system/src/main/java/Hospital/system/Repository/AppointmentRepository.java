@@ -1,5 +1,6 @@
 package Hospital.system.Repository;
 
+import Hospital.system.DTO.DoctorAppointmentTime;
 import Hospital.system.Entity.Appointment;
 import Hospital.system.Entity.AppointmentStatus;
 import Hospital.system.Entity.User;
@@ -8,6 +9,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface AppointmentRepository extends JpaRepository<Appointment, Long> {
@@ -47,5 +49,30 @@ public interface AppointmentRepository extends JpaRepository<Appointment, Long>
             @Param("endTime") LocalDateTime endTime
     );
 
+    // start times only, for DoctorCalendarIndex; the lower bound is exclusive so an appointment ending at startTime is skipped
+    @Query("SELECT a.appointmentTime FROM Appointment a " +
+            "WHERE a.doctor.id = :doctorId " +
+            "AND a.status <> :excludedStatus " +
+            "AND a.appointmentTime > :startTime " +
+            "AND a.appointmentTime < :endTime")
+    List<LocalDateTime> findAppointmentTimesForDoctorExcludingStatus(
+            @Param("doctorId") Long doctorId,
+            @Param("excludedStatus") AppointmentStatus excludedStatus,
+            @Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime
+    );
+
+    // same as above for many doctors in one round trip
+    @Query("SELECT new Hospital.system.DTO.DoctorAppointmentTime(a.doctor.id, a.appointmentTime) FROM Appointment a " +
+            "WHERE a.doctor.id IN :doctorIds " +
+            "AND a.status <> :excludedStatus " +
+            "AND a.appointmentTime > :startTime " +
+            "AND a.appointmentTime < :endTime")
+    List<DoctorAppointmentTime> findAppointmentTimesForDoctorsExcludingStatus(
+            @Param("doctorIds") Collection<Long> doctorIds,
+            @Param("excludedStatus") AppointmentStatus excludedStatus,
+            @Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime
+    );
 
 }
@@ -0,0 +1,46 @@
+package Hospital.system.Repository;
+
+import Hospital.system.DTO.InboxLine;
+import Hospital.system.Entity.ConversationHead;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+// An inbox is paged by (last_time, last_message_id) keyset like MessageRepository, over one row per conversation.
+public interface ConversationHeadRepository extends JpaRepository<ConversationHead, Long> {
+    String INBOX_LINES = "SELECT new Hospital.system.DTO.InboxLine(CASE WHEN h.lowerUserId = :userId "
+            + "THEN h.higherUserId ELSE h.lowerUserId END, h.lastMessageId, h.lastSenderId, h.preview, h.lastTime) "
+            + "FROM ConversationHead h WHERE (h.lowerUserId = :userId OR h.higherUserId = :userId) ";
+    String BEFORE = "AND (h.lastTime < :time OR (h.lastTime = :time AND h.lastMessageId < :id)) ";
+    String NEWEST_FIRST = "ORDER BY h.lastTime DESC, h.lastMessageId DESC";
+
+    boolean existsByConversationKey(String conversationKey);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT h FROM ConversationHead h WHERE h.conversationKey = :conversationKey")
+    Optional<ConversationHead> lockByConversationKey(@Param("conversationKey") String conversationKey);
+
+    // moves the head to the message unless a later one is already there
+    @Modifying
+    @Query("UPDATE ConversationHead h SET h.lastMessageId = :id, h.lastSenderId = :senderId, h.preview = :preview, "
+            + "h.lastTime = :time WHERE h.conversationKey = :conversationKey "
+            + "AND (h.lastTime < :time OR (h.lastTime = :time AND h.lastMessageId < :id))")
+    int advance(@Param("conversationKey") String conversationKey, @Param("id") Long id,
+                @Param("senderId") Long senderId, @Param("preview") String preview,
+                @Param("time") LocalDateTime time);
+
+    @Query(INBOX_LINES + NEWEST_FIRST)
+    List<InboxLine> findLatestOfUser(@Param("userId") Long userId, Limit limit);
+
+    @Query(INBOX_LINES + BEFORE + NEWEST_FIRST)
+    List<InboxLine> findOfUserBefore(@Param("userId") Long userId,
+                                     @Param("time") LocalDateTime time, @Param("id") Long id, Limit limit);
+}
@@ -0,0 +1,40 @@
+package Hospital.system.Repository;
+
+import Hospital.system.Entity.IdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, Long> {
+    Optional<IdempotencyKey> findByKeyHash(String keyHash);
+
+    // only the claim with this lease; 0 when it expired and another request took the key over
+    @Transactional
+    @Modifying
+    @Query("UPDATE IdempotencyKey k SET k.responseStatus = :status, k.responseBody = :body, k.expiresAt = :expiresAt " +
+            "WHERE k.keyHash = :keyHash AND k.expiresAt = :lease AND k.responseStatus IS NULL")
+    int complete(@Param("keyHash") String keyHash, @Param("lease") Instant lease, @Param("status") int status,
+                 @Param("body") String body, @Param("expiresAt") Instant expiresAt);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyKey k WHERE k.keyHash = :keyHash AND k.expiresAt = :lease " +
+            "AND k.responseStatus IS NULL")
+    int release(@Param("keyHash") String keyHash, @Param("lease") Instant lease);
+
+    // an abandoned lease or an expired response; the expiry check keeps it from removing a fresh claim
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyKey k WHERE k.keyHash = :keyHash AND k.expiresAt < :now")
+    int releaseExpired(@Param("keyHash") String keyHash, @Param("now") Instant now);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyKey k WHERE k.expiresAt < :now")
+    int deleteExpired(@Param("now") Instant now);
+}
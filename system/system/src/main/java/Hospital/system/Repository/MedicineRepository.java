@@ -1,16 +1,41 @@
 package Hospital.system.Repository;
 
+import Hospital.system.DTO.StockStripeSnapshot;
 import Hospital.system.Entity.Medicine;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface MedicineRepository extends JpaRepository<Medicine, Long> {
     List<Medicine> findByPharmacy_Id(Long pharmacyId);
     List<Medicine> findByNameContainingIgnoreCase(String name);
-    List<Medicine> findByStockGreaterThan(Integer minStock);
 
     Optional<Medicine> findByName(String name);
+
+    // every medicine of an order basket in one query, with its pharmacy
+    @Query("SELECT m FROM Medicine m LEFT JOIN FETCH m.pharmacy WHERE m.name IN :names")
+    List<Medicine> findByNameIn(@Param("names") Collection<String> names);
+
+    // stripe 0 of the medicine's stock, locked; a projection so a stale managed copy is never returned
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT new Hospital.system.DTO.StockStripeSnapshot(0, m.stock, m.ledgerPosition) FROM Medicine m " +
+            "WHERE m.id = :id")
+    Optional<StockStripeSnapshot> lockStockSnapshot(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE Medicine m SET m.stock = :stock, m.ledgerPosition = :ledgerPosition WHERE m.id = :id")
+    int updateStockSnapshot(@Param("id") Long id, @Param("stock") int stock,
+                            @Param("ledgerPosition") long ledgerPosition);
+
+    @Query("SELECT m FROM Medicine m WHERE m.stock + m.pendingStock > :minStock")
+    List<Medicine> findByStockGreaterThan(@Param("minStock") Integer minStock);
+
     boolean existsByName(String name);
 }
@@ -1,12 +1,100 @@
 package Hospital.system.Repository;
 
+import Hospital.system.DTO.MessageCursor;
+import Hospital.system.DTO.MessageLine;
+import Hospital.system.DTO.UnreadPair;
 import Hospital.system.Entity.Message;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
+// Messages are paged by (time, id) keyset: every page is one ordered index range, however long the thread.
 public interface MessageRepository extends JpaRepository<Message, Long> {
-    List<Message> findBySender_Id(Long senderId);
-    List<Message> findByReceiver_Id(Long receiverId);
-    List<Message> findBySender_IdAndReceiver_IdOrderByTimeAsc(Long senderId, Long receiverId);
+    String MESSAGE_LINES = "SELECT new Hospital.system.DTO.MessageLine(m.id, m.sender.id, m.receiver.id, m.content, m.time, "
+            + "m.readAt) FROM Message m ";
+    String IN_CONVERSATION = "WHERE m.conversationKey = :conversationKey ";
+    // a user's messages are read as two ranges, sent and received, and merged: an OR of both sides can use neither
+    // (sender_id, time, id) nor (receiver_id, time, id) for the order and ends in a sort of everything matched
+    String SENT_BY = "WHERE m.sender.id = :userId ";
+    String RECEIVED_BY = "WHERE m.receiver.id = :userId ";
+    String BEFORE = "AND (m.time < :time OR (m.time = :time AND m.id < :id)) ";
+    String AFTER = "AND (m.time > :time OR (m.time = :time AND m.id > :id)) ";
+    String NEWEST_FIRST = "ORDER BY m.time DESC, m.id DESC";
+    String OLDEST_FIRST = "ORDER BY m.time ASC, m.id ASC";
+
+    @Query(MESSAGE_LINES + IN_CONVERSATION + NEWEST_FIRST)
+    List<MessageLine> findLatestInConversation(@Param("conversationKey") String conversationKey, Limit limit);
+
+    @Query(MESSAGE_LINES + IN_CONVERSATION + BEFORE + NEWEST_FIRST)
+    List<MessageLine> findInConversationBefore(@Param("conversationKey") String conversationKey,
+                                               @Param("time") LocalDateTime time, @Param("id") Long id, Limit limit);
+
+    @Query(MESSAGE_LINES + IN_CONVERSATION + AFTER + OLDEST_FIRST)
+    List<MessageLine> findInConversationAfter(@Param("conversationKey") String conversationKey,
+                                              @Param("time") LocalDateTime time, @Param("id") Long id, Limit limit);
+
+    @Query(MESSAGE_LINES + SENT_BY + NEWEST_FIRST)
+    List<MessageLine> findLatestSentBy(@Param("userId") Long userId, Limit limit);
+
+    @Query(MESSAGE_LINES + SENT_BY + BEFORE + NEWEST_FIRST)
+    List<MessageLine> findSentByBefore(@Param("userId") Long userId,
+                                       @Param("time") LocalDateTime time, @Param("id") Long id, Limit limit);
+
+    @Query(MESSAGE_LINES + SENT_BY + AFTER + OLDEST_FIRST)
+    List<MessageLine> findSentByAfter(@Param("userId") Long userId,
+                                      @Param("time") LocalDateTime time, @Param("id") Long id, Limit limit);
+
+    @Query(MESSAGE_LINES + RECEIVED_BY + NEWEST_FIRST)
+    List<MessageLine> findLatestReceivedBy(@Param("userId") Long userId, Limit limit);
+
+    @Query(MESSAGE_LINES + RECEIVED_BY + BEFORE + NEWEST_FIRST)
+    List<MessageLine> findReceivedByBefore(@Param("userId") Long userId,
+                                           @Param("time") LocalDateTime time, @Param("id") Long id, Limit limit);
+
+    @Query(MESSAGE_LINES + RECEIVED_BY + AFTER + OLDEST_FIRST)
+    List<MessageLine> findReceivedByAfter(@Param("userId") Long userId,
+                                          @Param("time") LocalDateTime time, @Param("id") Long id, Limit limit);
+
+    @Query("SELECT new Hospital.system.DTO.MessageCursor(m.time, m.id) FROM Message m "
+            + "WHERE m.id = :id AND m.conversationKey = :conversationKey")
+    Optional<MessageCursor> findCursorInConversation(@Param("id") Long id,
+                                                     @Param("conversationKey") String conversationKey);
+
+    // acknowledges every unread message from sender up to the cursor, the count is what the unread counter drops by
+    @Modifying
+    @Query("UPDATE Message m SET m.readAt = :readAt WHERE m.receiver.id = :receiverId AND m.sender.id = :senderId "
+            + "AND m.readAt IS NULL AND (m.time < :time OR (m.time = :time AND m.id <= :id))")
+    int markRead(@Param("receiverId") Long receiverId, @Param("senderId") Long senderId,
+                 @Param("time") LocalDateTime time, @Param("id") Long id, @Param("readAt") LocalDateTime readAt);
+
+    // the archiver's first segment: the oldest messages sent before the cutoff
+    @Query(MESSAGE_LINES + "WHERE m.time < :cutoff " + OLDEST_FIRST)
+    List<MessageLine> findOldestBefore(@Param("cutoff") LocalDateTime cutoff, Limit limit);
+
+    // its next ones: the oldest after the archive's high-water mark, so segments never overlap
+    @Query(MESSAGE_LINES + "WHERE m.time < :cutoff " + AFTER + OLDEST_FIRST)
+    List<MessageLine> findOldestBetween(@Param("time") LocalDateTime time, @Param("id") Long id,
+                                        @Param("cutoff") LocalDateTime cutoff, Limit limit);
+
+    // Stamps the unread messages among the ids with the archiver's marker. The UPDATE locks them, so a markRead
+    // of the same messages either committed first and left nothing to stamp, or waits and finds them deleted:
+    // every message comes off its unread counter once.
+    @Modifying
+    @Query("UPDATE Message m SET m.readAt = :marker WHERE m.readAt IS NULL AND m.id IN :ids")
+    int claimUnread(@Param("ids") Collection<Long> ids, @Param("marker") LocalDateTime marker);
+
+    @Query("SELECT new Hospital.system.DTO.UnreadPair(m.receiver.id, m.sender.id, COUNT(m)) FROM Message m "
+            + "WHERE m.readAt = :marker AND m.id IN :ids GROUP BY m.receiver.id, m.sender.id")
+    List<UnreadPair> countClaimed(@Param("ids") Collection<Long> ids, @Param("marker") LocalDateTime marker);
+
+    @Modifying
+    @Query("DELETE FROM Message m WHERE m.id IN :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,30 @@
+package Hospital.system.Repository;
+
+import Hospital.system.DTO.UnreadCount;
+import Hospital.system.Entity.MessageUnreadCounter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface MessageUnreadCounterRepository extends JpaRepository<MessageUnreadCounter, Long> {
+
+    boolean existsByReceiverIdAndSenderId(Long receiverId, Long senderId);
+
+    // 0 when the pair has no counter yet
+    @Modifying
+    @Query("UPDATE MessageUnreadCounter c SET c.unreadCount = c.unreadCount + :count " +
+            "WHERE c.receiverId = :receiverId AND c.senderId = :senderId")
+    int increment(@Param("receiverId") Long receiverId, @Param("senderId") Long senderId, @Param("count") int count);
+
+    @Modifying
+    @Query("UPDATE MessageUnreadCounter c SET c.unreadCount = c.unreadCount - :read " +
+            "WHERE c.receiverId = :receiverId AND c.senderId = :senderId")
+    int decrement(@Param("receiverId") Long receiverId, @Param("senderId") Long senderId, @Param("read") int read);
+
+    @Query("SELECT new Hospital.system.DTO.UnreadCount(c.senderId, c.unreadCount) FROM MessageUnreadCounter c " +
+            "WHERE c.receiverId = :receiverId AND c.unreadCount > 0 ORDER BY c.senderId")
+    List<UnreadCount> findUnread(@Param("receiverId") Long receiverId);
+}
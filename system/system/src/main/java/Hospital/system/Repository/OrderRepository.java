@@ -1,9 +1,15 @@
 package Hospital.system.Repository;
 
+import Hospital.system.DTO.OrderLine;
+import Hospital.system.DTO.OrderState;
 import Hospital.system.Entity.Order;
 import Hospital.system.Entity.OrderStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface OrderRepository extends JpaRepository<Order, Long> {
@@ -14,4 +20,29 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findByPatient_IdAndStatus(Long patientId, OrderStatus status);
 
     List<Order> findByPharmacy_IdAndStatus(Long pharmacyId ,OrderStatus status);
+    // Order lists are read as flat rows in one statement; mapping entities would load items, medicines and
+    // users order by order.
+    String ORDER_LINES = "SELECT new Hospital.system.DTO.OrderLine(o.id, o.patient.id, o.pharmacy.id, o.totalPrice, "
+            + "o.status, m.name, i.quantity, i.price) FROM OrderItem i JOIN i.order o JOIN i.medicine m ";
+
+    @Query(ORDER_LINES + "WHERE o.patient.id = :patientId ORDER BY o.id, i.id")
+    List<OrderLine> findLinesByPatientId(@Param("patientId") Long patientId);
+
+    @Query(ORDER_LINES + "WHERE o.patient.id = :patientId AND o.status = :status ORDER BY o.id, i.id")
+    List<OrderLine> findLinesByPatientIdAndStatus(@Param("patientId") Long patientId, @Param("status") OrderStatus status);
+
+    @Query(ORDER_LINES + "WHERE o.pharmacy.id = :pharmacyId ORDER BY o.id, i.id")
+    List<OrderLine> findLinesByPharmacyId(@Param("pharmacyId") Long pharmacyId);
+
+    @Query(ORDER_LINES + "WHERE o.pharmacy.id = :pharmacyId AND o.status = :status ORDER BY o.id, i.id")
+    List<OrderLine> findLinesByPharmacyIdAndStatus(@Param("pharmacyId") Long pharmacyId, @Param("status") OrderStatus status);
+
+    @Query("SELECT new Hospital.system.DTO.OrderState(o.id, o.pharmacy.id, o.status) FROM Order o WHERE o.id IN :ids")
+    List<OrderState> findStatesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // guarded by owner and current status, so the count tells whether any order changed in between
+    @Modifying
+    @Query("UPDATE Order o SET o.status = :to WHERE o.id IN :ids AND o.pharmacy.id = :pharmacyId AND o.status = :from")
+    int updateStatus(@Param("ids") Collection<Long> ids, @Param("pharmacyId") Long pharmacyId,
+                     @Param("from") OrderStatus from, @Param("to") OrderStatus to);
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package Hospital.system.Repository;
+
+import Hospital.system.DTO.StockLedgerEntry;
+import Hospital.system.DTO.StockLedgerHead;
+import Hospital.system.Entity.StockMovement;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface StockMovementRepository extends JpaRepository<StockMovement, Long> {
+
+    List<StockMovement> findByMedicineIdOrderByIdAsc(Long medicineId);
+
+    // the rows logged on a stripe since its snapshot. Locked, so a repeatable-read transaction sees the latest
+    // ones and not its own snapshot of the table; the caller holds the stripe lock, so no new row can join them.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT new Hospital.system.DTO.StockLedgerEntry(s.id, s.quantity) FROM StockMovement s " +
+            "WHERE s.medicineId = :medicineId AND s.stripe = :stripe AND s.id > :ledgerPosition")
+    List<StockLedgerEntry> lockPending(@Param("medicineId") Long medicineId, @Param("stripe") int stripe,
+                                       @Param("ledgerPosition") long ledgerPosition);
+
+    @Query("SELECT COALESCE(MAX(s.id), 0) FROM StockMovement s")
+    long findLastId();
+
+    @Query("SELECT DISTINCT s.medicineId FROM StockMovement s WHERE s.id > :after AND s.stripe >= 0")
+    List<Long> findMedicineIdsMovedAfter(@Param("after") long after);
+
+    // what the nodes' rows since their last flush add to what they hold, counted like StockReservationRepository.flush
+    @Query("SELECT COALESCE(SUM(CASE WHEN s.reason IN (Hospital.system.Entity.StockMovementReason.RESERVED, " +
+            "Hospital.system.Entity.StockMovementReason.RESERVATION_RELEASED) THEN -s.quantity " +
+            "ELSE s.quantity END), 0) FROM StockMovement s WHERE s.medicineId = :medicineId " +
+            "AND s.reservationNode IS NOT NULL AND s.id > COALESCE((SELECT r.flushedThrough FROM StockReservation r " +
+            "WHERE r.nodeId = s.reservationNode AND r.medicineId = s.medicineId), 0)")
+    long sumUnflushedReservations(@Param("medicineId") Long medicineId);
+
+    // newest settled row of each medicine this node's reservation has not flushed yet
+    @Query("SELECT new Hospital.system.DTO.StockLedgerHead(s.medicineId, MAX(s.id)) FROM StockMovement s " +
+            "WHERE s.reservationNode = :nodeId AND s.createdAt < :settledBefore " +
+            "AND s.id > COALESCE((SELECT r.flushedThrough FROM StockReservation r " +
+            "WHERE r.nodeId = :nodeId AND r.medicineId = s.medicineId), 0) " +
+            "GROUP BY s.medicineId")
+    List<StockLedgerHead> findUnflushedReservationHeads(@Param("nodeId") String nodeId,
+                                                        @Param("settledBefore") Instant settledBefore);
+}
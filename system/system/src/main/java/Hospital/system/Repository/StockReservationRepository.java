@@ -0,0 +1,31 @@
+package Hospital.system.Repository;
+
+import Hospital.system.Entity.StockReservation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface StockReservationRepository extends JpaRepository<StockReservation, Long> {
+
+    Optional<StockReservation> findByNodeIdAndMedicineId(String nodeId, Long medicineId);
+
+    List<StockReservation> findByNodeId(String nodeId);
+
+    @Query("SELECT COALESCE(SUM(r.quantity), 0) FROM StockReservation r WHERE r.medicineId = :medicineId")
+    long sumQuantity(@Param("medicineId") Long medicineId);
+
+    // write-behind: adds the node's ledger rows since the last flush in one statement. Reserved chunks
+    // (logged negative, since they left the medicine's stock) add to what the node holds; releases, served and written-off units take from it.
+    @Modifying
+    @Query("UPDATE StockReservation r SET r.quantity = r.quantity + (SELECT COALESCE(SUM(CASE " +
+            "WHEN s.reason IN (Hospital.system.Entity.StockMovementReason.RESERVED, " +
+            "Hospital.system.Entity.StockMovementReason.RESERVATION_RELEASED) THEN -s.quantity " +
+            "ELSE s.quantity END), 0) FROM StockMovement s WHERE s.reservationNode = r.nodeId " +
+            "AND s.medicineId = r.medicineId AND s.id > r.flushedThrough AND s.id <= :lastMovementId), " +
+            "r.flushedThrough = :lastMovementId WHERE r.id = :id AND r.flushedThrough < :lastMovementId")
+    int flush(@Param("id") Long id, @Param("lastMovementId") Long lastMovementId);
+}
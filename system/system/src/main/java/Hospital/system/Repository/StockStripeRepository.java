@@ -0,0 +1,43 @@
+package Hospital.system.Repository;
+
+import Hospital.system.DTO.StockStripeBudget;
+import Hospital.system.DTO.StockStripeSnapshot;
+import Hospital.system.Entity.StockStripe;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface StockStripeRepository extends JpaRepository<StockStripe, Long> {
+
+    // unlocked estimate of what each stripe can give, to pick one an order can take from
+    @Query("SELECT new Hospital.system.DTO.StockStripeBudget(t.stripe, t.stock + (SELECT COALESCE(SUM(s.quantity), 0) " +
+            "FROM StockMovement s WHERE s.medicineId = t.medicineId AND s.stripe = t.stripe " +
+            "AND s.id > t.ledgerPosition)) FROM StockStripe t WHERE t.medicineId = :medicineId ORDER BY t.stripe")
+    List<StockStripeBudget> findBudgets(@Param("medicineId") Long medicineId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT new Hospital.system.DTO.StockStripeSnapshot(t.stripe, t.stock, t.ledgerPosition) FROM StockStripe t " +
+            "WHERE t.medicineId = :medicineId AND t.stripe = :stripe")
+    Optional<StockStripeSnapshot> lockSnapshot(@Param("medicineId") Long medicineId, @Param("stripe") int stripe);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT new Hospital.system.DTO.StockStripeSnapshot(t.stripe, t.stock, t.ledgerPosition) FROM StockStripe t " +
+            "WHERE t.medicineId = :medicineId ORDER BY t.stripe")
+    List<StockStripeSnapshot> lockSnapshots(@Param("medicineId") Long medicineId);
+
+    @Modifying
+    @Query("UPDATE StockStripe t SET t.stock = :stock, t.ledgerPosition = :ledgerPosition " +
+            "WHERE t.medicineId = :medicineId AND t.stripe = :stripe")
+    int updateSnapshot(@Param("medicineId") Long medicineId, @Param("stripe") int stripe,
+                       @Param("stock") int stock, @Param("ledgerPosition") long ledgerPosition);
+
+    @Modifying
+    @Query("DELETE FROM StockStripe t WHERE t.medicineId = :medicineId")
+    int deleteByMedicineId(@Param("medicineId") Long medicineId);
+}
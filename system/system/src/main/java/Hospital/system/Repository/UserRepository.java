@@ -2,8 +2,14 @@ package Hospital.system.Repository;
 
 import Hospital.system.Entity.Role;
 import Hospital.system.Entity.User;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,6 +17,13 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     Optional<User> findByIdAndRole(Long id, Role role);
     List<User> findByRole(Role role);
+    List<User> findByRole(Role role, Pageable pageable);
+    List<User> findByRoleAndIdIn(Role role, Collection<Long> ids, Pageable pageable);
     Optional<User> findByEmail(String email);
     boolean existsByEmail(String email);
+
+    // SELECT ... FOR UPDATE on the user row, held until the transaction ends
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u FROM User u WHERE u.id = :id")
+    Optional<User> lockById(@Param("id") Long id);
 }
@@ -0,0 +1,24 @@
+package Hospital.system.Security;
+
+import Hospital.system.Entity.Role;
+import lombok.Getter;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.List;
+
+/**
+ * UserDetails that keeps the id and role, so a successful login can issue tokens without reloading the user.
+ */
+@Getter
+public class AuthenticatedUser extends User {
+
+    private final Long id;
+    private final Role role;
+
+    public AuthenticatedUser(Long id, String email, String password, Role role) {
+        super(email, password, List.of(new SimpleGrantedAuthority("ROLE_" + role.name())));
+        this.id = id;
+        this.role = role;
+    }
+}
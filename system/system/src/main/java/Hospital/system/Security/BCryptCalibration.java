@@ -0,0 +1,54 @@
+package Hospital.system.Security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.Arrays;
+
+/**
+ * Picks the BCrypt strength for this hardware from a target hash latency.
+ * Every extra strength point doubles the work, so one measurement at a low strength is enough to extrapolate.
+ */
+@Slf4j
+public final class BCryptCalibration {
+
+    // never go below the library default, whatever the hardware
+    static final int MIN_STRENGTH = 10;
+    static final int MAX_STRENGTH = 16;
+
+    private static final int PROBE_STRENGTH = 8;
+    private static final int PROBE_SAMPLES = 5;
+
+    private BCryptCalibration() {
+    }
+
+    public static int strengthFor(long targetMillis) {
+        BCryptPasswordEncoder probe = new BCryptPasswordEncoder(PROBE_STRENGTH);
+        probe.encode("calibration-warmup");
+
+        long[] samples = new long[PROBE_SAMPLES];
+        for (int i = 0; i < PROBE_SAMPLES; i++) {
+            long start = System.nanoTime();
+            probe.encode("calibration-password");
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        double probeMillis = samples[PROBE_SAMPLES / 2] / 1_000_000.0;
+
+        int strength = strengthFor(probeMillis, targetMillis);
+        log.info("BCrypt calibration: strength {} takes ~{} ms, target {} ms, using strength {}",
+                PROBE_STRENGTH, String.format("%.2f", probeMillis), targetMillis, strength);
+        return strength;
+    }
+
+    // highest strength whose extrapolated latency still fits the target
+    static int strengthFor(double probeMillis, long targetMillis) {
+        int strength = PROBE_STRENGTH;
+        double millis = Math.max(probeMillis, 0.01);
+        while (strength < MAX_STRENGTH && millis * 2 <= targetMillis) {
+            millis *= 2;
+            strength++;
+        }
+        return Math.max(strength, MIN_STRENGTH);
+    }
+}
@@ -0,0 +1,33 @@
+package Hospital.system.Security;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Delegates to the real encoder but runs the expensive calls on the {@link PasswordHashingExecutor}.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final PasswordHashingExecutor hashingExecutor;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, PasswordHashingExecutor hashingExecutor) {
+        this.delegate = delegate;
+        this.hashingExecutor = hashingExecutor;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return hashingExecutor.encode(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return hashingExecutor.matches(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    // cheap, only compares the cost stored in the hash prefix
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+}
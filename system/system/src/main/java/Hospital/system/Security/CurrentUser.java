@@ -0,0 +1,21 @@
+package Hospital.system.Security;
+
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+
+import java.security.Principal;
+
+/**
+ * The authenticated user as carried by the JWT, so services get the id and role without a query.
+ */
+public record CurrentUser(Long id, String email, Role role) implements Principal {
+
+    public static CurrentUser of(User user) {
+        return new CurrentUser(user.getId(), user.getEmail(), user.getRole());
+    }
+
+    @Override
+    public String getName() {
+        return email;
+    }
+}
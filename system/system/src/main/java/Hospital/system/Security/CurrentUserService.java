@@ -0,0 +1,36 @@
+package Hospital.system.Security;
+
+import Hospital.system.Repository.UserRepository;
+import Hospital.system.exception.ResourceNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CurrentUserService {
+
+    private final UserRepository userRepository;
+
+    public CurrentUser getCurrentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null) {
+            throw new ResourceNotFoundException("Logged in user not found");
+        }
+        if (authentication.getPrincipal() instanceof CurrentUser currentUser) {
+            return currentUser;
+        }
+
+        // tokens issued before the uid claim, or authentications not coming from JwtAuthFilter
+        String email = authentication.getName();
+        return userRepository.findByEmail(email)
+                .map(CurrentUser::of)
+                .orElseThrow(() -> {
+                    log.error("Logged in user not found: {}", email);
+                    return new ResourceNotFoundException("Logged in user not found");
+                });
+    }
+}
@@ -0,0 +1,45 @@
+package Hospital.system.Security;
+
+import Hospital.system.Entity.RevokedToken;
+import Hospital.system.Repository.RevokedTokenRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+@Component
+@ConditionalOnProperty(name = "security.revocation.backend", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class JdbcRevocationBackend implements RevocationBackend {
+
+    private final RevokedTokenRepository revokedTokenRepository;
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void publish(UUID tokenId, long expiresAt) {
+        revokedTokenRepository.saveAndFlush(RevokedToken.builder()
+                .tokenId(tokenId.toString())
+                .expiresAt(Instant.ofEpochMilli(expiresAt))
+                .build());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<RevocationEntry> fetchSince(long sequence, int limit) {
+        return revokedTokenRepository.findByIdGreaterThanOrderByIdAsc(sequence, Limit.of(limit)).stream()
+                .map(r -> new RevocationEntry(r.getId(), UUID.fromString(r.getTokenId()), r.getExpiresAt().toEpochMilli()))
+                .toList();
+    }
+
+    @Override
+    @Transactional
+    public void purgeExpired(long now) {
+        revokedTokenRepository.deleteExpired(Instant.ofEpochMilli(now));
+    }
+}
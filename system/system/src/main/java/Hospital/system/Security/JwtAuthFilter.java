@@ -1,11 +1,14 @@
 package Hospital.system.Security;
 
+import Hospital.system.Entity.Role;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -16,16 +19,27 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class JwtAuthFilter extends OncePerRequestFilter {
 
+    // the WebSocket subprotocol a browser names before its token, the server answers with this one alone
+    public static final String TOKEN_SUBPROTOCOL = "access_token";
+    // request attribute with the claims of the token the request was authenticated with
+    public static final String CLAIMS = JwtAuthFilter.class.getName() + ".claims";
+
     private final JwtUtil jwtUtil;
     private final TokenBlacklistService tokenBlacklistService;
 
+    @Value("${messages.push.path:/ws/messages}")
+    private String pushPath;
+
     @Override
     protected void doFilterInternal(
             @NonNull HttpServletRequest request,
@@ -36,14 +50,16 @@ public class JwtAuthFilter extends OncePerRequestFilter {
             String jwt = extractJwtFromRequest(request);
 
             if (jwt != null) {
-                if (tokenBlacklistService.isTokenBlacklisted(jwt)) {
-                    logger.warn("JWT Token is blacklisted (logged out).");
-                    filterChain.doFilter(request, response);
-                    return; // Skip authentication for blacklisted tokens
-                }
-
-                if (jwtUtil.validateToken(jwt) && !jwtUtil.isTokenExpired(jwt)) {
-                    authenticateUser(request, jwt);
+                // one parse per request: signature, expiry and claims all come from here
+                Optional<Claims> claims = jwtUtil.parseToken(jwt);
+                if (claims.isPresent()) {
+                    if (tokenBlacklistService.isRevoked(claims.get())) {
+                        logger.warn("JWT Token is blacklisted (logged out).");
+                        filterChain.doFilter(request, response);
+                        return; // Skip authentication for blacklisted tokens
+                    }
+                    authenticateUser(request, claims.get());
+                    request.setAttribute(CLAIMS, claims.get());
                 }
             }
         } catch (Exception e) {
@@ -61,12 +77,28 @@ public class JwtAuthFilter extends OncePerRequestFilter {
             return bearerToken.substring(7);
         }
 
+        // Browsers cannot set headers on a WebSocket handshake, so it offers the token as a subprotocol:
+        // Sec-WebSocket-Protocol: access_token, <jwt>. Unlike a query parameter it stays out of access logs.
+        if (request.getServletPath().equals(pushPath)) {
+            return tokenFromSubprotocols(request);
+        }
+
         return null;
     }
 
-    private void authenticateUser(HttpServletRequest request, String jwt) {
-        String email = jwtUtil.getEmailFromToken(jwt);
-        String role = jwtUtil.getRoleFromToken(jwt);
+    private static String tokenFromSubprotocols(HttpServletRequest request) {
+        List<String> protocols = Collections.list(request.getHeaders("Sec-WebSocket-Protocol")).stream()
+                .flatMap(header -> Arrays.stream(header.split(",")))
+                .map(String::trim)
+                .toList();
+        int marker = protocols.indexOf(TOKEN_SUBPROTOCOL);
+        return marker >= 0 && marker + 1 < protocols.size() ? protocols.get(marker + 1) : null;
+    }
+
+    private void authenticateUser(HttpServletRequest request, Claims claims) {
+        String email = claims.getSubject();
+        String role = claims.get("role", String.class);
+        Long userId = claims.get("uid", Long.class);
 
         if (StringUtils.hasText(email) &&
                 StringUtils.hasText(role) &&
@@ -75,7 +107,10 @@ public class JwtAuthFilter extends OncePerRequestFilter {
             String formattedRole = formatRole(role);
             List<SimpleGrantedAuthority> authorities = List.of(new SimpleGrantedAuthority(formattedRole));
 
-            UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(email, null,
+            // older tokens have no uid, CurrentUserService looks those up by email
+            Object principal = userId != null ? new CurrentUser(userId, email,
+                    Role.valueOf(formattedRole.substring("ROLE_".length()))) : email;
+            UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(principal, null,
                     authorities);
             authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
@@ -2,12 +2,15 @@ package Hospital.system.Security;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
 import java.util.function.Function;
 
 @Component
@@ -20,20 +23,34 @@ public class JwtUtil {
     @Value("${jwt.expiration}")
     private long jwtExpiration; // 30 minutes
 
+    // built once, both are immutable and thread-safe
+    private SecretKey signingKey;
+    private JwtParser jwtParser;
+
+    @PostConstruct
+    void init() {
+        signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        jwtParser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+    }
+
     private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        return signingKey;
     }
 
-    public String generateToken(String email, String role) {
-        return createToken(email, role);
+    public String generateToken(Long userId, String email, String role) {
+        return createToken(userId, email, role);
     }
 
-    private String createToken(String email, String role) {
+    private String createToken(Long userId, String email, String role) {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + jwtExpiration);
 
         return Jwts.builder()
+                .setId(UUID.randomUUID().toString())
                 .setSubject(email)
+                .claim("uid", userId)
                 .claim("role", role)
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
@@ -54,46 +71,43 @@ public class JwtUtil {
         return getClaimFromToken(token, claims -> claims.get("role", String.class));
     }
 
+    public Long getUserIdFromToken(String token) {
+        return getClaimFromToken(token, claims -> claims.get("uid", Long.class));
+    }
+
     public Date getExpirationDateFromToken(String token) {
         return getClaimFromToken(token, Claims::getExpiration);
     }
 
     private Claims getAllClaimsFromToken(String token) {
         try {
-            return Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+            return jwtParser.parseClaimsJws(token).getBody();
         } catch (JwtException | IllegalArgumentException e) {
             log.error("Failed to parse JWT token: {}", e.getMessage());
             throw e;
         }
     }
 
-    public boolean validateToken(String token) {
+    // verifies signature and expiry in a single parse; empty when the token is not usable
+    public Optional<Claims> parseToken(String token) {
         try {
-            Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(token);
-            return true;
+            return Optional.of(jwtParser.parseClaimsJws(token).getBody());
         } catch (ExpiredJwtException e) {
             log.debug("JWT token is expired: {}", e.getMessage());
-            return false;
         } catch (UnsupportedJwtException e) {
             log.error("JWT token is unsupported: {}", e.getMessage());
-            return false;
         } catch (MalformedJwtException e) {
             log.error("JWT token is malformed: {}", e.getMessage());
-            return false;
         } catch (IllegalArgumentException e) {
             log.error("JWT token compact of handler are invalid: {}", e.getMessage());
-            return false;
         } catch (JwtException e) {
             log.error("JWT token validation failed: {}", e.getMessage());
-            return false;
         }
+        return Optional.empty();
+    }
+
+    public boolean validateToken(String token) {
+        return parseToken(token).isPresent();
     }
 
     public boolean isTokenExpired(String token) {
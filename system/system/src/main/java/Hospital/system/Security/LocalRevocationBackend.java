@@ -0,0 +1,26 @@
+package Hospital.system.Security;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.UUID;
+
+// single node deployments: the near-cache in TokenBlacklistService is the only copy
+@Component
+@ConditionalOnProperty(name = "security.revocation.backend", havingValue = "local")
+public class LocalRevocationBackend implements RevocationBackend {
+
+    @Override
+    public void publish(UUID tokenId, long expiresAt) {
+    }
+
+    @Override
+    public List<RevocationEntry> fetchSince(long sequence, int limit) {
+        return List.of();
+    }
+
+    @Override
+    public void purgeExpired(long now) {
+    }
+}
@@ -0,0 +1,21 @@
+package Hospital.system.Security;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Where revocations are shared between application nodes. TokenBlacklistService keeps the
+ * near-cache the filter reads from and polls the backend for entries published by other nodes.
+ */
+public interface RevocationBackend {
+
+    void publish(UUID tokenId, long expiresAt);
+
+    // entries with a sequence greater than the given one, in sequence order
+    List<RevocationEntry> fetchSince(long sequence, int limit);
+
+    void purgeExpired(long now);
+
+    record RevocationEntry(long sequence, UUID tokenId, long expiresAt) {
+    }
+}
@@ -1,6 +1,8 @@
 package Hospital.system.Security;
 
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -23,9 +25,13 @@ public class SecurityConfig {
     private final JwtAuthFilter jwtAuthFilter;
     private final UserDetailsService userDetailsService;
 
+    // strength 0 means calibrate against the target latency at startup; tests pin a low value
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(PasswordHashingExecutor hashingExecutor,
+                                           @Value("${security.password.bcrypt-strength:0}") int strength,
+                                           @Value("${security.password.target-hash-millis:250}") long targetHashMillis) {
+        int effectiveStrength = strength > 0 ? strength : BCryptCalibration.strengthFor(targetHashMillis);
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(effectiveStrength), hashingExecutor);
     }
 
     @Bean
@@ -34,16 +40,21 @@ public class SecurityConfig {
     }
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http,
+                                           @Value("${messages.push.path:/ws/messages}") String pushPath) throws Exception {
         http.csrf(AbstractHttpConfigurer::disable)
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(authz -> authz
                         // Public endpoints
                         .requestMatchers("/api/auth/**").permitAll()
+                        // streamed responses finish on an async dispatch, the request itself was already authorized
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                        .requestMatchers("/actuator/health").permitAll()
 
                         // Admin endpoints - full access to manage all users
                         .requestMatchers("/api/admin/**").hasRole("ADMIN")
                         .requestMatchers("/api/users/**").hasRole("ADMIN")
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
 
                         // Doctor endpoints
                         .requestMatchers("/api/doctors/**").hasRole("DOCTOR")
@@ -73,6 +84,8 @@ public class SecurityConfig {
                         // Shared endpoints (accessible by multiple roles)
                         .requestMatchers("/api/appointments").hasAnyRole("DOCTOR", "PATIENT")
                         .requestMatchers("/api/messages").hasAnyRole("DOCTOR", "PATIENT")
+                        .requestMatchers("/api/messages/inbox", "/api/messages/unread", "/api/messages/read").hasAnyRole("DOCTOR", "PATIENT")
+                        .requestMatchers(pushPath).hasAnyRole("DOCTOR", "PATIENT")
                         .requestMatchers("/api/medicines/list").hasAnyRole("PATIENT", "DOCTOR", "PHARMACY")
 
                         .anyRequest().authenticated())
@@ -1,26 +1,206 @@
 package Hospital.system.Security;
 
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Service
+@Slf4j
 public class TokenBlacklistService {
 
-    private Set<String> blacklistedTokens = ConcurrentHashMap.newKeySet();
+    private static final int SYNC_BATCH_SIZE = 1000;
+
+    private final JwtUtil jwtUtil;
+    private final RevocationBackend revocationBackend;
+    private final long gapTimeoutMillis;
+
+    // token id -> expiry (epoch millis); lookups from JwtAuthFilter never lock
+    private final Map<UUID, Long> revokedTokens = new ConcurrentHashMap<>();
+
+    // same entries ordered by expiry, so eviction only touches what has actually expired
+    private final DelayQueue<Revocation> expiryQueue = new DelayQueue<>();
+
+    private final Counter evictedCounter;
+
+    // told about every token revoked here or on another node, e.g. to close its open WebSocket sessions
+    private final List<Consumer<UUID>> revocationListeners = new CopyOnWriteArrayList<>();
+
+    // every backend entry up to here has been applied locally
+    private volatile long syncedSequence;
+    // first sequence we are still waiting for, and since when
+    private long pendingGapSequence = -1;
+    private long pendingGapSince;
+
+    public TokenBlacklistService(JwtUtil jwtUtil, RevocationBackend revocationBackend, MeterRegistry meterRegistry,
+                                 @Value("${security.revocation.gap-timeout:30000}") long gapTimeoutMillis) {
+        this.jwtUtil = jwtUtil;
+        this.revocationBackend = revocationBackend;
+        this.gapTimeoutMillis = gapTimeoutMillis;
+        Gauge.builder("auth.revocations.size", revokedTokens, Map::size)
+                .description("Revoked tokens that have not expired yet")
+                .register(meterRegistry);
+        this.evictedCounter = Counter.builder("auth.revocations.evicted")
+                .description("Revocations dropped because the token expired")
+                .register(meterRegistry);
+    }
 
     public void blacklistToken(String token) {
-        blacklistedTokens.add(token);
+        // an unparseable or expired token is already rejected by the filter, nothing to remember
+        jwtUtil.parseToken(token).ifPresent(this::revoke);
     }
 
     public boolean isTokenBlacklisted(String token) {
-        return blacklistedTokens.contains(token);
+        return jwtUtil.parseToken(token)
+                .map(this::isRevoked)
+                .orElse(false);
+    }
+
+    public void revoke(Claims claims) {
+        UUID tokenId = tokenId(claims);
+        long expiresAt = claims.getExpiration().getTime();
+        revoke(tokenId, expiresAt);
+        try {
+            revocationBackend.publish(tokenId, expiresAt);
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Token {} was already revoked on another node", tokenId);
+        }
+    }
+
+    public boolean isRevoked(Claims claims) {
+        return isRevoked(tokenId(claims));
+    }
+
+    public boolean isRevoked(UUID tokenId) {
+        return revokedTokens.containsKey(tokenId);
+    }
+
+    public void onRevocation(Consumer<UUID> listener) {
+        revocationListeners.add(listener);
     }
 
-    @Scheduled(fixedRate = 3600000)
+    void revoke(UUID tokenId, long expiresAt) {
+        if (revokedTokens.putIfAbsent(tokenId, expiresAt) == null) {
+            expiryQueue.add(new Revocation(tokenId, expiresAt));
+            for (Consumer<UUID> listener : revocationListeners) {
+                try {
+                    listener.accept(tokenId);
+                } catch (RuntimeException e) {
+                    log.warn("Revocation listener failed for token {}: {}", tokenId, e.getMessage());
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return revokedTokens.size();
+    }
+
+    // pulls revocations published by other nodes; the filter itself never goes to the database
+    @Scheduled(fixedDelayString = "${security.revocation.poll-interval:2000}")
+    public synchronized void syncFromBackend() {
+        List<RevocationBackend.RevocationEntry> entries;
+        do {
+            entries = revocationBackend.fetchSince(syncedSequence, SYNC_BATCH_SIZE);
+            if (entries.isEmpty()) {
+                break;
+            }
+            // on the first sync older rows may already have been purged, start from whatever is there
+            long next = syncedSequence == 0 ? entries.get(0).sequence() : syncedSequence + 1;
+            boolean contiguous = true;
+            for (RevocationBackend.RevocationEntry entry : entries) {
+                revoke(entry.tokenId(), entry.expiresAt());
+                if (contiguous && entry.sequence() != next && !gapTimedOut(next)) {
+                    // an older insert may still be committing, read from the gap again next time
+                    contiguous = false;
+                }
+                if (contiguous) {
+                    next = entry.sequence() + 1;
+                    syncedSequence = entry.sequence();
+                }
+            }
+            if (!contiguous) {
+                return;
+            }
+        } while (entries.size() == SYNC_BATCH_SIZE);
+        pendingGapSequence = -1;
+    }
+
+    // sequences are never handed out twice, so a gap that outlives any transaction is a rollback
+    private boolean gapTimedOut(long missingSequence) {
+        long now = System.currentTimeMillis();
+        if (pendingGapSequence != missingSequence) {
+            pendingGapSequence = missingSequence;
+            pendingGapSince = now;
+            return false;
+        }
+        if (now - pendingGapSince < gapTimeoutMillis) {
+            return false;
+        }
+        log.debug("Skipping revocation sequence gap starting at {}", missingSequence);
+        pendingGapSequence = -1;
+        return true;
+    }
+
+    long getSyncedSequence() {
+        return syncedSequence;
+    }
+
+    @Scheduled(fixedDelayString = "${security.revocation.eviction-interval:60000}")
     public void cleanupExpiredTokens() {
-        blacklistedTokens.clear();
+        int evicted = 0;
+        Revocation expired;
+        while ((expired = expiryQueue.poll()) != null) {
+            revokedTokens.remove(expired.tokenId(), expired.expiresAt());
+            evicted++;
+        }
+        if (evicted > 0) {
+            evictedCounter.increment(evicted);
+            log.debug("Evicted {} expired revocations, {} still active", evicted, revokedTokens.size());
+        }
+        revocationBackend.purgeExpired(System.currentTimeMillis());
+    }
+
+    // tokens carry a random jti; older tokens without one fall back to a digest of their identity claims
+    public static UUID tokenId(Claims claims) {
+        String jti = claims.getId();
+        if (jti != null) {
+            try {
+                return UUID.fromString(jti);
+            } catch (IllegalArgumentException ignored) {
+                // not one of ours, hash it below
+            }
+        }
+        String identity = jti + "|" + claims.getSubject() + "|" + claims.getIssuedAt() + "|" + claims.getExpiration();
+        return UUID.nameUUIDFromBytes(identity.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private record Revocation(UUID tokenId, long expiresAt) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiresAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiresAt, ((Revocation) other).expiresAt);
+        }
     }
-}
\ No newline at end of file
+}
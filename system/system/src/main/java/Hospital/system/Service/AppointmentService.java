@@ -8,12 +8,16 @@ import Hospital.system.Entity.User;
 import Hospital.system.Mapper.AppointmentMapper;
 import Hospital.system.Repository.AppointmentRepository;
 import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUser;
+import Hospital.system.Security.CurrentUserService;
 import Hospital.system.exception.AccessDeniedException;
 import Hospital.system.exception.BadRequestException;
+import Hospital.system.exception.ConflictException;
 import Hospital.system.exception.ResourceNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -29,8 +33,12 @@ public class AppointmentService {
 
     private final UserRepository userRepository;
 
-    private static final LocalTime START_WORK = LocalTime.of(9, 0);
-    private static final LocalTime END_WORK = LocalTime.of(21, 0);
+    private final CurrentUserService currentUserService;
+
+    private final DoctorCalendarIndex calendarIndex;
+
+    private static final LocalTime START_WORK = DoctorCalendarIndex.START_WORK;
+    private static final LocalTime END_WORK = DoctorCalendarIndex.END_WORK;
 
     @Transactional
     public AppointmentDto bookAppointment(AppointmentDto appointmentDto) {
@@ -41,16 +49,11 @@ public class AppointmentService {
                     return new ResourceNotFoundException("No Patient Exist with Id " + appointmentDto.getPatientId());
                 });
 
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        User loggedInUser = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Logged in user not found: {}", email);
-                    return new ResourceNotFoundException("Logged in user not found");
-                });
+        CurrentUser loggedInUser = currentUserService.getCurrentUser();
 
         //patientId in DTO matches logged-in user
-        if (!loggedInUser.getId().equals(appointmentDto.getPatientId())) {
-            log.warn("Patient {} tried to book an appointment for another patient {}", loggedInUser.getId(), appointmentDto.getPatientId());
+        if (!loggedInUser.id().equals(appointmentDto.getPatientId())) {
+            log.warn("Patient {} tried to book an appointment for another patient {}", loggedInUser.id(), appointmentDto.getPatientId());
             throw new AccessDeniedException("Patient can only book for himself");
         }
         User doctor = userRepository.findByIdAndRole(appointmentDto.getDoctorId(), Role.DOCTOR)
@@ -63,110 +66,73 @@ public class AppointmentService {
         //save appointment
         Appointment appointment = AppointmentMapper.toEntity(appointmentDto, doctor, patient);
 
-        Appointment saved = appointmentRepository.save(appointment);
+        Appointment saved = saveHoldingSlot(appointment);
+        calendarIndex.occupy(doctor.getId(), saved.getAppointmentTime());
 
         log.info("Appointment booked successfully with id={}", saved.getId());
 
         return AppointmentMapper.toDto(saved);
     }
 
-//    @Transactional
-//    public List<AppointmentDto> getAllAppointments(){
-//        return appointmentRepository.findAll().stream()
-//                .map(AppointmentMapper::toDto)
-//                .toList();
-//    }
-//
-//    @Transactional
-//    public List<AppointmentDto> getAllAppointmentsByStatus(AppointmentStatus status){
-//        return appointmentRepository.findByStatus(status).stream()
-//                .map(AppointmentMapper::toDto)
-//                .toList();
-//    }
-
     @Transactional
     public List<AppointmentDto> getAllAppointmentsByPatient() {
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        log.info("Fetching appointments for patient: email={}", email);
-        User patient = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Patient not found by email={}", email);
-                    return new ResourceNotFoundException("User not found");
-                });
-        List<AppointmentDto> appointments = appointmentRepository.findByPatient_Id(patient.getId()).stream()
+        CurrentUser patient = currentUserService.getCurrentUser();
+        log.info("Fetching appointments for patient: email={}", patient.email());
+        List<AppointmentDto> appointments = appointmentRepository.findByPatient_Id(patient.id()).stream()
                 .map(AppointmentMapper::toDto)
                 .toList();
-        log.info("Found {} appointments for patient {}", appointments.size(), patient.getId());
+        log.info("Found {} appointments for patient {}", appointments.size(), patient.id());
         return appointments;
     }
 
     @Transactional
     public List<AppointmentDto> getAllAppointmentsByPatientAndStatus(AppointmentStatus status) {
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        log.info("Fetching {} appointments for patient: email={}", status, email);
-        User patient = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Patient not found by email={}", email);
-                    return new ResourceNotFoundException("User not found");
-                });
-        List<AppointmentDto> appointments = appointmentRepository.findByPatient_IdAndStatus(patient.getId(), status).stream()
+        CurrentUser patient = currentUserService.getCurrentUser();
+        log.info("Fetching {} appointments for patient: email={}", status, patient.email());
+        List<AppointmentDto> appointments = appointmentRepository.findByPatient_IdAndStatus(patient.id(), status).stream()
                 .map(AppointmentMapper::toDto)
                 .toList();
-        log.info("Found {} {} appointments for patient {}", appointments.size(), status, patient.getId());
+        log.info("Found {} {} appointments for patient {}", appointments.size(), status, patient.id());
         return appointments;
     }
 
     @Transactional
     public List<AppointmentDto> getAllAppointmentsByDoctor() {
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        log.info("Fetching appointments for doctor: email={}", email);
+        CurrentUser doctor = currentUserService.getCurrentUser();
+        log.info("Fetching appointments for doctor: email={}", doctor.email());
 
-        User doctor = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Doctor not found by email={}", email);
-                    return new ResourceNotFoundException("User not found");
-                });
-        List<AppointmentDto> appointments = appointmentRepository.findByDoctor_Id(doctor.getId()).stream()
+        List<AppointmentDto> appointments = appointmentRepository.findByDoctor_Id(doctor.id()).stream()
                 .map(AppointmentMapper::toDto)
                 .toList();
-        log.info("Found {} appointments for doctor {}", appointments.size(), doctor.getId());
+        log.info("Found {} appointments for doctor {}", appointments.size(), doctor.id());
         return appointments;
     }
 
     @Transactional
     public List<AppointmentDto> getAllAppointmentsByDoctorAndStatus(AppointmentStatus status) {
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        log.info("Fetching {} appointments for doctor: email={}", status, email);
+        CurrentUser doctor = currentUserService.getCurrentUser();
+        log.info("Fetching {} appointments for doctor: email={}", status, doctor.email());
 
-        User doctor = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Doctor not found by email={}", email);
-                    return new ResourceNotFoundException("User not found");
-                });
-        List<AppointmentDto> appointments = appointmentRepository.findByDoctor_IdAndStatus(doctor.getId(), status).stream()
+        List<AppointmentDto> appointments = appointmentRepository.findByDoctor_IdAndStatus(doctor.id(), status).stream()
                 .map(AppointmentMapper::toDto)
                 .toList();
-        log.info("Found {} {} appointments for doctor {}", appointments.size(), status, doctor.getId());
+        log.info("Found {} {} appointments for doctor {}", appointments.size(), status, doctor.id());
         return appointments;
     }
 
     @Transactional
     public AppointmentDto updateAppointment(Long appointmentId, AppointmentDto updatedDto) {
-        log.info("Updating appointment: id={}, requestedBy={}", appointmentId,
-                SecurityContextHolder.getContext().getAuthentication().getName());
+        CurrentUser loggedInUser = currentUserService.getCurrentUser();
+        log.info("Updating appointment: id={}, requestedBy={}", appointmentId, loggedInUser.email());
 
         Appointment appointment = appointmentRepository.findById(appointmentId)
                 .orElseThrow(() -> {
                     log.error("Appointment not found: id={}", appointmentId);
                     return new ResourceNotFoundException("Appointment not found with id " + appointmentId);
                 });
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        User loggedInUser = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Logged-in user not found: email={}", email);
-                    return new ResourceNotFoundException("Logged in user not found");
-                });
-        log.debug("Current appointment status={}, loggedInUserRole={}", appointment.getStatus(), loggedInUser.getRole());
+        log.debug("Current appointment status={}, loggedInUserRole={}", appointment.getStatus(), loggedInUser.role());
+        Long previousDoctorId = appointment.getDoctor().getId();
+        LocalDateTime previousTime = appointment.getAppointmentTime();
 
         // Only allow update if status is PENDING or BOOKED
         if (appointment.getStatus() != AppointmentStatus.PENDING &&
@@ -176,18 +142,18 @@ public class AppointmentService {
         }
 
         // Handle role-specific logic
-        if (loggedInUser.getRole() == Role.PATIENT) {
+        if (loggedInUser.role() == Role.PATIENT) {
             // Patient can only update their own appointment
-            if (!appointment.getPatient().getId().equals(loggedInUser.getId())) {
+            if (!appointment.getPatient().getId().equals(loggedInUser.id())) {
                 log.warn("Patient {} tried to update appointment of patient {}",
-                        loggedInUser.getId(), appointment.getPatient().getId());
+                        loggedInUser.id(), appointment.getPatient().getId());
                 throw new AccessDeniedException("You cannot update another patient's appointment");
             }
 
             // Ignore any patientId changes
-            if (updatedDto.getPatientId() != null && !updatedDto.getPatientId().equals(loggedInUser.getId())) {
+            if (updatedDto.getPatientId() != null && !updatedDto.getPatientId().equals(loggedInUser.id())) {
                 log.warn("Patient {} tried to change id to that of patient {}",
-                        loggedInUser.getId(), updatedDto.getPatientId());
+                        loggedInUser.id(), updatedDto.getPatientId());
                 throw new BadRequestException("Patients cannot change the patient ID");
             }
 
@@ -201,18 +167,17 @@ public class AppointmentService {
                 appointment.setDoctor(newDoctor);
             }
 
-            appointment.setPatient(loggedInUser); // enforce patient ID
-        } else if (loggedInUser.getRole() == Role.DOCTOR) {
+        } else if (loggedInUser.role() == Role.DOCTOR) {
             // Doctors can only update their own appointment
-            if (!appointment.getDoctor().getId().equals(loggedInUser.getId())) {
+            if (!appointment.getDoctor().getId().equals(loggedInUser.id())) {
                 log.warn("Doctor {} tried to update appointment of doctor {}",
-                        loggedInUser.getId(), appointment.getDoctor().getId());
+                        loggedInUser.id(), appointment.getDoctor().getId());
                 throw new AccessDeniedException("You cannot update another doctor's appointment");
             }
             // Doctor cannot change doctorId
-            if (updatedDto.getDoctorId() != null && !updatedDto.getDoctorId().equals(loggedInUser.getId())) {
+            if (updatedDto.getDoctorId() != null && !updatedDto.getDoctorId().equals(loggedInUser.id())) {
                 log.warn("Doctor {} tried to change id to that of docotor {}",
-                        loggedInUser.getId(), updatedDto.getDoctorId());
+                        loggedInUser.id(), updatedDto.getDoctorId());
                 throw new BadRequestException("Doctors cannot change the doctor ID");
             }
 
@@ -225,7 +190,6 @@ public class AppointmentService {
                         });
                 appointment.setPatient(newPatient);
             }
-            appointment.setDoctor(loggedInUser); // enforce patient ID
         } else { //should never reach here cause of security jwt.
             throw new AccessDeniedException("Only patients or doctors can update appointments");
         }
@@ -237,12 +201,16 @@ public class AppointmentService {
         }
 
         // Revert status if it was BOOKED and patient is the one updating
-        if (appointment.getStatus() == AppointmentStatus.BOOKED && loggedInUser.getRole() == Role.PATIENT) {
+        if (appointment.getStatus() == AppointmentStatus.BOOKED && loggedInUser.role() == Role.PATIENT) {
             appointment.setStatus(AppointmentStatus.PENDING);
         }
 
-        Appointment saved = appointmentRepository.save(appointment);
-        log.info("Appointment updated successfully: id={}, byUser={}", saved.getId(), loggedInUser.getId());
+        Appointment saved = saveHoldingSlot(appointment);
+        if (!saved.getDoctor().getId().equals(previousDoctorId) || !saved.getAppointmentTime().equals(previousTime)) {
+            calendarIndex.release(previousDoctorId, previousTime);
+            calendarIndex.occupy(saved.getDoctor().getId(), saved.getAppointmentTime());
+        }
+        log.info("Appointment updated successfully: id={}, byUser={}", saved.getId(), loggedInUser.id());
         return AppointmentMapper.toDto(saved);
     }
 
@@ -250,37 +218,30 @@ public class AppointmentService {
     public void cancelAppointment(Long appointmentId) {
         //soft delete => change status to CANCELLED
         //cancel only if booked or pending
-        log.info("Cancelling appointment: id={}, requestedBy={}", appointmentId,
-                SecurityContextHolder.getContext().getAuthentication().getName());
+        CurrentUser currentUser = currentUserService.getCurrentUser();
+        log.info("Cancelling appointment: id={}, requestedBy={}", appointmentId, currentUser.email());
 
         Appointment appointment = appointmentRepository.findById(appointmentId)
                 .orElseThrow(() -> {
                     log.error("Appointment not found: id={}", appointmentId);
                     return new ResourceNotFoundException("Appointment not found with id " + appointmentId);
                 });
-
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        User currentUser = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Current user not found: email={}", email);
-                    return new ResourceNotFoundException("Logged in user not found");
-                });
         if (!(appointment.getStatus() == AppointmentStatus.PENDING ||
                 appointment.getStatus() == AppointmentStatus.BOOKED)) {
             log.warn("Cancel attempt failed: invalid status={}, appointmentId={}", appointment.getStatus(), appointmentId);
             throw new BadRequestException("Appointment cannot be cancelled (status = " + appointment.getStatus() + ")");
         }
 
-        if (currentUser.getRole() == Role.PATIENT) {
+        if (currentUser.role() == Role.PATIENT) {
             // Patient can only cancel their own appointment
-            if (!appointment.getPatient().getId().equals(currentUser.getId())) {
-                log.warn("Patient {} tried to cancel another patient's appointment {}", currentUser.getId(), appointmentId);
+            if (!appointment.getPatient().getId().equals(currentUser.id())) {
+                log.warn("Patient {} tried to cancel another patient's appointment {}", currentUser.id(), appointmentId);
                 throw new AccessDeniedException("Patients can only cancel their own appointments");
             }
-        } else if (currentUser.getRole() == Role.DOCTOR) {
+        } else if (currentUser.role() == Role.DOCTOR) {
             // Doctor can only cancel their own appointment
-            if (!appointment.getDoctor().getId().equals(currentUser.getId())) {
-                log.warn("Doctor {} tried to cancel another doctor's appointment {}", currentUser.getId(), appointmentId);
+            if (!appointment.getDoctor().getId().equals(currentUser.id())) {
+                log.warn("Doctor {} tried to cancel another doctor's appointment {}", currentUser.id(), appointmentId);
                 throw new AccessDeniedException("Doctors can only cancel their own appointments");
             }
         } else { //shouldn't reach here
@@ -289,7 +250,8 @@ public class AppointmentService {
 
         appointment.setStatus(AppointmentStatus.CANCELLED);
         appointmentRepository.save(appointment);
-        log.info("Appointment cancelled successfully: id={}, byUser={}", appointmentId, currentUser.getId());
+        calendarIndex.release(appointment.getDoctor().getId(), appointment.getAppointmentTime());
+        log.info("Appointment cancelled successfully: id={}, byUser={}", appointmentId, currentUser.id());
     }
 
     @Transactional
@@ -299,14 +261,9 @@ public class AppointmentService {
                     log.error("Appointment not found: id={}", appointmentId);
                     return new ResourceNotFoundException("Appointment not found with id " + appointmentId);
                 });
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        User doctor = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Doctor with email={} not found", email);
-                    return new ResourceNotFoundException("User not found");
-                });
-        if (!appointment.getDoctor().getId().equals(doctor.getId())) {
-            log.warn("Doctor {} attempted to approve appointment id={} that is not assigned to them", doctor.getId(), appointmentId);
+        CurrentUser doctor = currentUserService.getCurrentUser();
+        if (!appointment.getDoctor().getId().equals(doctor.id())) {
+            log.warn("Doctor {} attempted to approve appointment id={} that is not assigned to them", doctor.id(), appointmentId);
             throw new AccessDeniedException("Doctors can only approve their own appointments");
         }
 
@@ -317,13 +274,13 @@ public class AppointmentService {
 
         //only future appointments can be approved
         if (appointment.getAppointmentTime().isBefore(LocalDateTime.now())) {
-            log.warn("Appointment in the past: start={}, doctorId={}", appointment.getAppointmentTime(), doctor.getId());
+            log.warn("Appointment in the past: start={}, doctorId={}", appointment.getAppointmentTime(), doctor.id());
             throw new BadRequestException("Cannot approve an appointment in the past");
         }
 
         appointment.setStatus(AppointmentStatus.BOOKED);
         Appointment saved = appointmentRepository.save(appointment);
-        log.info("Appointment id={} successfully approved by doctor={}", appointmentId, doctor.getId());
+        log.info("Appointment id={} successfully approved by doctor={}", appointmentId, doctor.id());
         return AppointmentMapper.toDto(saved);
     }
 
@@ -334,14 +291,9 @@ public class AppointmentService {
                     log.error("Appointment not found: id={}", appointmentId);
                     return new ResourceNotFoundException("Appointment not found with id " + appointmentId);
                 });
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        User doctor = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Doctor with email={} not found", email);
-                    return new ResourceNotFoundException("User not found");
-                });
-        if (!appointment.getDoctor().getId().equals(doctor.getId())) {
-            log.warn("Doctor {} attempted to approve appointment id={} that is not assigned to them", doctor.getId(), appointmentId);
+        CurrentUser doctor = currentUserService.getCurrentUser();
+        if (!appointment.getDoctor().getId().equals(doctor.id())) {
+            log.warn("Doctor {} attempted to approve appointment id={} that is not assigned to them", doctor.id(), appointmentId);
             throw new AccessDeniedException("Doctors can only complete their own appointments");
         }
 
@@ -352,17 +304,42 @@ public class AppointmentService {
 
         //only past appointments can be marked as completed
         if (appointment.getAppointmentTime().isAfter(LocalDateTime.now())) {
-            log.warn("Appointment still in the future: start={}, doctorId={}", appointment.getAppointmentTime(), doctor.getId());
+            log.warn("Appointment still in the future: start={}, doctorId={}", appointment.getAppointmentTime(), doctor.id());
             throw new BadRequestException("Cannot mark an appointment as completed before its time");
         }
 
+        // a completed appointment keeps its slot, so the calendar index is unchanged
         appointment.setStatus(AppointmentStatus.COMPLETED);
         Appointment saved = appointmentRepository.save(appointment);
-        log.info("Appointment id={} successfully completed by doctor={}", appointmentId, doctor.getId());
+        log.info("Appointment id={} successfully completed by doctor={}", appointmentId, doctor.id());
         return AppointmentMapper.toDto(saved);
     }
 
 
+    // the unique (doctor_id, active_slot) index is what actually prevents double booking,
+    // the calendar check in validateAppointmentTime only turns most conflicts away early
+    private Appointment saveHoldingSlot(Appointment appointment) {
+        try {
+            return appointmentRepository.saveAndFlush(appointment);
+        } catch (DataIntegrityViolationException e) {
+            if (!isSlotConflict(e)) {
+                throw e;
+            }
+            log.warn("Slot taken concurrently: start={}, doctorId={}",
+                    appointment.getAppointmentTime(), appointment.getDoctor().getId());
+            throw new ConflictException("Doctor already has an appointment at this time");
+        }
+    }
+
+    private static boolean isSlotConflict(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation && violation.getConstraintName() != null) {
+                return violation.getConstraintName().toLowerCase().contains(Appointment.SLOT_CONSTRAINT);
+            }
+        }
+        return false;
+    }
+
     private void validateAppointmentTime(LocalDateTime start, Long doctorId) {
         log.debug("Validating appointment time={} for doctorId={}", start, doctorId);
         LocalDateTime end = start.plusHours(1);
@@ -387,11 +364,10 @@ public class AppointmentService {
             throw new BadRequestException("Appointments must start at the top of the hour");
         }
 
-        // conflict check
-        boolean conflict = appointmentRepository.existsOverlappingAppointment(doctorId, start, end) != 0;
-        if (conflict) {
+        // conflict check, a bit test against the doctor's calendar for that day
+        if (!calendarIndex.isFree(doctorId, start)) {
             log.warn("Appointment conflict: start={}, doctorId={}", start, doctorId);
-            throw new BadRequestException("Doctor already has an appointment at this time");
+            throw new ConflictException("Doctor already has an appointment at this time");
         }
         log.debug("Appointment time validated: start={}, doctorId={}", start, doctorId);
 
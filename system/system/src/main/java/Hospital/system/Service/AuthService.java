@@ -1,19 +1,23 @@
 package Hospital.system.Service;
 
+import Hospital.system.DTO.AuthResponseDto;
 import Hospital.system.DTO.LoginDto;
 import Hospital.system.DTO.UserRegistrationDto;
 import Hospital.system.Entity.Role;
 import Hospital.system.Entity.User;
 import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.AuthenticatedUser;
 import Hospital.system.Security.JwtUtil;
 import Hospital.system.Security.TokenBlacklistService;
 import Hospital.system.exception.ResourceNotFoundException;
+import Hospital.system.exception.ServiceUnavailableException;
 import Hospital.system.exception.ValidationException;
 import lombok.RequiredArgsConstructor;
 import org.apache.coyote.BadRequestException;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -27,9 +31,14 @@ public class AuthService {
     private final AuthenticationManager authenticationManager;
     private final JwtUtil jwtUtil;
     private final TokenBlacklistService tokenBlacklistService;
+    private final RefreshTokenService refreshTokenService;
 
-    @Transactional
+    // not transactional: the password is hashed before the first query, so no connection is held while the sign-up
+    // waits for a hashing thread
     public String registerUser(UserRegistrationDto registerUserDto) throws BadRequestException {
+        Role role = parseRole(registerUserDto.getRole());
+        String password = passwordEncoder.encode(registerUserDto.getPassword());
+
         if (userRepository.existsByEmail(registerUserDto.getEmail())) {
             throw new ValidationException("Email already in use");
         }
@@ -37,34 +46,55 @@ public class AuthService {
         User user = User.builder()
                 .name(registerUserDto.getName())
                 .email(registerUserDto.getEmail())
-                .password(passwordEncoder.encode(registerUserDto.getPassword()))
-                .role(parseRole(registerUserDto.getRole()))
+                .password(password)
+                .role(role)
                 .build();
 
         User savedUser = userRepository.save(user);
-        return jwtUtil.generateToken(savedUser.getEmail(), savedUser.getRole().name());
+        return jwtUtil.generateToken(savedUser.getId(), savedUser.getEmail(), savedUser.getRole().name());
     }
 
-    @Transactional
-    public String login(LoginDto loginDto) {
+    // not transactional: no connection is held while the password match waits for a hashing thread
+    public AuthResponseDto login(LoginDto loginDto) {
         try {
-            authenticationManager.authenticate(
+            Authentication authentication = authenticationManager.authenticate(
                     new UsernamePasswordAuthenticationToken(
                             loginDto.getEmail(),
                             loginDto.getPassword()));
 
-            User user = userRepository.findByEmail(loginDto.getEmail())
-                    .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+            // loaded by CustomUserDetailsService during authentication, no second lookup needed
+            if (!(authentication.getPrincipal() instanceof AuthenticatedUser user)) {
+                throw new ResourceNotFoundException("User not found");
+            }
 
-            return jwtUtil.generateToken(user.getEmail(), user.getRole().name());
+            String token = jwtUtil.generateToken(user.getId(), user.getUsername(), user.getRole().name());
+            String refreshToken = refreshTokenService.issue(user.getId());
+            return new AuthResponseDto(token, refreshToken, user.getUsername(), user.getRole().name(), "Login successful");
 
+        } catch (ServiceUnavailableException e) {
+            // overloaded, not a wrong password: let the client retry
+            throw e;
         } catch (Exception e) {
             throw new BadCredentialsException("Invalid email or password");
         }
     }
 
-    @Transactional
+    // renews the access token without a password check; the refresh token is rotated on every use
+    @Transactional(noRollbackFor = BadCredentialsException.class)
+    public AuthResponseDto refresh(String refreshToken) {
+        RefreshTokenService.IssuedRefreshToken rotated = refreshTokenService.rotate(refreshToken);
+        User user = rotated.user();
+
+        String token = jwtUtil.generateToken(user.getId(), user.getEmail(), user.getRole().name());
+        return new AuthResponseDto(token, rotated.token(), user.getEmail(), user.getRole().name(), "Token refreshed");
+    }
+
     public String logout(String authHeader) {
+        return logout(authHeader, null);
+    }
+
+    @Transactional
+    public String logout(String authHeader, String refreshToken) {
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
             throw new IllegalArgumentException("No valid token provided");
         }
@@ -76,6 +106,9 @@ public class AuthService {
         }
 
         tokenBlacklistService.blacklistToken(token);
+        if (refreshToken != null) {
+            refreshTokenService.revoke(refreshToken);
+        }
         return "Logged out successfully";
     }
 
@@ -1,48 +1,102 @@
 package Hospital.system.Service;
 
+import Hospital.system.DTO.DailyAvailabilityDto;
 import Hospital.system.DTO.DoctorAvailabilityDto;
-import Hospital.system.Entity.Appointment;
-import Hospital.system.Entity.AppointmentStatus;
+import Hospital.system.DTO.DoctorAvailabilityRangeDto;
 import Hospital.system.Entity.Role;
 import Hospital.system.Entity.User;
-import Hospital.system.Repository.AppointmentRepository;
 import Hospital.system.Repository.UserRepository;
+import Hospital.system.exception.BadRequestException;
 import Hospital.system.exception.ResourceNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class DoctorAvailabilityService {
     private final UserRepository userRepository;
-    private final AppointmentRepository appointmentRepository;
+    private final DoctorCalendarIndex calendarIndex;
 
-    private static final LocalTime START_WORK = LocalTime.of(9, 0);
-    private static final LocalTime END_WORK = LocalTime.of(21, 0);
+    private static final LocalTime START_WORK = DoctorCalendarIndex.START_WORK;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    public static final int MAX_RANGE_DAYS = 31;
 
     @Transactional(readOnly = true)
     public List<DoctorAvailabilityDto> getAllDoctorsAvailability(LocalDate day) {
-        log.info("Fetching availability for all doctors on day={}", day);
+        return getAllDoctorsAvailability(day, null, null, null);
+    }
+
+    // page and size are optional, without them every doctor is returned
+    @Transactional(readOnly = true)
+    public List<DoctorAvailabilityDto> getAllDoctorsAvailability(LocalDate day, Collection<Long> doctorIds,
+                                                                 Integer page, Integer size) {
+        log.info("Fetching availability for all doctors on day={}, doctorIds={}, page={}, size={}",
+                day, doctorIds, page, size);
 
-        List<User> doctors = userRepository.findByRole(Role.DOCTOR);
-        List<DoctorAvailabilityDto> result = new ArrayList<>();
+        List<User> doctors = findDoctors(doctorIds, toPageable(page, size));
 
+        // one query for every doctor whose day is not cached yet
+        Map<Long, Integer> occupied = calendarIndex.occupiedSlots(doctors.stream().map(User::getId).toList(), day);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<DoctorAvailabilityDto> result = new ArrayList<>(doctors.size());
         for (User doctor : doctors) {
-            result.add(getDoctorAvailabilityForDay(doctor, day));
+            result.add(new DoctorAvailabilityDto(doctor.getId(), doctor.getName(),
+                    availableSlots(occupied.getOrDefault(doctor.getId(), 0), day, now)));
         }
         log.info("Completed fetching availability for {} doctors on {}", doctors.size(), day);
         return result;
     }
 
+    /**
+     * Free slots for every doctor and day in [from, to], from one query over the whole window.
+     * The range is always paged by doctor, so a response holds at most one page of doctors times 31 days.
+     */
+    @Transactional(readOnly = true)
+    public List<DoctorAvailabilityRangeDto> getDoctorsAvailabilityRange(LocalDate from, LocalDate to,
+                                                                        Collection<Long> doctorIds,
+                                                                        Integer page, Integer size) {
+        if (to.isBefore(from)) {
+            throw new BadRequestException("to must not be before from");
+        }
+        long dayCount = ChronoUnit.DAYS.between(from, to) + 1;
+        if (dayCount > MAX_RANGE_DAYS) {
+            throw new BadRequestException("Range must not exceed " + MAX_RANGE_DAYS + " days");
+        }
+        log.info("Fetching availability from {} to {}, doctorIds={}, page={}, size={}", from, to, doctorIds, page, size);
+
+        List<User> doctors = findDoctors(doctorIds,
+                toPageable(page != null ? page : 0, size != null ? size : DEFAULT_PAGE_SIZE));
+        Map<Long, int[]> occupied = calendarIndex.occupiedSlots(doctors.stream().map(User::getId).toList(), from, to);
+
+        LocalDateTime now = LocalDateTime.now();
+        return doctors.stream().map(doctor -> {
+            int[] masks = occupied.get(doctor.getId());
+            List<DailyAvailabilityDto> days = new ArrayList<>(masks.length);
+            for (int i = 0; i < masks.length; i++) {
+                LocalDate day = from.plusDays(i);
+                days.add(new DailyAvailabilityDto(day, availableSlots(masks[i], day, now)));
+            }
+            return new DoctorAvailabilityRangeDto(doctor.getId(), doctor.getName(), days);
+        }).toList();
+    }
+
     @Transactional(readOnly = true)
     public DoctorAvailabilityDto getDoctorAvailabilityById(Long doctorId, LocalDate day) {
         log.info("Fetching availability for doctorId={} on day={}", doctorId, day);
@@ -61,38 +115,44 @@ public class DoctorAvailabilityService {
     private DoctorAvailabilityDto getDoctorAvailabilityForDay(User doctor, LocalDate day) {
         log.debug("Generating availability for doctorId={} on day={}", doctor.getId(), day);
 
-        List<LocalDateTime> availableSlots = new ArrayList<>();
-
-        LocalDateTime dayStart = day.atTime(START_WORK);
-        LocalDateTime dayEnd = day.atTime(END_WORK);
+        // non-cancelled appointments of that day as a bitmask, one bit per 1-hour slot
+        int occupied = calendarIndex.occupiedSlots(doctor.getId(), day);
 
-        // fetch all appointments for this doctor on that day, excluding CANCELLED
-        List<Appointment> appointments = appointmentRepository.findAppointmentsForDoctorExcludingStatus(
-                doctor.getId(),
-                AppointmentStatus.CANCELLED,
-                dayStart,
-                dayEnd
-        );
-        log.debug("Doctor {} has {} non-cancelled appointments on {}", doctor.getId(), appointments.size(), day);
-
-        // generate all 1-hour slots
-        LocalDateTime slotStart = dayStart;
-        while (!slotStart.isAfter(dayEnd.minusHours(1))) {
-            LocalDateTime slotEnd = slotStart.plusHours(1);
+        List<LocalDateTime> availableSlots = availableSlots(occupied, day, LocalDateTime.now());
+        log.debug("Doctor {} available slots count={}", doctor.getId(), availableSlots.size());
+        return new DoctorAvailabilityDto(doctor.getId(), doctor.getName(), availableSlots);
+    }
 
-            LocalDateTime finalSlotStart = slotStart;
-            boolean isBooked = appointments.stream()
-                    .anyMatch(app -> app.getAppointmentTime().equals(finalSlotStart));
+    private List<LocalDateTime> availableSlots(int occupied, LocalDate day, LocalDateTime now) {
+        List<LocalDateTime> availableSlots = new ArrayList<>();
+        for (int slot = 0; slot < DoctorCalendarIndex.SLOTS_PER_DAY; slot++) {
+            LocalDateTime slotStart = day.atTime(START_WORK).plusHours(slot);
 
             // only add future and not booked slots
-            if (!isBooked && slotStart.isAfter(LocalDateTime.now())) {
+            if ((occupied & (1 << slot)) == 0 && slotStart.isAfter(now)) {
                 availableSlots.add(slotStart);
             }
+        }
+        return availableSlots;
+    }
+
+    private List<User> findDoctors(Collection<Long> doctorIds, Pageable pageable) {
+        return doctorIds == null || doctorIds.isEmpty()
+                ? userRepository.findByRole(Role.DOCTOR, pageable)
+                : userRepository.findByRoleAndIdIn(Role.DOCTOR, doctorIds, pageable);
+    }
 
-            slotStart = slotStart.plusHours(1);
+    private Pageable toPageable(Integer page, Integer size) {
+        Sort byId = Sort.by("id");
+        if (page == null && size == null) {
+            return Pageable.unpaged(byId);
         }
-        log.debug("Doctor {} available slots count={}", doctor.getId(), availableSlots.size());
-        return new DoctorAvailabilityDto(doctor.getId(), doctor.getName(), availableSlots);
+        int pageNumber = page != null ? page : 0;
+        int pageSize = size != null ? size : DEFAULT_PAGE_SIZE;
+        if (pageNumber < 0 || pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new BadRequestException("page must be >= 0 and size between 1 and " + MAX_PAGE_SIZE);
+        }
+        return PageRequest.of(pageNumber, pageSize, byId);
     }
 
 }
@@ -0,0 +1,210 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.DoctorAppointmentTime;
+import Hospital.system.Entity.AppointmentStatus;
+import Hospital.system.Repository.AppointmentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Occupied hourly slots per (doctor, day) as a bitmask: bit i set means the slot starting at 09:00 + i hours is taken.
+ * <p>
+ * Entries are loaded from the appointments table on first use and kept up to date by AppointmentService
+ * once its transaction commits. Each node has its own index, so entries also expire after a TTL to pick up
+ * bookings made elsewhere.
+ */
+@Component
+@Slf4j
+public class DoctorCalendarIndex {
+
+    public static final LocalTime START_WORK = LocalTime.of(9, 0);
+    public static final LocalTime END_WORK = LocalTime.of(21, 0);
+    public static final int SLOTS_PER_DAY = (int) Duration.between(START_WORK, END_WORK).toHours();
+
+    private final AppointmentRepository appointmentRepository;
+    private final long ttlMillis;
+
+    private final Map<DayKey, DaySlots> days = new ConcurrentHashMap<>();
+
+    // bumped by every committed change, so a batch load that raced with one is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    public DoctorCalendarIndex(AppointmentRepository appointmentRepository,
+                               @Value("${appointments.calendar.ttl:60000}") long ttlMillis) {
+        this.appointmentRepository = appointmentRepository;
+        this.ttlMillis = ttlMillis;
+    }
+
+    private record DayKey(long doctorId, LocalDate day) {
+    }
+
+    private record DaySlots(int occupied, long loadedAt) {
+    }
+
+    public int occupiedSlots(Long doctorId, LocalDate day) {
+        DayKey key = new DayKey(doctorId, day);
+        DaySlots slots = days.get(key);
+        if (slots != null && !isExpired(slots)) {
+            return slots.occupied();
+        }
+        // loaded outside the map so the query holds no lock; a commit meanwhile means the result may miss it,
+        // so it is only used for this answer and the next call loads again
+        long generationBefore = generation.get();
+        DaySlots loaded = load(key);
+        if (generation.get() != generationBefore) {
+            return loaded.occupied();
+        }
+        return days.compute(key, (k, current) -> current != null && !isExpired(current) ? current : loaded)
+                .occupied();
+    }
+
+    // cached days are answered from memory, all the missing doctors are loaded with a single query
+    public Map<Long, Integer> occupiedSlots(Collection<Long> doctorIds, LocalDate day) {
+        Map<Long, Integer> result = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long doctorId : doctorIds) {
+            DaySlots slots = days.get(new DayKey(doctorId, day));
+            if (slots != null && !isExpired(slots)) {
+                result.put(doctorId, slots.occupied());
+            } else {
+                missing.add(doctorId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        long generationBefore = generation.get();
+        LocalDateTime dayStart = day.atTime(START_WORK);
+        List<DoctorAppointmentTime> rows = appointmentRepository.findAppointmentTimesForDoctorsExcludingStatus(
+                missing, AppointmentStatus.CANCELLED, dayStart.minusHours(1), day.atTime(END_WORK));
+        for (Long doctorId : missing) {
+            result.put(doctorId, 0);
+        }
+        for (DoctorAppointmentTime row : rows) {
+            result.merge(row.doctorId(), slotMask(row.appointmentTime()), (a, b) -> a | b);
+        }
+
+        if (generation.get() == generationBefore) {
+            long now = System.currentTimeMillis();
+            for (Long doctorId : missing) {
+                days.putIfAbsent(new DayKey(doctorId, day), new DaySlots(result.get(doctorId), now));
+            }
+        }
+        log.debug("Loaded calendars for {} doctors on {} in one query: {} appointments", missing.size(), day, rows.size());
+        return result;
+    }
+
+    // one mask per day of [from, to] for each doctor, straight from the database in a single range query
+    public Map<Long, int[]> occupiedSlots(Collection<Long> doctorIds, LocalDate from, LocalDate to) {
+        int dayCount = (int) ChronoUnit.DAYS.between(from, to) + 1;
+        Map<Long, int[]> result = new HashMap<>();
+        for (Long doctorId : doctorIds) {
+            result.put(doctorId, new int[dayCount]);
+        }
+        if (result.isEmpty()) {
+            return result;
+        }
+
+        List<DoctorAppointmentTime> rows = appointmentRepository.findAppointmentTimesForDoctorsExcludingStatus(
+                doctorIds, AppointmentStatus.CANCELLED, from.atTime(START_WORK).minusHours(1), to.atTime(END_WORK));
+        for (DoctorAppointmentTime row : rows) {
+            int day = (int) ChronoUnit.DAYS.between(from, row.appointmentTime().toLocalDate());
+            int[] masks = result.get(row.doctorId());
+            if (masks != null && day >= 0 && day < dayCount) {
+                masks[day] |= slotMask(row.appointmentTime());
+            }
+        }
+        log.debug("Loaded calendars for {} doctors from {} to {} in one query: {} appointments",
+                doctorIds.size(), from, to, rows.size());
+        return result;
+    }
+
+    public boolean isFree(Long doctorId, LocalDateTime start) {
+        int wanted = slotMask(start);
+        return (occupiedSlots(doctorId, start.toLocalDate()) & wanted) == 0;
+    }
+
+    public void occupy(Long doctorId, LocalDateTime start) {
+        afterCommit(() -> {
+            generation.incrementAndGet();
+            days.computeIfPresent(new DayKey(doctorId, start.toLocalDate()),
+                    (k, current) -> new DaySlots(current.occupied() | slotMask(start), current.loadedAt()));
+        });
+    }
+
+    // another appointment may still overlap the freed slot, so the day is reloaded rather than patched
+    public void release(Long doctorId, LocalDateTime start) {
+        afterCommit(() -> {
+            generation.incrementAndGet();
+            days.remove(new DayKey(doctorId, start.toLocalDate()));
+        });
+    }
+
+    public int size() {
+        return days.size();
+    }
+
+    @Scheduled(fixedDelayString = "${appointments.calendar.cleanup-interval:3600000}")
+    public void evictPastDays() {
+        LocalDate today = LocalDate.now();
+        days.keySet().removeIf(key -> key.day().isBefore(today));
+    }
+
+    // bits of the working-day slots that a one-hour appointment starting at start overlaps
+    public static int slotMask(LocalDateTime start) {
+        LocalDateTime dayStart = start.toLocalDate().atTime(START_WORK);
+        long minutes = Duration.between(dayStart, start).toMinutes();
+        int mask = 0;
+        for (int slot = 0; slot < SLOTS_PER_DAY; slot++) {
+            long slotStart = slot * 60L;
+            if (slotStart < minutes + 60 && slotStart + 60 > minutes) {
+                mask |= 1 << slot;
+            }
+        }
+        return mask;
+    }
+
+    private DaySlots load(DayKey key) {
+        LocalDateTime dayStart = key.day().atTime(START_WORK);
+        List<LocalDateTime> times = appointmentRepository.findAppointmentTimesForDoctorExcludingStatus(
+                key.doctorId(), AppointmentStatus.CANCELLED, dayStart.minusHours(1), key.day().atTime(END_WORK));
+        int occupied = 0;
+        for (LocalDateTime time : times) {
+            occupied |= slotMask(time);
+        }
+        log.debug("Loaded calendar for doctorId={} on {}: {} appointments", key.doctorId(), key.day(), times.size());
+        return new DaySlots(occupied, System.currentTimeMillis());
+    }
+
+    private boolean isExpired(DaySlots slots) {
+        return System.currentTimeMillis() - slots.loadedAt() > ttlMillis;
+    }
+
+    // a rolled back booking never reaches the index
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package Hospital.system.Service;
+
+import Hospital.system.Entity.IdempotencyKey;
+import Hospital.system.Repository.IdempotencyKeyRepository;
+import Hospital.system.exception.BadRequestException;
+import Hospital.system.exception.RequestInProgressException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs a request sent with an {@code Idempotency-Key} header once and replays its first response to retries.
+ * <p>
+ * Keys are scoped to the caller and the endpoint. The first request claims the key with an insert into
+ * {@code idempotency_keys}, so only one node runs it; its response is stored there for {@code idempotency.ttl},
+ * in the same transaction as the action, so a request whose work committed always has its response stored.
+ * Duplicates arriving on the same node while it runs wait up to {@code idempotency.wait} for it instead of going
+ * to the database, and recent responses are replayed from a bounded in-memory cache. A duplicate still running
+ * gets 409 with {@code Retry-After}. Failed requests release their key, so the client can retry them.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final ObjectMapper objectMapper;
+    private final long ttlMillis;
+    private final long leaseMillis;
+    private final long waitMillis;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate claimTemplate;
+
+    private final Map<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, StoredResponse> recent;
+
+    public IdempotencyService(IdempotencyKeyRepository idempotencyKeyRepository,
+                              ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${idempotency.ttl:86400000}") long ttlMillis,
+                              @Value("${idempotency.lease:60000}") long leaseMillis,
+                              @Value("${idempotency.wait:5000}") long waitMillis,
+                              @Value("${idempotency.cache-size:10000}") int cacheSize) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.objectMapper = objectMapper;
+        this.ttlMillis = ttlMillis;
+        this.leaseMillis = leaseMillis;
+        this.waitMillis = waitMillis;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // the claim must be visible to other nodes while the action runs, whatever transaction the caller is in
+        this.claimTemplate = new TransactionTemplate(transactionManager);
+        this.claimTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.recent = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StoredResponse> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Runs {@code action} unless a request with the same key already did, in which case its response is
+     * replayed. Without a key the action simply runs.
+     */
+    public <T> ResponseEntity<T> execute(String key, String endpoint, Object request, Class<T> responseType,
+                                         Supplier<ResponseEntity<T>> action) {
+        if (key == null) {
+            return action.get();
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new BadRequestException(HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        String keyHash = sha256(caller() + "\n" + endpoint + "\n" + key);
+        String requestHash = sha256(toJson(request));
+
+        StoredResponse cached = recent.get(keyHash);
+        if (cached != null && cached.expiresAt() > System.currentTimeMillis()) {
+            return replay(cached, requestHash, responseType);
+        }
+
+        CompletableFuture<StoredResponse> claim = new CompletableFuture<>();
+        CompletableFuture<StoredResponse> running = inFlight.putIfAbsent(keyHash, claim);
+        if (running != null) {
+            log.debug("Waiting for the running request with the same {}", HEADER);
+            return replay(await(running), requestHash, responseType);
+        }
+        try {
+            return lead(keyHash, requestHash, responseType, action, claim);
+        } catch (RuntimeException e) {
+            claim.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(keyHash, claim);
+        }
+    }
+
+    private <T> ResponseEntity<T> lead(String keyHash, String requestHash, Class<T> responseType,
+                                       Supplier<ResponseEntity<T>> action, CompletableFuture<StoredResponse> claim) {
+        // the lease expiry also tells this claim apart from one that took the key over after it expired
+        Instant lease = Instant.ofEpochMilli(System.currentTimeMillis() + leaseMillis);
+        Optional<StoredResponse> stored = claim(keyHash, requestHash, lease);
+        if (stored.isPresent()) {
+            remember(keyHash, stored.get());
+            claim.complete(stored.get());
+            return replay(stored.get(), requestHash, responseType);
+        }
+
+        Completed<T> completed;
+        try {
+            completed = transactionTemplate.execute(status -> {
+                ResponseEntity<T> response = action.get();
+                StoredResponse result = new StoredResponse(requestHash, response.getStatusCode().value(),
+                        toJson(response.getBody()), System.currentTimeMillis() + ttlMillis);
+                // no longer ours: another node took the expired claim over, so this run must not commit
+                if (idempotencyKeyRepository.complete(keyHash, lease, result.status(), result.body(),
+                        Instant.ofEpochMilli(result.expiresAt())) == 0) {
+                    throw inProgress();
+                }
+                return new Completed<>(response, result);
+            });
+        } catch (RuntimeException e) {
+            claimTemplate.executeWithoutResult(status -> idempotencyKeyRepository.release(keyHash, lease));
+            throw e;
+        }
+        remember(keyHash, completed.stored());
+        claim.complete(completed.stored());
+        return completed.response();
+    }
+
+    // empty when this call owns the key now, otherwise the response of the request that ran first
+    private Optional<StoredResponse> claim(String keyHash, String requestHash, Instant lease) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                claimTemplate.executeWithoutResult(status -> idempotencyKeyRepository.saveAndFlush(
+                        IdempotencyKey.builder()
+                                .keyHash(keyHash)
+                                .requestHash(requestHash)
+                                .expiresAt(lease)
+                                .build()));
+                return Optional.empty();
+            } catch (DataIntegrityViolationException e) {
+                Optional<IdempotencyKey> existing = idempotencyKeyRepository.findByKeyHash(keyHash);
+                if (existing.isPresent() && existing.get().getExpiresAt().isAfter(Instant.now())) {
+                    IdempotencyKey row = existing.get();
+                    if (row.getResponseStatus() == null) {
+                        throw inProgress();
+                    }
+                    return Optional.of(new StoredResponse(row.getRequestHash(), row.getResponseStatus(),
+                            row.getResponseBody(), row.getExpiresAt().toEpochMilli()));
+                }
+                // expired, or released in between: take it over
+                claimTemplate.executeWithoutResult(
+                        status -> idempotencyKeyRepository.releaseExpired(keyHash, Instant.now()));
+            }
+        }
+        throw inProgress();
+    }
+
+    private StoredResponse await(CompletableFuture<StoredResponse> running) {
+        try {
+            return running.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            // the duplicate fails the same way the first request did
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw inProgress();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw inProgress();
+        }
+    }
+
+    private RequestInProgressException inProgress() {
+        return new RequestInProgressException("A request with this " + HEADER + " is still being processed",
+                Math.max(1, TimeUnit.MILLISECONDS.toSeconds(waitMillis)));
+    }
+
+    private <T> ResponseEntity<T> replay(StoredResponse stored, String requestHash, Class<T> responseType) {
+        if (!stored.requestHash().equals(requestHash)) {
+            throw new BadRequestException(HEADER + " was already used for a different request");
+        }
+        try {
+            T body = stored.body() == null ? null : objectMapper.readValue(stored.body(), responseType);
+            return ResponseEntity.status(stored.status()).header(REPLAYED_HEADER, "true").body(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored response cannot be read", e);
+        }
+    }
+
+    private void remember(String keyHash, StoredResponse response) {
+        recent.put(keyHash, response);
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.purge-interval:3600000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (recent) {
+            recent.values().removeIf(response -> response.expiresAt() <= now);
+        }
+        int purged = idempotencyKeyRepository.deleteExpired(Instant.ofEpochMilli(now));
+        if (purged > 0) {
+            log.debug("Purged {} expired idempotency keys", purged);
+        }
+    }
+
+    private static String caller() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? "" : authentication.getName();
+    }
+
+    private String toJson(Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(String.valueOf(value).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record StoredResponse(String requestHash, int status, String body, long expiresAt) {
+    }
+
+    private record Completed<T>(ResponseEntity<T> response, StoredResponse stored) {
+    }
+}
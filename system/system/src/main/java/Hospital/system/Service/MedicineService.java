@@ -2,7 +2,9 @@ package Hospital.system.Service;
 
 import Hospital.system.DTO.MedicineDto;
 import Hospital.system.Entity.Medicine;
+import Hospital.system.Entity.StockMovementReason;
 import Hospital.system.Entity.User;
+import Hospital.system.exception.ConflictException;
 import Hospital.system.exception.ResourceNotFoundException;
 import Hospital.system.Mapper.MedicineMapper;
 import Hospital.system.Repository.MedicineRepository;
@@ -22,6 +24,7 @@ public class MedicineService {
 
     private final MedicineRepository medicineRepository;
     private final UserRepository userRepository;
+    private final StockLedgerService stockLedgerService;
 
     @Transactional
     public MedicineDto addMedicine(MedicineDto dto) {
@@ -50,7 +53,7 @@ public class MedicineService {
                 });
         medicine.setName(dto.getName());
         medicine.setPrice(dto.getPrice());
-        medicine.setStock(dto.getStock());
+        adjustStock(medicine, dto.getStock());
 
         if (!medicine.getPharmacy().getId().equals(dto.getPharmacyId())) {
             log.info("Changing pharmacy for medicine {} to pharmacyId={}", id, dto.getPharmacyId());
@@ -68,6 +71,18 @@ public class MedicineService {
         return MedicineMapper.toDto(updated);
     }
 
+    // the pharmacy sends the count on its shelf, which includes the units reservation nodes hold but have not
+    // sold; the difference goes through the stock ledger
+    private void adjustStock(Medicine medicine, int newStock) {
+        int difference = newStock - medicine.getAvailableStock() - stockLedgerService.reservedStock(medicine.getId());
+        if (difference > 0) {
+            stockLedgerService.deposit(medicine, difference, StockMovementReason.RESTOCK, null);
+        } else if (difference < 0 && !stockLedgerService.withdraw(medicine, -difference, StockMovementReason.RESTOCK, null)) {
+            log.warn("Stock of medicine {} changed while it was being updated", medicine.getId());
+            throw new ConflictException("Stock of " + medicine.getName() + " changed, reload and try again");
+        }
+    }
+
     @Transactional
     public void deleteMedicine(Long id) {
         log.warn("Deleting medicine with id {}", id);
@@ -76,6 +91,7 @@ public class MedicineService {
             log.error("Medicine not found with id {}", id);
             throw new ResourceNotFoundException("Medicine not found with id " + id);
         }
+        stockLedgerService.deleteStripes(id);
         medicineRepository.deleteById(id);
         log.info("Medicine deleted successfully with id {}", id);
     }
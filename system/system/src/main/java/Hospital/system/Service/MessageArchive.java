@@ -0,0 +1,192 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.MessageCursor;
+import Hospital.system.DTO.MessageLine;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Messages moved out of the {@code messages} table, as {@link MessageSegment} files in {@code messages.archive.dir}.
+ * <p>
+ * Segments are numbered in the order they were written and each one holds the messages right after the previous
+ * one in (time, id) order, so the newest segment's last cursor is the high-water mark: the table only has messages
+ * after it, the archive only messages up to it (a row that committed behind the mark after its range was archived
+ * stays in the table). A conversation or user page reads the segments that can hold the range it asks for, newest
+ * or oldest first, and stops once it has enough.
+ * <p>
+ * The list of open segments is replaced, never changed, so readers never wait for the archiver or a purge. Nodes
+ * that share the directory but do not archive pick up new segments on {@link #refresh()}.
+ */
+@Service
+@Slf4j
+public class MessageArchive {
+
+    private static final String SUFFIX = ".seg";
+
+    private final Path directory;
+    private volatile List<MessageSegment> segments = List.of();
+
+    public MessageArchive(@Value("${messages.archive.dir:data/message-archive}") String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${messages.archive.refresh-interval:60000}",
+            initialDelayString = "${messages.archive.refresh-interval:60000}")
+    public synchronized void refresh() {
+        if (!Files.isDirectory(directory)) {
+            segments = List.of();
+            return;
+        }
+        Map<Path, MessageSegment> open = new HashMap<>();
+        segments.forEach(segment -> open.put(segment.path(), segment));
+        List<MessageSegment> found = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).sorted().toList()) {
+                MessageSegment segment = open.get(file);
+                found.add(segment != null ? segment : MessageSegment.open(file));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the message archive in " + directory, e);
+        }
+        if (found.size() != segments.size()) {
+            log.info("Message archive {}: {} segments", directory, found.size());
+        }
+        segments = List.copyOf(found);
+    }
+
+    /** Writes {@code lines}, the oldest messages still in the table in (time, id) order, as the next segment. */
+    public synchronized MessageSegment append(List<MessageLine> lines) throws IOException {
+        Files.createDirectories(directory);
+        List<MessageSegment> current = segments;
+        long number = current.isEmpty() ? 1 : sequence(current.get(current.size() - 1).path()) + 1;
+        MessageSegment segment = MessageSegment.write(directory.resolve(String.format("%012d", number) + SUFFIX), lines);
+
+        List<MessageSegment> next = new ArrayList<>(current);
+        next.add(segment);
+        segments = List.copyOf(next);
+        log.info("Archived {} messages of {} conversations to {}", segment.messages(), segment.conversations(),
+                segment.path().getFileName());
+        return segment;
+    }
+
+    /** Deletes the segments whose newest message is older than {@code cutoff}, returns how many messages went. */
+    public synchronized int purgeBefore(LocalDateTime cutoff) throws IOException {
+        List<MessageSegment> kept = new ArrayList<>();
+        int purged = 0;
+        for (MessageSegment segment : segments) {
+            if (segment.last().time().isBefore(cutoff)) {
+                // a reader still holding the segment keeps its mapping until it lets go of it
+                Files.deleteIfExists(segment.path());
+                purged += segment.messages();
+                log.info("Purged archive segment {} with {} messages up to {}", segment.path().getFileName(),
+                        segment.messages(), segment.last().time());
+            } else {
+                kept.add(segment);
+            }
+        }
+        segments = List.copyOf(kept);
+        return purged;
+    }
+
+    /** The last archived message, null while nothing is archived. */
+    public MessageCursor highWater() {
+        List<MessageSegment> current = segments;
+        return current.isEmpty() ? null : current.get(current.size() - 1).last();
+    }
+
+    /** Whether the archive, and not the table, holds the messages up to and including {@code cursor}. */
+    public boolean isArchived(MessageCursor cursor) {
+        MessageCursor highWater = highWater();
+        return highWater != null && cursor.compareTo(highWater) <= 0;
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    /** The ids in the newest segment, the only one whose rows a stopped run can have left in the table. */
+    public List<Long> newestSegmentIds() {
+        List<MessageSegment> current = segments;
+        return current.isEmpty() ? List.of() : current.get(current.size() - 1).ids();
+    }
+
+    /** Up to {@code limit} archived messages of the conversation before the cursor (all if null), newest first. */
+    public List<MessageLine> findBefore(String conversationKey, MessageCursor before, int limit) {
+        return findBefore(segment -> segment.read(conversationKey), before, limit);
+    }
+
+    /** Up to {@code limit} archived messages the user sent or received before the cursor (all if null), newest first. */
+    public List<MessageLine> findBeforeOfUser(Long userId, MessageCursor before, int limit) {
+        return findBefore(segment -> segment.readOfUser(userId), before, limit);
+    }
+
+    /** Up to {@code limit} archived messages of the conversation after the cursor, oldest first. */
+    public List<MessageLine> findAfter(String conversationKey, MessageCursor after, int limit) {
+        return findAfter(segment -> segment.read(conversationKey), after, limit);
+    }
+
+    /** Up to {@code limit} archived messages the user sent or received after the cursor, oldest first. */
+    public List<MessageLine> findAfterOfUser(Long userId, MessageCursor after, int limit) {
+        return findAfter(segment -> segment.readOfUser(userId), after, limit);
+    }
+
+    private List<MessageLine> findBefore(Function<MessageSegment, List<MessageLine>> read, MessageCursor before,
+                                         int limit) {
+        List<MessageLine> found = new ArrayList<>();
+        List<MessageSegment> current = segments;
+        for (int i = current.size() - 1; i >= 0 && found.size() < limit; i--) {
+            MessageSegment segment = current.get(i);
+            if (before != null && segment.first().compareTo(before) >= 0) {
+                continue;
+            }
+            List<MessageLine> lines = read.apply(segment);
+            for (int j = lines.size() - 1; j >= 0 && found.size() < limit; j--) {
+                if (before == null || MessageCursor.of(lines.get(j)).compareTo(before) < 0) {
+                    found.add(lines.get(j));
+                }
+            }
+        }
+        return found;
+    }
+
+    private List<MessageLine> findAfter(Function<MessageSegment, List<MessageLine>> read, MessageCursor after,
+                                        int limit) {
+        List<MessageLine> found = new ArrayList<>();
+        for (MessageSegment segment : segments) {
+            if (found.size() >= limit) {
+                break;
+            }
+            if (segment.last().compareTo(after) <= 0) {
+                continue;
+            }
+            for (MessageLine line : read.apply(segment)) {
+                if (found.size() < limit && MessageCursor.of(line).compareTo(after) > 0) {
+                    found.add(line);
+                }
+            }
+        }
+        return found;
+    }
+
+    private static long sequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
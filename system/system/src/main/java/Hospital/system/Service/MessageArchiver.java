@@ -0,0 +1,160 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.MessageCursor;
+import Hospital.system.DTO.MessageLine;
+import Hospital.system.DTO.UnreadPair;
+import Hospital.system.Repository.MessageRepository;
+import Hospital.system.Repository.MessageUnreadCounterRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Optional archiving of old messages ({@code messages.archive.enabled}).
+ * <p>
+ * Every run moves the messages older than {@code messages.archive.age} out of the {@code messages} table into
+ * {@link MessageArchive} segments of up to {@code segment-size} messages, oldest first. A segment is on disk before
+ * its rows are deleted, by the ids it holds, so a run that stops in between is finished by the next one from the
+ * newest segment. Each segment starts after the archive's high-water mark: a row that commits late with a time
+ * behind the mark is not archived and stays in the table, where pages merge it with the archive. Unread messages
+ * that get archived stop counting as unread. With a {@code retention} set, whole segments past it are deleted
+ * instead of rows.
+ * <p>
+ * Only one node should archive; the others read the segments from the same directory.
+ */
+@Service
+@Slf4j
+public class MessageArchiver {
+
+    // read_at of the unread messages taken off the counters; no acknowledgement has it and the rows are deleted
+    // in the same transaction
+    private static final LocalDateTime ARCHIVED_UNREAD = LocalDateTime.of(1970, 1, 1, 0, 0);
+    // ids per statement, keeps the IN lists well under the drivers' parameter limits
+    private static final int DELETE_CHUNK = 1000;
+
+    private final MessageRepository messageRepository;
+    private final MessageUnreadCounterRepository unreadCounterRepository;
+    private final MessageArchive messageArchive;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long ageMillis;
+    private final long retentionMillis;
+    private final int segmentSize;
+    private final Counter archivedCounter;
+    private final Counter purgedCounter;
+
+    public MessageArchiver(MessageRepository messageRepository,
+                           MessageUnreadCounterRepository unreadCounterRepository,
+                           MessageArchive messageArchive,
+                           PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry,
+                           @Value("${messages.archive.enabled:false}") boolean enabled,
+                           @Value("${messages.archive.age:15552000000}") long ageMillis,
+                           @Value("${messages.archive.retention:0}") long retentionMillis,
+                           @Value("${messages.archive.segment-size:10000}") int segmentSize) {
+        this.messageRepository = messageRepository;
+        this.unreadCounterRepository = unreadCounterRepository;
+        this.messageArchive = messageArchive;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.ageMillis = ageMillis;
+        this.retentionMillis = retentionMillis;
+        this.segmentSize = segmentSize;
+
+        Gauge.builder("messages.archive.segments", messageArchive, MessageArchive::segmentCount)
+                .description("Message archive segment files on this node")
+                .register(meterRegistry);
+        this.archivedCounter = Counter.builder("messages.archive.archived")
+                .description("Messages moved from the messages table to the archive")
+                .register(meterRegistry);
+        this.purgedCounter = Counter.builder("messages.archive.purged")
+                .description("Archived messages deleted with their segment after the retention period")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${messages.archive.interval:3600000}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        archive(now.minus(Duration.ofMillis(ageMillis)));
+        if (retentionMillis > 0) {
+            purge(now.minus(Duration.ofMillis(retentionMillis)));
+        }
+    }
+
+    /** Moves every message sent before {@code cutoff} to the archive, returns how many moved. */
+    public synchronized int archive(LocalDateTime cutoff) {
+        int archived = 0;
+        // rows a run left behind after writing their segment
+        deleteArchived(messageArchive.newestSegmentIds());
+        List<MessageLine> batch;
+        do {
+            MessageCursor highWater = messageArchive.highWater();
+            batch = highWater == null
+                    ? messageRepository.findOldestBefore(cutoff, Limit.of(segmentSize))
+                    : messageRepository.findOldestBetween(highWater.time(), highWater.id(), cutoff,
+                    Limit.of(segmentSize));
+            if (batch.isEmpty()) {
+                break;
+            }
+            try {
+                messageArchive.append(batch);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write a message archive segment", e);
+            }
+            deleteArchived(batch.stream().map(MessageLine::id).toList());
+            archived += batch.size();
+            archivedCounter.increment(batch.size());
+        } while (batch.size() == segmentSize);
+        return archived;
+    }
+
+    /** Deletes the archived messages whose segment ends before {@code cutoff}, returns how many went. */
+    public synchronized int purge(LocalDateTime cutoff) {
+        try {
+            int purged = messageArchive.purgeBefore(cutoff);
+            purgedCounter.increment(purged);
+            return purged;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete a message archive segment", e);
+        }
+    }
+
+    // deletes exactly the rows a segment holds, never one that was not archived
+    private void deleteArchived(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            int deleted = 0;
+            for (int from = 0; from < ids.size(); from += DELETE_CHUNK) {
+                List<Long> chunk = ids.subList(from, Math.min(from + DELETE_CHUNK, ids.size()));
+                if (messageRepository.claimUnread(chunk, ARCHIVED_UNREAD) > 0) {
+                    for (UnreadPair pair : messageRepository.countClaimed(chunk, ARCHIVED_UNREAD)) {
+                        unreadCounterRepository.decrement(pair.receiverId(), pair.senderId(),
+                                pair.unread().intValue());
+                    }
+                }
+                deleted += messageRepository.deleteByIds(chunk);
+            }
+            if (deleted > 0) {
+                log.debug("Deleted {} archived messages", deleted);
+            }
+        });
+    }
+}
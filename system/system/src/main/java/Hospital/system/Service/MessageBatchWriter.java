@@ -0,0 +1,232 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.MessageDto;
+import Hospital.system.Entity.Message;
+import Hospital.system.Entity.User;
+import Hospital.system.Mapper.MessageMapper;
+import Hospital.system.Repository.UserRepository;
+import Hospital.system.exception.ResourceNotFoundException;
+import Hospital.system.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Optional group commit for message sends ({@code messages.group-commit.enabled}).
+ * <p>
+ * Sends wait on a bounded queue and a single writer thread stores whatever has queued up in one transaction: one
+ * lookup for all the users involved, the messages as one JDBC batch (one multi-row INSERT on MySQL) and one
+ * update per conversation head and unread counter. While a batch commits the next one fills up, so under a burst
+ * the cost per message falls with the batch size, and a lone message is still written as soon as it arrives.
+ * A caller's future completes once its batch has committed. It fails if the sender or receiver does not exist
+ * or the batch rolled back. A full queue turns sends away with 503, and so does shutdown for anything the writer
+ * did not get to.
+ */
+@Service
+@Slf4j
+public class MessageBatchWriter {
+
+    private static final long POLL_MILLIS = 100;
+
+    private final UserRepository userRepository;
+    private final MessageStore messageStore;
+    private final MessageHub messageHub;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int maxBatch;
+    private final BlockingQueue<Pending> queue;
+    private final DistributionSummary batchSizes;
+    private final Timer commitTimer;
+    private final Counter rejectedCounter;
+
+    private volatile boolean stopped;
+    private Thread writer;
+
+    public MessageBatchWriter(UserRepository userRepository,
+                              MessageStore messageStore,
+                              MessageHub messageHub,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry,
+                              @Value("${messages.group-commit.enabled:false}") boolean enabled,
+                              @Value("${messages.group-commit.queue-size:10000}") int queueSize,
+                              @Value("${messages.group-commit.max-batch:200}") int maxBatch) {
+        this.userRepository = userRepository;
+        this.messageStore = messageStore;
+        this.messageHub = messageHub;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.maxBatch = maxBatch;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+
+        Gauge.builder("messages.group-commit.queue.depth", queue, BlockingQueue::size)
+                .description("Messages waiting for the writer")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("messages.group-commit.batch.size")
+                .description("Messages stored per transaction")
+                .register(meterRegistry);
+        this.commitTimer = Timer.builder("messages.group-commit.batch")
+                .description("Time to store and commit one batch")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("messages.group-commit.rejected")
+                .description("Sends rejected because the queue was full")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Queues a validated message; the future holds it with its id once its batch commits. */
+    public CompletableFuture<MessageDto> submit(MessageDto dto) {
+        if (!enabled) {
+            throw new IllegalStateException("Message group commit is disabled");
+        }
+        Pending pending = new Pending(dto);
+        if (stopped || !queue.offer(pending)) {
+            rejectedCounter.increment();
+            log.warn("Message queue is full, rejecting message from senderId={}", dto.getSenderId());
+            throw new ServiceUnavailableException("Messaging is busy, please retry shortly");
+        }
+        // queued while stop() was draining: take it back, or the drain already failed it
+        if (stopped && queue.remove(pending)) {
+            throw new ServiceUnavailableException("Messaging is shutting down, please retry shortly");
+        }
+        return pending.result;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled || writer != null) {
+            return;
+        }
+        writer = new Thread(this::run, "message-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Message group commit: queue of {}, batches of up to {}", queue.remainingCapacity(), maxBatch);
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        // after stop() the writer empties the queue before it exits
+        while (!stopped || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Pending> batch) {
+        long start = System.nanoTime();
+        List<Pending> stored;
+        try {
+            stored = transactionTemplate.execute(status -> store(batch));
+        } catch (RuntimeException e) {
+            log.error("Storing a batch of {} messages failed", batch.size(), e);
+            batch.forEach(pending -> pending.result.completeExceptionally(e));
+            return;
+        }
+        commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSizes.record(batch.size());
+        log.debug("Stored a batch of {} messages", stored.size());
+        for (Pending pending : stored) {
+            messageHub.publish(pending.saved);
+            pending.result.complete(pending.saved);
+        }
+    }
+
+    private List<Pending> store(List<Pending> batch) {
+        Set<Long> userIds = new HashSet<>();
+        for (Pending pending : batch) {
+            userIds.add(pending.dto.getSenderId());
+            userIds.add(pending.dto.getReceiverId());
+        }
+        Map<Long, User> users = userRepository.findAllById(userIds).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+
+        List<Pending> valid = new ArrayList<>(batch.size());
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            User sender = users.get(pending.dto.getSenderId());
+            User receiver = users.get(pending.dto.getReceiverId());
+            if (sender == null || receiver == null) {
+                String missing = sender == null
+                        ? "Sender not found with id " + pending.dto.getSenderId()
+                        : "Receiver not found with id " + pending.dto.getReceiverId();
+                log.error(missing);
+                pending.result.completeExceptionally(new ResourceNotFoundException(missing));
+                continue;
+            }
+            valid.add(pending);
+            messages.add(MessageMapper.toEntity(pending.dto, sender, receiver));
+        }
+        if (messages.isEmpty()) {
+            return valid;
+        }
+
+        List<Message> saved = messageStore.store(messages);
+        for (int i = 0; i < saved.size(); i++) {
+            valid.get(i).saved = MessageMapper.toDto(saved.get(i));
+        }
+        return valid;
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        stopped = true;
+        if (writer != null) {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        // whatever the writer did not get to in time: fail it, so no caller waits on a future nobody completes
+        List<Pending> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        if (!abandoned.isEmpty()) {
+            log.warn("Shutting down with {} messages not stored", abandoned.size());
+            ServiceUnavailableException shuttingDown =
+                    new ServiceUnavailableException("Messaging is shutting down, please retry shortly");
+            abandoned.forEach(pending -> pending.result.completeExceptionally(shuttingDown));
+        }
+    }
+
+    private static final class Pending {
+        private final MessageDto dto;
+        private final CompletableFuture<MessageDto> result = new CompletableFuture<>();
+        private MessageDto saved;
+
+        private Pending(MessageDto dto) {
+            this.dto = dto;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.MessageDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.websocket.Session;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes new messages to the receiver's open WebSocket sessions on this node.
+ * <p>
+ * Each user maps to an array of connections that is replaced, never changed, so a publish is one map read and
+ * never waits for a connect or disconnect. Publishing puts the message on each connection's bounded queue and
+ * at most starts a non-blocking write; the completion of one write starts the next. A client that falls
+ * {@code queue-size} messages behind is disconnected, and pages in what it missed with the {@code after}
+ * cursor when it reconnects.
+ * <p>
+ * A session lives no longer than the token it was opened with: it is closed when the token expires or is
+ * revoked, and the client reconnects with a fresh one.
+ */
+@Service
+@Slf4j
+public class MessageHub {
+
+    private static final CloseStatus TOKEN_EXPIRED = CloseStatus.POLICY_VIOLATION.withReason("Token expired");
+    private static final CloseStatus TOKEN_REVOKED = CloseStatus.POLICY_VIOLATION.withReason("Token revoked");
+
+    private final ObjectMapper objectMapper;
+    private final int queueSize;
+    private final ExecutorService writers;
+    private final ScheduledThreadPoolExecutor expiries;
+    private final Map<Long, Connection[]> connections = new ConcurrentHashMap<>();
+    private final Map<UUID, Connection[]> connectionsByToken = new ConcurrentHashMap<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final Counter droppedCounter;
+
+    public MessageHub(ObjectMapper objectMapper,
+                      MeterRegistry meterRegistry,
+                      @Value("${messages.push.queue-size:256}") int queueSize,
+                      @Value("${messages.push.writer-threads:0}") int writerThreads) {
+        this.objectMapper = objectMapper;
+        this.queueSize = queueSize;
+        int poolSize = writerThreads > 0 ? writerThreads : Runtime.getRuntime().availableProcessors() * 2;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "message-push-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.expiries = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "message-push-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.expiries.setRemoveOnCancelPolicy(true);
+
+        Gauge.builder("messages.push.connections", open, AtomicInteger::get)
+                .description("Open message WebSocket sessions on this node")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("messages.push.dropped")
+                .description("Sessions disconnected because they fell too far behind")
+                .register(meterRegistry);
+        log.info("Message push: {} writer threads, {} queued messages per session", poolSize, queueSize);
+    }
+
+    /** Registers a session opened with the token {@code tokenId}, which it may not outlive. */
+    public void register(Long userId, UUID tokenId, Instant expiresAt, WebSocketSession session) {
+        Connection connection = new Connection(session, tokenId);
+        connection.expiry = expiries.schedule(() -> closeLater(connection, TOKEN_EXPIRED),
+                Math.max(0, expiresAt.toEpochMilli() - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        connections.compute(userId, (id, current) -> append(current, connection));
+        connectionsByToken.compute(tokenId, (id, current) -> append(current, connection));
+        open.incrementAndGet();
+        log.debug("User {} connected for messages, session {}", userId, session.getId());
+    }
+
+    public void unregister(Long userId, WebSocketSession session) {
+        Connection[] removed = {null};
+        connections.computeIfPresent(userId, (id, current) -> {
+            removed[0] = find(current, session);
+            return remove(current, removed[0]);
+        });
+        if (removed[0] != null) {
+            Connection connection = removed[0];
+            connectionsByToken.computeIfPresent(connection.tokenId, (id, current) -> remove(current, connection));
+            connection.expiry.cancel(false);
+            open.decrementAndGet();
+            log.debug("User {} disconnected from messages, session {}", userId, session.getId());
+        }
+    }
+
+    /** Closes the sessions opened with a token that was revoked, here or on another node. */
+    public void closeSessionsOf(UUID tokenId) {
+        Connection[] revoked = connectionsByToken.get(tokenId);
+        if (revoked == null) {
+            return;
+        }
+        log.debug("Token {} was revoked, closing its {} sessions", tokenId, revoked.length);
+        for (Connection connection : revoked) {
+            closeLater(connection, TOKEN_REVOKED);
+        }
+    }
+
+    public int connections() {
+        return open.get();
+    }
+
+    /** Pushes the message once the caller's transaction commits, or straight away outside one. */
+    public void publishAfterCommit(MessageDto message) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(message);
+                }
+            });
+        } else {
+            publish(message);
+        }
+    }
+
+    public void publish(MessageDto message) {
+        Connection[] receivers = connections.get(message.getReceiverId());
+        if (receivers == null) {
+            return;
+        }
+        TextMessage frame;
+        try {
+            frame = new TextMessage(objectMapper.writeValueAsString(message));
+        } catch (JsonProcessingException e) {
+            log.error("Could not serialize message {} for push", message.getId(), e);
+            return;
+        }
+        for (Connection connection : receivers) {
+            connection.offer(frame);
+        }
+    }
+
+    // closing can wait on the socket, so never on the caller's thread
+    private void closeLater(Connection connection, CloseStatus status) {
+        writers.execute(() -> connection.close(status));
+    }
+
+    private static Connection find(Connection[] current, WebSocketSession session) {
+        for (Connection connection : current) {
+            if (connection.session == session) {
+                return connection;
+            }
+        }
+        return null;
+    }
+
+    private static Connection[] remove(Connection[] current, Connection connection) {
+        if (connection == null) {
+            return current;
+        }
+        Connection[] remaining = Arrays.stream(current)
+                .filter(other -> other != connection)
+                .toArray(Connection[]::new);
+        return remaining.length == 0 ? null : remaining;
+    }
+
+    private static Connection[] append(Connection[] current, Connection connection) {
+        if (current == null) {
+            return new Connection[]{connection};
+        }
+        Connection[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = connection;
+        return next;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        expiries.shutdownNow();
+        writers.shutdownNow();
+    }
+
+    private final class Connection {
+        private final WebSocketSession session;
+        private final UUID tokenId;
+        private volatile ScheduledFuture<?> expiry;
+        private final Queue<TextMessage> outbound = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean writing = new AtomicBoolean();
+        private final AtomicBoolean overflowed = new AtomicBoolean();
+
+        private Connection(WebSocketSession session, UUID tokenId) {
+            this.session = session;
+            this.tokenId = tokenId;
+        }
+
+        void offer(TextMessage frame) {
+            if (overflowed.get()) {
+                return;
+            }
+            if (queued.incrementAndGet() > queueSize) {
+                if (!overflowed.compareAndSet(false, true)) {
+                    return;
+                }
+                outbound.clear();
+                droppedCounter.increment();
+                log.warn("Session {} fell {} messages behind, disconnecting it", session.getId(), queueSize);
+                // its last write may never complete, and closing can wait on the socket, so not on this thread
+                closeLater(this, CloseStatus.SESSION_NOT_RELIABLE);
+                return;
+            }
+            outbound.add(frame);
+            if (writing.compareAndSet(false, true)) {
+                writeNext();
+            }
+        }
+
+        // one frame in flight per session; whoever finishes a write starts the next one
+        private void writeNext() {
+            while (!overflowed.get()) {
+                TextMessage frame = outbound.poll();
+                if (frame != null) {
+                    queued.decrementAndGet();
+                    write(frame);
+                    return;
+                }
+                writing.set(false);
+                // a frame offered between the poll and letting go would otherwise wait for the next message
+                if (outbound.isEmpty() || !writing.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+
+        // Tomcat sessions are written asynchronously, so no thread waits on a slow socket; anything else
+        // is written on the writer pool, which also does the closing
+        private void write(TextMessage frame) {
+            if (session instanceof NativeWebSocketSession nativeSession
+                    && nativeSession.getNativeSession() instanceof Session endpoint) {
+                endpoint.getAsyncRemote().sendText(frame.getPayload(),
+                        result -> written(result.isOK() ? null : result.getException()));
+                return;
+            }
+            writers.execute(() -> {
+                try {
+                    session.sendMessage(frame);
+                    written(null);
+                } catch (IOException | RuntimeException e) {
+                    written(e);
+                }
+            });
+        }
+
+        private void written(Throwable error) {
+            if (error == null) {
+                writeNext();
+                return;
+            }
+            log.debug("Push to session {} failed: {}", session.getId(), error.getMessage());
+            // the writing flag stays set, so nothing more is written to this session
+            outbound.clear();
+            close(CloseStatus.SERVER_ERROR);
+        }
+
+        private void close(CloseStatus status) {
+            try {
+                session.close(status);
+            } catch (IOException e) {
+                log.debug("Closing session {} failed: {}", session.getId(), e.getMessage());
+            }
+        }
+    }
+}
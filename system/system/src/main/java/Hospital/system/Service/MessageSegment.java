@@ -0,0 +1,271 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.MessageCursor;
+import Hospital.system.DTO.MessageLine;
+import Hospital.system.Entity.Message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One archive segment file: the messages of one archiving run, never changed once written.
+ * <p>
+ * The messages are grouped by conversation. Each conversation's run is in (time, id) order and deflated on its
+ * own, and an index of the runs with their first and last cursor closes the file, followed by the index offset
+ * and {@link #MAGIC}. A reader maps the file, keeps the index in memory and inflates only the run it is asked for.
+ */
+public final class MessageSegment {
+
+    static final int MAGIC = 0x4D534731;
+    private static final int FOOTER_BYTES = 2 * Integer.BYTES;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final Map<String, Run> runs;
+    private final MessageCursor first;
+    private final MessageCursor last;
+    private final int messages;
+
+    private MessageSegment(Path path, MappedByteBuffer buffer, Map<String, Run> runs) {
+        this.path = path;
+        this.buffer = buffer;
+        this.runs = runs;
+        this.first = runs.values().stream().map(Run::first).min(MessageCursor::compareTo).orElseThrow();
+        this.last = runs.values().stream().map(Run::last).max(MessageCursor::compareTo).orElseThrow();
+        this.messages = runs.values().stream().mapToInt(Run::messages).sum();
+    }
+
+    /**
+     * Writes {@code lines}, which must be in (time, id) order, to {@code path} and opens it. The file is written
+     * next to it and moved into place once on disk, so a segment is either complete or not there at all.
+     */
+    public static MessageSegment write(Path path, List<MessageLine> lines) throws IOException {
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("A segment needs at least one message");
+        }
+        Map<String, List<MessageLine>> byConversation = new TreeMap<>();
+        for (MessageLine line : lines) {
+            byConversation.computeIfAbsent(Message.conversationKey(line.senderId(), line.receiverId()),
+                    key -> new ArrayList<>()).add(line);
+        }
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(index);
+        indexOut.writeInt(byConversation.size());
+        Deflater deflater = new Deflater();
+        try {
+            for (Map.Entry<String, List<MessageLine>> conversation : byConversation.entrySet()) {
+                List<MessageLine> run = conversation.getValue();
+                byte[] raw = encode(run);
+                byte[] compressed = deflate(deflater, raw);
+                indexOut.writeUTF(conversation.getKey());
+                indexOut.writeInt(file.size());
+                indexOut.writeInt(compressed.length);
+                indexOut.writeInt(raw.length);
+                indexOut.writeInt(run.size());
+                writeCursor(indexOut, MessageCursor.of(run.get(0)));
+                writeCursor(indexOut, MessageCursor.of(run.get(run.size() - 1)));
+                file.write(compressed);
+            }
+        } finally {
+            deflater.end();
+        }
+        int indexOffset = file.size();
+        index.writeTo(file);
+        DataOutputStream footer = new DataOutputStream(file);
+        footer.writeInt(indexOffset);
+        footer.writeInt(MAGIC);
+
+        Path partial = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer contents = ByteBuffer.wrap(file.toByteArray());
+            while (contents.hasRemaining()) {
+                channel.write(contents);
+            }
+            channel.force(true);
+        }
+        Files.move(partial, path, StandardCopyOption.ATOMIC_MOVE);
+        return open(path);
+    }
+
+    public static MessageSegment open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping outlives the channel and goes away with the buffer
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < FOOTER_BYTES || buffer.getInt(buffer.capacity() - Integer.BYTES) != MAGIC) {
+            throw new IOException("Not a message segment: " + path);
+        }
+        int indexOffset = buffer.getInt(buffer.capacity() - FOOTER_BYTES);
+        byte[] index = new byte[buffer.capacity() - FOOTER_BYTES - indexOffset];
+        buffer.get(indexOffset, index);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+        int count = in.readInt();
+        Map<String, Run> runs = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            runs.put(in.readUTF(), new Run(in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                    readCursor(in), readCursor(in)));
+        }
+        return new MessageSegment(path, buffer, runs);
+    }
+
+    /** The conversation's messages in this segment, in (time, id) order. */
+    public List<MessageLine> read(String conversationKey) {
+        Run run = runs.get(conversationKey);
+        if (run == null) {
+            return Collections.emptyList();
+        }
+        byte[] raw = new byte[run.rawLength()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(buffer.slice(run.offset(), run.compressedLength()));
+            inflater.inflate(raw);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt message segment " + path, e);
+        } finally {
+            inflater.end();
+        }
+        return decode(ByteBuffer.wrap(raw), run.messages());
+    }
+
+    /** Every message the user sent or received in this segment, in (time, id) order. */
+    public List<MessageLine> readOfUser(Long userId) {
+        String user = String.valueOf(userId);
+        List<MessageLine> lines = new ArrayList<>();
+        for (String conversationKey : runs.keySet()) {
+            int separator = conversationKey.indexOf(':');
+            if (conversationKey.substring(0, separator).equals(user)
+                    || conversationKey.substring(separator + 1).equals(user)) {
+                lines.addAll(read(conversationKey));
+            }
+        }
+        lines.sort(Comparator.comparing(MessageCursor::of));
+        return lines;
+    }
+
+    /** The ids of all the messages in this segment. */
+    public List<Long> ids() {
+        List<Long> ids = new ArrayList<>(messages);
+        for (String conversationKey : runs.keySet()) {
+            read(conversationKey).forEach(line -> ids.add(line.id()));
+        }
+        return ids;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public MessageCursor first() {
+        return first;
+    }
+
+    public MessageCursor last() {
+        return last;
+    }
+
+    public int messages() {
+        return messages;
+    }
+
+    public int conversations() {
+        return runs.size();
+    }
+
+    private static byte[] encode(List<MessageLine> run) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(raw);
+        for (MessageLine line : run) {
+            out.writeLong(line.id());
+            out.writeLong(line.senderId());
+            out.writeLong(line.receiverId());
+            writeTime(out, line.time());
+            out.writeBoolean(line.readAt() != null);
+            if (line.readAt() != null) {
+                writeTime(out, line.readAt());
+            }
+            byte[] content = line.content().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(content.length);
+            out.write(content);
+        }
+        return raw.toByteArray();
+    }
+
+    private static List<MessageLine> decode(ByteBuffer in, int messages) {
+        List<MessageLine> lines = new ArrayList<>(messages);
+        for (int i = 0; i < messages; i++) {
+            long id = in.getLong();
+            long senderId = in.getLong();
+            long receiverId = in.getLong();
+            LocalDateTime time = readTime(in);
+            LocalDateTime readAt = in.get() != 0 ? readTime(in) : null;
+            byte[] content = new byte[in.getInt()];
+            in.get(content);
+            lines.add(new MessageLine(id, senderId, receiverId, new String(content, StandardCharsets.UTF_8),
+                    time, readAt));
+        }
+        return lines;
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            compressed.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return compressed.toByteArray();
+    }
+
+    private static void writeCursor(DataOutputStream out, MessageCursor cursor) throws IOException {
+        writeTime(out, cursor.time());
+        out.writeLong(cursor.id());
+    }
+
+    private static MessageCursor readCursor(DataInputStream in) throws IOException {
+        LocalDateTime time = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        return new MessageCursor(time, in.readLong());
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(time.getNano());
+    }
+
+    private static LocalDateTime readTime(ByteBuffer in) {
+        return LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC);
+    }
+
+    private record Run(int offset, int compressedLength, int rawLength, int messages,
+                       MessageCursor first, MessageCursor last) {
+    }
+}
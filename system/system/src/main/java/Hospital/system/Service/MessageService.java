@@ -1,18 +1,37 @@
 package Hospital.system.Service;
 
+import Hospital.system.DTO.InboxEntryDto;
+import Hospital.system.DTO.InboxLine;
+import Hospital.system.DTO.MarkReadDto;
+import Hospital.system.DTO.MessageCursor;
 import Hospital.system.DTO.MessageDto;
+import Hospital.system.DTO.MessageLine;
+import Hospital.system.DTO.UnreadCount;
+import Hospital.system.DTO.UnreadSummaryDto;
 import Hospital.system.Entity.Message;
 import Hospital.system.Entity.User;
+import Hospital.system.exception.BadRequestException;
 import Hospital.system.exception.ResourceNotFoundException;
 import Hospital.system.Mapper.MessageMapper;
+import Hospital.system.Repository.ConversationHeadRepository;
 import Hospital.system.Repository.MessageRepository;
+import Hospital.system.Repository.MessageUnreadCounterRepository;
 import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -22,6 +41,15 @@ public class MessageService {
 
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
+    private final MessageHub messageHub;
+    private final MessageUnreadCounterRepository unreadCounterRepository;
+    private final CurrentUserService currentUserService;
+    private final ConversationHeadRepository conversationHeadRepository;
+    private final MessageStore messageStore;
+    private final MessageArchive messageArchive;
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
 
     @Transactional
     public MessageDto sendMessage(MessageDto dto) {
@@ -39,43 +67,207 @@ public class MessageService {
                     return new ResourceNotFoundException("Receiver not found with id " + dto.getReceiverId());
                 });
         Message message = MessageMapper.toEntity(dto, sender, receiver);
-        Message savedMessage = messageRepository.save(message);
+        Message savedMessage = messageStore.store(List.of(message)).get(0);
         log.info("Message sent successfully: messageId={}, senderId={}, receiverId={}",
                 savedMessage.getId(), savedMessage.getSender().getId(), savedMessage.getReceiver().getId());
 
-        return MessageMapper.toDto(savedMessage);
+        MessageDto result = MessageMapper.toDto(savedMessage);
+        messageHub.publishAfterCommit(result);
+        return result;
+    }
+
+    // marks the current user's messages from dto.senderId read up to dto.upToMessageId, returns how many changed
+    @Transactional
+    public int markRead(MarkReadDto dto) {
+        Long readerId = currentUserService.getCurrentUser().id();
+        log.debug("Marking messages from senderId={} to receiverId={} read up to messageId={}",
+                dto.getSenderId(), readerId, dto.getUpToMessageId());
+
+        MessageCursor upTo = messageRepository.findCursorInConversation(dto.getUpToMessageId(),
+                        Message.conversationKey(readerId, dto.getSenderId()))
+                .orElseThrow(() -> {
+                    log.error("Message {} not found between userId={} and userId={}",
+                            dto.getUpToMessageId(), readerId, dto.getSenderId());
+                    return new ResourceNotFoundException("Message not found with id " + dto.getUpToMessageId());
+                });
+
+        // a second device marking the same range waits on the row locks and then matches nothing, so the
+        // counter only drops by rows this call changed
+        int read = messageRepository.markRead(readerId, dto.getSenderId(), upTo.time(), upTo.id(),
+                LocalDateTime.now().truncatedTo(ChronoUnit.MICROS));
+        if (read > 0) {
+            unreadCounterRepository.decrement(readerId, dto.getSenderId(), read);
+        }
+        log.info("Marked {} messages from senderId={} to receiverId={} read", read, dto.getSenderId(), readerId);
+        return read;
+    }
+
+    @Transactional(readOnly = true)
+    public UnreadSummaryDto getUnreadSummary() {
+        Long userId = currentUserService.getCurrentUser().id();
+        List<UnreadCount> senders = unreadCounterRepository.findUnread(userId);
+        int total = senders.stream().mapToInt(UnreadCount::unread).sum();
+        log.debug("User {} has {} unread messages from {} senders", userId, total, senders.size());
+        return new UnreadSummaryDto(total, senders);
+    }
+
+    // the logged in user's conversations, latest first, one row each; before is an entry's cursor
+    @Transactional(readOnly = true)
+    public List<InboxEntryDto> getInbox(String before, Integer size) {
+        Long userId = currentUserService.getCurrentUser().id();
+        log.debug("Fetching inbox for userId={}, before={}, size={}", userId, before, size);
+
+        Limit limit = Limit.of(pageSize(size));
+        List<InboxLine> lines;
+        if (before != null) {
+            MessageCursor cursor = MessageCursor.parse(before);
+            lines = conversationHeadRepository.findOfUserBefore(userId, cursor.time(), cursor.id(), limit);
+        } else {
+            lines = conversationHeadRepository.findLatestOfUser(userId, limit);
+        }
+
+        log.info("Fetched {} inbox entries for userId={}", lines.size(), userId);
+        return lines.stream().map(MessageMapper::toInboxEntry).collect(Collectors.toList());
     }
 
     @Transactional(readOnly = true)
     public List<MessageDto> getMessagesByUser(Long userId) {
-        log.debug("Fetching messages for userId={}", userId);
+        return getMessagesByUser(userId, null, null, null);
+    }
 
-        List<Message> sent = messageRepository.findBySender_Id(userId);
-        List<Message> received = messageRepository.findByReceiver_Id(userId);
+    // one page in time order, the newest unless before/after (a message's cursor) says where to continue; like a
+    // conversation it pages on into the archive
+    @Transactional(readOnly = true)
+    public List<MessageDto> getMessagesByUser(Long userId, String before, String after, Integer size) {
+        log.debug("Fetching messages for userId={}, before={}, after={}, size={}", userId, before, after, size);
+
+        BiFunction<MessageCursor, Limit, List<MessageLine>> olderInTable = (cursor, limit) -> cursor == null
+                ? merge(messageRepository.findLatestSentBy(userId, limit),
+                messageRepository.findLatestReceivedBy(userId, limit), Comparator.reverseOrder(), limit)
+                : merge(messageRepository.findSentByBefore(userId, cursor.time(), cursor.id(), limit),
+                messageRepository.findReceivedByBefore(userId, cursor.time(), cursor.id(), limit),
+                Comparator.reverseOrder(), limit);
+        BiFunction<MessageCursor, Limit, List<MessageLine>> newerInTable = (cursor, limit) -> merge(
+                messageRepository.findSentByAfter(userId, cursor.time(), cursor.id(), limit),
+                messageRepository.findReceivedByAfter(userId, cursor.time(), cursor.id(), limit),
+                Comparator.naturalOrder(), limit);
 
-        List<MessageDto> messages = List.of(sent, received).stream()
-                .flatMap(List::stream)
-                .sorted((m1, m2) -> m1.getTime().compareTo(m2.getTime()))
-                .map(MessageMapper::toDto)
-                .collect(Collectors.toList());
+        List<MessageDto> messages = page(before, after, size,
+                limit -> older(null, limit, olderInTable,
+                        (cursor, max) -> messageArchive.findBeforeOfUser(userId, cursor, max)),
+                (cursor, limit) -> older(cursor, limit, olderInTable,
+                        (from, max) -> messageArchive.findBeforeOfUser(userId, from, max)),
+                (cursor, limit) -> newer(cursor, limit, newerInTable,
+                        (from, max) -> messageArchive.findAfterOfUser(userId, from, max)));
 
-        log.info("Fetched {} total messages for userId={}", messages.size(), userId);
+        log.info("Fetched {} messages for userId={}", messages.size(), userId);
         return messages;
     }
 
     @Transactional(readOnly = true)
     public List<MessageDto> getConversation(Long senderId, Long receiverId) {
-        log.debug("Fetching conversation between senderId={} and receiverId={}", senderId, receiverId);
+        return getConversation(senderId, receiverId, null, null, null);
+    }
+
+    @Transactional(readOnly = true)
+    public List<MessageDto> getConversation(Long senderId, Long receiverId, String before, String after, Integer size) {
+        log.debug("Fetching conversation between senderId={} and receiverId={}, before={}, after={}, size={}",
+                senderId, receiverId, before, after, size);
 
-        List<Message> messages = messageRepository.findBySender_IdAndReceiver_IdOrderByTimeAsc(senderId, receiverId);
-        messages.addAll(messageRepository.findBySender_IdAndReceiver_IdOrderByTimeAsc(receiverId, senderId));
+        String conversationKey = Message.conversationKey(senderId, receiverId);
+        BiFunction<MessageCursor, Limit, List<MessageLine>> olderInTable = (cursor, limit) -> cursor == null
+                ? messageRepository.findLatestInConversation(conversationKey, limit)
+                : messageRepository.findInConversationBefore(conversationKey, cursor.time(), cursor.id(), limit);
+        BiFunction<MessageCursor, Limit, List<MessageLine>> newerInTable = (cursor, limit) ->
+                messageRepository.findInConversationAfter(conversationKey, cursor.time(), cursor.id(), limit);
+        List<MessageDto> conversation = page(before, after, size,
+                limit -> older(null, limit, olderInTable,
+                        (cursor, max) -> messageArchive.findBefore(conversationKey, cursor, max)),
+                (cursor, limit) -> older(cursor, limit, olderInTable,
+                        (from, max) -> messageArchive.findBefore(conversationKey, from, max)),
+                (cursor, limit) -> newer(cursor, limit, newerInTable,
+                        (from, max) -> messageArchive.findAfter(conversationKey, from, max)));
 
-        List<MessageDto> conversation = messages.stream()
-                .sorted((m1, m2) -> m1.getTime().compareTo(m2.getTime()))
-                .map(MessageMapper::toDto)
-                .collect(Collectors.toList());
         log.info("Fetched {} messages in conversation between senderId={} and receiverId={}",
                 conversation.size(), senderId, receiverId);
         return conversation;
     }
+
+    // A page newest first from the table, merged with the archive once it reaches the high-water mark. The archive
+    // is only read then; merging rather than carrying on from the last row keeps a row that committed behind the
+    // mark in its place, and a row still in the table whose segment is already written once.
+    private List<MessageLine> older(MessageCursor before, Limit limit,
+                                    BiFunction<MessageCursor, Limit, List<MessageLine>> table,
+                                    BiFunction<MessageCursor, Integer, List<MessageLine>> archive) {
+        List<MessageLine> lines = table.apply(before, limit);
+        MessageCursor highWater = messageArchive.highWater();
+        if (highWater == null || (lines.size() == limit.max()
+                && MessageCursor.of(lines.get(lines.size() - 1)).compareTo(highWater) > 0)) {
+            return lines;
+        }
+        return merge(lines, archive.apply(before, limit.max()), Comparator.reverseOrder(), limit);
+    }
+
+    // the other way round, oldest first: the archive only has something after a cursor up to the mark
+    private List<MessageLine> newer(MessageCursor after, Limit limit,
+                                    BiFunction<MessageCursor, Limit, List<MessageLine>> table,
+                                    BiFunction<MessageCursor, Integer, List<MessageLine>> archive) {
+        List<MessageLine> lines = table.apply(after, limit);
+        if (!messageArchive.isArchived(after)) {
+            return lines;
+        }
+        return merge(archive.apply(after, limit.max()), lines, Comparator.naturalOrder(), limit);
+    }
+
+    // The first limit messages of two lists in the same order, such as a user's sent and received messages. A
+    // message in both, like one a user sent to themselves, is kept once.
+    private static List<MessageLine> merge(List<MessageLine> first, List<MessageLine> second,
+                                           Comparator<MessageCursor> order, Limit limit) {
+        List<MessageLine> merged = new ArrayList<>(Math.min(limit.max(), first.size() + second.size()));
+        int nextFirst = 0;
+        int nextSecond = 0;
+        while (merged.size() < limit.max() && (nextFirst < first.size() || nextSecond < second.size())) {
+            if (nextSecond == second.size()) {
+                merged.add(first.get(nextFirst++));
+            } else if (nextFirst == first.size()) {
+                merged.add(second.get(nextSecond++));
+            } else {
+                int compared = order.compare(MessageCursor.of(first.get(nextFirst)),
+                        MessageCursor.of(second.get(nextSecond)));
+                if (compared == 0) {
+                    nextSecond++;
+                }
+                merged.add(compared <= 0 ? first.get(nextFirst++) : second.get(nextSecond++));
+            }
+        }
+        return merged;
+    }
+
+    // Older pages are read newest first so the limit keeps the messages closest to the cursor, then flipped.
+    private List<MessageDto> page(String before, String after, Integer size,
+                                  Function<Limit, List<MessageLine>> latest,
+                                  BiFunction<MessageCursor, Limit, List<MessageLine>> older,
+                                  BiFunction<MessageCursor, Limit, List<MessageLine>> newer) {
+        if (before != null && after != null) {
+            throw new BadRequestException("Use either before or after, not both");
+        }
+        Limit limit = Limit.of(pageSize(size));
+
+        List<MessageLine> lines;
+        if (after != null) {
+            lines = newer.apply(MessageCursor.parse(after), limit);
+        } else {
+            lines = new ArrayList<>(before != null ? older.apply(MessageCursor.parse(before), limit) : latest.apply(limit));
+            Collections.reverse(lines);
+        }
+        return lines.stream().map(MessageMapper::toDto).collect(Collectors.toList());
+    }
+
+    private static int pageSize(Integer size) {
+        int pageSize = size != null ? size : DEFAULT_PAGE_SIZE;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new BadRequestException("size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return pageSize;
+    }
 }
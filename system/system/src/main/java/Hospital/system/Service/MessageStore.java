@@ -0,0 +1,100 @@
+package Hospital.system.Service;
+
+import Hospital.system.Entity.ConversationHead;
+import Hospital.system.Entity.Message;
+import Hospital.system.Entity.MessageUnreadCounter;
+import Hospital.system.Repository.ConversationHeadRepository;
+import Hospital.system.Repository.MessageRepository;
+import Hospital.system.Repository.MessageUnreadCounterRepository;
+import Hospital.system.Repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves new messages together with what is kept up to date from them: the conversation heads and the receivers'
+ * unread counters. Runs in the caller's transaction, for the one message of sendMessage or a batch from
+ * {@link MessageBatchWriter}; a batch moves each head and each counter once.
+ */
+@Service
+@RequiredArgsConstructor
+public class MessageStore {
+
+    private static final Comparator<Message> TIME_ORDER = Comparator.comparing(Message::getTime)
+            .thenComparing(Message::getId);
+
+    private final MessageRepository messageRepository;
+    private final UserRepository userRepository;
+    private final MessageUnreadCounterRepository unreadCounterRepository;
+    private final ConversationHeadRepository conversationHeadRepository;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<Message> store(List<Message> messages) {
+        List<Message> saved = messageRepository.saveAll(messages);
+
+        Map<String, Message> latest = new LinkedHashMap<>();
+        Map<UnreadKey, Integer> unread = new LinkedHashMap<>();
+        for (Message message : saved) {
+            latest.merge(message.getConversationKey(), message, (a, b) -> TIME_ORDER.compare(a, b) >= 0 ? a : b);
+            unread.merge(new UnreadKey(message.getReceiver().getId(), message.getSender().getId()), 1, Integer::sum);
+        }
+        // for one message: the head may lock the lower user id of the pair, the counter the receiver, so user
+        // rows are always locked in id order. Batches come from a single writer thread and never meet each other.
+        latest.values().forEach(this::moveHead);
+        unread.forEach((key, count) -> countUnread(key.receiverId(), key.senderId(), count));
+        return saved;
+    }
+
+    // Same scheme as countUnread: the first message of a conversation creates its head under a lock on the pair's
+    // lower user id, later ones move it forward unless a later message got there first.
+    private void moveHead(Message message) {
+        Long senderId = message.getSender().getId();
+        Long receiverId = message.getReceiver().getId();
+        String preview = ConversationHead.preview(message.getContent());
+        if (!conversationHeadRepository.existsByConversationKey(message.getConversationKey())) {
+            userRepository.lockById(Math.min(senderId, receiverId));
+            if (conversationHeadRepository.lockByConversationKey(message.getConversationKey()).isEmpty()) {
+                conversationHeadRepository.save(ConversationHead.builder()
+                        .conversationKey(message.getConversationKey())
+                        .lowerUserId(Math.min(senderId, receiverId))
+                        .higherUserId(Math.max(senderId, receiverId))
+                        .lastMessageId(message.getId())
+                        .lastSenderId(senderId)
+                        .preview(preview)
+                        .lastTime(message.getTime())
+                        .build());
+                return;
+            }
+        }
+        conversationHeadRepository.advance(message.getConversationKey(), message.getId(), senderId, preview,
+                message.getTime());
+    }
+
+    // The first message between two users creates their counter row, under a lock on the receiver's row: a
+    // concurrent first message waits there and then finds the row through the UPDATE, which reads the latest
+    // committed version, instead of failing on the unique key. The plain exists() read keeps the UPDATE of a
+    // missing row, and the gap lock it takes on MySQL, behind that lock too.
+    private void countUnread(Long receiverId, Long senderId, int count) {
+        if (unreadCounterRepository.existsByReceiverIdAndSenderId(receiverId, senderId)) {
+            unreadCounterRepository.increment(receiverId, senderId, count);
+            return;
+        }
+        userRepository.lockById(receiverId);
+        if (unreadCounterRepository.increment(receiverId, senderId, count) == 0) {
+            unreadCounterRepository.save(MessageUnreadCounter.builder()
+                    .receiverId(receiverId)
+                    .senderId(senderId)
+                    .unreadCount(count)
+                    .build());
+        }
+    }
+
+    private record UnreadKey(Long receiverId, Long senderId) {
+    }
+}
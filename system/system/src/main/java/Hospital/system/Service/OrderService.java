@@ -1,22 +1,34 @@
 package Hospital.system.Service;
 
 import Hospital.system.DTO.OrderDto;
+import Hospital.system.DTO.OrderItemDto;
+import Hospital.system.DTO.OrderState;
+import Hospital.system.DTO.OrderTransitionResultDto;
 import Hospital.system.Entity.*;
 import Hospital.system.Mapper.OrderItemMapper;
 import Hospital.system.Mapper.OrderMapper;
 import Hospital.system.Repository.MedicineRepository;
 import Hospital.system.Repository.OrderRepository;
 import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUser;
+import Hospital.system.Security.CurrentUserService;
 import Hospital.system.exception.AccessDeniedException;
 import Hospital.system.exception.BadRequestException;
+import Hospital.system.exception.ConflictException;
 import Hospital.system.exception.ResourceNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -25,24 +37,20 @@ import java.util.stream.Collectors;
 public class OrderService {
     private final OrderRepository orderRepository;
     private final MedicineRepository medicineRepository;
+    private final StockLedgerService stockLedgerService;
     private final UserRepository userRepository;
+    private final CurrentUserService currentUserService;
 
     @Transactional
     public OrderDto createOrder (OrderDto orderDto) {
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        log.debug("Creating order for patient email={}", email);
-
-        User patient = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Logged in user not found: {}", email);
-                    return new ResourceNotFoundException("Logged in user not found");
-                });
+        CurrentUser currentUser = currentUserService.getCurrentUser();
+        log.debug("Creating order for patient email={}", currentUser.email());
 
         if (orderDto.getPatientId() == null){
-            orderDto.setPatientId(patient.getId());
+            orderDto.setPatientId(currentUser.id());
         }
-        if (!orderDto.getPatientId().equals(patient.getId())) {
-            log.warn("Patient {} tried to place order for another patient {}", email, orderDto.getPatientId());
+        if (!orderDto.getPatientId().equals(currentUser.id())) {
+            log.warn("Patient {} tried to place order for another patient {}", currentUser.email(), orderDto.getPatientId());
             throw new AccessDeniedException("You can't place order with another patient's Id");
         }
 
@@ -53,36 +61,16 @@ public class OrderService {
                 });
 
         log.debug("Placing order at pharmacy id={}", pharmacy.getId());
+        // the order only needs the patient's key, no need to load the row
+        User patient = userRepository.getReferenceById(currentUser.id());
         orderDto.setStatus("PLACED");
         Order order = OrderMapper.toEntity(orderDto,patient,pharmacy,null);
 
-        //build order items
-        List<OrderItem> items = orderDto.getItems().stream().map(itemDto -> {
-            Medicine medicine = medicineRepository.findByName(itemDto.getMedicineName())
-                    .orElseThrow(() -> {
-                        log.error("Medicine not found: {}", itemDto.getMedicineName());
-                        return new ResourceNotFoundException("Medicine not found: " + itemDto.getMedicineName());
-                    });
-            if (medicine.getStock() < itemDto.getQuantity()) {
-                log.warn("Not enough stock for medicine {} (requested={}, available={})",
-                        medicine.getName(), itemDto.getQuantity(), medicine.getStock());
-                throw new BadRequestException("Not enough stock for " + medicine.getName());
-            }
-
-            if (!medicine.getPharmacy().getId().equals(pharmacy.getId())) {
-                log.warn("Medicine {} is not available in pharmacy {}", medicine.getId(), pharmacy.getId());
-                throw new BadRequestException("Medicine " + medicine.getId() +
-                        " is not available in pharmacy " + pharmacy.getId());
-            }
-
-            //deduct stock
-            medicine.setStock(medicine.getStock() - itemDto.getQuantity());
-
-            double itemPrice = medicine.getPrice() * itemDto.getQuantity();
-            itemDto.setPrice(itemPrice);
+        //resolve and check the whole basket
+        Map<String, Medicine> medicines = loadMedicines(orderDto.getItems(), pharmacy.getId());
 
-            return OrderItemMapper.toEntity(itemDto,order,medicine);
-        }).collect(Collectors.toList());
+        //build order items
+        List<OrderItem> items = buildItems(orderDto.getItems(), medicines, order);
 
         //calculate total and set items
         double total = items.stream()
@@ -93,78 +81,55 @@ public class OrderService {
         order.setTotalPrice(total);
 
         Order savedOrder = orderRepository.save(order);
+
+        //deduct stock, logged in the ledger against the new order id
+        Map<Medicine, Integer> stockChanges = new HashMap<>();
+        addQuantities(stockChanges, orderDto.getItems(), medicines);
+        applyStockChanges(stockChanges, StockMovementReason.ORDER_PLACED, savedOrder.getId());
         log.info("Order created successfully: orderId={}, patientId={}, pharmacyId={}, total={}",
-                savedOrder.getId(), patient.getId(), pharmacy.getId(), savedOrder.getTotalPrice());
+                savedOrder.getId(), currentUser.id(), pharmacy.getId(), savedOrder.getTotalPrice());
 
         return OrderMapper.toDto(savedOrder);
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     public List<OrderDto> getPatientOrders(){
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        log.debug("Fetching all orders for patient email={}", email);
+        CurrentUser patient = currentUserService.getCurrentUser();
+        log.debug("Fetching all orders for patient email={}", patient.email());
 
-        User patient = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Logged in user not found: {}", email);
-                    return new ResourceNotFoundException("Logged in user not found");
-                });
-        List<OrderDto> orders =  orderRepository.findByPatient_Id(patient.getId()).stream()
-                .map(OrderMapper::toDto)
-                .toList();
-        log.info("Fetched {} orders for patient id={}", orders.size(), patient.getId());
+        List<OrderDto> orders = OrderMapper.toDtos(orderRepository.findLinesByPatientId(patient.id()));
+        log.info("Fetched {} orders for patient id={}", orders.size(), patient.id());
         return orders;
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     public List<OrderDto> getPatientOrdersByStatus(OrderStatus status){
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        log.debug("Fetching orders for patient email={} with status={}", email, status);
+        CurrentUser patient = currentUserService.getCurrentUser();
+        log.debug("Fetching orders for patient email={} with status={}", patient.email(), status);
 
-        User patient = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Logged in user not found: {}", email);
-                    return new ResourceNotFoundException("Logged in user not found");
-                });
-        List<OrderDto> orders =  orderRepository.findByPatient_IdAndStatus(patient.getId(),status).stream()
-                .map(OrderMapper::toDto)
-                .toList();
-        log.info("Fetched {} orders for patient id={} with status={}", orders.size(), patient.getId(), status);
+        List<OrderDto> orders = OrderMapper.toDtos(orderRepository.findLinesByPatientIdAndStatus(patient.id(), status));
+        log.info("Fetched {} orders for patient id={} with status={}", orders.size(), patient.id(), status);
         return orders;
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     public List<OrderDto> getPharmacyOrders(){
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        log.debug("Fetching all orders for pharmacy email={}", email);
+        CurrentUser pharmacy = currentUserService.getCurrentUser();
+        log.debug("Fetching all orders for pharmacy email={}", pharmacy.email());
 
-        User pharmacy = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Logged in user not found: {}", email);
-                    return new ResourceNotFoundException("Logged in user not found");
-                });
-        List<OrderDto> orders =  orderRepository.findByPharmacy_Id(pharmacy.getId()).stream()
-                .map(OrderMapper::toDto)
-                .toList();
+        List<OrderDto> orders = OrderMapper.toDtos(orderRepository.findLinesByPharmacyId(pharmacy.id()));
 
-        log.info("Fetched {} orders for pharmacy id={}", orders.size(), pharmacy.getId());
+        log.info("Fetched {} orders for pharmacy id={}", orders.size(), pharmacy.id());
         return orders;
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     public List<OrderDto> getPharmacyOrdersByStatus(OrderStatus status){
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        log.debug("Fetching orders for pharmacy email={} with status={}", email, status);
+        CurrentUser pharmacy = currentUserService.getCurrentUser();
+        log.debug("Fetching orders for pharmacy email={} with status={}", pharmacy.email(), status);
 
-        User pharmacy = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Logged in pharmacy not found: {}", email);
-                    return new ResourceNotFoundException("Logged in user not found");
-                });
-        List<OrderDto> orders = orderRepository.findByPharmacy_IdAndStatus(pharmacy.getId(),status).stream()
-                .map(OrderMapper::toDto)
-                .toList();
-        log.info("Fetched {} orders for pharmacy id={} with status={}", orders.size(), pharmacy.getId(), status);
+        List<OrderDto> orders = OrderMapper.toDtos(orderRepository.findLinesByPharmacyIdAndStatus(pharmacy.id(), status));
+        log.info("Fetched {} orders for pharmacy id={} with status={}", orders.size(), pharmacy.id(), status);
         return orders;
     }
 
@@ -178,20 +143,16 @@ public class OrderService {
                     return new ResourceNotFoundException("Order not found with id " + orderId);
                 });
 
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        User loggedInUser = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Logged in user not found: {}", email);
-                    return new ResourceNotFoundException("Logged in user not found");
-                });
+        CurrentUser loggedInUser = currentUserService.getCurrentUser();
+        String email = loggedInUser.email();
 
-        if(loggedInUser.getRole()==Role.PATIENT){
-            if(!email.equals(order.getPatient().getEmail())){
+        if(loggedInUser.role()==Role.PATIENT){
+            if(!loggedInUser.id().equals(order.getPatient().getId())){
                 log.warn("Patient {} tried to update another patient's order id={}", email, orderId);
                 throw new AccessDeniedException("You can't update another patient's order");
             }
-        }else if (loggedInUser.getRole()==Role.PHARMACY){
-            if(!email.equals(order.getPharmacy().getEmail())){
+        }else if (loggedInUser.role()==Role.PHARMACY){
+            if(!loggedInUser.id().equals(order.getPharmacy().getId())){
                 log.warn("Pharmacy {} tried to update another pharmacy's order id={}", email, orderId);
                 throw new AccessDeniedException("You can't update another pharmacy's order");
             }
@@ -208,48 +169,19 @@ public class OrderService {
             throw new BadRequestException("You can't change id fields");
         }
 
-        // build new items
-        List<OrderItem> newItems = updatedDto.getItems().stream().map(itemDto -> {
-            Medicine medicine = medicineRepository.findByName(itemDto.getMedicineName())
-                    .orElseThrow(() -> {
-                        log.error("Medicine not found: {}", itemDto.getMedicineName());
-                        return new ResourceNotFoundException("Medicine not found: " + itemDto.getMedicineName());
-                    });
-            if (medicine.getStock() < itemDto.getQuantity()) {
-                log.warn("Not enough stock for medicine {} (requested={}, available={})",
-                        medicine.getName(), itemDto.getQuantity(), medicine.getStock());
-                throw new BadRequestException("Not enough stock for " + medicine.getName());
-            }
-
-            if (!medicine.getPharmacy().getId().equals(order.getPharmacy().getId())) {
-                log.warn("Medicine {} (pharmacyId={}) is not available in pharmacy {}",
-                        medicine.getId(), medicine.getPharmacy().getId(), order.getPharmacy().getId());
-                throw new BadRequestException("Medicine " + medicine.getId() +
-                        " is not available in pharmacy " + order.getPharmacy().getId());
-            }
+        Map<String, Medicine> medicines = loadMedicines(updatedDto.getItems(), order.getPharmacy().getId());
 
-            // handle stock adjustments
-            OrderItem existingItem = order.getItems().stream()
-                    .filter(i -> i.getMedicine().getId().equals(medicine.getId()))
-                    .findFirst()
-                    .orElse(null);
-
-            if (existingItem != null) {
-                int qtyDiff = itemDto.getQuantity() - existingItem.getQuantity();
-                log.debug("Adjusting stock for medicine {}: existingQty={}, newQty={}, qtyDiff={}",
-                        medicine.getName(), existingItem.getQuantity(), itemDto.getQuantity(), qtyDiff);
-                medicine.setStock(medicine.getStock() - qtyDiff);
-            } else {
-                log.debug("Reducing stock for new medicine {}: quantity={}", medicine.getName(), itemDto.getQuantity());
-                medicine.setStock(medicine.getStock() - itemDto.getQuantity());
-            }
-
-            double itemPrice = medicine.getPrice() * itemDto.getQuantity();
-            itemDto.setPrice(itemPrice);
-            log.debug("Prepared order item for medicine {}: quantity={}, price={}", medicine.getName(), itemDto.getQuantity(), itemPrice);
+        // net change per medicine: the new basket minus what the order already holds,
+        // so lines that were dropped go back to stock
+        Map<Medicine, Integer> stockChanges = new HashMap<>();
+        for (OrderItem existingItem : order.getItems()) {
+            stockChanges.merge(existingItem.getMedicine(), -existingItem.getQuantity(), Integer::sum);
+        }
+        addQuantities(stockChanges, updatedDto.getItems(), medicines);
+        applyStockChanges(stockChanges, StockMovementReason.ORDER_UPDATED, order.getId());
 
-            return OrderItemMapper.toEntity(itemDto, order, medicine);
-        }).toList();
+        // build new items
+        List<OrderItem> newItems = buildItems(updatedDto.getItems(), medicines, order);
 
         order.getItems().clear();      // keep same collection reference
         order.getItems().addAll(newItems);
@@ -266,6 +198,69 @@ public class OrderService {
 
     }
 
+    // one IN query for every medicine the basket names, checked before anything is changed
+    private Map<String, Medicine> loadMedicines(List<OrderItemDto> itemDtos, Long pharmacyId) {
+        Set<String> names = itemDtos.stream()
+                .map(OrderItemDto::getMedicineName)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        Map<String, Medicine> medicines = medicineRepository.findByNameIn(names).stream()
+                .collect(Collectors.toMap(Medicine::getName, Function.identity()));
+
+        for (String name : names) {
+            Medicine medicine = medicines.get(name);
+            if (medicine == null) {
+                log.error("Medicine not found: {}", name);
+                throw new ResourceNotFoundException("Medicine not found: " + name);
+            }
+            if (!medicine.getPharmacy().getId().equals(pharmacyId)) {
+                log.warn("Medicine {} (pharmacyId={}) is not available in pharmacy {}",
+                        medicine.getId(), medicine.getPharmacy().getId(), pharmacyId);
+                throw new BadRequestException("Medicine " + medicine.getId() +
+                        " is not available in pharmacy " + pharmacyId);
+            }
+        }
+        return medicines;
+    }
+
+    private static void addQuantities(Map<Medicine, Integer> stockChanges, List<OrderItemDto> itemDtos,
+                                      Map<String, Medicine> medicines) {
+        for (OrderItemDto itemDto : itemDtos) {
+            stockChanges.merge(medicines.get(itemDto.getMedicineName()), itemDto.getQuantity(), Integer::sum);
+        }
+    }
+
+    // stock only moves through the ledger, never through the loaded entity, so concurrent orders
+    // cannot oversell or overwrite each other. Rows are touched in id order to avoid deadlocks,
+    // and any short line rolls the whole transaction back.
+    private void applyStockChanges(Map<Medicine, Integer> stockChanges, StockMovementReason reason, Long orderId) {
+        List<String> shortItems = new ArrayList<>();
+        stockChanges.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(Comparator.comparing(Medicine::getId)))
+                .forEach(change -> {
+                    Medicine medicine = change.getKey();
+                    int quantity = change.getValue();
+                    if (quantity > 0 && !stockLedgerService.withdraw(medicine, quantity, reason, orderId)) {
+                        log.warn("Not enough stock for medicine {} (requested={})", medicine.getName(), quantity);
+                        shortItems.add(medicine.getName());
+                    } else if (quantity < 0) {
+                        stockLedgerService.deposit(medicine, -quantity, reason, orderId);
+                    }
+                });
+        if (!shortItems.isEmpty()) {
+            throw new BadRequestException("Not enough stock for " + String.join(", ", shortItems));
+        }
+    }
+
+    private static List<OrderItem> buildItems(List<OrderItemDto> itemDtos, Map<String, Medicine> medicines, Order order) {
+        List<OrderItem> items = new ArrayList<>(itemDtos.size());
+        for (OrderItemDto itemDto : itemDtos) {
+            Medicine medicine = medicines.get(itemDto.getMedicineName());
+            itemDto.setPrice(medicine.getPrice() * itemDto.getQuantity());
+            items.add(OrderItemMapper.toEntity(itemDto, order, medicine));
+        }
+        return items;
+    }
+
     @Transactional
     public void cancelOrder(Long orderId){
         //soft delete
@@ -275,19 +270,15 @@ public class OrderService {
                     return new ResourceNotFoundException("Order not found with id " + orderId);
                 });
 
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        User loggedInUser = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Logged in user not found: {}", email);
-                    return new ResourceNotFoundException("Logged in user not found");
-                });
-        if(loggedInUser.getRole()==Role.PATIENT){
-            if(!email.equals(order.getPatient().getEmail())){
+        CurrentUser loggedInUser = currentUserService.getCurrentUser();
+        String email = loggedInUser.email();
+        if(loggedInUser.role()==Role.PATIENT){
+            if(!loggedInUser.id().equals(order.getPatient().getId())){
                 log.warn("Patient {} tried to cancel order id={} without permission", email, orderId);
                 throw new AccessDeniedException("You can't cancel another patient's order");
             }
-        }else if (loggedInUser.getRole()==Role.PHARMACY){
-            if(!email.equals(order.getPharmacy().getEmail())){
+        }else if (loggedInUser.role()==Role.PHARMACY){
+            if(!loggedInUser.id().equals(order.getPharmacy().getId())){
                 log.warn("Pharmacy {} tried to complete order id={} without permission", email, orderId);
                 throw new AccessDeniedException("You can't cancel another pharmacy's order");
             }
@@ -299,8 +290,14 @@ public class OrderService {
         }
 
         order.setStatus(OrderStatus.CANCELLED);
+        // returns lock each medicine's stock too, so they go through the same id order as orders
+        Map<Medicine, Integer> stockChanges = new HashMap<>();
+        for (OrderItem item : order.getItems()) {
+            stockChanges.merge(item.getMedicine(), -item.getQuantity(), Integer::sum);
+        }
+        applyStockChanges(stockChanges, StockMovementReason.ORDER_CANCELLED, orderId);
         Order saved = orderRepository.save(order);
-        log.info("Order cancelled successfully: orderId={}, pharmacyId={}", saved.getId(), loggedInUser.getId());
+        log.info("Order cancelled successfully: orderId={}, pharmacyId={}", saved.getId(), loggedInUser.id());
     }
 
 
@@ -312,14 +309,10 @@ public class OrderService {
                     return new ResourceNotFoundException("Order not found with id " + orderId);
                 });
 
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        User loggedInUser = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Logged in user not found: {}", email);
-                    return new ResourceNotFoundException("Logged in user not found");
-                });
+        CurrentUser loggedInUser = currentUserService.getCurrentUser();
+        String email = loggedInUser.email();
 
-        if (!(email.equals(order.getPharmacy().getEmail()))){
+        if (!loggedInUser.id().equals(order.getPharmacy().getId())){
             log.warn("User {} tried to complete ship id={} without permission", email, orderId);
             throw new AccessDeniedException("You can't ship this order");
         }
@@ -331,7 +324,7 @@ public class OrderService {
 
         order.setStatus(OrderStatus.SHIPPED);
         Order saved = orderRepository.save(order);
-        log.info("Order shipped successfully: orderId={}, pharmacyId={}", saved.getId(), loggedInUser.getId());
+        log.info("Order shipped successfully: orderId={}, pharmacyId={}", saved.getId(), loggedInUser.id());
         return OrderMapper.toDto(saved);
     }
 
@@ -343,13 +336,9 @@ public class OrderService {
                     return new ResourceNotFoundException("Order not found with id " + orderId);
                 });
 
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        User loggedInUser = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Logged in user not found: {}", email);
-                    return new ResourceNotFoundException("Logged in user not found");
-                });
-        if (!(email.equals(order.getPharmacy().getEmail()))){
+        CurrentUser loggedInUser = currentUserService.getCurrentUser();
+        String email = loggedInUser.email();
+        if (!loggedInUser.id().equals(order.getPharmacy().getId())){
             log.warn("User {} tried to complete order id={} without permission", email, orderId);
             throw new AccessDeniedException("You can't ship this order");
         }
@@ -361,8 +350,53 @@ public class OrderService {
 
         order.setStatus(OrderStatus.COMPLETED);
         Order saved = orderRepository.save(order);
-        log.info("Order completed successfully: orderId={}, pharmacyId={}", saved.getId(), loggedInUser.getId());
+        log.info("Order completed successfully: orderId={}, pharmacyId={}", saved.getId(), loggedInUser.id());
         return OrderMapper.toDto(saved);
     }
 
+    @Transactional
+    public List<OrderTransitionResultDto> shipOrders(List<Long> orderIds) {
+        return transitionOrders(orderIds, OrderStatus.PLACED, OrderStatus.SHIPPED, "ship");
+    }
+
+    @Transactional
+    public List<OrderTransitionResultDto> completeOrders(List<Long> orderIds) {
+        return transitionOrders(orderIds, OrderStatus.SHIPPED, OrderStatus.COMPLETED, "complete");
+    }
+
+    // Same checks as shipOrder/completeOrder, but one SELECT for the whole batch and one guarded UPDATE.
+    // Orders that fail a check are reported and skipped; the rest change together.
+    private List<OrderTransitionResultDto> transitionOrders(List<Long> orderIds, OrderStatus from, OrderStatus to, String action) {
+        CurrentUser pharmacy = currentUserService.getCurrentUser();
+        Set<Long> ids = new LinkedHashSet<>(orderIds);
+        Map<Long, OrderState> states = orderRepository.findStatesByIdIn(ids).stream()
+                .collect(Collectors.toMap(OrderState::id, Function.identity()));
+
+        List<OrderTransitionResultDto> results = new ArrayList<>();
+        List<Long> eligible = new ArrayList<>();
+        for (Long id : ids) {
+            OrderState state = states.get(id);
+            if (state == null) {
+                results.add(new OrderTransitionResultDto(id, false, null, "Order not found with id " + id));
+            } else if (!pharmacy.id().equals(state.pharmacyId())) {
+                results.add(new OrderTransitionResultDto(id, false, null, "You can't " + action + " this order"));
+            } else if (state.status() != from) {
+                results.add(new OrderTransitionResultDto(id, false, state.status().name(),
+                        "You can't " + action + " order with status " + state.status()));
+            } else {
+                eligible.add(id);
+                results.add(new OrderTransitionResultDto(id, true, to.name(), null));
+            }
+        }
+
+        if (!eligible.isEmpty()
+                && orderRepository.updateStatus(eligible, pharmacy.id(), from, to) != eligible.size()) {
+            log.warn("Orders changed while pharmacy id={} tried to {} them", pharmacy.id(), action);
+            throw new ConflictException("Some orders changed while updating, reload and try again");
+        }
+        log.info("Bulk {}: {} of {} orders moved to {} for pharmacy id={}",
+                action, eligible.size(), ids.size(), to, pharmacy.id());
+        return results;
+    }
+
 }
\ No newline at end of file
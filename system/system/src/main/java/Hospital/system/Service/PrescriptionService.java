@@ -8,12 +8,13 @@ import Hospital.system.Mapper.PrescriptionMapper;
 import Hospital.system.Repository.MedicineRepository;
 import Hospital.system.Repository.PrescriptionRepository;
 import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUser;
+import Hospital.system.Security.CurrentUserService;
 import Hospital.system.exception.AccessDeniedException;
 import Hospital.system.exception.BadRequestException;
 import Hospital.system.exception.ResourceNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -26,6 +27,7 @@ public class PrescriptionService {
     private final PrescriptionRepository prescriptionRepository;
     private final UserRepository userRepository;
     private final MedicineRepository medicineRepository;
+    private final CurrentUserService currentUserService;
 
     @Transactional
     public PrescriptionDto createPrescription(PrescriptionDto prescriptionDto){
@@ -37,8 +39,8 @@ public class PrescriptionService {
                     log.error("Doctor not found with id {}", prescriptionDto.getDoctorId());
                     return new ResourceNotFoundException("Doctor not found with id " + prescriptionDto.getDoctorId());
                 });
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        if (!doctor.getEmail().equals(email)){
+        CurrentUser loggedInDoctor = currentUserService.getCurrentUser();
+        if (!doctor.getId().equals(loggedInDoctor.id())){
             log.error("Doctor not found with id {}", prescriptionDto.getDoctorId());
             throw new AccessDeniedException("You can't prescribe using another doctor's Id");
         }
@@ -67,16 +69,11 @@ public class PrescriptionService {
 
     @Transactional(readOnly = true)
     public List<PrescriptionDto> getPatientPrescriptions() {
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        log.debug("Fetching prescriptions for patient email={}", email);
+        CurrentUser patient = currentUserService.getCurrentUser();
+        log.debug("Fetching prescriptions for patient email={}", patient.email());
 
-        User patient = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Logged in patient not found: {}", email);
-                    return new ResourceNotFoundException("Logged in patient not found");
-                });
-        List<Prescription> prescriptions = prescriptionRepository.findByPatient_Id(patient.getId());
-        log.info("Fetched {} prescriptions for patientId={}", prescriptions.size(), patient.getId());
+        List<Prescription> prescriptions = prescriptionRepository.findByPatient_Id(patient.id());
+        log.info("Fetched {} prescriptions for patientId={}", prescriptions.size(), patient.id());
 
         return prescriptions.stream()
                 .map(PrescriptionMapper::toDto)
@@ -85,17 +82,11 @@ public class PrescriptionService {
 
     @Transactional(readOnly = true)
     public List<PrescriptionDto> getDoctorPrescriptions() {
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        log.debug("Fetching prescriptions for doctor email={}", email);
+        CurrentUser doctor = currentUserService.getCurrentUser();
+        log.debug("Fetching prescriptions for doctor email={}", doctor.email());
 
-        User doctor = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Logged in doctor not found: {}", email);
-                    return new ResourceNotFoundException("Logged in doctor not found");
-                });
-
-        List<Prescription> prescriptions = prescriptionRepository.findByDoctor_Id(doctor.getId());
-        log.info("Fetched {} prescriptions for doctorId={}", prescriptions.size(), doctor.getId());
+        List<Prescription> prescriptions = prescriptionRepository.findByDoctor_Id(doctor.id());
+        log.info("Fetched {} prescriptions for doctorId={}", prescriptions.size(), doctor.id());
 
         return prescriptions.stream()
                 .map(PrescriptionMapper::toDto)
@@ -119,9 +110,9 @@ public class PrescriptionService {
                     return new ResourceNotFoundException("Doctor not found with id " + prescriptionDto.getDoctorId());
                 });
 
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        if (!doctor.getEmail().equals(email)){
-            log.error("Access denied: logged in doctor {} tried to update prescription {}", email, prescriptionId);
+        CurrentUser loggedInDoctor = currentUserService.getCurrentUser();
+        if (!doctor.getId().equals(loggedInDoctor.id())){
+            log.error("Access denied: logged in doctor {} tried to update prescription {}", loggedInDoctor.email(), prescriptionId);
             throw new AccessDeniedException("You can't update the doctor's id");
         }
         // patient cannot be changed (medical complexes)
@@ -157,16 +148,11 @@ public class PrescriptionService {
                     return new ResourceNotFoundException("Prescription not found with id " + prescriptionId);
                 });
 
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
-        User loggedInUser = userRepository.findByEmail(email)
-                .orElseThrow(() -> {
-                    log.error("Logged in user not found: {}", email);
-                    return new ResourceNotFoundException("Logged in user not found");
-                });
+        CurrentUser loggedInUser = currentUserService.getCurrentUser();
 
         // Only the doctor who created the prescription can delete it
-        if (!prescription.getDoctor().getId().equals(loggedInUser.getId())) {
-            log.error("Access denied: user {} tried to delete prescription {}", email, prescriptionId);
+        if (!prescription.getDoctor().getId().equals(loggedInUser.id())) {
+            log.error("Access denied: user {} tried to delete prescription {}", loggedInUser.email(), prescriptionId);
             throw new AccessDeniedException("Only the doctor who created the prescription can delete it");
         }
 
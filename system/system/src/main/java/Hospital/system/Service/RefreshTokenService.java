@@ -0,0 +1,111 @@
+package Hospital.system.Service;
+
+import Hospital.system.Entity.RefreshToken;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.RefreshTokenRepository;
+import Hospital.system.Repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.UUID;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RefreshTokenService {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final UserRepository userRepository;
+
+    @Value("${jwt.refresh-expiration}")
+    private long refreshExpiration;
+
+    public record IssuedRefreshToken(String token, User user) {
+    }
+
+    // starts a new rotation chain, one per login
+    @Transactional
+    public String issue(Long userId) {
+        String token = newToken();
+        refreshTokenRepository.save(RefreshToken.builder()
+                .tokenHash(hash(token))
+                .user(userRepository.getReferenceById(userId))
+                .familyId(UUID.randomUUID().toString())
+                .expiresAt(Instant.now().plusMillis(refreshExpiration))
+                .build());
+        return token;
+    }
+
+    // the presented token is spent and replaced; presenting a spent token again revokes the whole chain
+    @Transactional(noRollbackFor = BadCredentialsException.class)
+    public IssuedRefreshToken rotate(String token) {
+        RefreshToken current = refreshTokenRepository.findByTokenHash(hash(token))
+                .orElseThrow(() -> new BadCredentialsException("Invalid refresh token"));
+
+        if (refreshTokenRepository.markRevoked(current.getId()) == 0) {
+            int revoked = refreshTokenRepository.revokeFamily(current.getFamilyId());
+            log.warn("Refresh token reuse for userId={}, revoked {} tokens of family {}",
+                    current.getUser().getId(), revoked, current.getFamilyId());
+            throw new BadCredentialsException("Invalid refresh token");
+        }
+        if (current.getExpiresAt().isBefore(Instant.now())) {
+            log.debug("Expired refresh token presented for userId={}", current.getUser().getId());
+            throw new BadCredentialsException("Refresh token expired");
+        }
+
+        String next = newToken();
+        refreshTokenRepository.save(RefreshToken.builder()
+                .tokenHash(hash(next))
+                .user(current.getUser())
+                .familyId(current.getFamilyId())
+                // the chain keeps the expiry of its login, rotating does not extend a session forever
+                .expiresAt(current.getExpiresAt())
+                .build());
+        return new IssuedRefreshToken(next, current.getUser());
+    }
+
+    @Transactional
+    public void revoke(String token) {
+        refreshTokenRepository.findByTokenHash(hash(token))
+                .ifPresent(refreshToken -> refreshTokenRepository.revokeFamily(refreshToken.getFamilyId()));
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.refresh-cleanup-interval:3600000}")
+    @Transactional
+    public void purgeExpired() {
+        int deleted = refreshTokenRepository.deleteExpired(Instant.now());
+        if (deleted > 0) {
+            log.debug("Deleted {} expired refresh tokens", deleted);
+        }
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    // tokens are 256 random bits, a fast unsalted digest is enough to keep them unusable if the table leaks
+    static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package Hospital.system.Service;
+
+import Hospital.system.Entity.Medicine;
+import Hospital.system.Entity.StockMovementReason;
+import Hospital.system.Repository.StockMovementRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Every stock change is appended to the stock_movements ledger.
+ * <p>
+ * Taking stock is a ledger insert on one of the medicine's {@link StockStripes}, checked under that stripe's lock
+ * so it cannot oversell; giving stock back (cancellations, smaller edits, restocks) is an insert on stripe 0.
+ * Neither writes the medicine row. {@link #compact()} folds the rows into the stripe snapshots and shares the
+ * stock out between the stripes again.
+ * <p>
+ * With {@link StockReservationService} enabled, order withdrawals are served from this node's reservation.
+ */
+@Service
+@Slf4j
+public class StockLedgerService {
+
+    private final StockMovementRepository stockMovementRepository;
+    private final StockStripes stockStripes;
+    private final StockReservationService stockReservationService;
+
+    // ledger rows up to here have been looked at by compact()
+    private long compactedThrough;
+
+    public StockLedgerService(StockMovementRepository stockMovementRepository,
+                              StockStripes stockStripes,
+                              StockReservationService stockReservationService) {
+        this.stockMovementRepository = stockMovementRepository;
+        this.stockStripes = stockStripes;
+        this.stockReservationService = stockReservationService;
+    }
+
+    /** Takes stock in the caller's transaction; false when the medicine does not have enough. */
+    public boolean withdraw(Medicine medicine, int quantity, StockMovementReason reason, Long orderId) {
+        if (reason != StockMovementReason.RESTOCK && stockReservationService.isEnabled()) {
+            return withdrawReserved(medicine, quantity, reason, orderId);
+        }
+        if (!stockStripes.take(medicine.getId(), quantity, reason, orderId, null)) {
+            return false;
+        }
+        // the snapshot is only written by compaction, this only keeps the loaded copy in step
+        medicine.setPendingStock(medicine.getPendingStock() - quantity);
+        return true;
+    }
+
+    /** Gives stock back in the caller's transaction. */
+    public void deposit(Medicine medicine, int quantity, StockMovementReason reason, Long orderId) {
+        stockStripes.give(medicine.getId(), quantity, reason, orderId, null);
+        medicine.setPendingStock(medicine.getPendingStock() + quantity);
+    }
+
+    /** Drops the stock stripes of a medicine being deleted; its ledger rows stay as history. */
+    public void deleteStripes(Long medicineId) {
+        stockStripes.delete(medicineId);
+    }
+
+    /** Units the reservation nodes hold for the medicine and have not sold; they are on the shelf but not available. */
+    public int reservedStock(Long medicineId) {
+        return stockReservationService.heldByNodes(medicineId);
+    }
+
+    // served from this node's reservation: no lock and no insert, the node logs what it served when it flushes
+    private boolean withdrawReserved(Medicine medicine, int quantity, StockMovementReason reason, Long orderId) {
+        if (!stockReservationService.reserve(medicine.getId(), quantity)) {
+            return false;
+        }
+        log.debug("Served {} units of {} from the reservation ({}, orderId={})", quantity, medicine.getName(),
+                reason, orderId);
+        return true;
+    }
+
+    // A row that commits after this run with an id below the new mark is still counted by its stripe; it is
+    // folded the next time its medicine moves.
+    @Scheduled(fixedDelayString = "${medicines.ledger.compaction-interval:1000}")
+    public synchronized void compact() {
+        long last = stockMovementRepository.findLastId();
+        List<Long> moved = stockMovementRepository.findMedicineIdsMovedAfter(compactedThrough);
+        moved.forEach(stockStripes::compact);
+        compactedThrough = last;
+        if (!moved.isEmpty()) {
+            log.debug("Compacted the stock ledger of {} medicines", moved.size());
+        }
+    }
+}
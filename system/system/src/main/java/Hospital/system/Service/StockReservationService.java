@@ -0,0 +1,330 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.StockLedgerHead;
+import Hospital.system.Entity.StockMovementReason;
+import Hospital.system.Entity.StockReservation;
+import Hospital.system.Repository.StockMovementRepository;
+import Hospital.system.Repository.StockReservationRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Optional reservation mode for flash-demand medicines ({@code medicines.reservation.enabled}).
+ * <p>
+ * A node takes stock off the medicine's {@link StockStripes} in chunks, the same way orders do, and
+ * serves orders from striped in-memory counters without touching the database. Nodes never share units,
+ * so together they cannot oversell. Chunks are ledger rows tagged with the node id, written in the order's own
+ * transaction; what the committed orders took is only counted in memory. {@link #flush()} logs those counts as
+ * one row per medicine and folds the node's rows into {@code stock_reservations}, so that table says what each
+ * node held as of its last flush.
+ * <p>
+ * On shutdown the node logs what it served and hands back the rest. A crash loses the counts of the last flush
+ * interval, so nobody knows how much of what the node held was sold: on its next start the node writes all of
+ * it off rather than risk selling it twice. That costs at most the unsold part of one chunk per medicine, which
+ * the pharmacy's next stock count puts back. Node ids must stay the same across restarts.
+ */
+@Service
+@Slf4j
+public class StockReservationService {
+
+    private final StockStripes stockStripes;
+    private final StockMovementRepository stockMovementRepository;
+    private final StockReservationRepository stockReservationRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final String nodeId;
+    private final int chunkSize;
+    private final int stripes;
+    private final long settleWindowMillis;
+
+    private final Map<Long, Holding> holdings = new ConcurrentHashMap<>();
+
+    public StockReservationService(StockStripes stockStripes,
+                                   StockMovementRepository stockMovementRepository,
+                                   StockReservationRepository stockReservationRepository,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${medicines.reservation.enabled:false}") boolean enabled,
+                                   @Value("${medicines.reservation.node-id:local}") String nodeId,
+                                   @Value("${medicines.reservation.chunk-size:50}") int chunkSize,
+                                   @Value("${medicines.reservation.stripes:0}") int stripes,
+                                   @Value("${medicines.ledger.settle-window:60000}") long settleWindowMillis) {
+        this.stockStripes = stockStripes;
+        this.stockMovementRepository = stockMovementRepository;
+        this.stockReservationRepository = stockReservationRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.nodeId = nodeId;
+        this.chunkSize = chunkSize;
+        this.stripes = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors();
+        this.settleWindowMillis = settleWindowMillis;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Takes units from this node's reservation in the caller's transaction, topping it up from the database
+     * when it runs dry; false when the medicine does not have enough stock left.
+     */
+    public boolean reserve(Long medicineId, int quantity) {
+        Holding holding = holdings.computeIfAbsent(medicineId, id -> new Holding(stripes));
+        if (holding.take(quantity)) {
+            afterCompletion(committed -> {
+                if (committed) {
+                    holding.served(quantity);
+                } else {
+                    holding.add(quantity);
+                }
+            });
+            return true;
+        }
+        // only one full chunk in flight at a time, concurrent top-ups take just what their order needs
+        boolean fullChunk = holding.allocating.compareAndSet(false, true);
+        int chunk = fullChunk ? Math.max(chunkSize, quantity) : quantity;
+        try {
+            if (!allocate(medicineId, chunk)) {
+                if (chunk == quantity || !allocate(medicineId, quantity)) {
+                    if (fullChunk) {
+                        holding.allocating.set(false);
+                    }
+                    return false;
+                }
+                chunk = quantity;
+            }
+        } catch (RuntimeException e) {
+            if (fullChunk) {
+                holding.allocating.set(false);
+            }
+            throw e;
+        }
+        // the chunk is only there for other orders once it commits; a rollback undoes it in the database too
+        int surplus = chunk - quantity;
+        afterCompletion(committed -> {
+            if (committed) {
+                holding.add(surplus);
+                holding.served(quantity);
+            }
+            if (fullChunk) {
+                holding.allocating.set(false);
+            }
+        });
+        return true;
+    }
+
+    public int held(Long medicineId) {
+        Holding holding = holdings.get(medicineId);
+        return holding == null ? 0 : holding.total();
+    }
+
+    /**
+     * Units of the medicine the nodes hold but have not sold: their rows in the ledger, less what this node
+     * served since its last flush. Other nodes' unflushed orders are not known here and still count as held.
+     */
+    public int heldByNodes(Long medicineId) {
+        Holding holding = holdings.get(medicineId);
+        long held = stockReservationRepository.sumQuantity(medicineId)
+                + stockMovementRepository.sumUnflushedReservations(medicineId);
+        return (int) held - (holding == null ? 0 : holding.unrecordedServed());
+    }
+
+    private boolean allocate(Long medicineId, int quantity) {
+        if (!stockStripes.take(medicineId, quantity, StockMovementReason.RESERVED, null, nodeId)) {
+            return false;
+        }
+        log.debug("Reserved {} units of medicine {} on node {}", quantity, medicineId, nodeId);
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${medicines.reservation.flush-interval:1000}")
+    public synchronized void flush() {
+        if (enabled) {
+            recordServed();
+            flush(Instant.now().minusMillis(settleWindowMillis));
+        }
+    }
+
+    // one ledger row per medicine for the orders served from memory since the last flush
+    private void recordServed() {
+        holdings.forEach((medicineId, holding) -> {
+            int served = holding.drainServed();
+            if (served == 0) {
+                return;
+            }
+            try {
+                stockStripes.record(medicineId, -served, StockMovementReason.RESERVATION_SERVED, null, nodeId);
+            } catch (RuntimeException e) {
+                // the next flush logs them
+                holding.served(served);
+                throw e;
+            }
+        });
+    }
+
+    // Rows younger than settledBefore wait for the next run: an id is assigned before its transaction commits,
+    // so flushing past a still-open insert would skip it for good.
+    private void flush(Instant settledBefore) {
+        for (StockLedgerHead head : stockMovementRepository.findUnflushedReservationHeads(nodeId, settledBefore)) {
+            transactionTemplate.executeWithoutResult(status -> {
+                StockReservation reservation = stockReservationRepository
+                        .findByNodeIdAndMedicineId(nodeId, head.medicineId())
+                        .orElseGet(() -> stockReservationRepository.save(StockReservation.builder()
+                                .nodeId(nodeId)
+                                .medicineId(head.medicineId())
+                                .quantity(0)
+                                .flushedThrough(0L)
+                                .build()));
+                stockReservationRepository.flush(reservation.getId(), head.lastMovementId());
+            });
+        }
+    }
+
+    // After a clean shutdown this node holds nothing; anything left is from a crash, and what of it was sold
+    // before the crash is not logged anywhere, so it is all written off.
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        holdings.clear();
+        flush(Instant.now().plusSeconds(1));
+        for (StockReservation reservation : stockReservationRepository.findByNodeId(nodeId)) {
+            if (reservation.getQuantity() != 0) {
+                stockStripes.record(reservation.getMedicineId(), -reservation.getQuantity(),
+                        StockMovementReason.RESERVATION_WRITTEN_OFF, null, nodeId);
+                log.warn("Wrote off {} units of medicine {} that node {} held when it stopped without a shutdown",
+                        reservation.getQuantity(), reservation.getMedicineId(), nodeId);
+            }
+        }
+        flush(Instant.now().plusSeconds(1));
+    }
+
+    // no order transaction is open after shutdown, so once the served counts are logged every row is final
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        recordServed();
+        holdings.clear();
+        flush(Instant.now().plusSeconds(1));
+        for (StockReservation reservation : stockReservationRepository.findByNodeId(nodeId)) {
+            if (reservation.getQuantity() == 0) {
+                continue;
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                stockStripes.give(reservation.getMedicineId(), reservation.getQuantity(),
+                        StockMovementReason.RESERVATION_RELEASED, null, nodeId);
+                log.info("Released {} reserved units of medicine {} from node {}",
+                        reservation.getQuantity(), reservation.getMedicineId(), nodeId);
+            });
+        }
+        flush(Instant.now().plusSeconds(1));
+    }
+
+    private interface CompletionAction {
+        void run(boolean committed);
+    }
+
+    private static void afterCompletion(CompletionAction action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    action.run(status == STATUS_COMMITTED);
+                }
+            });
+        } else {
+            action.run(true);
+        }
+    }
+
+    // striped counters: concurrent orders usually hit different stripes, a take only spans stripes when it has to.
+    // served counts what committed orders took since the last flush, striped the same way.
+    private static final class Holding {
+        private final AtomicIntegerArray counters;
+        private final AtomicIntegerArray served;
+        private final AtomicBoolean allocating = new AtomicBoolean();
+
+        private Holding(int stripes) {
+            this.counters = new AtomicIntegerArray(stripes);
+            this.served = new AtomicIntegerArray(stripes);
+        }
+
+        boolean take(int quantity) {
+            int home = ThreadLocalRandom.current().nextInt(counters.length());
+            for (int available = counters.get(home); available >= quantity; available = counters.get(home)) {
+                if (counters.compareAndSet(home, available, available - quantity)) {
+                    return true;
+                }
+            }
+            int taken = 0;
+            for (int i = 0; i < counters.length() && taken < quantity; i++) {
+                int want = quantity - taken;
+                int before = counters.getAndUpdate(i, available -> available - Math.min(available, want));
+                taken += Math.min(before, want);
+            }
+            if (taken == quantity) {
+                return true;
+            }
+            counters.addAndGet(home, taken);
+            return false;
+        }
+
+        void add(int quantity) {
+            int perStripe = quantity / counters.length();
+            for (int i = 0; i < counters.length(); i++) {
+                counters.addAndGet(i, perStripe);
+            }
+            counters.addAndGet(ThreadLocalRandom.current().nextInt(counters.length()), quantity % counters.length());
+        }
+
+        void served(int quantity) {
+            served.addAndGet(ThreadLocalRandom.current().nextInt(served.length()), quantity);
+        }
+
+        int drainServed() {
+            int total = 0;
+            for (int i = 0; i < served.length(); i++) {
+                total += served.getAndSet(i, 0);
+            }
+            return total;
+        }
+
+        int unrecordedServed() {
+            int total = 0;
+            for (int i = 0; i < served.length(); i++) {
+                total += served.get(i);
+            }
+            return total;
+        }
+
+        int total() {
+            int total = 0;
+            for (int i = 0; i < counters.length(); i++) {
+                total += counters.get(i);
+            }
+            return total;
+        }
+    }
+}
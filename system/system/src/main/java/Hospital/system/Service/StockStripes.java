@@ -0,0 +1,235 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.StockLedgerEntry;
+import Hospital.system.DTO.StockStripeBudget;
+import Hospital.system.DTO.StockStripeSnapshot;
+import Hospital.system.Entity.StockMovement;
+import Hospital.system.Entity.StockMovementReason;
+import Hospital.system.Entity.StockStripe;
+import Hospital.system.Repository.MedicineRepository;
+import Hospital.system.Repository.StockMovementRepository;
+import Hospital.system.Repository.StockStripeRepository;
+import Hospital.system.exception.ConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A medicine's stock split into stripes, so that orders for one medicine do not all queue on the same row.
+ * <p>
+ * Stripe 0 is the snapshot on the medicine row, stripes 1..n are {@link StockStripe} rows that {@link #compact}
+ * fills once the medicine has stock to share out ({@code medicines.ledger.stripes}). A stripe holds its snapshot
+ * plus the ledger rows logged on it since its ledger position. Every change is only a ledger insert, made while
+ * holding the stripe's row lock and checked against that snapshot plus the rows since the last compaction; the
+ * snapshots are only written by compaction.
+ * <p>
+ * An order locks one stripe that looks like it can cover it, so concurrent orders mostly wait on different rows.
+ * When none can on its own it works up through the stripes, and only a take that starts at stripe 0 sees all the
+ * stock and can say the medicine is short. Locks are always taken in (medicine, stripe) order.
+ */
+@Service
+@Slf4j
+public class StockStripes {
+
+    private final MedicineRepository medicineRepository;
+    private final StockMovementRepository stockMovementRepository;
+    private final StockStripeRepository stockStripeRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int stripes;
+
+    public StockStripes(MedicineRepository medicineRepository,
+                        StockMovementRepository stockMovementRepository,
+                        StockStripeRepository stockStripeRepository,
+                        PlatformTransactionManager transactionManager,
+                        @Value("${medicines.ledger.stripes:8}") int stripes) {
+        this.medicineRepository = medicineRepository;
+        this.stockMovementRepository = stockMovementRepository;
+        this.stockStripeRepository = stockStripeRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.stripes = Math.max(stripes, 1);
+    }
+
+    /**
+     * Takes stock in the caller's transaction; false when the medicine does not have enough. A take that ran short
+     * on the stripes it picked while concurrent orders drained them throws {@link ConflictException}, since the
+     * stripes it did not lock may still have had the units.
+     */
+    public boolean take(Long medicineId, int quantity, StockMovementReason reason, Long orderId,
+                        String reservationNode) {
+        List<StockStripeBudget> budgets = stockStripeRepository.findBudgets(medicineId);
+        int first = firstStripe(budgets, quantity);
+
+        Map<Integer, Integer> takes = new LinkedHashMap<>();
+        int remaining = quantity;
+        if (first == 0) {
+            // every stripe, including any compaction added since the estimate, so short means short
+            for (StockStripeSnapshot stripe : lockAll(medicineId)) {
+                remaining = plan(medicineId, stripe, remaining, takes);
+            }
+        } else {
+            for (StockStripeBudget budget : budgets) {
+                if (budget.stripe() >= first && remaining > 0) {
+                    Optional<StockStripeSnapshot> stripe =
+                            stockStripeRepository.lockSnapshot(medicineId, budget.stripe());
+                    if (stripe.isPresent()) {
+                        remaining = plan(medicineId, stripe.get(), remaining, takes);
+                    }
+                }
+            }
+        }
+        if (remaining > 0) {
+            if (first == 0) {
+                return false;
+            }
+            throw new ConflictException("Stock of this medicine changed while ordering, try again");
+        }
+        takes.forEach((stripe, take) -> append(medicineId, stripe, -take, reason, orderId, reservationNode));
+        return true;
+    }
+
+    /** Gives stock back in the caller's transaction. */
+    public void give(Long medicineId, int quantity, StockMovementReason reason, Long orderId, String reservationNode) {
+        // compaction folds everything logged under the stripe locks it holds, so even a give waits for stripe 0
+        medicineRepository.lockStockSnapshot(medicineId);
+        append(medicineId, 0, quantity, reason, orderId, reservationNode);
+    }
+
+    /** Logs a row that does not move medicine stock, such as an order served from a node's reservation. */
+    public void record(Long medicineId, int quantity, StockMovementReason reason, Long orderId,
+                       String reservationNode) {
+        append(medicineId, StockMovement.NO_STRIPE, quantity, reason, orderId, reservationNode);
+    }
+
+    public void delete(Long medicineId) {
+        stockStripeRepository.deleteByMedicineId(medicineId);
+    }
+
+    /**
+     * Folds the medicine's ledger rows into its stripe snapshots and shares the stock out evenly again, in its own
+     * transaction. It holds every stripe lock, so no change is in flight and nothing logged is skipped.
+     */
+    public void compact(Long medicineId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<StockStripeSnapshot> current = lockAll(medicineId);
+            if (current.isEmpty()) {
+                return;
+            }
+
+            int total = 0;
+            Map<Integer, Long> positions = new HashMap<>();
+            for (StockStripeSnapshot stripe : current) {
+                long position = stripe.ledgerPosition();
+                int stock = stripe.stock();
+                for (StockLedgerEntry entry :
+                        stockMovementRepository.lockPending(medicineId, stripe.stripe(), position)) {
+                    stock += entry.quantity();
+                    position = Math.max(position, entry.id());
+                }
+                total += stock;
+                positions.put(stripe.stripe(), position);
+            }
+
+            int share = total / stripes;
+            for (StockStripeSnapshot stripe : current) {
+                int target = stripe.stripe() == 0 ? total - share * (stripes - 1)
+                        : stripe.stripe() < stripes ? share : 0;
+                long position = positions.get(stripe.stripe());
+                if (target == stripe.stock() && position == stripe.ledgerPosition()) {
+                    continue;
+                }
+                if (stripe.stripe() == 0) {
+                    medicineRepository.updateStockSnapshot(medicineId, target, position);
+                } else {
+                    stockStripeRepository.updateSnapshot(medicineId, stripe.stripe(), target, position);
+                }
+            }
+            for (int stripe = 1; stripe < stripes && share > 0; stripe++) {
+                if (!positions.containsKey(stripe)) {
+                    stockStripeRepository.save(StockStripe.builder()
+                            .medicineId(medicineId)
+                            .stripe(stripe)
+                            .stock(share)
+                            .ledgerPosition(0L)
+                            .build());
+                }
+            }
+            log.debug("Compacted stock of medicine {}: {} units over {} stripes", medicineId, total, stripes);
+        });
+    }
+
+    // a stripe that can cover the order alone, picked at random so concurrent orders spread out; otherwise the
+    // shortest run of top stripes that looks like it can, and stripe 0 when only all of them together might
+    private static int firstStripe(List<StockStripeBudget> budgets, int quantity) {
+        List<Integer> covering = budgets.stream()
+                .filter(budget -> budget.budget() >= quantity)
+                .map(StockStripeBudget::stripe)
+                .toList();
+        if (!covering.isEmpty()) {
+            return covering.get(ThreadLocalRandom.current().nextInt(covering.size()));
+        }
+        long suffix = 0;
+        for (int i = budgets.size() - 1; i >= 0; i--) {
+            suffix += budgets.get(i).budget();
+            if (suffix >= quantity) {
+                return budgets.get(i).stripe();
+            }
+        }
+        return 0;
+    }
+
+    // stripe 0 and then the others in order; empty when the medicine is gone
+    private List<StockStripeSnapshot> lockAll(Long medicineId) {
+        Optional<StockStripeSnapshot> head = medicineRepository.lockStockSnapshot(medicineId);
+        if (head.isEmpty()) {
+            return List.of();
+        }
+        List<StockStripeSnapshot> locked = new ArrayList<>();
+        locked.add(head.get());
+        locked.addAll(stockStripeRepository.lockSnapshots(medicineId));
+        return locked;
+    }
+
+    // takes what the locked stripe can give towards the remaining quantity, returns what is still missing
+    private int plan(Long medicineId, StockStripeSnapshot stripe, int remaining, Map<Integer, Integer> takes) {
+        if (remaining == 0) {
+            return 0;
+        }
+        long available = stripe.stock();
+        for (StockLedgerEntry entry : stockMovementRepository.lockPending(medicineId, stripe.stripe(),
+                stripe.ledgerPosition())) {
+            available += entry.quantity();
+        }
+        int take = (int) Math.min(available, remaining);
+        if (take <= 0) {
+            return remaining;
+        }
+        takes.put(stripe.stripe(), take);
+        return remaining - take;
+    }
+
+    private void append(Long medicineId, int stripe, int quantity, StockMovementReason reason, Long orderId,
+                        String reservationNode) {
+        log.debug("Stock movement for medicine {} on stripe {}: {} ({}, orderId={})",
+                medicineId, stripe, quantity, reason, orderId);
+        stockMovementRepository.save(StockMovement.builder()
+                .medicineId(medicineId)
+                .stripe(stripe)
+                .quantity(quantity)
+                .reason(reason)
+                .orderId(orderId)
+                .reservationNode(reservationNode)
+                .createdAt(Instant.now())
+                .build());
+    }
+}
@@ -0,0 +1,72 @@
+package Hospital.system.config;
+
+import Hospital.system.Controller.MessageWebSocketHandler;
+import Hospital.system.Security.CurrentUserService;
+import Hospital.system.Security.JwtAuthFilter;
+import Hospital.system.Security.TokenBlacklistService;
+import Hospital.system.Service.MessageHub;
+import io.jsonwebtoken.Claims;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final MessageWebSocketHandler messageWebSocketHandler;
+    private final CurrentUserService currentUserService;
+    private final String path;
+    private final String[] allowedOrigins;
+
+    // no allowed origins means same-origin only
+    public WebSocketConfig(MessageWebSocketHandler messageWebSocketHandler,
+                           CurrentUserService currentUserService,
+                           MessageHub messageHub,
+                           TokenBlacklistService tokenBlacklistService,
+                           @Value("${messages.push.path:/ws/messages}") String path,
+                           @Value("${messages.push.allowed-origins:}") String[] allowedOrigins) {
+        this.messageWebSocketHandler = messageWebSocketHandler;
+        this.currentUserService = currentUserService;
+        this.path = path;
+        this.allowedOrigins = allowedOrigins;
+        tokenBlacklistService.onRevocation(messageHub::closeSessionsOf);
+    }
+
+    // the handshake is an ordinary request, JwtAuthFilter and SecurityConfig have already authorized it
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(messageWebSocketHandler, path)
+                .addInterceptors(new HandshakeInterceptor() {
+                    @Override
+                    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+                        if (!(request instanceof ServletServerHttpRequest servletRequest)
+                                || !(servletRequest.getServletRequest().getAttribute(JwtAuthFilter.CLAIMS)
+                                instanceof Claims claims)) {
+                            return false;
+                        }
+                        attributes.put(MessageWebSocketHandler.USER_ID, currentUserService.getCurrentUser().id());
+                        attributes.put(MessageWebSocketHandler.TOKEN_ID, TokenBlacklistService.tokenId(claims));
+                        attributes.put(MessageWebSocketHandler.TOKEN_EXPIRES_AT, claims.getExpiration().toInstant());
+                        return true;
+                    }
+
+                    @Override
+                    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                               WebSocketHandler wsHandler, Exception exception) {
+                    }
+                })
+                .setAllowedOriginPatterns(allowedOrigins);
+    }
+}
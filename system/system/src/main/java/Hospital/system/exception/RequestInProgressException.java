@@ -0,0 +1,15 @@
+package Hospital.system.exception;
+
+// 409 for a request whose first copy is still running; Retry-After says when to ask again
+public class RequestInProgressException extends ConflictException {
+    private final long retryAfterSeconds;
+
+    public RequestInProgressException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
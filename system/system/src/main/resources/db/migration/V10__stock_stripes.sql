@@ -0,0 +1,29 @@
+-- Striped stock snapshots. Stripe 0 stays medicines.stock/ledger_position, stripes 1..n are stock_stripes rows.
+-- Every ledger row now counts against the stripe it was logged on (stripe -1: orders served from a node's
+-- reservation, which do not move medicine stock), and withdrawals are inserts like every other change.
+alter table stock_movements add column stripe integer not null default 0;
+
+update stock_movements set stripe = -1
+where reservation_node is not null and reason not in ('RESERVED', 'RESERVATION_RELEASED');
+
+-- negative rows used to be in medicines.stock already; fold the pending positive ones so that
+-- stock + rows after ledger_position holds for every row
+update medicines m set
+    stock = stock + (select coalesce(sum(s.quantity), 0) from stock_movements s
+                     where s.medicine_id = m.id and s.id > m.ledger_position and s.quantity > 0),
+    ledger_position = coalesce((select max(s.id) from stock_movements s where s.medicine_id = m.id), 0);
+
+create table stock_stripes (
+    id bigint not null auto_increment,
+    medicine_id bigint not null,
+    stripe integer not null,
+    stock integer not null,
+    ledger_position bigint not null,
+    primary key (id)
+) engine=InnoDB;
+
+alter table stock_stripes add constraint uk_stock_stripes_medicine_stripe unique (medicine_id, stripe);
+
+-- a stripe's rows since its snapshot: medicine_id =, stripe =, id >
+create index idx_stock_movements_stripe on stock_movements (medicine_id, stripe, id);
+drop index idx_stock_movements_medicine_id on stock_movements;
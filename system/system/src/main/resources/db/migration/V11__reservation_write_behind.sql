@@ -0,0 +1,5 @@
+-- Orders served from a node's reservation are no longer logged one by one: the node logs what it served as one
+-- RESERVATION_SERVED row per medicine and flush. What a crashed node held is written off on its next start.
+alter table stock_movements modify column reason
+    enum ('ORDER_CANCELLED','ORDER_PLACED','ORDER_UPDATED','RESERVATION_RELEASED','RESERVATION_SERVED',
+          'RESERVATION_WRITTEN_OFF','RESERVED','RESTOCK') not null;
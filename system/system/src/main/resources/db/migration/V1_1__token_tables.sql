@@ -0,0 +1,23 @@
+-- Logged-out access tokens shared by all nodes, kept until the token would have expired anyway
+create table revoked_tokens (
+    expires_at datetime(6) not null,
+    id bigint not null auto_increment,
+    token_id varchar(36) not null,
+    primary key (id)
+) engine=InnoDB;
+
+alter table revoked_tokens add constraint UK2lgd8f0pk901tgbbyx8xsambx unique (token_id);
+
+-- Rotating refresh tokens, stored as hashes; a family is every token rotated from one login
+create table refresh_tokens (
+    revoked bit not null,
+    expires_at datetime(6) not null,
+    id bigint not null auto_increment,
+    user_id bigint not null,
+    family_id varchar(36) not null,
+    token_hash varchar(64) not null,
+    primary key (id)
+) engine=InnoDB;
+
+alter table refresh_tokens add constraint UKo2mlirhldriil2y7krapq4frt unique (token_hash);
+alter table refresh_tokens add constraint FK1lih5y2npsf8u5o3vhdb9y0os foreign key (user_id) references users (id) on delete cascade;
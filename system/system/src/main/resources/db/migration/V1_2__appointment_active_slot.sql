@@ -0,0 +1,16 @@
+-- appointment_time while an appointment holds its slot, null once cancelled (Appointment.activeSlot)
+alter table appointments add column active_slot datetime(6);
+
+-- existing appointments take their slot. If a slot was double booked back then,
+-- only the oldest booking gets the slot so the unique constraint holds.
+update appointments
+set active_slot = appointment_time
+where active_slot is null
+  and id in (select keep_id
+             from (select min(id) as keep_id
+                   from appointments
+                   where status <> 'CANCELLED'
+                   group by doctor_id, appointment_time
+                   having count(active_slot) = 0) keep);
+
+alter table appointments add constraint uk_appointments_doctor_slot unique (doctor_id, active_slot);
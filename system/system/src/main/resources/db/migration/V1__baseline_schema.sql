@@ -0,0 +1,95 @@
+-- Schema as Hibernate created it with ddl-auto=update before Flyway took over. Existing databases are
+-- baselined at this version (spring.flyway.baseline-on-migrate), so this script only runs on an empty
+-- database; everything added since is a later migration that runs on both.
+
+create table users (
+    id bigint not null auto_increment,
+    name varchar(20) not null,
+    email varchar(255) not null,
+    password varchar(255) not null,
+    role enum ('ADMIN','DOCTOR','PATIENT','PHARMACY'),
+    primary key (id)
+) engine=InnoDB;
+
+create table appointments (
+    appointment_time datetime(6) not null,
+    doctor_id bigint not null,
+    id bigint not null auto_increment,
+    patient_id bigint not null,
+    status enum ('BOOKED','CANCELLED','COMPLETED','PENDING'),
+    primary key (id)
+) engine=InnoDB;
+
+create table medicines (
+    price float(53),
+    stock integer,
+    id bigint not null auto_increment,
+    pharmacy_id bigint,
+    name varchar(255) not null,
+    primary key (id)
+) engine=InnoDB;
+
+create table messages (
+    id bigint not null auto_increment,
+    receiver_id bigint not null,
+    sender_id bigint not null,
+    time datetime(6),
+    content varchar(1000) not null,
+    primary key (id)
+) engine=InnoDB;
+
+create table orders (
+    total_price float(53) not null,
+    id bigint not null auto_increment,
+    order_time datetime(6),
+    patient_id bigint not null,
+    pharmacy_id bigint not null,
+    status enum ('CANCELLED','COMPLETED','PLACED','SHIPPED'),
+    primary key (id)
+) engine=InnoDB;
+
+create table order_items (
+    price float(53) not null,
+    quantity integer,
+    id bigint not null auto_increment,
+    medicine_id bigint not null,
+    order_id bigint not null,
+    primary key (id)
+) engine=InnoDB;
+
+create table patient_records (
+    created_at datetime(6) not null,
+    doctor_id bigint not null,
+    id bigint not null auto_increment,
+    patient_id bigint not null,
+    notes varchar(1000) not null,
+    primary key (id)
+) engine=InnoDB;
+
+create table prescriptions (
+    doctor_id bigint not null,
+    id bigint not null auto_increment,
+    medicine_id bigint not null,
+    patient_id bigint not null,
+    dosage varchar(255) not null,
+    instructions varchar(255) not null,
+    primary key (id)
+) engine=InnoDB;
+
+alter table medicines add constraint UKb6dv5kee0aoi485ijmu3n63ic unique (name);
+alter table users add constraint UK6dotkott2kjsp8vw4d0m25fb7 unique (email);
+
+alter table appointments add constraint FK6u6s6egu60m2cbdjno44jbipa foreign key (doctor_id) references users (id);
+alter table appointments add constraint FKopb2h9yhin1rb4dqote8bws6w foreign key (patient_id) references users (id);
+alter table medicines add constraint FKa04qsrf8uoa7k52vwkpu3ulqo foreign key (pharmacy_id) references users (id);
+alter table messages add constraint FKt05r0b6n0iis8u7dfna4xdh73 foreign key (receiver_id) references users (id);
+alter table messages add constraint FK4ui4nnwntodh6wjvck53dbk9m foreign key (sender_id) references users (id);
+alter table order_items add constraint FKg9h7rx5ml7y47afcha8tiftsk foreign key (medicine_id) references medicines (id);
+alter table order_items add constraint FKbioxgbv59vetrxe0ejfubep1w foreign key (order_id) references orders (id);
+alter table orders add constraint FKdkk3672x0oqs4lrc2pxcvmu2l foreign key (patient_id) references users (id);
+alter table orders add constraint FKa69gh8luwfhtcvugcahilsexi foreign key (pharmacy_id) references users (id);
+alter table patient_records add constraint FKnpd7pyl2kt1k1prkegva0mcjt foreign key (doctor_id) references users (id);
+alter table patient_records add constraint FKaakcsbx7406f91kfsmx16sgqs foreign key (patient_id) references users (id);
+alter table prescriptions add constraint FK2hdpvkpjjx3plf21194oxjskt foreign key (doctor_id) references users (id);
+alter table prescriptions add constraint FK2ee3ttqhbkr86e3xkgmnmnoqf foreign key (medicine_id) references medicines (id);
+alter table prescriptions add constraint FK7sia9wnwh9j5hwrta9k8q0rbq foreign key (patient_id) references users (id);
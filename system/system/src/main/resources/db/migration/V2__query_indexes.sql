@@ -0,0 +1,25 @@
+-- Composite indexes for the hot lookups. Equality columns come first, then the range or sort column,
+-- so each query reads one contiguous index range and never sorts.
+
+-- findAppointmentsForDoctorExcludingStatus and the calendar time queries: doctor_id =, appointment_time range,
+-- status <> filter. With status in the index the time-only queries are answered from the index alone.
+create index idx_appointments_doctor_time_status on appointments (doctor_id, appointment_time, status);
+
+-- findByDoctor_IdAndStatus / findByPatient_IdAndStatus (and findByPatient_Id through the prefix)
+create index idx_appointments_doctor_status on appointments (doctor_id, status);
+create index idx_appointments_patient_status on appointments (patient_id, status);
+
+-- findByPatient_IdAndStatus / findByPharmacy_IdAndStatus on orders
+create index idx_orders_patient_status on orders (patient_id, status);
+create index idx_orders_pharmacy_status on orders (pharmacy_id, status);
+
+-- findBySender_IdAndReceiver_IdOrderByTimeAsc: the conversation is read in index order
+create index idx_messages_sender_receiver_time on messages (sender_id, receiver_id, time);
+
+-- findByRole paged by id for the availability listing
+create index idx_users_role on users (role, id);
+
+-- scheduled purges and family revocation
+create index idx_refresh_tokens_expires_at on refresh_tokens (expires_at);
+create index idx_refresh_tokens_family on refresh_tokens (family_id);
+create index idx_revoked_tokens_expires_at on revoked_tokens (expires_at);
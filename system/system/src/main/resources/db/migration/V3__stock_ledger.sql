@@ -0,0 +1,17 @@
+-- Append-only stock ledger. Orders still take stock with a guarded decrement of medicines.stock and log it here;
+-- returns (cancellations, edits) and restocks are only inserted here and added to medicines.stock later by the
+-- compactor. Available stock = medicines.stock + positive movements with id > medicines.ledger_position.
+alter table medicines add column ledger_position bigint not null default 0;
+
+create table stock_movements (
+    id bigint not null auto_increment,
+    medicine_id bigint not null,
+    quantity integer not null,
+    reason enum ('ORDER_CANCELLED','ORDER_PLACED','ORDER_UPDATED','RESTOCK') not null,
+    order_id bigint,
+    created_at datetime(6) not null,
+    primary key (id)
+) engine=InnoDB;
+
+-- unfolded movements of one medicine: medicine_id =, id > ledger_position
+create index idx_stock_movements_medicine_id on stock_movements (medicine_id, id);
@@ -0,0 +1,20 @@
+-- Per-node stock reservations (medicines.reservation.enabled). A node takes chunks off medicines.stock
+-- (RESERVED rows), serves orders for them from memory and logs every order with its reservation_node.
+-- stock_reservations caches what each node holds as of the ledger rows up to flushed_through.
+create table stock_reservations (
+    id bigint not null auto_increment,
+    node_id varchar(64) not null,
+    medicine_id bigint not null,
+    quantity integer not null,
+    flushed_through bigint not null,
+    primary key (id)
+) engine=InnoDB;
+
+alter table stock_reservations add constraint uk_stock_reservations_node_medicine unique (node_id, medicine_id);
+
+alter table stock_movements add column reservation_node varchar(64);
+alter table stock_movements modify column reason
+    enum ('ORDER_CANCELLED','ORDER_PLACED','ORDER_UPDATED','RESERVATION_RELEASED','RESERVED','RESTOCK') not null;
+
+-- a node's rows since its last flush: reservation_node =, id >
+create index idx_stock_movements_reservation on stock_movements (reservation_node, id);
@@ -0,0 +1,14 @@
+-- First responses to requests sent with an Idempotency-Key, shared by all nodes (IdempotencyService).
+create table idempotency_keys (
+    id bigint not null auto_increment,
+    key_hash varchar(64) not null,
+    request_hash varchar(64) not null,
+    response_status integer,
+    response_body longtext,
+    expires_at datetime(6) not null,
+    primary key (id)
+) engine=InnoDB;
+
+alter table idempotency_keys add constraint uk_idempotency_keys_key_hash unique (key_hash);
+
+create index idx_idempotency_keys_expires_at on idempotency_keys (expires_at);
@@ -0,0 +1,13 @@
+-- Both directions of a doctor-patient thread share one canonical key (lower user id first), so a conversation
+-- page is one range of idx_messages_conversation_time instead of two queries merged and sorted in Java.
+alter table messages add column conversation_key varchar(40);
+update messages set conversation_key = concat(least(sender_id, receiver_id), ':', greatest(sender_id, receiver_id));
+alter table messages modify conversation_key varchar(40) not null;
+
+-- pages are read newest first by (time, id); the id breaks ties between messages of the same microsecond
+create index idx_messages_conversation_time on messages (conversation_key, time, id);
+
+-- a user's messages: sender_id = ? or receiver_id = ?, each side read in (time, id) order
+create index idx_messages_sender_time on messages (sender_id, time, id);
+create index idx_messages_receiver_time on messages (receiver_id, time, id);
+drop index idx_messages_sender_receiver_time on messages;
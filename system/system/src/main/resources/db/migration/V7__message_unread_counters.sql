@@ -0,0 +1,19 @@
+-- Read receipts: read_at is set when the receiver acknowledges a message. Messages sent before this migration
+-- count as read, so every counter starts at zero.
+alter table messages add column read_at datetime(6);
+update messages set read_at = time;
+
+-- marking a thread read touches only its unread rows: receiver_id =, sender_id =, read_at is null, time <=
+create index idx_messages_unread on messages (receiver_id, sender_id, read_at, time);
+
+-- Unread messages per receiver and sender, kept up to date by sendMessage and mark-read in their own transactions,
+-- so a badge is one range of uk_message_unread_counters_receiver_sender instead of a count over messages.
+create table message_unread_counters (
+    id bigint not null auto_increment,
+    receiver_id bigint not null,
+    sender_id bigint not null,
+    unread_count integer not null,
+    primary key (id)
+) engine=InnoDB;
+
+alter table message_unread_counters add constraint uk_message_unread_counters_receiver_sender unique (receiver_id, sender_id);
@@ -0,0 +1,27 @@
+-- The latest message of every conversation, upserted by sendMessage, so an inbox page reads one row per
+-- conversation instead of every message. A user's rows are on either side of the pair, each side one range
+-- of its (user, last_time, last_message_id) index.
+create table conversation_heads (
+    id bigint not null auto_increment,
+    conversation_key varchar(40) not null,
+    lower_user_id bigint not null,
+    higher_user_id bigint not null,
+    last_message_id bigint not null,
+    last_sender_id bigint not null,
+    preview varchar(100) not null,
+    last_time datetime(6) not null,
+    primary key (id)
+) engine=InnoDB;
+
+alter table conversation_heads add constraint uk_conversation_heads_key unique (conversation_key);
+
+insert into conversation_heads (conversation_key, lower_user_id, higher_user_id, last_message_id, last_sender_id,
+                                preview, last_time)
+select m.conversation_key, least(m.sender_id, m.receiver_id), greatest(m.sender_id, m.receiver_id), m.id,
+       m.sender_id, left(m.content, 100), m.time
+from messages m
+where not exists (select 1 from messages n where n.conversation_key = m.conversation_key
+                  and (n.time > m.time or (n.time = m.time and n.id > m.id)));
+
+create index idx_conversation_heads_lower_time on conversation_heads (lower_user_id, last_time, last_message_id);
+create index idx_conversation_heads_higher_time on conversation_heads (higher_user_id, last_time, last_message_id);
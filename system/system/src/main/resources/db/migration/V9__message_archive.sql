@@ -0,0 +1,3 @@
+-- The archiver takes the oldest messages in (time, id) order and deletes everything up to the last one it wrote
+-- to a segment file; both are one range of this index instead of a scan of the whole table.
+create index idx_messages_time on messages (time, id);
@@ -110,6 +110,56 @@ public class AuthControllerIntegrationTest {
                 .andExpect(jsonPath("$.message").value("Logged out successfully"));
     }
 
+    @Transactional
+    @Test
+    void testRefreshRotatesTokenAndRejectsReuse() throws Exception {
+        UserRegistrationDto registerDto = new UserRegistrationDto();
+        registerDto.setName("Carol");
+        registerDto.setEmail("carol@example.com");
+        registerDto.setPassword("password123");
+        registerDto.setRole("DOCTOR");
+
+        mockMvc.perform(post("/api/auth/register")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(registerDto)))
+                .andExpect(status().isCreated());
+
+        LoginDto loginDto = new LoginDto();
+        loginDto.setEmail(registerDto.getEmail());
+        loginDto.setPassword(registerDto.getPassword());
+
+        MvcResult loginResult = mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(loginDto)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.refreshToken").exists())
+                .andReturn();
+        String firstRefresh = objectMapper.readTree(loginResult.getResponse().getContentAsString())
+                .get("refreshToken").asText();
+
+        MvcResult refreshResult = mockMvc.perform(post("/api/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"refreshToken\":\"" + firstRefresh + "\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.token").exists())
+                .andExpect(jsonPath("$.email").value(registerDto.getEmail()))
+                .andExpect(jsonPath("$.role").value("DOCTOR"))
+                .andReturn();
+        String secondRefresh = objectMapper.readTree(refreshResult.getResponse().getContentAsString())
+                .get("refreshToken").asText();
+
+        // replaying the spent token revokes the whole chain, including the one just issued
+        mockMvc.perform(post("/api/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"refreshToken\":\"" + firstRefresh + "\"}"))
+                .andExpect(status().isUnauthorized());
+
+        mockMvc.perform(post("/api/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"refreshToken\":\"" + secondRefresh + "\"}"))
+                .andExpect(status().isUnauthorized());
+    }
+
     @Transactional
     @Test
     void testRegisterUserWithInvalidRole() throws Exception {
@@ -1,7 +1,10 @@
 package Hospital.system.Controller;
 
+import Hospital.system.DTO.DailyAvailabilityDto;
 import Hospital.system.DTO.DoctorAvailabilityDto;
+import Hospital.system.DTO.DoctorAvailabilityRangeDto;
 import Hospital.system.Service.DoctorAvailabilityService;
+import Hospital.system.exception.BadRequestException;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -16,6 +19,7 @@ import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
@@ -44,7 +48,7 @@ class DoctorAvailabilityControllerTest {
                 )
         );
 
-        when(availabilityService.getAllDoctorsAvailability(any(LocalDate.class)))
+        when(availabilityService.getAllDoctorsAvailability(any(LocalDate.class), isNull(), isNull(), isNull()))
                 .thenReturn(List.of(dto));
 
         mockMvc.perform(get("/api/patients/available-doctors")
@@ -56,6 +60,27 @@ class DoctorAvailabilityControllerTest {
                 .andExpect(jsonPath("$[0].availableTimes[1]").value("2025-09-01T11:00:00"));
     }
 
+    @Test
+    void testGetAllDoctorsAvailability_WithFilterAndPaging() throws Exception {
+        DoctorAvailabilityDto dto = new DoctorAvailabilityDto(
+                3L,
+                "Dr. Sara",
+                List.of(LocalDateTime.of(2025, 9, 1, 12, 0))
+        );
+
+        when(availabilityService.getAllDoctorsAvailability(LocalDate.of(2025, 9, 1), List.of(3L, 4L), 1, 20))
+                .thenReturn(List.of(dto));
+
+        mockMvc.perform(get("/api/patients/available-doctors")
+                        .param("day", "2025-09-01")
+                        .param("doctorIds", "3,4")
+                        .param("page", "1")
+                        .param("size", "20"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].doctorId").value(3L))
+                .andExpect(jsonPath("$[0].availableTimes[0]").value("2025-09-01T12:00:00"));
+    }
+
     @Test
     void testGetDoctorAvailabilityById() throws Exception {
         DoctorAvailabilityDto dto = new DoctorAvailabilityDto(
@@ -78,4 +103,41 @@ class DoctorAvailabilityControllerTest {
                 .andExpect(jsonPath("$.availableTimes[0]").value("2025-09-01T09:00:00"))
                 .andExpect(jsonPath("$.availableTimes[1]").value("2025-09-01T14:00:00"));
     }
+
+    @Test
+    void testGetDoctorsAvailabilityRange_Success() throws Exception {
+        DoctorAvailabilityRangeDto dto = new DoctorAvailabilityRangeDto(
+                5L,
+                "Dr. Mona",
+                List.of(
+                        new DailyAvailabilityDto(LocalDate.of(2025, 9, 1), List.of(LocalDateTime.of(2025, 9, 1, 9, 0))),
+                        new DailyAvailabilityDto(LocalDate.of(2025, 9, 2), List.of())
+                )
+        );
+
+        when(availabilityService.getDoctorsAvailabilityRange(
+                eq(LocalDate.of(2025, 9, 1)), eq(LocalDate.of(2025, 9, 2)), isNull(), isNull(), isNull()))
+                .thenReturn(List.of(dto));
+
+        mockMvc.perform(get("/api/patients/available-doctors/range")
+                        .param("from", "2025-09-01")
+                        .param("to", "2025-09-02"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].doctorId").value(5L))
+                .andExpect(jsonPath("$[0].days[0].day").value("2025-09-01"))
+                .andExpect(jsonPath("$[0].days[0].availableTimes[0]").value("2025-09-01T09:00:00"))
+                .andExpect(jsonPath("$[0].days[1].availableTimes").isEmpty());
+    }
+
+    @Test
+    void testGetDoctorsAvailabilityRange_RangeTooLong() throws Exception {
+        when(availabilityService.getDoctorsAvailabilityRange(any(LocalDate.class), any(LocalDate.class),
+                isNull(), isNull(), isNull()))
+                .thenThrow(new BadRequestException("Range must not exceed 31 days"));
+
+        mockMvc.perform(get("/api/patients/available-doctors/range")
+                        .param("from", "2025-09-01")
+                        .param("to", "2025-12-01"))
+                .andExpect(status().isBadRequest());
+    }
 }
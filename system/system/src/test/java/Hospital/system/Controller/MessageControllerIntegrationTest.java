@@ -1,6 +1,11 @@
 package Hospital.system.Controller;
 
+import Hospital.system.DTO.InboxEntryDto;
+import Hospital.system.DTO.MarkReadDto;
 import Hospital.system.DTO.MessageDto;
+import Hospital.system.DTO.UnreadCount;
+import Hospital.system.DTO.UnreadSummaryDto;
+import Hospital.system.Service.MessageBatchWriter;
 import Hospital.system.Service.MessageService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,8 +17,10 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
@@ -32,6 +39,9 @@ class MessageControllerIntegrationTest {
     @MockBean
     private MessageService messageService;
 
+    @MockBean
+    private MessageBatchWriter messageBatchWriter;
+
     private MessageDto sampleMessage;
 
     @BeforeEach
@@ -48,21 +58,46 @@ class MessageControllerIntegrationTest {
         Mockito.when(messageService.sendMessage(any(MessageDto.class)))
                 .thenReturn(sampleMessage);
 
-        mockMvc.perform(post("/api/messages")
+        MvcResult result = mockMvc.perform(post("/api/messages")
                         .contentType("application/json")
                         .content("""
                                 {"senderId":10,"receiverId":20,"content":"Hello Patient"}
                                 """))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.senderId").value(10))
                 .andExpect(jsonPath("$.receiverId").value(20))
                 .andExpect(jsonPath("$.content").value("Hello Patient"));
     }
 
+    @Test
+    @WithMockUser(roles = "DOCTOR")
+    void testSendMessage_GroupCommit() throws Exception {
+        Mockito.when(messageBatchWriter.isEnabled()).thenReturn(true);
+        Mockito.when(messageBatchWriter.submit(any(MessageDto.class)))
+                .thenReturn(CompletableFuture.completedFuture(sampleMessage));
+
+        MvcResult result = mockMvc.perform(post("/api/messages")
+                        .contentType("application/json")
+                        .content("""
+                                {"senderId":10,"receiverId":20,"content":"Hello Patient"}
+                                """))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content").value("Hello Patient"));
+        Mockito.verify(messageService, Mockito.never()).sendMessage(any());
+    }
+
     @Test
     @WithMockUser(roles = "PATIENT")
     void testGetMessagesByUser() throws Exception {
-        Mockito.when(messageService.getMessagesByUser(20L))
+        Mockito.when(messageService.getMessagesByUser(20L, null, null, null))
                 .thenReturn(List.of(sampleMessage));
 
         mockMvc.perform(get("/api/messages/user/20"))
@@ -80,7 +115,7 @@ class MessageControllerIntegrationTest {
         reply.setReceiverId(10L);
         reply.setContent("I’m fine");
 
-        Mockito.when(messageService.getConversation(10L, 20L))
+        Mockito.when(messageService.getConversation(10L, 20L, null, null, null))
                 .thenReturn(List.of(sampleMessage, reply));
 
         mockMvc.perform(get("/api/messages/conversation")
@@ -90,4 +125,70 @@ class MessageControllerIntegrationTest {
                 .andExpect(jsonPath("$[0].content").value("Hello Patient"))
                 .andExpect(jsonPath("$[1].content").value("I’m fine"));
     }
+
+    @Test
+    @WithMockUser(roles = "PATIENT")
+    void testGetConversation_OlderPage() throws Exception {
+        Mockito.when(messageService.getConversation(10L, 20L, "2025-09-01T10:15:30.123456_9", null, 20))
+                .thenReturn(List.of(sampleMessage));
+
+        mockMvc.perform(get("/api/messages/conversation")
+                        .param("senderId", "10")
+                        .param("receiverId", "20")
+                        .param("before", "2025-09-01T10:15:30.123456_9")
+                        .param("size", "20"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].content").value("Hello Patient"));
+    }
+
+    @Test
+    @WithMockUser(roles = "DOCTOR")
+    void testGetInbox() throws Exception {
+        InboxEntryDto entry = new InboxEntryDto();
+        entry.setOtherUserId(20L);
+        entry.setPreview("Hello Patient");
+        Mockito.when(messageService.getInbox("2025-09-01T10:15:30.123456_9", 20))
+                .thenReturn(List.of(entry));
+
+        mockMvc.perform(get("/api/messages/inbox")
+                        .param("before", "2025-09-01T10:15:30.123456_9")
+                        .param("size", "20"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].otherUserId").value(20))
+                .andExpect(jsonPath("$[0].preview").value("Hello Patient"));
+    }
+
+    @Test
+    @WithMockUser(roles = "PATIENT")
+    void testGetUnreadSummary() throws Exception {
+        Mockito.when(messageService.getUnreadSummary())
+                .thenReturn(new UnreadSummaryDto(3, List.of(new UnreadCount(10L, 3))));
+
+        mockMvc.perform(get("/api/messages/unread"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(3))
+                .andExpect(jsonPath("$.senders[0].senderId").value(10))
+                .andExpect(jsonPath("$.senders[0].unread").value(3));
+    }
+
+    @Test
+    @WithMockUser(roles = "PATIENT")
+    void testMarkRead() throws Exception {
+        mockMvc.perform(patch("/api/messages/read")
+                        .contentType("application/json")
+                        .content("""
+                                {"senderId":10,"upToMessageId":123}
+                                """))
+                .andExpect(status().isNoContent());
+
+        Mockito.verify(messageService).markRead(Mockito.argThat((MarkReadDto dto) ->
+                dto.getSenderId() == 10L && dto.getUpToMessageId() == 123L));
+    }
+
+    @Test
+    @WithMockUser(roles = "PHARMACY")
+    void testGetUnreadSummary_OtherRoles_AreForbidden() throws Exception {
+        mockMvc.perform(get("/api/messages/unread"))
+                .andExpect(status().isForbidden());
+    }
 }
@@ -0,0 +1,177 @@
+package Hospital.system.Controller;
+
+import Hospital.system.DTO.MessageDto;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.JwtAuthFilter;
+import Hospital.system.Security.JwtUtil;
+import Hospital.system.Security.TokenBlacklistService;
+import Hospital.system.Service.MessageHub;
+import Hospital.system.Service.MessageService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static Hospital.system.TestUsers.user;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(locations = "classpath:application-test.properties")
+class MessageWebSocketIntegrationTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private MessageHub messageHub;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private TokenBlacklistService tokenBlacklistService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final StandardWebSocketClient client = new StandardWebSocketClient();
+    private User doctor;
+    private User patient;
+
+    @BeforeEach
+    void setUp() {
+        doctor = userRepository.save(user("Socket Doctor", "socket.doctor@test.com", Role.DOCTOR));
+        patient = userRepository.save(user("Socket Patient", "socket.patient@test.com", Role.PATIENT));
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM messages WHERE sender_id = ? OR receiver_id = ?", doctor.getId(), doctor.getId());
+        userRepository.deleteAll(List.of(doctor, patient));
+    }
+
+    @Test
+    void sentMessage_IsPushedToTheReceiversOpenSessions() throws Exception {
+        BlockingQueue<String> patientFrames = new LinkedBlockingQueue<>();
+        BlockingQueue<String> doctorFrames = new LinkedBlockingQueue<>();
+        WebSocketSession patientSession = connect(patient, patientFrames);
+        WebSocketSession doctorSession = connect(doctor, doctorFrames);
+        awaitConnections(2);
+
+        MessageDto dto = new MessageDto();
+        dto.setSenderId(doctor.getId());
+        dto.setReceiverId(patient.getId());
+        dto.setContent("Please book a follow-up");
+        MessageDto sent = messageService.sendMessage(dto);
+
+        String frame = patientFrames.poll(5, TimeUnit.SECONDS);
+        assertNotNull(frame, "no message pushed to the patient");
+        MessageDto pushed = objectMapper.readValue(frame, MessageDto.class);
+        assertEquals(sent.getId(), pushed.getId());
+        assertEquals(sent.getCursor(), pushed.getCursor());
+        assertEquals("Please book a follow-up", pushed.getContent());
+        assertNull(doctorFrames.poll(200, TimeUnit.MILLISECONDS));
+
+        patientSession.close();
+        doctorSession.close();
+        awaitConnections(0);
+    }
+
+    @Test
+    void handshake_WithoutAValidToken_IsRejected() {
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> client.execute(new TextWebSocketHandler(), headers("not-a-jwt"), uri(""))
+                        .get(5, TimeUnit.SECONDS));
+        assertNotNull(failure.getCause());
+        assertEquals(0, messageHub.connections());
+    }
+
+    @Test
+    void handshake_WithTheTokenInTheQueryString_IsRejected() {
+        String token = jwtUtil.generateToken(patient.getId(), patient.getEmail(), patient.getRole().name());
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> client.execute(new TextWebSocketHandler(), new WebSocketHttpHeaders(),
+                        uri("?access_token=" + token)).get(5, TimeUnit.SECONDS));
+        assertNotNull(failure.getCause());
+        assertEquals(0, messageHub.connections());
+    }
+
+    @Test
+    void logout_ClosesTheSessionsOpenedWithTheToken() throws Exception {
+        String token = jwtUtil.generateToken(patient.getId(), patient.getEmail(), patient.getRole().name());
+        BlockingQueue<CloseStatus> closed = new LinkedBlockingQueue<>();
+        WebSocketSession session = client.execute(new TextWebSocketHandler() {
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+                closed.add(status);
+            }
+        }, headers(token), uri("")).get(5, TimeUnit.SECONDS);
+        assertEquals(JwtAuthFilter.TOKEN_SUBPROTOCOL, session.getAcceptedProtocol());
+        awaitConnections(1);
+
+        tokenBlacklistService.blacklistToken(token);
+
+        CloseStatus status = closed.poll(5, TimeUnit.SECONDS);
+        assertNotNull(status, "session was not closed on logout");
+        assertEquals(CloseStatus.POLICY_VIOLATION.getCode(), status.getCode());
+        awaitConnections(0);
+    }
+
+    private WebSocketSession connect(User user, BlockingQueue<String> frames) throws Exception {
+        String token = jwtUtil.generateToken(user.getId(), user.getEmail(), user.getRole().name());
+        return client.execute(new TextWebSocketHandler() {
+            @Override
+            protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+                frames.add(message.getPayload());
+            }
+        }, headers(token), uri("")).get(5, TimeUnit.SECONDS);
+    }
+
+    // what a browser sends for new WebSocket(url, ["access_token", token])
+    private static WebSocketHttpHeaders headers(String token) {
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.setSecWebSocketProtocol(List.of(JwtAuthFilter.TOKEN_SUBPROTOCOL, token));
+        return headers;
+    }
+
+    private URI uri(String query) {
+        return URI.create("ws://localhost:" + port + "/ws/messages" + query);
+    }
+
+    // the server registers a session right after the handshake, which can trail the client's view a little
+    private void awaitConnections(int expected) throws InterruptedException {
+        for (int i = 0; i < 100 && messageHub.connections() != expected; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(expected, messageHub.connections());
+    }
+}
@@ -2,6 +2,7 @@ package Hospital.system.Controller;
 
 import Hospital.system.DTO.OrderDto;
 import Hospital.system.DTO.OrderItemDto;
+import Hospital.system.DTO.OrderTransitionResultDto;
 import Hospital.system.Entity.OrderStatus;
 import Hospital.system.Service.OrderService;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -236,4 +237,53 @@ class OrderControllerIntegrationTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.status").value("COMPLETED"));
     }
+
+    @Test
+    @WithMockUser(roles = "PHARMACY")
+    void shipOrders_ShouldReturnResultPerId() throws Exception {
+        Mockito.when(orderService.shipOrders(List.of(1L, 2L))).thenReturn(List.of(
+                new OrderTransitionResultDto(1L, true, "SHIPPED", null),
+                new OrderTransitionResultDto(2L, false, "COMPLETED", "You can't ship order with status COMPLETED")));
+
+        mockMvc.perform(patch("/api/orders/pharmacy/ship")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"orderIds\": [1, 2]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].updated").value(true))
+                .andExpect(jsonPath("$[1].updated").value(false))
+                .andExpect(jsonPath("$[1].status").value("COMPLETED"));
+    }
+
+    @Test
+    @WithMockUser(roles = "PATIENT")
+    void completeOrders_AsPatient_ShouldBeForbidden() throws Exception {
+        mockMvc.perform(patch("/api/orders/pharmacy/complete")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"orderIds\": [1]}"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    @WithMockUser(username = "retrying.patient@test.com", roles = "PATIENT")
+    void createOrder_RetriedWithSameIdempotencyKey_ShouldReplayFirstResponse() throws Exception {
+        Mockito.when(orderService.createOrder(any(OrderDto.class))).thenReturn(sampleOrder);
+        String body = objectMapper.writeValueAsString(sampleOrder);
+
+        mockMvc.perform(post("/api/orders/patient")
+                        .header("Idempotency-Key", "order-retry-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"));
+
+        mockMvc.perform(post("/api/orders/patient")
+                        .header("Idempotency-Key", "order-retry-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.pharmacyId").value(20));
+
+        Mockito.verify(orderService, Mockito.times(1)).createOrder(any(OrderDto.class));
+    }
 }
@@ -0,0 +1,74 @@
+package Hospital.system.Entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeSortedIdGeneratorTest {
+
+    @Test
+    void ids_IncreaseAndStayExactInJavaScript() {
+        TimeSortedIdGenerator generator = new TimeSortedIdGenerator(3);
+        long previous = 0;
+        // well past 128 ids per millisecond
+        for (int i = 0; i < 100_000; i++) {
+            long id = generator.next();
+            assertTrue(id > previous);
+            assertTrue(id < 1L << 53);
+            previous = id;
+        }
+    }
+
+    @Test
+    void ids_CarryTheirNodeAndTime() {
+        long before = System.currentTimeMillis();
+        long id = new TimeSortedIdGenerator(17).next();
+
+        int shift = TimeSortedIdGenerator.NODE_BITS + TimeSortedIdGenerator.SEQUENCE_BITS;
+        assertEquals(17, (id >>> TimeSortedIdGenerator.SEQUENCE_BITS) & ((1 << TimeSortedIdGenerator.NODE_BITS) - 1));
+        assertTrue((id >>> shift) + TimeSortedIdGenerator.EPOCH >= before);
+    }
+
+    @Test
+    void nodes_NeverHandOutTheSameId() {
+        TimeSortedIdGenerator first = new TimeSortedIdGenerator(0);
+        TimeSortedIdGenerator second = new TimeSortedIdGenerator(1);
+        for (int i = 0; i < 1000; i++) {
+            assertNotEquals(first.next(), second.next());
+        }
+    }
+
+    @Test
+    void concurrentCallers_GetUniqueIds() throws Exception {
+        TimeSortedIdGenerator generator = new TimeSortedIdGenerator(5);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            workers.add(executor.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    ids.add(generator.next());
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        executor.shutdown();
+        assertEquals(160_000, ids.size());
+    }
+
+    @Test
+    void nodeIdOutOfRange_IsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TimeSortedIdGenerator(32));
+        assertThrows(IllegalArgumentException.class, () -> new TimeSortedIdGenerator(-1));
+    }
+}
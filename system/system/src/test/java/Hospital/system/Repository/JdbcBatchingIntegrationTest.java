@@ -0,0 +1,179 @@
+package Hospital.system.Repository;
+
+import Hospital.system.Entity.Medicine;
+import Hospital.system.Entity.Order;
+import Hospital.system.Entity.OrderItem;
+import Hospital.system.Entity.OrderStatus;
+import Hospital.system.Entity.PatientRecord;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static Hospital.system.TestUsers.user;
+import static org.junit.jupiter.api.Assertions.*;
+
+// ids are assigned before the insert, so cascades and saveAll go out as JDBC batches
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import(JdbcBatchingIntegrationTest.RoundTripCounter.class)
+class JdbcBatchingIntegrationTest {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private PatientRecordRepository patientRecordRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private RoundTripCounter roundTrips;
+
+    private User pharmacy;
+    private User patient;
+    private User doctor;
+    private final List<Medicine> medicines = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        pharmacy = userRepository.save(user("Batch Pharmacy", "batch.pharmacy@test.com", Role.PHARMACY));
+        patient = userRepository.save(user("Batch Patient", "batch.patient@test.com", Role.PATIENT));
+        doctor = userRepository.save(user("Batch Doctor", "batch.doctor@test.com", Role.DOCTOR));
+        for (int i = 0; i < 40; i++) {
+            medicines.add(Medicine.builder().name("BatchMedicine" + i).price(3.0).stock(10).pharmacy(pharmacy).build());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        orderRepository.deleteAll(orderRepository.findByPharmacy_Id(pharmacy.getId()));
+        patientRecordRepository.deleteAll(patientRecordRepository.findByPatient_Id(patient.getId()));
+        medicineRepository.deleteAll(medicines);
+        userRepository.deleteAll(List.of(doctor, patient, pharmacy));
+    }
+
+    @Test
+    void orderWithFortyItems_IsInsertedInTwoStatements() {
+        medicineRepository.saveAll(medicines);
+        Order order = Order.builder()
+                .patient(patient)
+                .pharmacy(pharmacy)
+                .status(OrderStatus.PLACED)
+                .totalPrice(120.0)
+                .build();
+        List<OrderItem> items = new ArrayList<>();
+        for (Medicine medicine : medicines) {
+            items.add(OrderItem.builder().order(order).medicine(medicine).quantity(1).price(3.0).build());
+        }
+        order.setItems(items);
+
+        Statistics statistics = statistics();
+        roundTrips.reset();
+        orderRepository.save(order);
+
+        // one insert for the order, one batch for its 40 items
+        assertEquals(41, statistics.getEntityInsertCount());
+        assertEquals(2, roundTrips.count());
+    }
+
+    @Test
+    void bulkImport_IsSentInBatchesOfFifty() {
+        List<PatientRecord> records = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            records.add(PatientRecord.builder().patient(patient).doctor(doctor).notes("Imported visit " + i).build());
+        }
+
+        Statistics statistics = statistics();
+        roundTrips.reset();
+        patientRecordRepository.saveAll(records);
+
+        assertEquals(500, statistics.getEntityInsertCount());
+        assertEquals(10, roundTrips.count());
+        assertEquals(500, patientRecordRepository.findByPatient_Id(patient.getId()).size());
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+    // counts statements the test thread sends to the database; a JDBC batch is one round-trip
+    @TestConfiguration
+    static class RoundTripCounter implements BeanPostProcessor {
+
+        private final AtomicInteger count = new AtomicInteger();
+        private volatile Thread counted;
+
+        void reset() {
+            counted = Thread.currentThread();
+            count.set(0);
+        }
+
+        int count() {
+            return count.get();
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            return bean instanceof DataSource ? proxy(DataSource.class, bean) : bean;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T proxy(Class<T> type, Object target) {
+            return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                if (method.getName().startsWith("execute") && target instanceof Statement
+                        && Thread.currentThread() == counted) {
+                    count.incrementAndGet();
+                }
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (result instanceof Connection) {
+                    return proxy(Connection.class, result);
+                }
+                if (result instanceof PreparedStatement) {
+                    return proxy(PreparedStatement.class, result);
+                }
+                if (result instanceof Statement) {
+                    return proxy(Statement.class, result);
+                }
+                return result;
+            });
+        }
+    }
+}
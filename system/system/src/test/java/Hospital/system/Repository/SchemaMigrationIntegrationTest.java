@@ -0,0 +1,125 @@
+package Hospital.system.Repository;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.TestPropertySource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// runs the Flyway migrations on H2 in MySQL mode and boots with ddl-auto=validate, as production does
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "spring.datasource.url=jdbc:h2:mem:migrations;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.flyway.enabled=true",
+        "spring.jpa.hibernate.ddl-auto=validate",
+        "spring.jpa.show-sql=false"
+})
+class SchemaMigrationIntegrationTest {
+
+    @Autowired
+    private Flyway flyway;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    void migrationsApplyAndMatchTheEntityMappings() throws SQLException {
+        // the context only starts if Hibernate validated the migrated schema
+        assertEquals(0, flyway.info().pending().length);
+
+        Set<String> indexes = indexNames(dataSource, "appointments");
+        assertTrue(indexes.contains("idx_appointments_doctor_time_status"));
+        assertTrue(indexes.contains("idx_appointments_doctor_status"));
+        assertTrue(indexes.contains("idx_appointments_patient_status"));
+        assertFalse(indexes.contains("idx_appointments_doctor_time"));
+        assertTrue(indexNames(dataSource, "orders").contains("idx_orders_pharmacy_status"));
+        Set<String> messageIndexes = indexNames(dataSource, "messages");
+        assertTrue(messageIndexes.contains("idx_messages_conversation_time"));
+        assertTrue(messageIndexes.contains("idx_messages_sender_time"));
+        assertTrue(messageIndexes.contains("idx_messages_receiver_time"));
+        assertFalse(messageIndexes.contains("idx_messages_sender_receiver_time"));
+        assertTrue(messageIndexes.contains("idx_messages_unread"));
+        assertTrue(messageIndexes.contains("idx_messages_time"));
+        Set<String> headIndexes = indexNames(dataSource, "conversation_heads");
+        assertTrue(headIndexes.contains("idx_conversation_heads_lower_time"));
+        assertTrue(headIndexes.contains("idx_conversation_heads_higher_time"));
+    }
+
+    @Test
+    void databaseCreatedByHibernateIsBaselinedAndMigratedToTheSameSchema() throws SQLException {
+        // a database from before Flyway: the V1 tables without a history table
+        DataSource legacy = new DriverManagerDataSource(
+                "jdbc:h2:mem:legacy;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("db/migration/V1__baseline_schema.sql")).execute(legacy);
+
+        // rows from back then, including a double booking
+        JdbcTemplate jdbc = new JdbcTemplate(legacy);
+        jdbc.update("insert into users (id, name, email, password, role) values (1, 'Doctor', 'd@test.com', 'x', 'DOCTOR')");
+        jdbc.update("insert into users (id, name, email, password, role) values (2, 'Patient', 'p@test.com', 'x', 'PATIENT')");
+        String appointment = "insert into appointments (id, doctor_id, patient_id, appointment_time, status) values (?, 1, 2, ?, ?)";
+        jdbc.update(appointment, 1, "2030-01-01 09:00:00", "BOOKED");
+        jdbc.update(appointment, 2, "2030-01-01 09:00:00", "PENDING");
+        jdbc.update(appointment, 3, "2030-01-01 10:00:00", "CANCELLED");
+        jdbc.update(appointment, 4, "2030-01-01 11:00:00", "COMPLETED");
+
+        // as configured in application.properties
+        Flyway baselined = Flyway.configure().dataSource(legacy).baselineOnMigrate(true).baselineVersion("1").load();
+        baselined.migrate();
+
+        assertEquals(0, baselined.info().pending().length);
+        // only the oldest booking of a double-booked slot holds it
+        List<Long> holdingSlots = jdbc.queryForList(
+                "select id from appointments where active_slot is not null order by id", Long.class);
+        assertEquals(List.of(1L, 4L), holdingSlots);
+        // every table and column the validated, migrated-from-empty schema has
+        assertEquals(columns(dataSource), columns(legacy));
+        for (String table : List.of("appointments", "messages", "refresh_tokens", "revoked_tokens")) {
+            assertEquals(queryIndexNames(dataSource, table), queryIndexNames(legacy, table), table);
+        }
+    }
+
+    private static Set<String> columns(DataSource dataSource) throws SQLException {
+        Set<String> columns = new TreeSet<>();
+        try (Connection connection = dataSource.getConnection();
+             ResultSet rs = connection.getMetaData().getColumns(null, "public", null, null)) {
+            while (rs.next()) {
+                columns.add(rs.getString("TABLE_NAME") + "." + rs.getString("COLUMN_NAME") + " "
+                        + rs.getString("TYPE_NAME") + " " + rs.getString("IS_NULLABLE"));
+            }
+        }
+        return columns;
+    }
+
+    // the named indexes of the migrations; H2 numbers the ones behind constraints per database
+    private static Set<String> queryIndexNames(DataSource dataSource, String table) throws SQLException {
+        Set<String> names = new TreeSet<>(indexNames(dataSource, table));
+        names.removeIf(name -> !name.startsWith("idx_"));
+        return names;
+    }
+
+    private static Set<String> indexNames(DataSource dataSource, String table) throws SQLException {
+        Set<String> names = new HashSet<>();
+        try (Connection connection = dataSource.getConnection();
+             ResultSet rs = connection.getMetaData().getIndexInfo(null, null, table, false, false)) {
+            while (rs.next()) {
+                names.add(rs.getString("INDEX_NAME").toLowerCase());
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,74 @@
+package Hospital.system.Security;
+
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.UserRepository;
+import io.jsonwebtoken.Claims;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CurrentUserServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @InjectMocks
+    private CurrentUserService currentUserService;
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void getCurrentUser_FromJwtFilter_DoesNotQueryDatabase() throws Exception {
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "jwtSecret", "mySecretKeyThatNeedsToBeAtLeast32Characters");
+        ReflectionTestUtils.setField(jwtUtil, "jwtExpiration", 1_800_000L);
+        ReflectionTestUtils.invokeMethod(jwtUtil, "init");
+        TokenBlacklistService tokenBlacklistService = mock(TokenBlacklistService.class);
+        when(tokenBlacklistService.isRevoked(any(Claims.class))).thenReturn(false);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer " + jwtUtil.generateToken(7L, "doctor@test.com", "DOCTOR"));
+        new JwtAuthFilter(jwtUtil, tokenBlacklistService)
+                .doFilter(request, new MockHttpServletResponse(), mock(FilterChain.class));
+
+        CurrentUser currentUser = currentUserService.getCurrentUser();
+
+        assertEquals(new CurrentUser(7L, "doctor@test.com", Role.DOCTOR), currentUser);
+        assertEquals("doctor@test.com", SecurityContextHolder.getContext().getAuthentication().getName());
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void getCurrentUser_WithoutUserId_FallsBackToEmailLookup() {
+        User patient = User.builder().id(3L).email("patient@test.com").role(Role.PATIENT).build();
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("patient@test.com", null, List.of()));
+        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+
+        CurrentUser currentUser = currentUserService.getCurrentUser();
+
+        assertEquals(3L, currentUser.id());
+        assertEquals(Role.PATIENT, currentUser.role());
+    }
+}
@@ -0,0 +1,75 @@
+package Hospital.system.Security;
+
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CustomUserDetailsServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @InjectMocks
+    private CustomUserDetailsService customUserDetailsService;
+
+    @Test
+    void login_WithOutdatedCost_RehashesPassword() {
+        User user = User.builder()
+                .id(1L)
+                .email("doctor@test.com")
+                .password(new BCryptPasswordEncoder(4).encode("password123"))
+                .role(Role.DOCTOR)
+                .build();
+        when(userRepository.findByEmail("doctor@test.com")).thenReturn(Optional.of(user));
+
+        // same wiring Spring Security applies to the application's AuthenticationManager
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider(customUserDetailsService);
+        provider.setPasswordEncoder(new BCryptPasswordEncoder(5));
+        provider.setUserDetailsPasswordService(customUserDetailsService);
+
+        Authentication authentication = provider.authenticate(
+                new UsernamePasswordAuthenticationToken("doctor@test.com", "password123"));
+
+        ArgumentCaptor<User> saved = ArgumentCaptor.forClass(User.class);
+        verify(userRepository).save(saved.capture());
+        assertTrue(saved.getValue().getPassword().startsWith("$2a$05$"));
+        assertInstanceOf(AuthenticatedUser.class, authentication.getPrincipal());
+        assertEquals(1L, ((AuthenticatedUser) authentication.getPrincipal()).getId());
+    }
+
+    @Test
+    void login_WithCurrentCost_DoesNotRehash() {
+        User user = User.builder()
+                .id(1L)
+                .email("doctor@test.com")
+                .password(new BCryptPasswordEncoder(5).encode("password123"))
+                .role(Role.DOCTOR)
+                .build();
+        when(userRepository.findByEmail("doctor@test.com")).thenReturn(Optional.of(user));
+
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider(customUserDetailsService);
+        provider.setPasswordEncoder(new BCryptPasswordEncoder(5));
+        provider.setUserDetailsPasswordService(customUserDetailsService);
+
+        provider.authenticate(new UsernamePasswordAuthenticationToken("doctor@test.com", "password123"));
+
+        verify(userRepository, never()).save(any());
+    }
+}
@@ -0,0 +1,83 @@
+package Hospital.system.Security;
+
+import Hospital.system.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHashingExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PasswordHashingExecutor hashingExecutor = new PasswordHashingExecutor(meterRegistry, 1, 1);
+
+    @AfterEach
+    void tearDown() {
+        hashingExecutor.shutdown();
+    }
+
+    @Test
+    void encoder_RunsBCryptOnThePoolAndRecordsLatency() {
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(new BCryptPasswordEncoder(4), hashingExecutor);
+
+        String hash = encoder.encode("password123");
+
+        assertTrue(encoder.matches("password123", hash));
+        assertFalse(encoder.matches("wrong-password", hash));
+        assertEquals(1, meterRegistry.get("auth.password.hash").tag("operation", "encode").timer().count());
+        assertEquals(2, meterRegistry.get("auth.password.hash").tag("operation", "match").timer().count());
+    }
+
+    @Test
+    void fullQueue_FailsFastWithServiceUnavailable() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> busyWorker = CompletableFuture.supplyAsync(() -> hashingExecutor.encode(() -> {
+            running.countDown();
+            await(release);
+            return "first";
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> hashingExecutor.encode(() -> "second"));
+        waitForQueueDepth(1);
+
+        assertThrows(ServiceUnavailableException.class, () -> hashingExecutor.encode(() -> "third"));
+        assertEquals(1.0, meterRegistry.get("auth.password.rejected").counter().count());
+
+        release.countDown();
+        assertEquals("first", busyWorker.get(5, TimeUnit.SECONDS));
+        assertEquals("second", queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void calibration_PicksHighestStrengthWithinTarget() {
+        // strength 8 at 4ms: 9 -> 8ms ... 14 -> 256ms is over a 250ms target
+        assertEquals(13, BCryptCalibration.strengthFor(4.0, 250));
+        // fast hardware is capped
+        assertEquals(BCryptCalibration.MAX_STRENGTH, BCryptCalibration.strengthFor(0.01, 10_000));
+        // slow hardware never drops below the floor
+        assertEquals(BCryptCalibration.MIN_STRENGTH, BCryptCalibration.strengthFor(200.0, 250));
+    }
+
+    private void waitForQueueDepth(int depth) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (meterRegistry.get("auth.password.queue.depth").gauge().value() < depth) {
+            assertTrue(System.currentTimeMillis() < deadline, "task never reached the queue");
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package Hospital.system.Security;
+
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class TokenBlacklistServiceTest {
+
+    private JwtUtil jwtUtil;
+    private SimpleMeterRegistry meterRegistry;
+    private RevocationBackend revocationBackend;
+    private TokenBlacklistService tokenBlacklistService;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "jwtSecret", "mySecretKeyThatNeedsToBeAtLeast32Characters");
+        ReflectionTestUtils.setField(jwtUtil, "jwtExpiration", 1_800_000L);
+        ReflectionTestUtils.invokeMethod(jwtUtil, "init");
+
+        meterRegistry = new SimpleMeterRegistry();
+        revocationBackend = mock(RevocationBackend.class);
+        tokenBlacklistService = new TokenBlacklistService(jwtUtil, revocationBackend, meterRegistry, 30_000);
+    }
+
+    @Test
+    void blacklistToken_RevokesOnlyThatToken() {
+        String token = jwtUtil.generateToken(2L, "doctor@test.com", "DOCTOR");
+        String otherToken = jwtUtil.generateToken(2L, "doctor@test.com", "DOCTOR");
+
+        tokenBlacklistService.blacklistToken(token);
+
+        assertTrue(tokenBlacklistService.isTokenBlacklisted(token));
+        assertFalse(tokenBlacklistService.isTokenBlacklisted(otherToken));
+        Claims claims = jwtUtil.parseToken(token).orElseThrow();
+        assertTrue(tokenBlacklistService.isRevoked(claims));
+        assertEquals(1.0, meterRegistry.get("auth.revocations.size").gauge().value());
+        verify(revocationBackend).publish(TokenBlacklistService.tokenId(claims), claims.getExpiration().getTime());
+    }
+
+    @Test
+    void blacklistToken_InvalidToken_IsIgnored() {
+        tokenBlacklistService.blacklistToken("not-a-jwt");
+
+        assertEquals(0, tokenBlacklistService.size());
+        assertFalse(tokenBlacklistService.isTokenBlacklisted("not-a-jwt"));
+    }
+
+    @Test
+    void cleanupExpiredTokens_EvictsOnlyExpiredEntries() {
+        tokenBlacklistService.revoke(UUID.randomUUID(), System.currentTimeMillis() - 1_000);
+        tokenBlacklistService.revoke(UUID.randomUUID(), System.currentTimeMillis() - 10);
+        String liveToken = jwtUtil.generateToken(1L, "patient@test.com", "PATIENT");
+        tokenBlacklistService.blacklistToken(liveToken);
+
+        tokenBlacklistService.cleanupExpiredTokens();
+
+        assertEquals(1, tokenBlacklistService.size());
+        assertTrue(tokenBlacklistService.isTokenBlacklisted(liveToken));
+        assertEquals(2.0, meterRegistry.get("auth.revocations.evicted").counter().count());
+    }
+
+    @Test
+    void syncFromBackend_AppliesRemoteEntriesAndWaitsOnGaps() {
+        long expiresAt = System.currentTimeMillis() + 60_000;
+        UUID first = UUID.randomUUID();
+        UUID afterGap = UUID.randomUUID();
+        when(revocationBackend.fetchSince(eq(0L), anyInt())).thenReturn(List.of(
+                new RevocationBackend.RevocationEntry(1, first, expiresAt),
+                new RevocationBackend.RevocationEntry(3, afterGap, expiresAt)));
+
+        tokenBlacklistService.syncFromBackend();
+
+        // both are enforced right away, but sequence 2 may still be committing somewhere
+        assertEquals(2, tokenBlacklistService.size());
+        assertEquals(1L, tokenBlacklistService.getSyncedSequence());
+
+        UUID late = UUID.randomUUID();
+        when(revocationBackend.fetchSince(eq(1L), anyInt())).thenReturn(List.of(
+                new RevocationBackend.RevocationEntry(2, late, expiresAt),
+                new RevocationBackend.RevocationEntry(3, afterGap, expiresAt)));
+
+        tokenBlacklistService.syncFromBackend();
+
+        assertEquals(3, tokenBlacklistService.size());
+        assertEquals(3L, tokenBlacklistService.getSyncedSequence());
+    }
+}
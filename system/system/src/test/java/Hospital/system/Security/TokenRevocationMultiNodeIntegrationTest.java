@@ -0,0 +1,100 @@
+package Hospital.system.Security;
+
+import Hospital.system.SystemApplication;
+import org.h2.tools.Server;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// two application nodes sharing one H2 server-mode database, as they would share MySQL
+class TokenRevocationMultiNodeIntegrationTest {
+
+    private static Server h2Server;
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    @BeforeAll
+    static void startNodes() throws SQLException, IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        h2Server = Server.createTcpServer("-tcp", "-tcpPort", String.valueOf(port), "-ifNotExists").start();
+        String url = "jdbc:h2:tcp://localhost:" + port + "/mem:revocations;DB_CLOSE_DELAY=-1";
+
+        nodeA = startNode(url);
+        nodeB = startNode(url);
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        if (nodeA != null) {
+            nodeA.close();
+        }
+        if (nodeB != null) {
+            nodeB.close();
+        }
+        if (h2Server != null) {
+            h2Server.stop();
+        }
+    }
+
+    private static ConfigurableApplicationContext startNode(String url) {
+        return new SpringApplicationBuilder(SystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=" + url,
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.jpa.hibernate.ddl-auto=update",
+                        "--spring.flyway.enabled=false",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--security.revocation.backend=jdbc",
+                        // polled by hand below so the test does not depend on timing
+                        "--security.revocation.poll-interval=3600000");
+    }
+
+    @Test
+    void logoutOnOneNode_IsEnforcedOnTheOtherAfterSync() {
+        JwtUtil jwtUtil = nodeA.getBean(JwtUtil.class);
+        TokenBlacklistService blacklistA = nodeA.getBean(TokenBlacklistService.class);
+        TokenBlacklistService blacklistB = nodeB.getBean(TokenBlacklistService.class);
+
+        String token = jwtUtil.generateToken(1L, "patient@test.com", "PATIENT");
+        blacklistA.blacklistToken(token);
+
+        assertTrue(blacklistA.isTokenBlacklisted(token));
+        assertFalse(blacklistB.isTokenBlacklisted(token));
+
+        blacklistB.syncFromBackend();
+
+        assertTrue(blacklistB.isTokenBlacklisted(token));
+    }
+
+    @Test
+    void concurrentLogoutOnBothNodes_IsStoredOnce() {
+        JwtUtil jwtUtil = nodeA.getBean(JwtUtil.class);
+        TokenBlacklistService blacklistA = nodeA.getBean(TokenBlacklistService.class);
+        TokenBlacklistService blacklistB = nodeB.getBean(TokenBlacklistService.class);
+
+        String token = jwtUtil.generateToken(2L, "doctor@test.com", "DOCTOR");
+        blacklistA.blacklistToken(token);
+        assertDoesNotThrow(() -> blacklistB.blacklistToken(token));
+
+        blacklistA.syncFromBackend();
+        blacklistB.syncFromBackend();
+
+        assertTrue(blacklistA.isTokenBlacklisted(token));
+        assertTrue(blacklistB.isTokenBlacklisted(token));
+    }
+}
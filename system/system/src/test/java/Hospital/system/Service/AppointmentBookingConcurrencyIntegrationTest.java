@@ -0,0 +1,158 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.AppointmentDto;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.AppointmentRepository;
+import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUser;
+import Hospital.system.exception.BadRequestException;
+import Hospital.system.exception.ConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static Hospital.system.TestUsers.user;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+
+// many patients racing for the same few slots of one doctor; every slot must end up booked exactly once.
+// The calendar index always answers "free", as a stale copy on another node would, so every loser hits the unique index.
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = "spring.jpa.show-sql=false")
+@Slf4j
+class AppointmentBookingConcurrencyIntegrationTest {
+
+    private static final int ATTEMPTS = 2000;
+    private static final int THREADS = 32;
+    private static final int PATIENTS = 40;
+    private static final int DAYS = 3;
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @SpyBean
+    private DoctorCalendarIndex calendarIndex;
+
+    private User doctor;
+    private final List<User> patients = new ArrayList<>();
+    private final List<LocalDateTime> slots = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        doReturn(true).when(calendarIndex).isFree(anyLong(), any());
+        doctor = userRepository.save(user("Dr. Stress", "stress.doctor@test.com", Role.DOCTOR));
+        for (int i = 0; i < PATIENTS; i++) {
+            patients.add(userRepository.save(user("Patient " + i, "stress.patient" + i + "@test.com", Role.PATIENT)));
+        }
+        LocalDate firstDay = LocalDate.now().plusDays(2);
+        for (int day = 0; day < DAYS; day++) {
+            for (int slot = 0; slot < DoctorCalendarIndex.SLOTS_PER_DAY; slot++) {
+                slots.add(firstDay.plusDays(day).atTime(DoctorCalendarIndex.START_WORK).plusHours(slot));
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        appointmentRepository.deleteAll(appointmentRepository.findByDoctor_Id(doctor.getId()));
+        userRepository.deleteAll(patients);
+        userRepository.delete(doctor);
+    }
+
+    @Test
+    void concurrentBookings_NeverDoubleBookASlot() throws InterruptedException {
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        Queue<Throwable> unexpected = new ConcurrentLinkedQueue<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(ATTEMPTS);
+        for (int i = 0; i < ATTEMPTS; i++) {
+            User patient = patients.get(i % PATIENTS);
+            LocalDateTime slot = slots.get(i % slots.size());
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    bookAs(patient, slot);
+                    booked.incrementAndGet();
+                } catch (ConflictException e) {
+                    conflicts.incrementAndGet();
+                } catch (BadRequestException e) {
+                    rejected.incrementAndGet();
+                } catch (Throwable e) {
+                    unexpected.add(e);
+                } finally {
+                    SecurityContextHolder.clearContext();
+                    done.countDown();
+                }
+            });
+        }
+
+        long startedAt = System.nanoTime();
+        start.countDown();
+        assertTrue(done.await(2, TimeUnit.MINUTES), "bookings did not finish in time");
+        long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        executor.shutdown();
+
+        Integer doubleBooked = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM (SELECT doctor_id, appointment_time FROM appointments " +
+                        "WHERE status <> 'CANCELLED' GROUP BY doctor_id, appointment_time HAVING COUNT(*) > 1) t",
+                Integer.class);
+
+        log.info("{} booking attempts on {} slots in {} ms ({} attempts/s): booked={}, conflicts={}, rejected={}, doubleBooked={}",
+                ATTEMPTS, slots.size(), elapsedMillis, ATTEMPTS * 1000L / elapsedMillis,
+                booked.get(), conflicts.get(), rejected.get(), doubleBooked);
+
+        assertTrue(unexpected.isEmpty(), () -> "unexpected failures: " + unexpected);
+        assertEquals(0, doubleBooked);
+        assertEquals(slots.size(), booked.get());
+        assertEquals(0, rejected.get());
+        assertEquals(ATTEMPTS - slots.size(), conflicts.get());
+    }
+
+    private void bookAs(User patient, LocalDateTime slot) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                CurrentUser.of(patient), null, List.of(new SimpleGrantedAuthority("ROLE_PATIENT"))));
+
+        AppointmentDto dto = new AppointmentDto();
+        dto.setPatientId(patient.getId());
+        dto.setDoctorId(doctor.getId());
+        dto.setAppointmentTime(slot);
+        appointmentService.bookAppointment(dto);
+    }
+}
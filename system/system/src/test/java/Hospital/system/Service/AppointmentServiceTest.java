@@ -4,20 +4,23 @@ import Hospital.system.DTO.AppointmentDto;
 import Hospital.system.Entity.*;
 import Hospital.system.Repository.AppointmentRepository;
 import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUser;
+import Hospital.system.Security.CurrentUserService;
 import Hospital.system.Service.AppointmentService;
 import Hospital.system.exception.AccessDeniedException;
 import Hospital.system.exception.BadRequestException;
+import Hospital.system.exception.ConflictException;
 import Hospital.system.exception.ResourceNotFoundException;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContext;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.dao.DataIntegrityViolationException;
 
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -38,6 +41,12 @@ class AppointmentServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private CurrentUserService currentUserService;
+
+    @Mock
+    private DoctorCalendarIndex calendarIndex;
+
     @InjectMocks
     private AppointmentService appointmentService;
 
@@ -79,12 +88,11 @@ class AppointmentServiceTest {
     @Test
     void bookAppointment_Success() {
         // Arrange
-        mockSecurityContext("patient@test.com");
         when(userRepository.findByIdAndRole(1L, Role.PATIENT)).thenReturn(Optional.of(patient));
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
         when(userRepository.findByIdAndRole(2L, Role.DOCTOR)).thenReturn(Optional.of(doctor));
-        when(appointmentRepository.existsOverlappingAppointment(anyLong(), any(), any())).thenReturn(0L);
-        when(appointmentRepository.save(any(Appointment.class))).thenReturn(appointment);
+        when(calendarIndex.isFree(anyLong(), any())).thenReturn(true);
+        when(appointmentRepository.saveAndFlush(any(Appointment.class))).thenReturn(appointment);
 
         // Act
         AppointmentDto result = appointmentService.bookAppointment(appointmentDto);
@@ -112,12 +120,11 @@ class AppointmentServiceTest {
     @Test
     void bookAppointment_WrongPatientId_ThrowsAccessDeniedException() {
         // Arrange
-        mockSecurityContext("patient@test.com");
         User otherPatient = User.builder().id(99L).email("other@test.com").role(Role.PATIENT).build();
         appointmentDto.setPatientId(99L);
 
         when(userRepository.findByIdAndRole(99L, Role.PATIENT)).thenReturn(Optional.of(otherPatient));
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
 
         // Act & Assert
         AccessDeniedException exception = assertThrows(
@@ -130,11 +137,10 @@ class AppointmentServiceTest {
     @Test
     void bookAppointment_TimeInPast_ThrowsBadRequestException() {
         // Arrange
-        mockSecurityContext("patient@test.com");
         appointmentDto.setAppointmentTime(LocalDateTime.now().minusDays(1));
 
         when(userRepository.findByIdAndRole(1L, Role.PATIENT)).thenReturn(Optional.of(patient));
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
         when(userRepository.findByIdAndRole(2L, Role.DOCTOR)).thenReturn(Optional.of(doctor));
 
         // Act & Assert
@@ -148,11 +154,10 @@ class AppointmentServiceTest {
     @Test
     void bookAppointment_OutsideWorkingHours_ThrowsBadRequestException() {
         // Arrange
-        mockSecurityContext("patient@test.com");
         appointmentDto.setAppointmentTime(LocalDateTime.now().plusDays(1).withHour(8).withMinute(0));
 
         when(userRepository.findByIdAndRole(1L, Role.PATIENT)).thenReturn(Optional.of(patient));
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
         when(userRepository.findByIdAndRole(2L, Role.DOCTOR)).thenReturn(Optional.of(doctor));
 
         // Act & Assert
@@ -164,28 +169,60 @@ class AppointmentServiceTest {
     }
 
     @Test
-    void bookAppointment_ConflictingTime_ThrowsBadRequestException() {
+    void bookAppointment_ConflictingTime_ThrowsConflictException() {
         // Arrange
-        mockSecurityContext("patient@test.com");
         when(userRepository.findByIdAndRole(1L, Role.PATIENT)).thenReturn(Optional.of(patient));
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
         when(userRepository.findByIdAndRole(2L, Role.DOCTOR)).thenReturn(Optional.of(doctor));
-        when(appointmentRepository.existsOverlappingAppointment(anyLong(), any(), any())).thenReturn(1L);
+        when(calendarIndex.isFree(anyLong(), any())).thenReturn(false);
 
         // Act & Assert
-        BadRequestException exception = assertThrows(
-                BadRequestException.class,
+        ConflictException exception = assertThrows(
+                ConflictException.class,
                 () -> appointmentService.bookAppointment(appointmentDto)
         );
         assertEquals("Doctor already has an appointment at this time", exception.getMessage());
     }
 
+    @Test
+    void bookAppointment_SlotTakenConcurrently_ThrowsConflictException() {
+        // Arrange: the calendar still shows the slot free, the unique index rejects the insert
+        when(userRepository.findByIdAndRole(1L, Role.PATIENT)).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
+        when(userRepository.findByIdAndRole(2L, Role.DOCTOR)).thenReturn(Optional.of(doctor));
+        when(calendarIndex.isFree(anyLong(), any())).thenReturn(true);
+        when(appointmentRepository.saveAndFlush(any(Appointment.class))).thenThrow(new DataIntegrityViolationException(
+                "duplicate", new ConstraintViolationException("duplicate", new SQLException(),
+                "PUBLIC." + Appointment.SLOT_CONSTRAINT.toUpperCase() + "_INDEX_1")));
+
+        // Act & Assert
+        ConflictException exception = assertThrows(
+                ConflictException.class,
+                () -> appointmentService.bookAppointment(appointmentDto)
+        );
+        assertEquals("Doctor already has an appointment at this time", exception.getMessage());
+        verify(calendarIndex, never()).occupy(anyLong(), any());
+    }
+
+    @Test
+    void bookAppointment_OtherIntegrityViolation_IsRethrown() {
+        // Arrange
+        when(userRepository.findByIdAndRole(1L, Role.PATIENT)).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
+        when(userRepository.findByIdAndRole(2L, Role.DOCTOR)).thenReturn(Optional.of(doctor));
+        when(calendarIndex.isFree(anyLong(), any())).thenReturn(true);
+        when(appointmentRepository.saveAndFlush(any(Appointment.class))).thenThrow(new DataIntegrityViolationException(
+                "fk", new ConstraintViolationException("fk", new SQLException(), "FK_APPOINTMENTS_DOCTOR")));
+
+        // Act & Assert
+        assertThrows(DataIntegrityViolationException.class, () -> appointmentService.bookAppointment(appointmentDto));
+    }
+
     @Test
     void approveAppointment_Success() {
         // Arrange
-        mockSecurityContext("doctor@test.com");
         when(appointmentRepository.findById(1L)).thenReturn(Optional.of(appointment));
-        when(userRepository.findByEmail("doctor@test.com")).thenReturn(Optional.of(doctor));
+        mockCurrentUser(doctor);
         appointment.setAppointmentTime(LocalDateTime.now().plusDays(1));
         when(appointmentRepository.save(any(Appointment.class))).thenReturn(appointment);
 
@@ -201,10 +238,9 @@ class AppointmentServiceTest {
     @Test
     void approveAppointment_NotPending_ThrowsBadRequestException() {
         // Arrange
-        mockSecurityContext("doctor@test.com");
         appointment.setStatus(AppointmentStatus.BOOKED);
         when(appointmentRepository.findById(1L)).thenReturn(Optional.of(appointment));
-        when(userRepository.findByEmail("doctor@test.com")).thenReturn(Optional.of(doctor));
+        mockCurrentUser(doctor);
 
         // Act & Assert
         BadRequestException exception = assertThrows(
@@ -217,10 +253,9 @@ class AppointmentServiceTest {
     @Test
     void approveAppointment_AppointmentInPast_ThrowsBadRequestException() {
         // Arrange
-        mockSecurityContext("doctor@test.com");
         appointment.setAppointmentTime(LocalDateTime.now().minusDays(1));
         when(appointmentRepository.findById(1L)).thenReturn(Optional.of(appointment));
-        when(userRepository.findByEmail("doctor@test.com")).thenReturn(Optional.of(doctor));
+        mockCurrentUser(doctor);
 
         // Act & Assert
         BadRequestException exception = assertThrows(
@@ -233,11 +268,10 @@ class AppointmentServiceTest {
     @Test
     void completeAppointment_Success() {
         // Arrange
-        mockSecurityContext("doctor@test.com");
         appointment.setStatus(AppointmentStatus.BOOKED);
         appointment.setAppointmentTime(LocalDateTime.now().minusHours(1));
         when(appointmentRepository.findById(1L)).thenReturn(Optional.of(appointment));
-        when(userRepository.findByEmail("doctor@test.com")).thenReturn(Optional.of(doctor));
+        mockCurrentUser(doctor);
         when(appointmentRepository.save(any(Appointment.class))).thenReturn(appointment);
 
         // Act
@@ -252,10 +286,9 @@ class AppointmentServiceTest {
     @Test
     void completeAppointment_NotBooked_ThrowsBadRequestException() {
         // Arrange
-        mockSecurityContext("doctor@test.com");
         appointment.setStatus(AppointmentStatus.PENDING);
         when(appointmentRepository.findById(1L)).thenReturn(Optional.of(appointment));
-        when(userRepository.findByEmail("doctor@test.com")).thenReturn(Optional.of(doctor));
+        mockCurrentUser(doctor);
 
         // Act & Assert
         BadRequestException exception = assertThrows(
@@ -268,11 +301,10 @@ class AppointmentServiceTest {
     @Test
     void completeAppointment_AppointmentInFuture_ThrowsBadRequestException() {
         // Arrange
-        mockSecurityContext("doctor@test.com");
         appointment.setStatus(AppointmentStatus.BOOKED);
         appointment.setAppointmentTime(LocalDateTime.now().plusHours(1));
         when(appointmentRepository.findById(1L)).thenReturn(Optional.of(appointment));
-        when(userRepository.findByEmail("doctor@test.com")).thenReturn(Optional.of(doctor));
+        mockCurrentUser(doctor);
 
         // Act & Assert
         BadRequestException exception = assertThrows(
@@ -285,9 +317,8 @@ class AppointmentServiceTest {
     @Test
     void cancelAppointment_Success() {
         // Arrange
-        mockSecurityContext("patient@test.com");
         when(appointmentRepository.findById(1L)).thenReturn(Optional.of(appointment));
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
         when(appointmentRepository.save(any(Appointment.class))).thenReturn(appointment);
 
         // Act
@@ -296,15 +327,15 @@ class AppointmentServiceTest {
         // Assert
         verify(appointmentRepository).save(appointment);
         assertEquals(AppointmentStatus.CANCELLED, appointment.getStatus());
+        verify(calendarIndex).release(2L, appointmentDto.getAppointmentTime());
     }
 
     @Test
     void cancelAppointment_AlreadyCancelled_ThrowsBadRequestException() {
         // Arrange
-        mockSecurityContext("patient@test.com");
         appointment.setStatus(AppointmentStatus.CANCELLED);
         when(appointmentRepository.findById(1L)).thenReturn(Optional.of(appointment));
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
 
         // Act & Assert
         BadRequestException exception = assertThrows(
@@ -317,8 +348,7 @@ class AppointmentServiceTest {
     @Test
     void getAllAppointmentsByPatient_Success() {
         // Arrange
-        mockSecurityContext("patient@test.com");
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
         when(appointmentRepository.findByPatient_Id(1L)).thenReturn(Arrays.asList(appointment));
 
         // Act
@@ -332,8 +362,7 @@ class AppointmentServiceTest {
     @Test
     void getAllAppointmentsByDoctor_Success() {
         // Arrange
-        mockSecurityContext("doctor@test.com");
-        when(userRepository.findByEmail("doctor@test.com")).thenReturn(Optional.of(doctor));
+        mockCurrentUser(doctor);
         when(appointmentRepository.findByDoctor_Id(2L)).thenReturn(Arrays.asList(appointment));
 
         // Act
@@ -347,7 +376,6 @@ class AppointmentServiceTest {
     @Test
     void updateAppointment_Success() {
         // Arrange
-        mockSecurityContext("patient@test.com");
         AppointmentDto updateDto = new AppointmentDto();
         updateDto.setDoctorId(2L);
         updateDto.setAppointmentTime(
@@ -357,27 +385,29 @@ class AppointmentServiceTest {
                 )
         );
 
+        LocalDateTime previousTime = appointment.getAppointmentTime();
         when(appointmentRepository.findById(1L)).thenReturn(Optional.of(appointment));
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
-        when(appointmentRepository.existsOverlappingAppointment(anyLong(), any(), any())).thenReturn(0L);
-        when(appointmentRepository.save(any(Appointment.class))).thenReturn(appointment);
+        mockCurrentUser(patient);
+        when(calendarIndex.isFree(anyLong(), any())).thenReturn(true);
+        when(appointmentRepository.saveAndFlush(any(Appointment.class))).thenReturn(appointment);
 
         // Act
         AppointmentDto result = appointmentService.updateAppointment(1L, updateDto);
 
         // Assert
         assertNotNull(result);
-        verify(appointmentRepository).save(appointment);
+        verify(appointmentRepository).saveAndFlush(appointment);
+        verify(calendarIndex).release(2L, previousTime);
+        verify(calendarIndex).occupy(2L, updateDto.getAppointmentTime());
     }
     @Test
     void updateAppointment_CompletedStatus_ThrowsIllegalArgumentException() {
         // Arrange
-        mockSecurityContext("patient@test.com");
         appointment.setStatus(AppointmentStatus.COMPLETED);
         AppointmentDto updateDto = new AppointmentDto();
 
         when(appointmentRepository.findById(1L)).thenReturn(Optional.of(appointment));
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
 
         // Act & Assert
         IllegalArgumentException exception = assertThrows(
@@ -387,11 +417,7 @@ class AppointmentServiceTest {
         assertEquals("Only Pending or Booked appointments can be updated", exception.getMessage());
     }
 
-    private void mockSecurityContext(String email) {
-        Authentication authentication = mock(Authentication.class);
-        SecurityContext securityContext = mock(SecurityContext.class);
-        when(securityContext.getAuthentication()).thenReturn(authentication);
-        when(authentication.getName()).thenReturn(email);
-        SecurityContextHolder.setContext(securityContext);
+    private void mockCurrentUser(User user) {
+        when(currentUserService.getCurrentUser()).thenReturn(CurrentUser.of(user));
     }
 }
\ No newline at end of file
@@ -1,10 +1,12 @@
 package Hospital.system.Service;
 
+import Hospital.system.DTO.AuthResponseDto;
 import Hospital.system.DTO.LoginDto;
 import Hospital.system.DTO.UserRegistrationDto;
 import Hospital.system.Entity.Role;
 import Hospital.system.Entity.User;
 import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.AuthenticatedUser;
 import Hospital.system.Security.JwtUtil;
 import Hospital.system.Security.TokenBlacklistService;
 import Hospital.system.Service.AuthService;
@@ -13,6 +15,7 @@ import org.apache.coyote.BadRequestException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -22,7 +25,6 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
-import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -46,6 +48,9 @@ class AuthServiceTest {
     @Mock
     private TokenBlacklistService tokenBlacklistService;
 
+    @Mock
+    private RefreshTokenService refreshTokenService;
+
     @InjectMocks
     private AuthService authService;
 
@@ -80,7 +85,7 @@ class AuthServiceTest {
         when(userRepository.existsByEmail("test@test.com")).thenReturn(false);
         when(passwordEncoder.encode("password123")).thenReturn("encodedPassword");
         when(userRepository.save(any(User.class))).thenReturn(user);
-        when(jwtUtil.generateToken("test@test.com", "PATIENT")).thenReturn("jwt-token");
+        when(jwtUtil.generateToken(1L, "test@test.com", "PATIENT")).thenReturn("jwt-token");
 
         // Act
         String result = authService.registerUser(registrationDto);
@@ -88,7 +93,10 @@ class AuthServiceTest {
         // Assert
         assertEquals("jwt-token", result);
         verify(userRepository).save(any(User.class));
-        verify(passwordEncoder).encode("password123");
+        // hashed before the first query, so no connection waits on the hashing pool
+        InOrder inOrder = inOrder(passwordEncoder, userRepository);
+        inOrder.verify(passwordEncoder).encode("password123");
+        inOrder.verify(userRepository).existsByEmail("test@test.com");
     }
 
     @Test
@@ -109,7 +117,6 @@ class AuthServiceTest {
     void registerUser_InvalidRole_ThrowsBadRequestException() {
         // Arrange
         registrationDto.setRole("INVALID_ROLE");
-        when(userRepository.existsByEmail("test@test.com")).thenReturn(false);
 
         // Act & Assert
         assertThrows(
@@ -117,6 +124,7 @@ class AuthServiceTest {
                 () -> authService.registerUser(registrationDto)
         );
         verify(userRepository, never()).save(any(User.class));
+        verify(passwordEncoder, never()).encode(any());
     }
 
 
@@ -127,15 +135,20 @@ class AuthServiceTest {
         Authentication authentication = mock(Authentication.class);
         when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
                 .thenReturn(authentication);
-        when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(user));
-        when(jwtUtil.generateToken("test@test.com", "PATIENT")).thenReturn("jwt-token");
+        when(authentication.getPrincipal())
+                .thenReturn(new AuthenticatedUser(1L, "test@test.com", "encodedPassword", Role.PATIENT));
+        when(jwtUtil.generateToken(1L, "test@test.com", "PATIENT")).thenReturn("jwt-token");
+        when(refreshTokenService.issue(1L)).thenReturn("refresh-token");
 
         // Act
-        String result = authService.login(loginDto);
+        AuthResponseDto result = authService.login(loginDto);
 
         // Assert
-        assertEquals("jwt-token", result);
+        assertEquals("jwt-token", result.getToken());
+        assertEquals("refresh-token", result.getRefreshToken());
+        assertEquals("PATIENT", result.getRole());
         verify(authenticationManager).authenticate(any(UsernamePasswordAuthenticationToken.class));
+        verify(userRepository, never()).findByEmail(any());
     }
 
     @Test
@@ -158,7 +171,6 @@ class AuthServiceTest {
         Authentication authentication = mock(Authentication.class);
         when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
                 .thenReturn(authentication);
-        when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.empty());
 
         // Act & Assert
         BadCredentialsException exception = assertThrows(
@@ -182,6 +194,32 @@ class AuthServiceTest {
         assertEquals("Invalid email or password", exception.getMessage());
     }
 
+    @Test
+    void refresh_Success() {
+        // Arrange
+        when(refreshTokenService.rotate("refresh-token"))
+                .thenReturn(new RefreshTokenService.IssuedRefreshToken("next-refresh-token", user));
+        when(jwtUtil.generateToken(1L, "test@test.com", "PATIENT")).thenReturn("jwt-token");
+
+        // Act
+        AuthResponseDto result = authService.refresh("refresh-token");
+
+        // Assert
+        assertEquals("jwt-token", result.getToken());
+        assertEquals("next-refresh-token", result.getRefreshToken());
+        verifyNoInteractions(authenticationManager, passwordEncoder);
+    }
+
+    @Test
+    void refresh_InvalidToken_ThrowsBadCredentialsException() {
+        // Arrange
+        when(refreshTokenService.rotate("stale-token")).thenThrow(new BadCredentialsException("Invalid refresh token"));
+
+        // Act & Assert
+        assertThrows(BadCredentialsException.class, () -> authService.refresh("stale-token"));
+        verifyNoInteractions(jwtUtil);
+    }
+
     @Test
     void logout_Success() {
         // Arrange
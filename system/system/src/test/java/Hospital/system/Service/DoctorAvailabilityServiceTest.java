@@ -2,12 +2,12 @@ package Hospital.system.Service;
 
 
 import Hospital.system.DTO.DoctorAvailabilityDto;
-import Hospital.system.Entity.AppointmentStatus;
+import Hospital.system.DTO.DoctorAvailabilityRangeDto;
 import Hospital.system.Entity.Role;
 import Hospital.system.Entity.User;
-import Hospital.system.Repository.AppointmentRepository;
 import Hospital.system.Repository.UserRepository;
 import Hospital.system.Service.DoctorAvailabilityService;
+import Hospital.system.exception.BadRequestException;
 import Hospital.system.exception.ResourceNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,15 +15,19 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 
 import java.time.LocalDate;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -33,7 +37,7 @@ class DoctorAvailabilityServiceTest {
     private UserRepository userRepository;
 
     @Mock
-    private AppointmentRepository appointmentRepository;
+    private DoctorCalendarIndex calendarIndex;
 
     @InjectMocks
     private DoctorAvailabilityService doctorAvailabilityService;
@@ -57,9 +61,7 @@ class DoctorAvailabilityServiceTest {
     void getDoctorAvailabilityById_Success() {
         // Arrange
         when(userRepository.findByIdAndRole(1L, Role.DOCTOR)).thenReturn(Optional.of(doctor));
-        when(appointmentRepository.findAppointmentsForDoctorExcludingStatus(
-                eq(1L), eq(AppointmentStatus.CANCELLED), any(), any()))
-                .thenReturn(new ArrayList<>());
+        when(calendarIndex.occupiedSlots(1L, testDate)).thenReturn(0);
 
         // Act
         DoctorAvailabilityDto result = doctorAvailabilityService.getDoctorAvailabilityById(1L, testDate);
@@ -88,10 +90,8 @@ class DoctorAvailabilityServiceTest {
     void getAllDoctorsAvailability_Success() {
         // Arrange
         List<User> doctors = Arrays.asList(doctor);
-        when(userRepository.findByRole(Role.DOCTOR)).thenReturn(doctors);
-        when(appointmentRepository.findAppointmentsForDoctorExcludingStatus(
-                eq(1L), eq(AppointmentStatus.CANCELLED), any(), any()))
-                .thenReturn(new ArrayList<>());
+        when(userRepository.findByRole(Role.DOCTOR, Pageable.unpaged(Sort.by("id")))).thenReturn(doctors);
+        when(calendarIndex.occupiedSlots(List.of(1L), testDate)).thenReturn(Map.of(1L, 0));
 
         // Act
         List<DoctorAvailabilityDto> result = doctorAvailabilityService.getAllDoctorsAvailability(testDate);
@@ -100,5 +100,75 @@ class DoctorAvailabilityServiceTest {
         assertNotNull(result);
         assertEquals(1, result.size());
         assertEquals(1L, result.get(0).getDoctorId());
+        verify(calendarIndex, never()).occupiedSlots(anyLong(), any());
     }
-}
\ No newline at end of file
+
+    @Test
+    void getAllDoctorsAvailability_FiltersAndPagesDoctors() {
+        // Arrange: 09:00 taken
+        when(userRepository.findByRoleAndIdIn(Role.DOCTOR, List.of(1L), PageRequest.of(0, 10, Sort.by("id"))))
+                .thenReturn(List.of(doctor));
+        when(calendarIndex.occupiedSlots(List.of(1L), testDate)).thenReturn(Map.of(1L, 0b1));
+
+        // Act
+        List<DoctorAvailabilityDto> result =
+                doctorAvailabilityService.getAllDoctorsAvailability(testDate, List.of(1L), 0, 10);
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals(11, result.get(0).getAvailableTimes().size());
+        assertFalse(result.get(0).getAvailableTimes().contains(testDate.atTime(9, 0)));
+    }
+
+    @Test
+    void getAllDoctorsAvailability_RejectsOversizedPage() {
+        assertThrows(BadRequestException.class,
+                () -> doctorAvailabilityService.getAllDoctorsAvailability(testDate, null, 0, 1000));
+        verifyNoInteractions(userRepository, calendarIndex);
+    }
+
+    @Test
+    void getDoctorAvailabilityById_SkipsOccupiedSlots() {
+        // Arrange: 09:00 and 11:00 taken
+        when(userRepository.findByIdAndRole(1L, Role.DOCTOR)).thenReturn(Optional.of(doctor));
+        when(calendarIndex.occupiedSlots(1L, testDate)).thenReturn(0b101);
+
+        // Act
+        DoctorAvailabilityDto result = doctorAvailabilityService.getDoctorAvailabilityById(1L, testDate);
+
+        // Assert
+        assertEquals(DoctorCalendarIndex.SLOTS_PER_DAY - 2, result.getAvailableTimes().size());
+        assertFalse(result.getAvailableTimes().contains(testDate.atTime(9, 0)));
+        assertTrue(result.getAvailableTimes().contains(testDate.atTime(10, 0)));
+        assertFalse(result.getAvailableTimes().contains(testDate.atTime(11, 0)));
+    }
+
+    @Test
+    void getDoctorsAvailabilityRange_OneEntryPerDay() {
+        // Arrange: 09:00 taken on the first day, 10:00 on the second
+        LocalDate to = testDate.plusDays(1);
+        when(userRepository.findByRole(Role.DOCTOR, PageRequest.of(0, 50, Sort.by("id")))).thenReturn(List.of(doctor));
+        when(calendarIndex.occupiedSlots(List.of(1L), testDate, to)).thenReturn(Map.of(1L, new int[]{0b1, 0b10}));
+
+        // Act
+        List<DoctorAvailabilityRangeDto> result =
+                doctorAvailabilityService.getDoctorsAvailabilityRange(testDate, to, null, null, null);
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals(2, result.get(0).getDays().size());
+        assertEquals(to, result.get(0).getDays().get(1).getDay());
+        assertFalse(result.get(0).getDays().get(0).getAvailableTimes().contains(testDate.atTime(9, 0)));
+        assertFalse(result.get(0).getDays().get(1).getAvailableTimes().contains(to.atTime(10, 0)));
+        assertTrue(result.get(0).getDays().get(1).getAvailableTimes().contains(to.atTime(9, 0)));
+    }
+
+    @Test
+    void getDoctorsAvailabilityRange_RejectsInvalidRanges() {
+        assertThrows(BadRequestException.class, () -> doctorAvailabilityService
+                .getDoctorsAvailabilityRange(testDate, testDate.minusDays(1), null, null, null));
+        assertThrows(BadRequestException.class, () -> doctorAvailabilityService
+                .getDoctorsAvailabilityRange(testDate, testDate.plusDays(DoctorAvailabilityService.MAX_RANGE_DAYS), null, null, null));
+        verifyNoInteractions(userRepository, calendarIndex);
+    }
+}
@@ -0,0 +1,140 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.DoctorAppointmentTime;
+import Hospital.system.Entity.AppointmentStatus;
+import Hospital.system.Repository.AppointmentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DoctorCalendarIndexTest {
+
+    @Mock
+    private AppointmentRepository appointmentRepository;
+
+    private DoctorCalendarIndex calendarIndex;
+    private LocalDate day;
+
+    @BeforeEach
+    void setUp() {
+        calendarIndex = new DoctorCalendarIndex(appointmentRepository, 60_000);
+        day = LocalDate.now().plusDays(1);
+    }
+
+    @Test
+    void occupiedSlots_LoadsOnceAndAnswersFromMemory() {
+        when(appointmentRepository.findAppointmentTimesForDoctorExcludingStatus(
+                eq(1L), eq(AppointmentStatus.CANCELLED), any(), any()))
+                .thenReturn(List.of(day.atTime(9, 0), day.atTime(14, 0)));
+
+        assertEquals(0b100001, calendarIndex.occupiedSlots(1L, day));
+        assertFalse(calendarIndex.isFree(1L, day.atTime(14, 0)));
+        assertTrue(calendarIndex.isFree(1L, day.atTime(15, 0)));
+
+        verify(appointmentRepository, times(1)).findAppointmentTimesForDoctorExcludingStatus(any(), any(), any(), any());
+    }
+
+    @Test
+    void occupyAndRelease_KeepTheDayInSync() {
+        when(appointmentRepository.findAppointmentTimesForDoctorExcludingStatus(any(), any(), any(), any()))
+                .thenReturn(List.of())
+                .thenReturn(List.of());
+
+        assertTrue(calendarIndex.isFree(1L, day.atTime(10, 0)));
+        calendarIndex.occupy(1L, day.atTime(10, 0));
+        assertFalse(calendarIndex.isFree(1L, day.atTime(10, 0)));
+
+        // released days are reloaded, the second load no longer returns the cancelled appointment
+        calendarIndex.release(1L, day.atTime(10, 0));
+        assertTrue(calendarIndex.isFree(1L, day.atTime(10, 0)));
+        verify(appointmentRepository, times(2)).findAppointmentTimesForDoctorExcludingStatus(any(), any(), any(), any());
+    }
+
+    @Test
+    void occupiedSlots_LoadThatRacedACommit_IsNotCached() {
+        when(appointmentRepository.findAppointmentTimesForDoctorExcludingStatus(any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    // the appointment is cancelled while its day is being read
+                    calendarIndex.release(1L, day.atTime(10, 0));
+                    return List.of(day.atTime(10, 0));
+                })
+                .thenReturn(List.of());
+
+        assertEquals(0b10, calendarIndex.occupiedSlots(1L, day));
+        assertEquals(0, calendarIndex.size());
+        assertEquals(0, calendarIndex.occupiedSlots(1L, day));
+        assertEquals(1, calendarIndex.size());
+        verify(appointmentRepository, times(2)).findAppointmentTimesForDoctorExcludingStatus(any(), any(), any(), any());
+    }
+
+    @Test
+    void slotMask_CoversEverySlotAnAppointmentOverlaps() {
+        assertEquals(0b1, DoctorCalendarIndex.slotMask(day.atTime(9, 0)));
+        assertEquals(0b110, DoctorCalendarIndex.slotMask(day.atTime(10, 30)));
+        // half an hour before opening still blocks the first slot
+        assertEquals(0b1, DoctorCalendarIndex.slotMask(day.atTime(8, 30)));
+        assertEquals(0, DoctorCalendarIndex.slotMask(day.atTime(21, 0)));
+        assertEquals(1 << (DoctorCalendarIndex.SLOTS_PER_DAY - 1), DoctorCalendarIndex.slotMask(day.atTime(20, 0)));
+    }
+
+    @Test
+    void evictPastDays_DropsOnlyDaysBeforeToday() {
+        when(appointmentRepository.findAppointmentTimesForDoctorExcludingStatus(any(), any(), any(), any()))
+                .thenReturn(List.of());
+        calendarIndex.occupiedSlots(1L, LocalDate.now().minusDays(1));
+        calendarIndex.occupiedSlots(1L, day);
+
+        calendarIndex.evictPastDays();
+
+        assertEquals(1, calendarIndex.size());
+    }
+
+    @Test
+    void occupiedSlots_LoadsMissingDoctorsInOneQuery() {
+        when(appointmentRepository.findAppointmentTimesForDoctorExcludingStatus(
+                eq(1L), eq(AppointmentStatus.CANCELLED), any(), any()))
+                .thenReturn(List.of(day.atTime(9, 0)));
+        calendarIndex.occupiedSlots(1L, day);
+
+        when(appointmentRepository.findAppointmentTimesForDoctorsExcludingStatus(
+                eq(List.of(2L, 3L)), eq(AppointmentStatus.CANCELLED), any(), any()))
+                .thenReturn(List.of(new DoctorAppointmentTime(2L, day.atTime(10, 0))));
+
+        Map<Long, Integer> occupied = calendarIndex.occupiedSlots(List.of(1L, 2L, 3L), day);
+
+        assertEquals(Map.of(1L, 0b1, 2L, 0b10, 3L, 0), occupied);
+        // the batch seeded the cache, doctor 3 has no appointments and is still cached
+        assertTrue(calendarIndex.isFree(3L, day.atTime(9, 0)));
+        assertFalse(calendarIndex.isFree(2L, day.atTime(10, 0)));
+        verify(appointmentRepository, times(1)).findAppointmentTimesForDoctorExcludingStatus(any(), any(), any(), any());
+        verify(appointmentRepository, times(1)).findAppointmentTimesForDoctorsExcludingStatus(any(), any(), any(), any());
+    }
+
+    @Test
+    void occupiedSlots_RangeIsOneQueryWithAMaskPerDay() {
+        LocalDate to = day.plusDays(2);
+        when(appointmentRepository.findAppointmentTimesForDoctorsExcludingStatus(
+                eq(List.of(1L, 2L)), eq(AppointmentStatus.CANCELLED), eq(day.atTime(8, 0)), eq(to.atTime(21, 0))))
+                .thenReturn(List.of(
+                        new DoctorAppointmentTime(1L, day.atTime(9, 0)),
+                        new DoctorAppointmentTime(1L, to.atTime(20, 0)),
+                        new DoctorAppointmentTime(2L, day.plusDays(1).atTime(10, 30))));
+
+        Map<Long, int[]> occupied = calendarIndex.occupiedSlots(List.of(1L, 2L), day, to);
+
+        assertArrayEquals(new int[]{0b1, 0, 1 << 11}, occupied.get(1L));
+        assertArrayEquals(new int[]{0, 0b110, 0}, occupied.get(2L));
+    }
+}
@@ -0,0 +1,253 @@
+package Hospital.system.Service;
+
+import Hospital.system.Entity.IdempotencyKey;
+import Hospital.system.Repository.IdempotencyKeyRepository;
+import Hospital.system.exception.BadRequestException;
+import Hospital.system.exception.ConflictException;
+import Hospital.system.exception.RequestInProgressException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = "spring.jpa.show-sql=false")
+class IdempotencyServiceIntegrationTest {
+
+    private static final String ENDPOINT = "POST /test";
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                "idempotent.patient@test.com", null, List.of(new SimpleGrantedAuthority("ROLE_PATIENT"))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        idempotencyKeyRepository.deleteAll();
+    }
+
+    @Test
+    void concurrentDuplicates_RunTheActionOnce() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        SecurityContext context = SecurityContextHolder.getContext();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<ResponseEntity<Map>>> responses = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            responses.add(executor.submit(() -> {
+                SecurityContextHolder.setContext(context);
+                return idempotencyService.execute("same-key", ENDPOINT, Map.of("quantity", 1), Map.class, () -> {
+                    awaitQuietly(release);
+                    return created(Map.of("order", runs.incrementAndGet()));
+                });
+            }));
+        }
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Future<ResponseEntity<Map>> response : responses) {
+            ResponseEntity<Map> result = response.get(30, TimeUnit.SECONDS);
+            assertEquals(HttpStatus.CREATED, result.getStatusCode());
+            assertEquals(1, result.getBody().get("order"));
+        }
+        executor.shutdown();
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void retryOnAnotherNode_ReplaysTheStoredResponse() {
+        ResponseEntity<Map> first = idempotencyService.execute("node-key", ENDPOINT, Map.of("quantity", 1), Map.class,
+                () -> created(Map.of("order", runs.incrementAndGet())));
+
+        IdempotencyService otherNode = new IdempotencyService(idempotencyKeyRepository, objectMapper, transactionManager,
+                60000, 60000, 5000, 100);
+        ResponseEntity<Map> retry = otherNode.execute("node-key", ENDPOINT, Map.of("quantity", 1), Map.class,
+                () -> created(Map.of("order", runs.incrementAndGet())));
+
+        assertEquals(1, runs.get());
+        assertNull(first.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+        assertEquals(first.getBody(), retry.getBody());
+    }
+
+    @Test
+    void duplicateStillRunningOnAnotherNode_IsAConflict() {
+        IdempotencyService otherNode = new IdempotencyService(idempotencyKeyRepository, objectMapper, transactionManager,
+                60000, 60000, 5000, 100);
+
+        idempotencyService.execute("busy-key", ENDPOINT, Map.of("quantity", 1), Map.class, () -> {
+            assertThrows(ConflictException.class, () -> otherNode.execute("busy-key", ENDPOINT, Map.of("quantity", 1),
+                    Map.class, () -> created(Map.of("order", runs.incrementAndGet()))));
+            return created(Map.of("order", runs.incrementAndGet()));
+        });
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void duplicateWaitingLongerThanTheWait_IsAConflictWithRetryAfter() throws Exception {
+        IdempotencyService node = new IdempotencyService(idempotencyKeyRepository, objectMapper, transactionManager,
+                60000, 60000, 100, 100);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SecurityContext context = SecurityContextHolder.getContext();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<ResponseEntity<Map>> first = executor.submit(() -> {
+            SecurityContextHolder.setContext(context);
+            return node.execute("slow-key", ENDPOINT, Map.of("quantity", 1), Map.class, () -> {
+                started.countDown();
+                awaitQuietly(release);
+                return created(Map.of("order", runs.incrementAndGet()));
+            });
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        RequestInProgressException conflict = assertThrows(RequestInProgressException.class, () -> node.execute(
+                "slow-key", ENDPOINT, Map.of("quantity", 1), Map.class,
+                () -> created(Map.of("order", runs.incrementAndGet()))));
+        assertEquals(1, conflict.getRetryAfterSeconds());
+
+        release.countDown();
+        assertEquals(1, first.get(30, TimeUnit.SECONDS).getBody().get("order"));
+        executor.shutdown();
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void runThatOutlivedItsLease_IsRolledBackWhenAnotherNodeTookTheKeyOver() throws Exception {
+        IdempotencyService slowNode = new IdempotencyService(idempotencyKeyRepository, objectMapper,
+                transactionManager, 60000, 50, 5000, 100);
+        IdempotencyService otherNode = new IdempotencyService(idempotencyKeyRepository, objectMapper,
+                transactionManager, 60000, 60000, 5000, 100);
+        SecurityContext context = SecurityContextHolder.getContext();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        assertThrows(RequestInProgressException.class, () -> slowNode.execute("lease-key", ENDPOINT,
+                Map.of("quantity", 1), Map.class, () -> {
+                    idempotencyKeyRepository.saveAndFlush(IdempotencyKey.builder()
+                            .keyHash("work-of-the-slow-run")
+                            .requestHash("-")
+                            .expiresAt(Instant.now().plusSeconds(60))
+                            .build());
+                    sleepQuietly(200);
+                    // the lease ran out, so a retry on another node runs the request itself
+                    ResponseEntity<Map> takeover = getQuietly(executor.submit(() -> {
+                        SecurityContextHolder.setContext(context);
+                        return otherNode.execute("lease-key", ENDPOINT, Map.of("quantity", 1), Map.class,
+                                () -> created(Map.of("order", runs.incrementAndGet())));
+                    }));
+                    assertEquals(1, takeover.getBody().get("order"));
+                    return created(Map.of("order", runs.incrementAndGet()));
+                }));
+        executor.shutdown();
+
+        assertTrue(idempotencyKeyRepository.findByKeyHash("work-of-the-slow-run").isEmpty());
+        ResponseEntity<Map> retry = otherNode.execute("lease-key", ENDPOINT, Map.of("quantity", 1), Map.class,
+                () -> created(Map.of("order", runs.incrementAndGet())));
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals(1, retry.getBody().get("order"));
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void keyReusedForADifferentRequest_IsRejected() {
+        idempotencyService.execute("reused-key", ENDPOINT, Map.of("quantity", 1), Map.class,
+                () -> created(Map.of("order", runs.incrementAndGet())));
+
+        assertThrows(BadRequestException.class, () -> idempotencyService.execute("reused-key", ENDPOINT,
+                Map.of("quantity", 2), Map.class, () -> created(Map.of("order", runs.incrementAndGet()))));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void failedRequest_ReleasesTheKey() {
+        assertThrows(BadRequestException.class, () -> idempotencyService.execute("failing-key", ENDPOINT,
+                Map.of("quantity", 1), Map.class, () -> {
+                    runs.incrementAndGet();
+                    throw new BadRequestException("Not enough stock for Aspirin");
+                }));
+
+        ResponseEntity<Map> retry = idempotencyService.execute("failing-key", ENDPOINT, Map.of("quantity", 1), Map.class,
+                () -> created(Map.of("order", runs.incrementAndGet())));
+        assertEquals(2, retry.getBody().get("order"));
+    }
+
+    @Test
+    void keysAreScopedToTheCaller() {
+        idempotencyService.execute("shared-key", ENDPOINT, Map.of("quantity", 1), Map.class,
+                () -> created(Map.of("order", runs.incrementAndGet())));
+
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                "someone.else@test.com", null, List.of(new SimpleGrantedAuthority("ROLE_PATIENT"))));
+        ResponseEntity<Map> other = idempotencyService.execute("shared-key", ENDPOINT, Map.of("quantity", 1), Map.class,
+                () -> created(Map.of("order", runs.incrementAndGet())));
+
+        assertEquals(2, other.getBody().get("order"));
+    }
+
+    private static ResponseEntity<Map> created(Map<String, Object> body) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(body);
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <T> T getQuietly(Future<T> future) {
+        try {
+            return future.get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -4,10 +4,12 @@ package Hospital.system.Service;
 import Hospital.system.DTO.MedicineDto;
 import Hospital.system.Entity.Medicine;
 import Hospital.system.Entity.Role;
+import Hospital.system.Entity.StockMovementReason;
 import Hospital.system.Entity.User;
 import Hospital.system.Repository.MedicineRepository;
 import Hospital.system.Repository.UserRepository;
 import Hospital.system.Service.MedicineService;
+import Hospital.system.exception.ConflictException;
 import Hospital.system.exception.ResourceNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -36,6 +38,9 @@ class MedicineServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private StockLedgerService stockLedgerService;
+
     @InjectMocks
     private MedicineService medicineService;
 
@@ -110,6 +115,10 @@ class MedicineServiceTest {
         // Stub repository calls
         when(medicineRepository.findById(medicineId)).thenReturn(Optional.of(medicine));
         when(medicineRepository.save(any(Medicine.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        doAnswer(invocation -> {
+            medicine.setPendingStock(50);
+            return null;
+        }).when(stockLedgerService).deposit(medicine, 50, StockMovementReason.RESTOCK, null);
 
         // Act
         MedicineDto result = medicineService.updateMedicine(medicineId, medicineDto);
@@ -128,7 +137,9 @@ class MedicineServiceTest {
         Medicine savedMedicine = captor.getValue();
         assertEquals("Updated Aspirin", savedMedicine.getName());
         assertEquals(15.0, savedMedicine.getPrice());
-        assertEquals(150, savedMedicine.getStock());
+        // the extra units are a ledger entry, the snapshot itself is untouched
+        assertEquals(100, savedMedicine.getStock());
+        verify(stockLedgerService).deposit(medicine, 50, StockMovementReason.RESTOCK, null);
         assertEquals(pharmacy, savedMedicine.getPharmacy());
 
         // Verify repository calls
@@ -139,6 +150,19 @@ class MedicineServiceTest {
 
 
 
+    @Test
+    void updateMedicine_LowerStockRacingAnOrder_ThrowsConflict() {
+        // Arrange
+        medicineDto.setStock(40);
+        when(medicineRepository.findById(1L)).thenReturn(Optional.of(medicine));
+        when(stockLedgerService.withdraw(medicine, 60, StockMovementReason.RESTOCK, null)).thenReturn(false);
+
+        // Act & Assert
+        assertThrows(ConflictException.class,
+                () -> medicineService.updateMedicine(1L, medicineDto));
+        verify(medicineRepository, never()).save(any());
+    }
+
     @Test
     void updateMedicine_MedicineNotFound_ThrowsException() {
         // Arrange
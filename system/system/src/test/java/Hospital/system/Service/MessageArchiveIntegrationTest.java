@@ -0,0 +1,223 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.MessageDto;
+import Hospital.system.Entity.Message;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static Hospital.system.TestUsers.user;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "messages.archive.dir=" + MessageArchiveIntegrationTest.DIRECTORY,
+        "messages.archive.segment-size=4"
+})
+class MessageArchiveIntegrationTest {
+
+    static final String DIRECTORY = "target/message-archive-test";
+    private static final LocalDateTime OLD = LocalDateTime.of(2020, 1, 1, 10, 0);
+    private static final LocalDateTime CUTOFF = LocalDateTime.of(2021, 1, 1, 0, 0);
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private MessageArchiver messageArchiver;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User doctor;
+    private User patient;
+    private User otherPatient;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        clearArchive();
+        doctor = userRepository.save(user("Archive Doctor", "archive.doctor@test.com", Role.DOCTOR));
+        patient = userRepository.save(user("Archive Patient", "archive.patient@test.com", Role.PATIENT));
+        otherPatient = userRepository.save(user("Archive Other", "archive.other@test.com", Role.PATIENT));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        jdbcTemplate.update("DELETE FROM messages WHERE sender_id = ? OR receiver_id = ?", doctor.getId(), doctor.getId());
+        jdbcTemplate.update("DELETE FROM message_unread_counters WHERE receiver_id = ? OR sender_id = ?",
+                doctor.getId(), doctor.getId());
+        jdbcTemplate.update("DELETE FROM conversation_heads WHERE lower_user_id = ? OR higher_user_id = ?",
+                doctor.getId(), doctor.getId());
+        userRepository.deleteAll(List.of(doctor, patient, otherPatient));
+        clearArchive();
+    }
+
+    @Test
+    void oldMessages_MoveToSegmentsAndConversationsPageOnIntoThem() throws IOException {
+        List<String> thread = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            User from = i % 2 == 0 ? patient : doctor;
+            thread.add(insert(2_000L + i, from, from == patient ? doctor : patient, "old message " + i, i));
+            insert(2_100L + i, doctor, otherPatient, "other thread " + i, i);
+        }
+        // an unread message sent long ago: archiving it takes it off the patient's unread count
+        MessageDto aged = send(doctor, patient, "aged unread");
+        jdbcTemplate.update("UPDATE messages SET time = ? WHERE id = ?", Timestamp.valueOf(OLD.plusDays(1)), aged.getId());
+        thread.add("aged unread");
+        thread.add(send(doctor, patient, "recent one").getContent());
+        thread.add(send(doctor, patient, "recent two").getContent());
+        assertEquals(3, unread(patient, doctor));
+
+        assertEquals(13, messageArchiver.archive(CUTOFF));
+
+        assertEquals(4, segmentFiles());
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM messages WHERE conversation_key = ?",
+                Integer.class, Message.conversationKey(doctor.getId(), patient.getId())));
+        assertEquals(2, unread(patient, doctor));
+
+        // newest first: the table's two rows, then on into the archive page by page
+        List<MessageDto> latest = messageService.getConversation(patient.getId(), doctor.getId(), null, null, 3);
+        assertEquals(thread.subList(6, 9), contents(latest));
+        List<MessageDto> older = messageService.getConversation(patient.getId(), doctor.getId(),
+                latest.get(0).getCursor(), null, 3);
+        assertEquals(thread.subList(3, 6), contents(older));
+        List<MessageDto> oldest = messageService.getConversation(patient.getId(), doctor.getId(),
+                older.get(0).getCursor(), null, 5);
+        assertEquals(thread.subList(0, 3), contents(oldest));
+        assertEquals(0, messageService.getConversation(patient.getId(), doctor.getId(),
+                oldest.get(0).getCursor(), null, 5).size());
+
+        // and forwards from the archive back into the table
+        List<MessageDto> newer = messageService.getConversation(doctor.getId(), patient.getId(),
+                null, oldest.get(0).getCursor(), 50);
+        assertEquals(thread.subList(1, 9), contents(newer));
+        assertEquals(6, messageService.getConversation(doctor.getId(), otherPatient.getId(), null, null, 50).size());
+
+        // nothing new is old enough, and a restarted node finds the same segments
+        assertEquals(0, messageArchiver.archive(CUTOFF));
+        messageArchive.refresh();
+        assertEquals(4, messageArchive.segmentCount());
+    }
+
+    @Test
+    void purge_DeletesWholeSegmentsPastTheRetention() throws IOException {
+        for (int i = 0; i < 6; i++) {
+            insert(2_200L + i, patient, doctor, "old message " + i, i * 60 * 24 * 30);
+        }
+        String recent = send(patient, doctor, "recent").getContent();
+        assertEquals(6, messageArchiver.archive(CUTOFF));
+        assertEquals(2, segmentFiles());
+
+        // the first segment ends on March 31st, the second on May 30th
+        assertEquals(4, messageArchiver.purge(OLD.plusMonths(3)));
+
+        assertEquals(1, segmentFiles());
+        assertEquals(List.of("old message 4", "old message 5", recent),
+                contents(messageService.getConversation(doctor.getId(), patient.getId(), null, null, 50)));
+    }
+
+    @Test
+    void rowCommittedBehindTheHighWater_StaysInTheTableAndPagesInItsPlace() {
+        List<String> thread = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            thread.add(insert(2_300L + i, patient, doctor, "old message " + i, i));
+        }
+        assertEquals(4, messageArchiver.archive(CUTOFF));
+
+        // committed after its range was archived: not in a segment, so it must not be deleted
+        thread.add(2, insert(2_310L, doctor, patient, "late reply", 1));
+        assertEquals(0, messageArchiver.archive(CUTOFF));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM messages WHERE conversation_key = ?",
+                Integer.class, Message.conversationKey(doctor.getId(), patient.getId())));
+
+        assertEquals(thread, contents(messageService.getConversation(doctor.getId(), patient.getId(), null, null, 50)));
+        List<MessageDto> latest = messageService.getConversation(doctor.getId(), patient.getId(), null, null, 2);
+        assertEquals(thread.subList(3, 5), contents(latest));
+        List<MessageDto> older = messageService.getConversation(doctor.getId(), patient.getId(),
+                latest.get(0).getCursor(), null, 2);
+        assertEquals(thread.subList(1, 3), contents(older));
+        List<MessageDto> newer = messageService.getConversation(doctor.getId(), patient.getId(),
+                null, older.get(0).getCursor(), 50);
+        assertEquals(thread.subList(2, 5), contents(newer));
+    }
+
+    @Test
+    void messagesOfUser_PageOnIntoTheArchive() {
+        List<String> doctors = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            doctors.add(insert(2_400L + 2 * i, patient, doctor, "patient old " + i, 2 * i));
+            doctors.add(insert(2_401L + 2 * i, doctor, otherPatient, "other old " + i, 2 * i + 1));
+        }
+        assertEquals(6, messageArchiver.archive(CUTOFF));
+        doctors.add(send(doctor, patient, "recent").getContent());
+
+        List<MessageDto> latest = messageService.getMessagesByUser(doctor.getId(), null, null, 3);
+        assertEquals(doctors.subList(4, 7), contents(latest));
+        List<MessageDto> older = messageService.getMessagesByUser(doctor.getId(), latest.get(0).getCursor(), null, 10);
+        assertEquals(doctors.subList(0, 4), contents(older));
+        assertEquals(doctors.subList(1, 7),
+                contents(messageService.getMessagesByUser(doctor.getId(), null, older.get(0).getCursor(), 10)));
+
+        assertEquals(List.of("patient old 0", "patient old 1", "patient old 2", "recent"),
+                contents(messageService.getMessagesByUser(patient.getId(), null, null, 50)));
+    }
+
+    private String insert(Long id, User sender, User receiver, String content, int minutes) {
+        Timestamp time = Timestamp.valueOf(OLD.plusMinutes(minutes));
+        jdbcTemplate.update("INSERT INTO messages (id, sender_id, receiver_id, content, time, read_at, conversation_key) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?)", id, sender.getId(), receiver.getId(), content, time, time,
+                Message.conversationKey(sender.getId(), receiver.getId()));
+        return content;
+    }
+
+    private MessageDto send(User sender, User receiver, String content) {
+        MessageDto dto = new MessageDto();
+        dto.setSenderId(sender.getId());
+        dto.setReceiverId(receiver.getId());
+        dto.setContent(content);
+        return messageService.sendMessage(dto);
+    }
+
+    private int unread(User receiver, User sender) {
+        return jdbcTemplate.queryForObject("SELECT unread_count FROM message_unread_counters "
+                + "WHERE receiver_id = ? AND sender_id = ?", Integer.class, receiver.getId(), sender.getId());
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of(DIRECTORY))) {
+            return files.filter(file -> file.toString().endsWith(".seg")).count();
+        }
+    }
+
+    private void clearArchive() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(DIRECTORY));
+        messageArchive.refresh();
+    }
+
+    private static List<String> contents(List<MessageDto> messages) {
+        return messages.stream().map(MessageDto::getContent).toList();
+    }
+}
@@ -0,0 +1,157 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.MessageDto;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.UserRepository;
+import Hospital.system.exception.ResourceNotFoundException;
+import Hospital.system.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static Hospital.system.TestUsers.user;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "messages.group-commit.enabled=true",
+        "messages.group-commit.max-batch=50",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=50"
+})
+class MessageGroupCommitIntegrationTest {
+
+    private static final int PATIENTS = 4;
+    private static final int MESSAGES_PER_PATIENT = 50;
+
+    @Autowired
+    private MessageBatchWriter messageBatchWriter;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private MessageStore messageStore;
+
+    @Autowired
+    private MessageHub messageHub;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private User doctor;
+    private final List<User> patients = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        doctor = userRepository.save(user("Batch Doctor", "batch.doctor@test.com", Role.DOCTOR));
+        for (int i = 0; i < PATIENTS; i++) {
+            patients.add(userRepository.save(user("Batch Patient " + i, "batch.patient" + i + "@test.com", Role.PATIENT)));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM messages WHERE sender_id = ? OR receiver_id = ?", doctor.getId(), doctor.getId());
+        jdbcTemplate.update("DELETE FROM message_unread_counters WHERE receiver_id = ? OR sender_id = ?",
+                doctor.getId(), doctor.getId());
+        jdbcTemplate.update("DELETE FROM conversation_heads WHERE lower_user_id = ? OR higher_user_id = ?",
+                doctor.getId(), doctor.getId());
+        userRepository.deleteAll(patients);
+        userRepository.delete(doctor);
+    }
+
+    @Test
+    void burstOfSends_IsStoredInBatchesAndEveryCallerGetsItsId() throws Exception {
+        DistributionSummary batchSizes = meterRegistry.get("messages.group-commit.batch.size").summary();
+        long batchesBefore = batchSizes.count();
+
+        List<CompletableFuture<MessageDto>> sent = new ArrayList<>();
+        for (int i = 0; i < MESSAGES_PER_PATIENT; i++) {
+            for (User patient : patients) {
+                sent.add(messageBatchWriter.submit(message(patient.getId(), doctor.getId(), "Burst message " + i)));
+            }
+        }
+        Set<Long> ids = new HashSet<>();
+        for (CompletableFuture<MessageDto> future : sent) {
+            MessageDto saved = future.get(10, TimeUnit.SECONDS);
+            assertNotNull(saved.getCursor());
+            ids.add(saved.getId());
+        }
+
+        int total = PATIENTS * MESSAGES_PER_PATIENT;
+        assertEquals(total, ids.size());
+        assertEquals(total, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM messages WHERE receiver_id = ?", Integer.class, doctor.getId()));
+        assertEquals(total, jdbcTemplate.queryForObject(
+                "SELECT SUM(unread_count) FROM message_unread_counters WHERE receiver_id = ?", Integer.class, doctor.getId()));
+        assertEquals(PATIENTS, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM conversation_heads WHERE higher_user_id = ? OR lower_user_id = ?",
+                Integer.class, doctor.getId(), doctor.getId()));
+
+        long batches = batchSizes.count() - batchesBefore;
+        assertTrue(batches < total, () -> "expected batching, got " + batches + " batches for " + total + " messages");
+    }
+
+    @Test
+    void unknownReceiver_FailsOnlyItsOwnSend() throws Exception {
+        CompletableFuture<MessageDto> before = messageBatchWriter.submit(message(patients.get(0).getId(), doctor.getId(), "Before it"));
+        CompletableFuture<MessageDto> unknown = messageBatchWriter.submit(message(patients.get(0).getId(), -1L, "Nobody there"));
+        CompletableFuture<MessageDto> after = messageBatchWriter.submit(message(patients.get(1).getId(), doctor.getId(), "After it"));
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> unknown.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(ResourceNotFoundException.class, failure.getCause());
+        assertEquals("Receiver not found with id -1", failure.getCause().getMessage());
+        assertEquals("Before it", before.get(10, TimeUnit.SECONDS).getContent());
+        assertEquals("After it", after.get(10, TimeUnit.SECONDS).getContent());
+    }
+
+    @Test
+    void stop_FailsWhatTheWriterDidNotGetTo() throws Exception {
+        // never started, so nothing it queues is written
+        MessageBatchWriter idle = new MessageBatchWriter(userRepository, messageStore, messageHub, transactionManager,
+                new SimpleMeterRegistry(), true, 10, 10);
+        List<CompletableFuture<MessageDto>> queued = List.of(
+                idle.submit(message(patients.get(0).getId(), doctor.getId(), "Left behind 1")),
+                idle.submit(message(patients.get(1).getId(), doctor.getId(), "Left behind 2")));
+
+        idle.stop();
+
+        for (CompletableFuture<MessageDto> future : queued) {
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+            assertInstanceOf(ServiceUnavailableException.class, failure.getCause());
+        }
+        assertThrows(ServiceUnavailableException.class,
+                () -> idle.submit(message(patients.get(0).getId(), doctor.getId(), "Too late")));
+    }
+
+    private static MessageDto message(Long senderId, Long receiverId, String content) {
+        MessageDto dto = new MessageDto();
+        dto.setSenderId(senderId);
+        dto.setReceiverId(receiverId);
+        dto.setContent(content);
+        return dto;
+    }
+}
@@ -0,0 +1,153 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.MessageDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MessageHubTest {
+
+    private static final int QUEUE_SIZE = 4;
+
+    private MessageHub messageHub;
+
+    @BeforeEach
+    void setUp() {
+        messageHub = new MessageHub(new ObjectMapper(), new SimpleMeterRegistry(), QUEUE_SIZE, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        messageHub.shutdown();
+    }
+
+    @Test
+    void publish_ReachesEverySessionOfTheReceiverOnly() throws IOException {
+        List<String> phone = new CopyOnWriteArrayList<>();
+        List<String> laptop = new CopyOnWriteArrayList<>();
+        WebSocketSession someoneElse = mock(WebSocketSession.class);
+        register(2L, session("phone", phone));
+        register(2L, session("laptop", laptop));
+        register(3L, someoneElse);
+        assertEquals(3, messageHub.connections());
+
+        messageHub.publish(message("Your results are ready"));
+
+        awaitFrames(phone, 1);
+        awaitFrames(laptop, 1);
+        assertTrue(phone.get(0).contains("Your results are ready"));
+        verify(someoneElse, never()).sendMessage(any());
+    }
+
+    @Test
+    void unregister_StopsDeliveryToThatSession() throws IOException {
+        WebSocketSession closed = mock(WebSocketSession.class);
+        List<String> open = new CopyOnWriteArrayList<>();
+        register(2L, closed);
+        register(2L, session("open", open));
+        messageHub.unregister(2L, closed);
+        messageHub.unregister(2L, closed);
+        assertEquals(1, messageHub.connections());
+
+        messageHub.publish(message("Only the open session"));
+
+        awaitFrames(open, 1);
+        verify(closed, never()).sendMessage(any());
+    }
+
+    @Test
+    void slowSession_IsDisconnectedWithoutHoldingBackTheOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        WebSocketSession slow = mock(WebSocketSession.class);
+        doAnswer(invocation -> release.await(10, TimeUnit.SECONDS)).when(slow).sendMessage(any());
+        List<String> fast = new CopyOnWriteArrayList<>();
+        register(2L, slow);
+        register(2L, session("fast", fast));
+
+        // the slow writer is stuck on the first frame while its queue fills up and overflows
+        for (int i = 0; i < QUEUE_SIZE * 3; i++) {
+            messageHub.publish(message("Message number " + i));
+            awaitFrames(fast, i + 1);
+        }
+
+        release.countDown();
+        verify(slow, timeout(5000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        verify(slow, times(1)).sendMessage(any());
+    }
+
+    @Test
+    void session_IsClosedWhenItsTokenExpires() throws IOException {
+        WebSocketSession expiring = mock(WebSocketSession.class);
+        WebSocketSession fresh = mock(WebSocketSession.class);
+        messageHub.register(2L, UUID.randomUUID(), Instant.now().plusMillis(100), expiring);
+        register(2L, fresh);
+
+        verify(expiring, timeout(5000)).close(CloseStatus.POLICY_VIOLATION.withReason("Token expired"));
+        verify(fresh, never()).close(any());
+    }
+
+    @Test
+    void revokedToken_ClosesEverySessionOpenedWithIt() throws IOException {
+        UUID loggedOut = UUID.randomUUID();
+        WebSocketSession phone = mock(WebSocketSession.class);
+        WebSocketSession laptop = mock(WebSocketSession.class);
+        WebSocketSession otherLogin = mock(WebSocketSession.class);
+        Instant expiresAt = Instant.now().plus(1, ChronoUnit.HOURS);
+        messageHub.register(2L, loggedOut, expiresAt, phone);
+        messageHub.register(2L, loggedOut, expiresAt, laptop);
+        register(2L, otherLogin);
+
+        messageHub.closeSessionsOf(loggedOut);
+
+        CloseStatus revoked = CloseStatus.POLICY_VIOLATION.withReason("Token revoked");
+        verify(phone, timeout(5000)).close(revoked);
+        verify(laptop, timeout(5000)).close(revoked);
+        verify(otherLogin, never()).close(any());
+    }
+
+    private void register(Long userId, WebSocketSession session) {
+        messageHub.register(userId, UUID.randomUUID(), Instant.now().plus(1, ChronoUnit.HOURS), session);
+    }
+
+    private static WebSocketSession session(String id, List<String> frames) throws IOException {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        doAnswer(invocation -> frames.add(((TextMessage) invocation.getArgument(0)).getPayload()))
+                .when(session).sendMessage(any());
+        return session;
+    }
+
+    private static void awaitFrames(List<String> frames, int count) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (frames.size() < count) {
+            assertTrue(System.nanoTime() < deadline, () -> "expected " + count + " frames, got " + frames.size());
+            Thread.onSpinWait();
+        }
+    }
+
+    private static MessageDto message(String content) {
+        MessageDto dto = new MessageDto();
+        dto.setSenderId(1L);
+        dto.setReceiverId(2L);
+        dto.setContent(content);
+        return dto;
+    }
+}
@@ -0,0 +1,126 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.InboxEntryDto;
+import Hospital.system.DTO.MessageDto;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUser;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static Hospital.system.TestUsers.user;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        // statistics are global, keep the background jobs out of the counted statements
+        "security.revocation.poll-interval=3600000",
+        "medicines.reservation.flush-interval=3600000"
+})
+class MessageInboxIntegrationTest {
+
+    private static final int PATIENTS = 5;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private User doctor;
+    private final List<User> patients = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        doctor = userRepository.save(user("Inbox Doctor", "inbox.doctor@test.com", Role.DOCTOR));
+        for (int i = 0; i < PATIENTS; i++) {
+            patients.add(userRepository.save(user("Inbox Patient " + i, "inbox.patient" + i + "@test.com", Role.PATIENT)));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        jdbcTemplate.update("DELETE FROM messages WHERE sender_id = ? OR receiver_id = ?", doctor.getId(), doctor.getId());
+        jdbcTemplate.update("DELETE FROM message_unread_counters WHERE receiver_id = ? OR sender_id = ?",
+                doctor.getId(), doctor.getId());
+        jdbcTemplate.update("DELETE FROM conversation_heads WHERE lower_user_id = ? OR higher_user_id = ?",
+                doctor.getId(), doctor.getId());
+        userRepository.deleteAll(patients);
+        userRepository.delete(doctor);
+    }
+
+    @Test
+    void inbox_ListsEachConversationOnceByItsLatestMessage() {
+        for (User patient : patients) {
+            send(patient, doctor, "question from " + patient.getName());
+        }
+        send(doctor, patients.get(1), "answer for patient one");
+        send(patients.get(3), doctor, "x".repeat(150));
+
+        loginAs(doctor);
+        Statistics statistics = statistics();
+        List<InboxEntryDto> first = messageService.getInbox(null, 3);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(List.of(patients.get(3).getId(), patients.get(1).getId(), patients.get(4).getId()),
+                otherUsers(first));
+        assertEquals(100, first.get(0).getPreview().length());
+        assertEquals("answer for patient one", first.get(1).getPreview());
+        assertEquals(doctor.getId(), first.get(1).getLastSenderId());
+
+        List<InboxEntryDto> rest = messageService.getInbox(first.get(2).getCursor(), 3);
+        assertEquals(List.of(patients.get(2).getId(), patients.get(0).getId()), otherUsers(rest));
+
+        loginAs(patients.get(1));
+        List<InboxEntryDto> patientInbox = messageService.getInbox(null, null);
+        assertEquals(1, patientInbox.size());
+        assertEquals(doctor.getId(), patientInbox.get(0).getOtherUserId());
+        assertEquals("answer for patient one", patientInbox.get(0).getPreview());
+    }
+
+    private void send(User sender, User receiver, String content) {
+        MessageDto dto = new MessageDto();
+        dto.setSenderId(sender.getId());
+        dto.setReceiverId(receiver.getId());
+        dto.setContent(content);
+        messageService.sendMessage(dto);
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+    private static List<Long> otherUsers(List<InboxEntryDto> inbox) {
+        return inbox.stream().map(InboxEntryDto::getOtherUserId).toList();
+    }
+
+    private static void loginAs(User user) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                CurrentUser.of(user), null, List.of(new SimpleGrantedAuthority("ROLE_" + user.getRole().name()))));
+    }
+}
@@ -0,0 +1,152 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.MessageCursor;
+import Hospital.system.DTO.MessageDto;
+import Hospital.system.Entity.Message;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static Hospital.system.TestUsers.user;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        // statistics are global, keep the background jobs out of the counted statements
+        "security.revocation.poll-interval=3600000",
+        "medicines.reservation.flush-interval=3600000"
+})
+class MessagePagingIntegrationTest {
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private User doctor;
+    private User patient;
+    private User otherPatient;
+
+    @BeforeEach
+    void setUp() {
+        doctor = userRepository.save(user("Paging Doctor", "paging.doctor@test.com", Role.DOCTOR));
+        patient = userRepository.save(user("Paging Patient", "paging.patient@test.com", Role.PATIENT));
+        otherPatient = userRepository.save(user("Other Patient", "paging.other@test.com", Role.PATIENT));
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM messages WHERE sender_id = ? OR receiver_id = ?", doctor.getId(), doctor.getId());
+        userRepository.deleteAll(List.of(doctor, patient, otherPatient));
+    }
+
+    @Test
+    void conversation_IsWalkedBackwardsAndForwardsInOneStatementPerPage() {
+        List<String> sent = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            sent.add(i % 2 == 0 ? send(patient, doctor, "patient says " + i) : send(doctor, patient, "doctor says " + i));
+        }
+        send(doctor, otherPatient, "not in this thread");
+
+        Statistics statistics = statistics();
+        List<MessageDto> latest = messageService.getConversation(doctor.getId(), patient.getId(), null, null, 3);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(sent.subList(4, 7), contents(latest));
+
+        List<MessageDto> older = messageService.getConversation(patient.getId(), doctor.getId(),
+                latest.get(0).getCursor(), null, 3);
+        assertEquals(sent.subList(1, 4), contents(older));
+
+        List<MessageDto> oldest = messageService.getConversation(doctor.getId(), patient.getId(),
+                older.get(0).getCursor(), null, 3);
+        assertEquals(sent.subList(0, 1), contents(oldest));
+
+        List<MessageDto> newer = messageService.getConversation(doctor.getId(), patient.getId(),
+                null, oldest.get(0).getCursor(), 4);
+        assertEquals(sent.subList(1, 5), contents(newer));
+    }
+
+    @Test
+    void messagesOfUser_CoverBothDirectionsAndBreakTimeTiesById() {
+        LocalDateTime sameTime = LocalDateTime.of(2025, 9, 1, 10, 0);
+        insert(1_000L, patient, doctor, "first at ten", sameTime);
+        insert(1_001L, doctor, otherPatient, "second at ten", sameTime);
+        insert(1_002L, patient, doctor, "third at ten", sameTime);
+        String later = send(doctor, patient, "later reply");
+
+        List<MessageDto> latest = messageService.getMessagesByUser(doctor.getId(), null, null, 2);
+        assertEquals(List.of("third at ten", later), contents(latest));
+
+        // the cursor sits between rows sharing a timestamp, the id decides which side each falls on
+        List<MessageDto> older = messageService.getMessagesByUser(doctor.getId(), latest.get(0).getCursor(), null, 2);
+        assertEquals(List.of("first at ten", "second at ten"), contents(older));
+        assertEquals(0, messageService.getMessagesByUser(doctor.getId(), older.get(0).getCursor(), null, 2).size());
+
+        List<MessageDto> newer = messageService.getMessagesByUser(doctor.getId(), null, older.get(0).getCursor(), 50);
+        assertEquals(List.of("second at ten", "third at ten", later), contents(newer));
+    }
+
+    @Test
+    void messagesOfUser_ListANoteToSelfOnce() {
+        LocalDateTime time = LocalDateTime.of(2025, 9, 2, 10, 0);
+        insert(2_000L, doctor, patient, "to the patient", time);
+        insert(2_001L, doctor, doctor, "note to self", time.plusMinutes(1));
+        insert(2_002L, otherPatient, doctor, "from the other patient", time.plusMinutes(2));
+
+        List<MessageDto> latest = messageService.getMessagesByUser(doctor.getId(), null, null, 2);
+        assertEquals(List.of("note to self", "from the other patient"), contents(latest));
+
+        List<MessageDto> all = messageService.getMessagesByUser(doctor.getId(), null,
+                new MessageCursor(time.minusMinutes(1), 0L).toString(), 50);
+        assertEquals(List.of("to the patient", "note to self", "from the other patient"), contents(all));
+    }
+
+    private String send(User sender, User receiver, String content) {
+        MessageDto dto = new MessageDto();
+        dto.setSenderId(sender.getId());
+        dto.setReceiverId(receiver.getId());
+        dto.setContent(content);
+        messageService.sendMessage(dto);
+        return content;
+    }
+
+    private void insert(Long id, User sender, User receiver, String content, LocalDateTime time) {
+        jdbcTemplate.update("INSERT INTO messages (id, sender_id, receiver_id, content, time, conversation_key) "
+                        + "VALUES (?, ?, ?, ?, ?, ?)", id, sender.getId(), receiver.getId(), content,
+                Timestamp.valueOf(time), Message.conversationKey(sender.getId(), receiver.getId()));
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+    private static List<String> contents(List<MessageDto> messages) {
+        return messages.stream().map(MessageDto::getContent).toList();
+    }
+}
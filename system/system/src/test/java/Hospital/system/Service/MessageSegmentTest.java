@@ -0,0 +1,61 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.MessageCursor;
+import Hospital.system.DTO.MessageLine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageSegmentTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2020, 3, 1, 9, 0, 0, 123_456_000);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void write_ThenOpen_ReadsEachConversationBackInOrder() throws IOException {
+        List<MessageLine> lines = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            long patient = 10 + i % 3;
+            boolean fromDoctor = i % 2 == 0;
+            lines.add(new MessageLine((long) i, fromDoctor ? 1L : patient, fromDoctor ? patient : 1L,
+                    "Message number " + i + " about the dosage", START.plusSeconds(i),
+                    i % 5 == 0 ? null : START.plusSeconds(i + 60)));
+        }
+        lines.add(new MessageLine(500L, 2L, 1L, "Grüße, ünïcödé 👋", START.plusSeconds(500), null));
+
+        MessageSegment written = MessageSegment.write(directory.resolve("000000000001.seg"), lines);
+        MessageSegment segment = MessageSegment.open(written.path());
+
+        assertEquals(501, segment.messages());
+        assertEquals(4, segment.conversations());
+        assertEquals(new MessageCursor(START, 0L), segment.first());
+        assertEquals(new MessageCursor(START.plusSeconds(500), 500L), segment.last());
+        assertEquals(lines.stream().filter(line -> line.senderId() == 11L || line.receiverId() == 11L).toList(),
+                segment.read("1:11"));
+        assertEquals(List.of(lines.get(500)), segment.read("1:2"));
+        assertTrue(segment.read("3:4").isEmpty());
+        assertEquals(segment.read("1:11"), segment.readOfUser(11L));
+        // the doctor is in every conversation, so that is all of them merged back into one order
+        assertEquals(lines, segment.readOfUser(1L));
+        assertEquals(501, segment.ids().stream().distinct().count());
+        assertTrue(Files.size(segment.path()) < 501 * 40L, "runs are compressed");
+        assertFalse(Files.exists(directory.resolve("000000000001.seg.tmp")));
+    }
+
+    @Test
+    void open_RejectsAFileThatIsNotASegment() throws IOException {
+        Path file = Files.writeString(directory.resolve("000000000002.seg"), "not a segment");
+
+        assertThrows(IOException.class, () -> MessageSegment.open(file));
+    }
+}
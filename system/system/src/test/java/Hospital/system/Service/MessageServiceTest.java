@@ -1,13 +1,25 @@
 package Hospital.system.Service;
 
 
+import Hospital.system.DTO.InboxEntryDto;
+import Hospital.system.DTO.InboxLine;
+import Hospital.system.DTO.MarkReadDto;
+import Hospital.system.DTO.MessageCursor;
 import Hospital.system.DTO.MessageDto;
+import Hospital.system.DTO.MessageLine;
+import Hospital.system.DTO.UnreadCount;
+import Hospital.system.DTO.UnreadSummaryDto;
 import Hospital.system.Entity.Message;
 import Hospital.system.Entity.Role;
 import Hospital.system.Entity.User;
+import Hospital.system.Repository.ConversationHeadRepository;
 import Hospital.system.Repository.MessageRepository;
+import Hospital.system.Repository.MessageUnreadCounterRepository;
 import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUser;
+import Hospital.system.Security.CurrentUserService;
 import Hospital.system.Service.MessageService;
+import Hospital.system.exception.BadRequestException;
 import Hospital.system.exception.ResourceNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,14 +27,15 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 
 import java.time.LocalDateTime;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -35,6 +48,24 @@ class MessageServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private MessageHub messageHub;
+
+    @Mock
+    private MessageUnreadCounterRepository unreadCounterRepository;
+
+    @Mock
+    private CurrentUserService currentUserService;
+
+    @Mock
+    private ConversationHeadRepository conversationHeadRepository;
+
+    @Mock
+    private MessageStore messageStore;
+
+    @Mock
+    private MessageArchive messageArchive;
+
     @InjectMocks
     private MessageService messageService;
 
@@ -70,6 +101,7 @@ class MessageServiceTest {
                 .receiver(receiver)
                 .content("Test message content")
                 .time(LocalDateTime.now())
+                .conversationKey("1:2")
                 .build();
     }
 
@@ -78,7 +110,7 @@ class MessageServiceTest {
         // Arrange
         when(userRepository.findById(1L)).thenReturn(Optional.of(sender));
         when(userRepository.findById(2L)).thenReturn(Optional.of(receiver));
-        when(messageRepository.save(any(Message.class))).thenReturn(message);
+        when(messageStore.store(anyList())).thenReturn(List.of(message));
 
         // Act
         MessageDto result = messageService.sendMessage(messageDto);
@@ -88,6 +120,53 @@ class MessageServiceTest {
         assertEquals(1L, result.getSenderId());
         assertEquals(2L, result.getReceiverId());
         assertEquals("Test message content", result.getContent());
+        assertNull(result.getReadAt());
+        verify(messageStore).store(argThat((List<Message> messages) -> messages.size() == 1
+                && messages.get(0).getSender() == sender && messages.get(0).getReceiver() == receiver));
+        verify(messageHub).publishAfterCommit(result);
+    }
+
+    @Test
+    void markRead_AcknowledgesUpToTheMessageAndDropsTheCounter() {
+        LocalDateTime time = LocalDateTime.of(2025, 9, 1, 10, 15);
+        when(currentUserService.getCurrentUser()).thenReturn(CurrentUser.of(receiver));
+        when(messageRepository.findCursorInConversation(7L, "1:2")).thenReturn(Optional.of(new MessageCursor(time, 7L)));
+        when(messageRepository.markRead(eq(2L), eq(1L), eq(time), eq(7L), any())).thenReturn(3);
+
+        assertEquals(3, messageService.markRead(markRead(1L, 7L)));
+        verify(unreadCounterRepository).decrement(2L, 1L, 3);
+    }
+
+    @Test
+    void markRead_NothingLeftUnread_LeavesTheCounter() {
+        LocalDateTime time = LocalDateTime.of(2025, 9, 1, 10, 15);
+        when(currentUserService.getCurrentUser()).thenReturn(CurrentUser.of(receiver));
+        when(messageRepository.findCursorInConversation(7L, "1:2")).thenReturn(Optional.of(new MessageCursor(time, 7L)));
+        when(messageRepository.markRead(eq(2L), eq(1L), eq(time), eq(7L), any())).thenReturn(0);
+
+        assertEquals(0, messageService.markRead(markRead(1L, 7L)));
+        verifyNoInteractions(unreadCounterRepository);
+    }
+
+    @Test
+    void markRead_MessageOutsideTheConversation_ThrowsException() {
+        when(currentUserService.getCurrentUser()).thenReturn(CurrentUser.of(receiver));
+        when(messageRepository.findCursorInConversation(7L, "2:3")).thenReturn(Optional.empty());
+
+        assertThrows(ResourceNotFoundException.class, () -> messageService.markRead(markRead(3L, 7L)));
+        verify(messageRepository, never()).markRead(any(), any(), any(), any(), any());
+        verifyNoInteractions(unreadCounterRepository);
+    }
+
+    @Test
+    void getUnreadSummary_AddsUpTheSenders() {
+        when(currentUserService.getCurrentUser()).thenReturn(CurrentUser.of(receiver));
+        when(unreadCounterRepository.findUnread(2L)).thenReturn(List.of(new UnreadCount(1L, 2), new UnreadCount(5L, 4)));
+
+        UnreadSummaryDto summary = messageService.getUnreadSummary();
+
+        assertEquals(6, summary.getTotal());
+        assertEquals(2, summary.getSenders().size());
     }
 
     @Test
@@ -106,11 +185,8 @@ class MessageServiceTest {
     @Test
     void getMessagesByUser_Success() {
         // Arrange
-        List<Message> sentMessages = Arrays.asList(message);
-        List<Message> receivedMessages = Arrays.asList();
-
-        when(messageRepository.findBySender_Id(1L)).thenReturn(sentMessages);
-        when(messageRepository.findByReceiver_Id(1L)).thenReturn(receivedMessages);
+        when(messageRepository.findLatestSentBy(1L, Limit.of(50))).thenReturn(List.of(messageLine(1L)));
+        when(messageRepository.findLatestReceivedBy(1L, Limit.of(50))).thenReturn(List.of());
 
         // Act
         List<MessageDto> result = messageService.getMessagesByUser(1L);
@@ -123,17 +199,104 @@ class MessageServiceTest {
     @Test
     void getConversation_Success() {
         // Arrange
-        List<Message> messages1 = Arrays.asList(message);
-        List<Message> messages2 = Arrays.asList();
+        when(messageRepository.findLatestInConversation("1:2", Limit.of(50)))
+                .thenReturn(List.of(messageLine(3L), messageLine(2L)));
+
+        // Act
+        List<MessageDto> result = messageService.getConversation(2L, 1L);
 
-        when(messageRepository.findBySender_IdAndReceiver_IdOrderByTimeAsc(1L, 2L)).thenReturn(messages1);
-        when(messageRepository.findBySender_IdAndReceiver_IdOrderByTimeAsc(2L, 1L)).thenReturn(messages2);
+        // Assert: read newest first, returned in time order
+        assertEquals(List.of(2L, 3L), result.stream().map(MessageDto::getId).toList());
+    }
+
+    @Test
+    void getConversation_Before_ContinuesFromTheCursor() {
+        // Arrange
+        LocalDateTime time = LocalDateTime.of(2025, 9, 1, 10, 15, 30, 123_456_000);
+        when(messageRepository.findInConversationBefore("1:2", time, 9L, Limit.of(20)))
+                .thenReturn(List.of(messageLine(8L)));
 
         // Act
-        List<MessageDto> result = messageService.getConversation(1L, 2L);
+        List<MessageDto> result = messageService.getConversation(1L, 2L, "2025-09-01T10:15:30.123456_9", null, 20);
 
         // Assert
-        assertNotNull(result);
         assertEquals(1, result.size());
+        assertEquals(8L, result.get(0).getId());
+    }
+
+    @Test
+    void getConversation_PastTheOldestRow_ContinuesInTheArchive() {
+        // Arrange
+        when(messageRepository.findLatestInConversation("1:2", Limit.of(3))).thenReturn(List.of(messageLine(3L)));
+        when(messageArchive.highWater()).thenReturn(new MessageCursor(message.getTime(), 2L));
+        when(messageArchive.findBefore("1:2", null, 3)).thenReturn(List.of(messageLine(2L), messageLine(1L)));
+
+        // Act
+        List<MessageDto> result = messageService.getConversation(1L, 2L, null, null, 3);
+
+        // Assert
+        assertEquals(List.of(1L, 2L, 3L), result.stream().map(MessageDto::getId).toList());
+    }
+
+    @Test
+    void getConversation_ArchivedCursor_MergesTheArchiveWithRowsLeftBehindInTheTable() {
+        // Arrange
+        LocalDateTime time = LocalDateTime.of(2020, 1, 1, 9, 0);
+        MessageCursor before = new MessageCursor(time, 9L);
+        when(messageArchive.highWater()).thenReturn(new MessageCursor(time.plusDays(1), 20L));
+        when(messageRepository.findInConversationBefore("1:2", time, 9L, Limit.of(20)))
+                .thenReturn(List.of(new MessageLine(7L, 1L, 2L, "committed late", time.minusHours(2), null)));
+        when(messageArchive.findBefore("1:2", before, 20)).thenReturn(List.of(
+                new MessageLine(8L, 1L, 2L, "archived", time.minusHours(1), null),
+                new MessageLine(6L, 1L, 2L, "archived", time.minusHours(3), null)));
+
+        // Act
+        List<MessageDto> result = messageService.getConversation(1L, 2L, before.toString(), null, 20);
+
+        // Assert
+        assertEquals(List.of(6L, 7L, 8L), result.stream().map(MessageDto::getId).toList());
+    }
+
+    @Test
+    void getConversation_InvalidPaging_ThrowsException() {
+        assertThrows(BadRequestException.class,
+                () -> messageService.getConversation(1L, 2L, "2025-09-01T10:15:30_9", "2025-09-01T10:15:30_9", null));
+        assertThrows(BadRequestException.class, () -> messageService.getConversation(1L, 2L, "yesterday", null, null));
+        assertThrows(BadRequestException.class, () -> messageService.getConversation(1L, 2L, null, null, 201));
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    void getInbox_Before_ContinuesFromTheCursor() {
+        LocalDateTime time = LocalDateTime.of(2025, 9, 1, 10, 15, 30);
+        when(currentUserService.getCurrentUser()).thenReturn(CurrentUser.of(receiver));
+        when(conversationHeadRepository.findOfUserBefore(2L, time, 9L, Limit.of(20)))
+                .thenReturn(List.of(new InboxLine(1L, 8L, 1L, "Test message content", time.minusMinutes(1))));
+
+        List<InboxEntryDto> inbox = messageService.getInbox("2025-09-01T10:15:30_9", 20);
+
+        assertEquals(1, inbox.size());
+        assertEquals(1L, inbox.get(0).getOtherUserId());
+        assertEquals("2025-09-01T10:14:30_8", inbox.get(0).getCursor());
+        verify(conversationHeadRepository, never()).findLatestOfUser(any(), any());
+    }
+
+    @Test
+    void getInbox_InvalidSize_ThrowsException() {
+        when(currentUserService.getCurrentUser()).thenReturn(CurrentUser.of(receiver));
+
+        assertThrows(BadRequestException.class, () -> messageService.getInbox(null, 0));
+        verifyNoInteractions(conversationHeadRepository);
+    }
+
+    private MessageLine messageLine(Long id) {
+        return new MessageLine(id, 1L, 2L, "Test message content", message.getTime(), null);
+    }
+
+    private static MarkReadDto markRead(Long senderId, Long upToMessageId) {
+        MarkReadDto dto = new MarkReadDto();
+        dto.setSenderId(senderId);
+        dto.setUpToMessageId(upToMessageId);
+        return dto;
     }
-}
\ No newline at end of file
+}
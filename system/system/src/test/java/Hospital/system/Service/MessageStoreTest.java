@@ -0,0 +1,133 @@
+package Hospital.system.Service;
+
+import Hospital.system.Entity.ConversationHead;
+import Hospital.system.Entity.Message;
+import Hospital.system.Entity.MessageUnreadCounter;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.ConversationHeadRepository;
+import Hospital.system.Repository.MessageRepository;
+import Hospital.system.Repository.MessageUnreadCounterRepository;
+import Hospital.system.Repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessageStoreTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 9, 1, 10, 15);
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private MessageUnreadCounterRepository unreadCounterRepository;
+
+    @Mock
+    private ConversationHeadRepository conversationHeadRepository;
+
+    @InjectMocks
+    private MessageStore messageStore;
+
+    private User patient;
+    private User doctor;
+    private User otherPatient;
+
+    @BeforeEach
+    void setUp() {
+        patient = User.builder().id(1L).name("Patient").email("patient@test.com").role(Role.PATIENT).build();
+        doctor = User.builder().id(2L).name("Doctor").email("doctor@test.com").role(Role.DOCTOR).build();
+        otherPatient = User.builder().id(3L).name("Other").email("other@test.com").role(Role.PATIENT).build();
+        when(messageRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void store_KnownConversation_MovesHeadAndCounterWithoutLocking() {
+        when(conversationHeadRepository.existsByConversationKey("1:2")).thenReturn(true);
+        when(unreadCounterRepository.existsByReceiverIdAndSenderId(2L, 1L)).thenReturn(true);
+        Message message = message(10L, patient, doctor, "Test message content", NOW);
+
+        assertEquals(List.of(message), messageStore.store(List.of(message)));
+
+        verify(conversationHeadRepository).advance("1:2", 10L, 1L, "Test message content", NOW);
+        verify(unreadCounterRepository).increment(2L, 1L, 1);
+        verify(userRepository, never()).lockById(any());
+        verify(conversationHeadRepository, never()).save(any());
+        verify(unreadCounterRepository, never()).save(any());
+    }
+
+    @Test
+    void store_FirstMessageOfTheConversation_CreatesItsHead() {
+        when(unreadCounterRepository.existsByReceiverIdAndSenderId(2L, 1L)).thenReturn(true);
+
+        messageStore.store(List.of(message(10L, patient, doctor, "x".repeat(300), NOW)));
+
+        verify(userRepository).lockById(1L);
+        verify(conversationHeadRepository).lockByConversationKey("1:2");
+        verify(conversationHeadRepository).save(argThat((ConversationHead head) ->
+                head.getLowerUserId() == 1L && head.getHigherUserId() == 2L && head.getLastMessageId() == 10L
+                        && head.getPreview().length() == ConversationHead.PREVIEW_LENGTH));
+        verify(conversationHeadRepository, never()).advance(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void store_FirstMessageOfThePair_CreatesTheCounterUnderTheReceiverLock() {
+        when(conversationHeadRepository.existsByConversationKey("1:2")).thenReturn(true);
+        when(unreadCounterRepository.increment(2L, 1L, 1)).thenReturn(0);
+
+        messageStore.store(List.of(message(10L, patient, doctor, "Test message content", NOW)));
+
+        verify(userRepository).lockById(2L);
+        verify(unreadCounterRepository).save(argThat((MessageUnreadCounter counter) ->
+                counter.getReceiverId() == 2L && counter.getSenderId() == 1L && counter.getUnreadCount() == 1));
+    }
+
+    @Test
+    void store_Batch_MovesEachHeadAndCounterOnce() {
+        when(conversationHeadRepository.existsByConversationKey(any())).thenReturn(true);
+        when(unreadCounterRepository.existsByReceiverIdAndSenderId(any(), any())).thenReturn(true);
+        List<Message> batch = List.of(
+                message(10L, patient, doctor, "first from patient", NOW),
+                message(12L, patient, doctor, "second from patient", NOW.plusSeconds(1)),
+                message(11L, doctor, otherPatient, "to the other patient", NOW),
+                message(13L, otherPatient, doctor, "reply from the other patient", NOW.plusSeconds(2)),
+                message(9L, patient, doctor, "sent earlier, stored late", NOW.minusSeconds(1)));
+
+        messageStore.store(batch);
+
+        verify(messageRepository).saveAll(batch);
+        verify(conversationHeadRepository).advance("1:2", 12L, 1L, "second from patient", NOW.plusSeconds(1));
+        verify(conversationHeadRepository).advance("2:3", 13L, 3L, "reply from the other patient", NOW.plusSeconds(2));
+        verify(conversationHeadRepository, times(2)).advance(any(), any(), any(), any(), any());
+        verify(unreadCounterRepository).increment(2L, 1L, 3);
+        verify(unreadCounterRepository).increment(3L, 2L, 1);
+        verify(unreadCounterRepository).increment(2L, 3L, 1);
+    }
+
+    // what the id generator and @PrePersist fill in
+    private static Message message(Long id, User sender, User receiver, String content, LocalDateTime time) {
+        return Message.builder()
+                .id(id)
+                .sender(sender)
+                .receiver(receiver)
+                .content(content)
+                .time(time)
+                .conversationKey(Message.conversationKey(sender.getId(), receiver.getId()))
+                .build();
+    }
+}
@@ -0,0 +1,164 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.MarkReadDto;
+import Hospital.system.DTO.MessageDto;
+import Hospital.system.DTO.UnreadCount;
+import Hospital.system.DTO.UnreadSummaryDto;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUser;
+import Hospital.system.exception.ResourceNotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static Hospital.system.TestUsers.user;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties")
+class MessageUnreadIntegrationTest {
+
+    private static final int SENDERS = 4;
+    private static final int MESSAGES_PER_SENDER = 10;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User doctor;
+    private User patient;
+    private User otherPatient;
+
+    @BeforeEach
+    void setUp() {
+        doctor = userRepository.save(user("Unread Doctor", "unread.doctor@test.com", Role.DOCTOR));
+        patient = userRepository.save(user("Unread Patient", "unread.patient@test.com", Role.PATIENT));
+        otherPatient = userRepository.save(user("Unread Other", "unread.other@test.com", Role.PATIENT));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        jdbcTemplate.update("DELETE FROM messages WHERE sender_id = ? OR receiver_id = ?", doctor.getId(), doctor.getId());
+        jdbcTemplate.update("DELETE FROM message_unread_counters WHERE receiver_id = ? OR sender_id = ?",
+                doctor.getId(), doctor.getId());
+        jdbcTemplate.update("DELETE FROM conversation_heads WHERE lower_user_id = ? OR higher_user_id = ?",
+                doctor.getId(), doctor.getId());
+        userRepository.deleteAll(List.of(doctor, patient, otherPatient));
+    }
+
+    @Test
+    void sentMessages_AreCountedAndMarkedReadUpToTheGivenMessage() {
+        send(patient, doctor, "patient says one");
+        MessageDto second = send(patient, doctor, "patient says two");
+        send(doctor, patient, "doctor replies");
+        send(patient, doctor, "patient says three");
+        send(otherPatient, doctor, "another patient");
+
+        loginAs(doctor);
+        UnreadSummaryDto summary = messageService.getUnreadSummary();
+        assertEquals(4, summary.getTotal());
+        assertEquals(List.of(new UnreadCount(patient.getId(), 3), new UnreadCount(otherPatient.getId(), 1)),
+                summary.getSenders());
+
+        assertEquals(2, messageService.markRead(markRead(patient, second.getId())));
+        // acknowledging the same range again changes nothing
+        assertEquals(0, messageService.markRead(markRead(patient, second.getId())));
+        assertEquals(List.of(new UnreadCount(patient.getId(), 1), new UnreadCount(otherPatient.getId(), 1)),
+                messageService.getUnreadSummary().getSenders());
+
+        // the sender sees the receipts, the doctor's own reply stays unread until the patient reads it
+        List<MessageDto> conversation = messageService.getConversation(patient.getId(), doctor.getId());
+        assertNotNull(conversation.get(0).getReadAt());
+        assertNotNull(conversation.get(1).getReadAt());
+        assertNull(conversation.get(2).getReadAt());
+        assertNull(conversation.get(3).getReadAt());
+
+        // a message of the doctor's own marks everything before it read
+        assertEquals(1, messageService.markRead(markRead(patient, conversation.get(3).getId())));
+        assertEquals(List.of(new UnreadCount(otherPatient.getId(), 1)), messageService.getUnreadSummary().getSenders());
+
+        loginAs(patient);
+        assertEquals(1, messageService.getUnreadSummary().getTotal());
+    }
+
+    @Test
+    void markRead_MessageOfAnotherConversation_IsNotFound() {
+        MessageDto elsewhere = send(otherPatient, doctor, "another patient");
+
+        loginAs(doctor);
+        assertThrows(ResourceNotFoundException.class, () -> messageService.markRead(markRead(patient, elsewhere.getId())));
+        assertEquals(1, messageService.getUnreadSummary().getTotal());
+    }
+
+    @Test
+    void concurrentFirstMessages_ShareOneCounter() throws Exception {
+        List<User> senders = new ArrayList<>();
+        for (int i = 0; i < SENDERS; i++) {
+            senders.add(userRepository.save(user("Unread Sender " + i, "unread.sender" + i + "@test.com", Role.PATIENT)));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(SENDERS * 2);
+        try {
+            List<Future<MessageDto>> sent = new ArrayList<>();
+            for (User sender : senders) {
+                for (int i = 0; i < MESSAGES_PER_SENDER; i++) {
+                    String content = "message number " + i;
+                    sent.add(pool.submit(() -> send(sender, doctor, content)));
+                }
+            }
+            for (Future<MessageDto> future : sent) {
+                future.get();
+            }
+
+            loginAs(doctor);
+            UnreadSummaryDto summary = messageService.getUnreadSummary();
+            assertEquals(SENDERS * MESSAGES_PER_SENDER, summary.getTotal());
+            assertEquals(SENDERS, summary.getSenders().size());
+            summary.getSenders().forEach(count -> assertEquals(MESSAGES_PER_SENDER, count.unread()));
+        } finally {
+            pool.shutdownNow();
+            jdbcTemplate.update("DELETE FROM messages WHERE receiver_id = ?", doctor.getId());
+            userRepository.deleteAll(senders);
+        }
+    }
+
+    private MessageDto send(User sender, User receiver, String content) {
+        MessageDto dto = new MessageDto();
+        dto.setSenderId(sender.getId());
+        dto.setReceiverId(receiver.getId());
+        dto.setContent(content);
+        return messageService.sendMessage(dto);
+    }
+
+    private static MarkReadDto markRead(User sender, Long upToMessageId) {
+        MarkReadDto dto = new MarkReadDto();
+        dto.setSenderId(sender.getId());
+        dto.setUpToMessageId(upToMessageId);
+        return dto;
+    }
+
+    private static void loginAs(User user) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                CurrentUser.of(user), null, List.of(new SimpleGrantedAuthority("ROLE_" + user.getRole().name()))));
+    }
+}
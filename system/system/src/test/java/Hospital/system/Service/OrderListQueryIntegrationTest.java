@@ -0,0 +1,186 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.OrderDto;
+import Hospital.system.DTO.OrderItemDto;
+import Hospital.system.DTO.OrderTransitionResultDto;
+import Hospital.system.Entity.Medicine;
+import Hospital.system.Entity.OrderStatus;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.MedicineRepository;
+import Hospital.system.Repository.OrderRepository;
+import Hospital.system.Repository.StockMovementRepository;
+import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUser;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import static Hospital.system.TestUsers.user;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        // statistics are global, keep the background jobs out of the counted statements
+        "security.revocation.poll-interval=3600000",
+        "medicines.reservation.flush-interval=3600000"
+})
+class OrderListQueryIntegrationTest {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private StockMovementRepository stockMovementRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private User pharmacy;
+    private User patient;
+    private Medicine aspirin;
+    private Medicine ibuprofen;
+
+    @BeforeEach
+    void setUp() {
+        pharmacy = userRepository.save(user("List Pharmacy", "list.pharmacy@test.com", Role.PHARMACY));
+        patient = userRepository.save(user("List Patient", "list.patient@test.com", Role.PATIENT));
+        aspirin = medicineRepository.save(medicine("ListAspirin"));
+        ibuprofen = medicineRepository.save(medicine("ListIbuprofen"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        orderRepository.deleteAll(orderRepository.findByPharmacy_Id(pharmacy.getId()));
+        for (Medicine medicine : List.of(aspirin, ibuprofen)) {
+            stockMovementRepository.deleteAll(stockMovementRepository.findByMedicineIdOrderByIdAsc(medicine.getId()));
+        }
+        medicineRepository.deleteAll(List.of(aspirin, ibuprofen));
+        userRepository.delete(patient);
+        userRepository.delete(pharmacy);
+    }
+
+    @Test
+    void orderLists_TakeOneStatementWhateverTheirSize() {
+        placeOrders(2);
+        assertListsTakeOneStatement(2);
+
+        placeOrders(40);
+        assertListsTakeOneStatement(42);
+    }
+
+    @Test
+    void orderLists_MapEveryItemOfEveryOrder() {
+        placeOrders(3);
+        loginAs(pharmacy, "ROLE_PHARMACY");
+
+        List<OrderDto> orders = orderService.getPharmacyOrders();
+
+        assertEquals(3, orders.size());
+        OrderDto first = orders.get(0);
+        assertEquals(patient.getId(), first.getPatientId());
+        assertEquals(pharmacy.getId(), first.getPharmacyId());
+        assertEquals("PLACED", first.getStatus());
+        assertEquals(14.0, first.getTotalPrice());
+        assertEquals(List.of(new OrderItemDto("ListAspirin", 1, 2.0), new OrderItemDto("ListIbuprofen", 3, 12.0)),
+                first.getItems());
+    }
+
+    @Test
+    void bulkShipAndComplete_TakeTwoStatementsWhateverTheirSize() {
+        placeOrders(40);
+        loginAs(pharmacy, "ROLE_PHARMACY");
+        List<Long> ids = orderRepository.findByPharmacy_Id(pharmacy.getId()).stream()
+                .map(order -> order.getId())
+                .toList();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        List<OrderTransitionResultDto> shipped = orderService.shipOrders(ids);
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertTrue(shipped.stream().allMatch(OrderTransitionResultDto::isUpdated));
+
+        statistics.clear();
+        List<OrderTransitionResultDto> completed = orderService.completeOrders(ids.subList(0, 25));
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertTrue(completed.stream().allMatch(OrderTransitionResultDto::isUpdated));
+
+        loginAs(patient, "ROLE_PATIENT");
+        assertEquals(25, orderService.getPatientOrdersByStatus(OrderStatus.COMPLETED).size());
+        assertEquals(15, orderService.getPatientOrdersByStatus(OrderStatus.SHIPPED).size());
+    }
+
+    private void assertListsTakeOneStatement(int expectedOrders) {
+        loginAs(patient, "ROLE_PATIENT");
+        assertEquals(expectedOrders, countStatements(orderService::getPatientOrders));
+        assertEquals(expectedOrders, countStatements(() -> orderService.getPatientOrdersByStatus(OrderStatus.PLACED)));
+
+        loginAs(pharmacy, "ROLE_PHARMACY");
+        assertEquals(expectedOrders, countStatements(orderService::getPharmacyOrders));
+        assertEquals(expectedOrders, countStatements(() -> orderService.getPharmacyOrdersByStatus(OrderStatus.PLACED)));
+    }
+
+    // returns the number of orders listed, after checking the call prepared a single statement
+    private int countStatements(Supplier<List<OrderDto>> call) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        List<OrderDto> orders = call.get();
+        assertEquals(1, statistics.getPrepareStatementCount());
+        return orders.size();
+    }
+
+    private void placeOrders(int count) {
+        loginAs(patient, "ROLE_PATIENT");
+        for (int i = 0; i < count; i++) {
+            OrderDto dto = new OrderDto();
+            dto.setPharmacyId(pharmacy.getId());
+            dto.setItems(List.of(item(aspirin, 1), item(ibuprofen, 3)));
+            orderService.createOrder(dto);
+        }
+    }
+
+    private void loginAs(User user, String role) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                CurrentUser.of(user), null, List.of(new SimpleGrantedAuthority(role))));
+    }
+
+    private static OrderItemDto item(Medicine medicine, int quantity) {
+        OrderItemDto item = new OrderItemDto();
+        item.setMedicineName(medicine.getName());
+        item.setQuantity(quantity);
+        return item;
+    }
+
+    private Medicine medicine(String name) {
+        return Medicine.builder()
+                .name(name)
+                .price(name.equals("ListAspirin") ? 2.0 : 4.0)
+                .stock(1000)
+                .pharmacy(pharmacy)
+                .build();
+    }
+}
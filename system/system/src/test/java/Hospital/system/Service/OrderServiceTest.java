@@ -3,23 +3,26 @@ package Hospital.system.Service;
 
 import Hospital.system.DTO.OrderDto;
 import Hospital.system.DTO.OrderItemDto;
+import Hospital.system.DTO.OrderLine;
+import Hospital.system.DTO.OrderState;
+import Hospital.system.DTO.OrderTransitionResultDto;
 import Hospital.system.Entity.*;
 import Hospital.system.Repository.MedicineRepository;
 import Hospital.system.Repository.OrderRepository;
 import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUser;
+import Hospital.system.Security.CurrentUserService;
 import Hospital.system.Service.OrderService;
 import Hospital.system.exception.AccessDeniedException;
 import Hospital.system.exception.ResourceNotFoundException;
 import Hospital.system.exception.BadRequestException;
+import Hospital.system.exception.ConflictException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContext;
-import org.springframework.security.core.context.SecurityContextHolder;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -28,6 +31,7 @@ import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -40,9 +44,15 @@ class OrderServiceTest {
     @Mock
     private MedicineRepository medicineRepository;
 
+    @Mock
+    private StockLedgerService stockLedgerService;
+
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private CurrentUserService currentUserService;
+
     @InjectMocks
     private OrderService orderService;
 
@@ -101,10 +111,10 @@ class OrderServiceTest {
     @Test
     void createOrder_Success() {
         // Arrange
-        mockSecurityContext("patient@test.com");
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
         when(userRepository.findByIdAndRole(2L, Role.PHARMACY)).thenReturn(Optional.of(pharmacy));
-        when(medicineRepository.findByName("Aspirin")).thenReturn(Optional.of(medicine));
+        when(medicineRepository.findByNameIn(any())).thenReturn(List.of(medicine));
+        when(stockLedgerService.withdraw(any(), anyInt(), any(), any())).thenReturn(true);
         when(orderRepository.save(any(Order.class))).thenReturn(order);
 
         // Act
@@ -120,13 +130,14 @@ class OrderServiceTest {
     @Test
     void createOrder_InsufficientStock_ThrowsBadRequestException() {
         // Arrange
-        mockSecurityContext("patient@test.com");
         medicine.setStock(1); // Less than required quantity
         orderItemDto.setQuantity(5);
 
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
         when(userRepository.findByIdAndRole(2L, Role.PHARMACY)).thenReturn(Optional.of(pharmacy));
-        when(medicineRepository.findByName("Aspirin")).thenReturn(Optional.of(medicine));
+        when(medicineRepository.findByNameIn(any())).thenReturn(List.of(medicine));
+        when(orderRepository.save(any(Order.class))).thenReturn(order);
+        when(stockLedgerService.withdraw(medicine, 5, StockMovementReason.ORDER_PLACED, 1L)).thenReturn(false);
 
         // Act & Assert
         BadRequestException exception = assertThrows(
@@ -139,9 +150,8 @@ class OrderServiceTest {
     @Test
     void getPatientOrders_Success() {
         // Arrange
-        mockSecurityContext("patient@test.com");
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
-        when(orderRepository.findByPatient_Id(1L)).thenReturn(Arrays.asList(order));
+        mockCurrentUser(patient);
+        when(orderRepository.findLinesByPatientId(1L)).thenReturn(List.of(orderLine()));
 
         // Act
         List<OrderDto> result = orderService.getPatientOrders();
@@ -154,9 +164,8 @@ class OrderServiceTest {
     @Test
     void shipOrder_Success() {
         // Arrange
-        mockSecurityContext("pharmacy@test.com");
         when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
-        when(userRepository.findByEmail("pharmacy@test.com")).thenReturn(Optional.of(pharmacy));
+        mockCurrentUser(pharmacy);
         when(orderRepository.save(any(Order.class))).thenReturn(order);
 
         // Act
@@ -171,9 +180,8 @@ class OrderServiceTest {
     @Test
     void cancelOrder_Success() {
         // Arrange
-        mockSecurityContext("patient@test.com");
         when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
         when(orderRepository.save(any(Order.class))).thenReturn(order);
 
         // Act
@@ -184,22 +192,37 @@ class OrderServiceTest {
         assertEquals(OrderStatus.CANCELLED, order.getStatus());
     }
 
-    private void mockSecurityContext(String email) {
-        Authentication authentication = mock(Authentication.class);
-        SecurityContext securityContext = mock(SecurityContext.class);
-        when(securityContext.getAuthentication()).thenReturn(authentication);
-        when(authentication.getName()).thenReturn(email);
-        SecurityContextHolder.setContext(securityContext);
+    @Test
+    void cancelOrder_ReturnsItemsToStock() {
+        // Arrange
+        order.getItems().add(OrderItem.builder().order(order).medicine(medicine).quantity(2).price(20.0).build());
+        when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
+        mockCurrentUser(patient);
+        when(orderRepository.save(any(Order.class))).thenReturn(order);
+
+        // Act
+        orderService.cancelOrder(1L);
+
+        // Assert
+        verify(stockLedgerService).deposit(medicine, 2, StockMovementReason.ORDER_CANCELLED, 1L);
+    }
+
+    private void mockCurrentUser(User user) {
+        when(currentUserService.getCurrentUser()).thenReturn(CurrentUser.of(user));
+    }
+
+    private static OrderLine orderLine() {
+        return new OrderLine(1L, 1L, 2L, 20.0, OrderStatus.PLACED, "Aspirin", 2, 20.0);
     }
 
     @Test
     void createOrder_PatientIdAutoSet() {
         // Arrange
         orderDto.setPatientId(null); // Patient ID not set
-        mockSecurityContext("patient@test.com");
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
         when(userRepository.findByIdAndRole(2L, Role.PHARMACY)).thenReturn(Optional.of(pharmacy));
-        when(medicineRepository.findByName("Aspirin")).thenReturn(Optional.of(medicine));
+        when(medicineRepository.findByNameIn(any())).thenReturn(List.of(medicine));
+        when(stockLedgerService.withdraw(any(), anyInt(), any(), any())).thenReturn(true);
         when(orderRepository.save(any(Order.class))).thenReturn(order);
 
         // Act
@@ -214,8 +237,7 @@ class OrderServiceTest {
     void createOrder_WrongPatientId_ThrowsAccessDeniedException() {
         // Arrange
         orderDto.setPatientId(99L); // Different patient ID
-        mockSecurityContext("patient@test.com");
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
 
         // Act & Assert
         AccessDeniedException exception = assertThrows(
@@ -228,8 +250,7 @@ class OrderServiceTest {
     @Test
     void createOrder_PharmacyNotFound_ThrowsResourceNotFoundException() {
         // Arrange
-        mockSecurityContext("patient@test.com");
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
         when(userRepository.findByIdAndRole(2L, Role.PHARMACY)).thenReturn(Optional.empty());
 
         // Act & Assert
@@ -243,10 +264,9 @@ class OrderServiceTest {
     @Test
     void createOrder_MedicineNotFound_ThrowsResourceNotFoundException() {
         // Arrange
-        mockSecurityContext("patient@test.com");
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
         when(userRepository.findByIdAndRole(2L, Role.PHARMACY)).thenReturn(Optional.of(pharmacy));
-        when(medicineRepository.findByName("Aspirin")).thenReturn(Optional.empty());
+        when(medicineRepository.findByNameIn(any())).thenReturn(List.of());
 
         // Act & Assert
         ResourceNotFoundException exception = assertThrows(
@@ -261,10 +281,9 @@ class OrderServiceTest {
         User otherPharmacy = User.builder().id(99L).role(Role.PHARMACY).build();
         medicine.setPharmacy(otherPharmacy);
 
-        mockSecurityContext("patient@test.com");
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
         when(userRepository.findByIdAndRole(2L, Role.PHARMACY)).thenReturn(Optional.of(pharmacy));
-        when(medicineRepository.findByName("Aspirin")).thenReturn(Optional.of(medicine));
+        when(medicineRepository.findByNameIn(any())).thenReturn(List.of(medicine));
 
         // Act & Assert
         BadRequestException exception = assertThrows(
@@ -278,9 +297,8 @@ class OrderServiceTest {
     @Test
     void getPatientOrdersByStatus_Success() {
         // Arrange
-        mockSecurityContext("patient@test.com");
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
-        when(orderRepository.findByPatient_IdAndStatus(1L, OrderStatus.PLACED)).thenReturn(Arrays.asList(order));
+        mockCurrentUser(patient);
+        when(orderRepository.findLinesByPatientIdAndStatus(1L, OrderStatus.PLACED)).thenReturn(List.of(orderLine()));
 
         // Act
         List<OrderDto> result = orderService.getPatientOrdersByStatus(OrderStatus.PLACED);
@@ -294,9 +312,8 @@ class OrderServiceTest {
     @Test
     void getPharmacyOrders_Success() {
         // Arrange
-        mockSecurityContext("pharmacy@test.com");
-        when(userRepository.findByEmail("pharmacy@test.com")).thenReturn(Optional.of(pharmacy));
-        when(orderRepository.findByPharmacy_Id(2L)).thenReturn(Arrays.asList(order));
+        mockCurrentUser(pharmacy);
+        when(orderRepository.findLinesByPharmacyId(2L)).thenReturn(List.of(orderLine()));
 
         // Act
         List<OrderDto> result = orderService.getPharmacyOrders();
@@ -309,11 +326,10 @@ class OrderServiceTest {
     @Test
     void shipOrder_WrongPharmacy_ThrowsAccessDeniedException() {
         // Arrange
-        mockSecurityContext("otherpharmacy@test.com");
         User otherPharmacy = User.builder().id(99L).email("otherpharmacy@test.com").build();
 
         when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
-        when(userRepository.findByEmail("otherpharmacy@test.com")).thenReturn(Optional.of(otherPharmacy));
+        mockCurrentUser(otherPharmacy);
 
         // Act & Assert
         AccessDeniedException exception = assertThrows(
@@ -327,9 +343,8 @@ class OrderServiceTest {
     void shipOrder_OrderNotPlaced_ThrowsBadRequestException() {
         // Arrange
         order.setStatus(OrderStatus.SHIPPED);
-        mockSecurityContext("pharmacy@test.com");
         when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
-        when(userRepository.findByEmail("pharmacy@test.com")).thenReturn(Optional.of(pharmacy));
+        mockCurrentUser(pharmacy);
 
         // Act & Assert
         BadRequestException exception = assertThrows(
@@ -342,9 +357,8 @@ class OrderServiceTest {
     void cancelOrder_OrderNotPlaced_ThrowsBadRequestException() {
         // Arrange
         order.setStatus(OrderStatus.SHIPPED);
-        mockSecurityContext("patient@test.com");
         when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
 
         // Act & Assert
         BadRequestException exception = assertThrows(
@@ -358,9 +372,8 @@ class OrderServiceTest {
     void completeOrder_Success() {
         // Arrange
         order.setStatus(OrderStatus.SHIPPED);
-        mockSecurityContext("pharmacy@test.com");
         when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
-        when(userRepository.findByEmail("pharmacy@test.com")).thenReturn(Optional.of(pharmacy));
+        mockCurrentUser(pharmacy);
         when(orderRepository.save(any(Order.class))).thenReturn(order);
 
         // Act
@@ -375,9 +388,8 @@ class OrderServiceTest {
     @Test
     void completeOrder_OrderNotShipped_ThrowsBadRequestException() {
         // Arrange - Order is still in PLACED status
-        mockSecurityContext("pharmacy@test.com");
         when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
-        when(userRepository.findByEmail("pharmacy@test.com")).thenReturn(Optional.of(pharmacy));
+        mockCurrentUser(pharmacy);
 
         // Act & Assert
         BadRequestException exception = assertThrows(
@@ -400,10 +412,10 @@ class OrderServiceTest {
         updateDto.setPharmacyId(2L);
         updateDto.setItems(Arrays.asList(newItem));
 
-        mockSecurityContext("patient@test.com");
         when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
-        when(medicineRepository.findByName("Aspirin")).thenReturn(Optional.of(medicine));
+        mockCurrentUser(patient);
+        when(medicineRepository.findByNameIn(any())).thenReturn(List.of(medicine));
+        when(stockLedgerService.withdraw(any(), anyInt(), any(), any())).thenReturn(true);
         when(orderRepository.save(any(Order.class))).thenReturn(order);
 
         // Act
@@ -414,6 +426,121 @@ class OrderServiceTest {
         verify(orderRepository).save(order);
     }
 
+    @Test
+    void createOrder_ResolvesAllMedicinesWithOneQuery() {
+        // Arrange
+        Medicine ibuprofen = Medicine.builder()
+                .id(2L)
+                .name("Ibuprofen")
+                .price(5.0)
+                .stock(10)
+                .pharmacy(pharmacy)
+                .build();
+        OrderItemDto secondItem = new OrderItemDto();
+        secondItem.setMedicineName("Ibuprofen");
+        secondItem.setQuantity(4);
+        orderDto.setItems(Arrays.asList(orderItemDto, secondItem));
+
+        mockCurrentUser(patient);
+        when(userRepository.findByIdAndRole(2L, Role.PHARMACY)).thenReturn(Optional.of(pharmacy));
+        when(userRepository.getReferenceById(1L)).thenReturn(patient);
+        when(medicineRepository.findByNameIn(any())).thenReturn(List.of(medicine, ibuprofen));
+        when(stockLedgerService.withdraw(any(), anyInt(), any(), any())).thenReturn(true);
+        when(orderRepository.save(any(Order.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        OrderDto result = orderService.createOrder(orderDto);
+
+        // Assert
+        verify(medicineRepository, times(1)).findByNameIn(any());
+        verify(medicineRepository, never()).findByName(any());
+        verify(stockLedgerService).withdraw(medicine, 2, StockMovementReason.ORDER_PLACED, null);
+        verify(stockLedgerService).withdraw(ibuprofen, 4, StockMovementReason.ORDER_PLACED, null);
+        assertEquals(40.0, result.getTotalPrice());
+    }
+
+    @Test
+    void createOrder_ShortItems_ReportsEachOne() {
+        // Arrange
+        Medicine ibuprofen = Medicine.builder()
+                .id(2L)
+                .name("Ibuprofen")
+                .price(5.0)
+                .stock(3)
+                .pharmacy(pharmacy)
+                .build();
+        Medicine paracetamol = Medicine.builder()
+                .id(3L)
+                .name("Paracetamol")
+                .price(3.0)
+                .stock(0)
+                .pharmacy(pharmacy)
+                .build();
+        OrderItemDto secondItem = new OrderItemDto();
+        secondItem.setMedicineName("Ibuprofen");
+        secondItem.setQuantity(4);
+        OrderItemDto thirdItem = new OrderItemDto();
+        thirdItem.setMedicineName("Paracetamol");
+        thirdItem.setQuantity(1);
+        orderDto.setItems(Arrays.asList(thirdItem, orderItemDto, secondItem));
+
+        mockCurrentUser(patient);
+        when(userRepository.findByIdAndRole(2L, Role.PHARMACY)).thenReturn(Optional.of(pharmacy));
+        when(medicineRepository.findByNameIn(any())).thenReturn(List.of(medicine, ibuprofen, paracetamol));
+        when(orderRepository.save(any(Order.class))).thenReturn(order);
+        when(stockLedgerService.withdraw(medicine, 2, StockMovementReason.ORDER_PLACED, 1L)).thenReturn(true);
+
+        // Act & Assert
+        BadRequestException exception = assertThrows(
+                BadRequestException.class,
+                () -> orderService.createOrder(orderDto)
+        );
+        assertEquals("Not enough stock for Ibuprofen, Paracetamol", exception.getMessage());
+        // rows are always decremented in id order
+        var inOrder = inOrder(stockLedgerService);
+        inOrder.verify(stockLedgerService).withdraw(medicine, 2, StockMovementReason.ORDER_PLACED, 1L);
+        inOrder.verify(stockLedgerService).withdraw(ibuprofen, 4, StockMovementReason.ORDER_PLACED, 1L);
+        inOrder.verify(stockLedgerService).withdraw(paracetamol, 1, StockMovementReason.ORDER_PLACED, 1L);
+    }
+
+    @Test
+    void updateOrder_AdjustsStockByDifferenceAndRestocksRemovedItems() {
+        // Arrange
+        Medicine ibuprofen = Medicine.builder()
+                .id(2L)
+                .name("Ibuprofen")
+                .price(5.0)
+                .stock(10)
+                .pharmacy(pharmacy)
+                .build();
+        order.getItems().add(OrderItem.builder().order(order).medicine(medicine).quantity(2).price(20.0).build());
+        order.getItems().add(OrderItem.builder().order(order).medicine(ibuprofen).quantity(4).price(20.0).build());
+
+        OrderItemDto newItem = new OrderItemDto();
+        newItem.setMedicineName("Aspirin");
+        newItem.setQuantity(5);
+
+        OrderDto updateDto = new OrderDto();
+        updateDto.setPatientId(1L);
+        updateDto.setPharmacyId(2L);
+        updateDto.setItems(Arrays.asList(newItem));
+
+        when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
+        mockCurrentUser(patient);
+        when(medicineRepository.findByNameIn(any())).thenReturn(List.of(medicine));
+        when(stockLedgerService.withdraw(medicine, 3, StockMovementReason.ORDER_UPDATED, 1L)).thenReturn(true);
+        when(orderRepository.save(any(Order.class))).thenReturn(order);
+
+        // Act
+        orderService.updateOrder(1L, updateDto);
+
+        // Assert
+        verify(stockLedgerService).withdraw(medicine, 3, StockMovementReason.ORDER_UPDATED, 1L);
+        verify(stockLedgerService).deposit(ibuprofen, 4, StockMovementReason.ORDER_UPDATED, 1L);
+        assertEquals(1, order.getItems().size());
+        assertEquals(50.0, order.getTotalPrice());
+    }
+
     @Test
     void updateOrder_ChangeIds_ThrowsBadRequestException() {
         // Arrange
@@ -422,9 +549,8 @@ class OrderServiceTest {
         updateDto.setPharmacyId(2L);
         updateDto.setItems(Arrays.asList(orderItemDto));
 
-        mockSecurityContext("patient@test.com");
         when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
 
         // Act & Assert
         BadRequestException exception = assertThrows(
@@ -433,4 +559,36 @@ class OrderServiceTest {
         );
         assertEquals("You can't change id fields", exception.getMessage());
     }
-}
\ No newline at end of file
+
+    @Test
+    void shipOrders_ReportsEveryIdAndUpdatesTheEligibleOnesTogether() {
+        mockCurrentUser(pharmacy);
+        when(orderRepository.findStatesByIdIn(any())).thenReturn(List.of(
+                new OrderState(1L, 2L, OrderStatus.PLACED),
+                new OrderState(2L, 2L, OrderStatus.SHIPPED),
+                new OrderState(3L, 99L, OrderStatus.PLACED),
+                new OrderState(5L, 2L, OrderStatus.PLACED)));
+        when(orderRepository.updateStatus(List.of(1L, 5L), 2L, OrderStatus.PLACED, OrderStatus.SHIPPED)).thenReturn(2);
+
+        List<OrderTransitionResultDto> results = orderService.shipOrders(List.of(1L, 2L, 3L, 4L, 5L, 1L));
+
+        assertEquals(List.of(
+                new OrderTransitionResultDto(1L, true, "SHIPPED", null),
+                new OrderTransitionResultDto(2L, false, "SHIPPED", "You can't ship order with status SHIPPED"),
+                new OrderTransitionResultDto(3L, false, null, "You can't ship this order"),
+                new OrderTransitionResultDto(4L, false, null, "Order not found with id 4"),
+                new OrderTransitionResultDto(5L, true, "SHIPPED", null)), results);
+        verify(orderRepository, never()).save(any());
+    }
+
+    @Test
+    void completeOrders_OrderChangedMeanwhile_ThrowsConflictException() {
+        mockCurrentUser(pharmacy);
+        when(orderRepository.findStatesByIdIn(any())).thenReturn(List.of(
+                new OrderState(1L, 2L, OrderStatus.SHIPPED),
+                new OrderState(2L, 2L, OrderStatus.SHIPPED)));
+        when(orderRepository.updateStatus(List.of(1L, 2L), 2L, OrderStatus.SHIPPED, OrderStatus.COMPLETED)).thenReturn(1);
+
+        assertThrows(ConflictException.class, () -> orderService.completeOrders(List.of(1L, 2L)));
+    }
+}
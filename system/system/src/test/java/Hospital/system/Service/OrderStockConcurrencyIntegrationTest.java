@@ -0,0 +1,198 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.OrderDto;
+import Hospital.system.DTO.OrderItemDto;
+import Hospital.system.Entity.Medicine;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.MedicineRepository;
+import Hospital.system.Repository.OrderRepository;
+import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUser;
+import Hospital.system.exception.BadRequestException;
+import Hospital.system.exception.ConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static Hospital.system.TestUsers.user;
+import static org.junit.jupiter.api.Assertions.*;
+
+// many patients ordering the same two medicines at once, with more demand than stock, while the ledger is
+// compacted into stripes underneath them. Whatever mix of orders commits, the remaining stock must equal the
+// initial stock minus exactly what they hold.
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = "spring.jpa.show-sql=false")
+@Slf4j
+class OrderStockConcurrencyIntegrationTest {
+
+    private static final int ORDERS = 1000;
+    private static final int THREADS = 32;
+    private static final int PATIENTS = 40;
+    private static final int INITIAL_STOCK = 400;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private StockLedgerService stockLedgerService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User pharmacy;
+    private final List<User> patients = new ArrayList<>();
+    private final List<Medicine> medicines = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        pharmacy = userRepository.save(user("Stress Pharmacy", "stress.pharmacy@test.com", Role.PHARMACY));
+        for (int i = 0; i < PATIENTS; i++) {
+            patients.add(userRepository.save(user("Patient " + i, "stock.patient" + i + "@test.com", Role.PATIENT)));
+        }
+        for (String name : List.of("StressAspirin", "StressIbuprofen")) {
+            medicines.add(medicineRepository.save(Medicine.builder()
+                    .name(name)
+                    .price(2.0)
+                    .stock(INITIAL_STOCK)
+                    .pharmacy(pharmacy)
+                    .build()));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        orderRepository.deleteAll(orderRepository.findByPharmacy_Id(pharmacy.getId()));
+        medicines.forEach(medicine -> jdbcTemplate.update("DELETE FROM stock_stripes WHERE medicine_id = ?",
+                medicine.getId()));
+        medicineRepository.deleteAll(medicines);
+        userRepository.deleteAll(patients);
+        userRepository.delete(pharmacy);
+    }
+
+    @Test
+    void concurrentOrders_NeverOversellOrLoseAnUpdate() throws InterruptedException {
+        AtomicInteger placed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        // an order that ran short on the stripes it picked while others drained them; the client retries
+        AtomicInteger conflicted = new AtomicInteger();
+        Queue<Throwable> unexpected = new ConcurrentLinkedQueue<>();
+        Random random = new Random(7);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(ORDERS);
+        for (int i = 0; i < ORDERS; i++) {
+            User patient = patients.get(i % PATIENTS);
+            // half the orders take both medicines, listed in either order
+            List<OrderItemDto> items = new ArrayList<>();
+            items.add(item(medicines.get(i % 2).getName(), 1 + random.nextInt(3)));
+            if (random.nextBoolean()) {
+                items.add(item(medicines.get((i + 1) % 2).getName(), 1 + random.nextInt(3)));
+            }
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    orderAs(patient, items);
+                    placed.incrementAndGet();
+                } catch (BadRequestException e) {
+                    rejected.incrementAndGet();
+                } catch (ConflictException e) {
+                    conflicted.incrementAndGet();
+                } catch (Throwable e) {
+                    unexpected.add(e);
+                } finally {
+                    SecurityContextHolder.clearContext();
+                    done.countDown();
+                }
+            });
+        }
+
+        Thread compactor = new Thread(() -> {
+            while (done.getCount() > 0) {
+                try {
+                    stockLedgerService.compact();
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Throwable e) {
+                    unexpected.add(e);
+                }
+            }
+        });
+
+        long startedAt = System.nanoTime();
+        start.countDown();
+        compactor.start();
+        assertTrue(done.await(2, TimeUnit.MINUTES), "orders did not finish in time");
+        long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        executor.shutdown();
+        compactor.join();
+
+        log.info("{} concurrent orders in {} ms: placed={}, rejected={}, conflicted={}", ORDERS, elapsedMillis,
+                placed.get(), rejected.get(), conflicted.get());
+        assertTrue(unexpected.isEmpty(), () -> "unexpected failures: " + unexpected);
+        assertEquals(ORDERS, placed.get() + rejected.get() + conflicted.get());
+        assertTrue(rejected.get() > 0, "demand should exceed stock");
+
+        Integer committedOrders = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM orders WHERE pharmacy_id = ?", Integer.class, pharmacy.getId());
+        assertEquals(placed.get(), committedOrders);
+        stockLedgerService.compact();
+        for (Medicine medicine : medicines) {
+            int stock = jdbcTemplate.queryForObject("SELECT m.stock + COALESCE((SELECT SUM(t.stock) "
+                    + "FROM stock_stripes t WHERE t.medicine_id = m.id), 0) FROM medicines m WHERE m.id = ?",
+                    Integer.class, medicine.getId());
+            int sold = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(SUM(quantity), 0) FROM order_items WHERE medicine_id = ?", Integer.class, medicine.getId());
+            log.info("{}: sold={}, remaining={}", medicine.getName(), sold, stock);
+            assertTrue(stock >= 0);
+            assertEquals(INITIAL_STOCK - sold, stock);
+        }
+    }
+
+    private void orderAs(User patient, List<OrderItemDto> items) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                CurrentUser.of(patient), null, List.of(new SimpleGrantedAuthority("ROLE_PATIENT"))));
+
+        OrderDto dto = new OrderDto();
+        dto.setPharmacyId(pharmacy.getId());
+        dto.setItems(items);
+        orderService.createOrder(dto);
+    }
+
+    private static OrderItemDto item(String medicineName, int quantity) {
+        OrderItemDto item = new OrderItemDto();
+        item.setMedicineName(medicineName);
+        item.setQuantity(quantity);
+        return item;
+    }
+}
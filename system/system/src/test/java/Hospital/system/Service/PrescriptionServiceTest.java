@@ -9,6 +9,8 @@ import Hospital.system.Entity.User;
 import Hospital.system.Repository.MedicineRepository;
 import Hospital.system.Repository.PrescriptionRepository;
 import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUser;
+import Hospital.system.Security.CurrentUserService;
 import Hospital.system.Service.PrescriptionService;
 import Hospital.system.exception.AccessDeniedException;
 import Hospital.system.exception.ResourceNotFoundException;
@@ -19,9 +21,6 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContext;
-import org.springframework.security.core.context.SecurityContextHolder;
 
 import java.util.Arrays;
 import java.util.List;
@@ -41,6 +40,9 @@ class PrescriptionServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private CurrentUserService currentUserService;
+
     @Mock
     private MedicineRepository medicineRepository;
 
@@ -96,7 +98,7 @@ class PrescriptionServiceTest {
     @Test
     void createPrescription_Success() {
         // Arrange
-        mockSecurityContext("doctor@test.com");
+        mockCurrentUser(doctor);
         when(userRepository.findByIdAndRole(1L, Role.DOCTOR)).thenReturn(Optional.of(doctor));
         when(userRepository.findByIdAndRole(2L, Role.PATIENT)).thenReturn(Optional.of(patient));
         when(medicineRepository.findByName("Aspirin")).thenReturn(Optional.of(medicine));
@@ -115,7 +117,7 @@ class PrescriptionServiceTest {
     @Test
     void createPrescription_WrongDoctorEmail_ThrowsAccessDeniedException() {
         // Arrange
-        mockSecurityContext("otherdoctor@test.com");
+        mockCurrentUser(User.builder().id(99L).email("otherdoctor@test.com").role(Role.DOCTOR).build());
         when(userRepository.findByIdAndRole(1L, Role.DOCTOR)).thenReturn(Optional.of(doctor));
 
         // Act & Assert
@@ -142,8 +144,7 @@ class PrescriptionServiceTest {
     @Test
     void getPatientPrescriptions_Success() {
         // Arrange
-        mockSecurityContext("patient@test.com");
-        when(userRepository.findByEmail("patient@test.com")).thenReturn(Optional.of(patient));
+        mockCurrentUser(patient);
         when(prescriptionRepository.findByPatient_Id(2L)).thenReturn(Arrays.asList(prescription));
 
         // Act
@@ -157,7 +158,7 @@ class PrescriptionServiceTest {
     @Test
     void updatePrescription_Success() {
         // Arrange
-        mockSecurityContext("doctor@test.com");
+        mockCurrentUser(doctor);
         when(prescriptionRepository.findById(1L)).thenReturn(Optional.of(prescription));
         when(userRepository.findByIdAndRole(1L, Role.DOCTOR)).thenReturn(Optional.of(doctor));
         when(medicineRepository.findByName("Aspirin")).thenReturn(Optional.of(medicine));
@@ -174,7 +175,7 @@ class PrescriptionServiceTest {
     @Test
     void updatePrescription_ChangePatientId_ThrowsBadRequestException() {
         // Arrange
-        mockSecurityContext("doctor@test.com");
+        mockCurrentUser(doctor);
         prescriptionDto.setPatientId(99L); // Different patient ID
 
         when(prescriptionRepository.findById(1L)).thenReturn(Optional.of(prescription));
@@ -191,9 +192,8 @@ class PrescriptionServiceTest {
     @Test
     void deletePrescription_Success() {
         // Arrange
-        mockSecurityContext("doctor@test.com");
         when(prescriptionRepository.findById(1L)).thenReturn(Optional.of(prescription));
-        when(userRepository.findByEmail("doctor@test.com")).thenReturn(Optional.of(doctor));
+        mockCurrentUser(doctor);
 
         // Act
         prescriptionService.deletePrescription(1L);
@@ -206,10 +206,9 @@ class PrescriptionServiceTest {
     void deletePrescription_WrongDoctor_ThrowsAccessDeniedException() {
         // Arrange
         User otherDoctor = User.builder().id(99L).email("other@test.com").role(Role.DOCTOR).build();
-        mockSecurityContext("other@test.com");
 
         when(prescriptionRepository.findById(1L)).thenReturn(Optional.of(prescription));
-        when(userRepository.findByEmail("other@test.com")).thenReturn(Optional.of(otherDoctor));
+        mockCurrentUser(otherDoctor);
 
         // Act & Assert
         AccessDeniedException exception = assertThrows(
@@ -219,11 +218,7 @@ class PrescriptionServiceTest {
         assertEquals("Only the doctor who created the prescription can delete it", exception.getMessage());
     }
 
-    private void mockSecurityContext(String email) {
-        Authentication authentication = mock(Authentication.class);
-        SecurityContext securityContext = mock(SecurityContext.class);
-        when(securityContext.getAuthentication()).thenReturn(authentication);
-        when(authentication.getName()).thenReturn(email);
-        SecurityContextHolder.setContext(securityContext);
+    private void mockCurrentUser(User user) {
+        when(currentUserService.getCurrentUser()).thenReturn(CurrentUser.of(user));
     }
 }
\ No newline at end of file
@@ -0,0 +1,186 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.MedicineDto;
+import Hospital.system.DTO.OrderDto;
+import Hospital.system.DTO.OrderItemDto;
+import Hospital.system.Entity.Medicine;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.StockMovement;
+import Hospital.system.Entity.StockMovementReason;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.MedicineRepository;
+import Hospital.system.Repository.OrderRepository;
+import Hospital.system.Repository.StockMovementRepository;
+import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUser;
+import Hospital.system.exception.BadRequestException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static Hospital.system.TestUsers.user;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "spring.jpa.show-sql=false",
+        "medicines.ledger.stripes=4"
+})
+class StockLedgerIntegrationTest {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private MedicineService medicineService;
+
+    @Autowired
+    private StockLedgerService stockLedgerService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private StockMovementRepository stockMovementRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User pharmacy;
+    private User patient;
+    private Medicine medicine;
+
+    @BeforeEach
+    void setUp() {
+        pharmacy = userRepository.save(user("Ledger Pharmacy", "ledger.pharmacy@test.com", Role.PHARMACY));
+        patient = userRepository.save(user("Ledger Patient", "ledger.patient@test.com", Role.PATIENT));
+        medicine = medicineRepository.save(Medicine.builder()
+                .name("LedgerAspirin")
+                .price(2.0)
+                .stock(10)
+                .pharmacy(pharmacy)
+                .build());
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                CurrentUser.of(patient), null, List.of(new SimpleGrantedAuthority("ROLE_PATIENT"))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        orderRepository.deleteAll(orderRepository.findByPharmacy_Id(pharmacy.getId()));
+        stockMovementRepository.deleteAll(stockMovementRepository.findByMedicineIdOrderByIdAsc(medicine.getId()));
+        medicineService.deleteMedicine(medicine.getId());
+        userRepository.delete(patient);
+        userRepository.delete(pharmacy);
+    }
+
+    @Test
+    void everyChangeIsLoggedAndCompactionKeepsTheAvailableStock() {
+        // taking stock is a ledger insert too, the snapshot waits for the compactor
+        orderService.createOrder(order(4));
+        assertEquals(6, availableStock());
+        assertEquals(10, snapshotStock());
+
+        orderService.cancelOrder(orderRepository.findByPharmacy_Id(pharmacy.getId()).get(0).getId());
+        assertEquals(10, availableStock());
+        assertEquals(10, snapshotStock());
+
+        // returned units can be ordered again before they are folded
+        orderService.createOrder(order(9));
+        assertEquals(1, availableStock());
+
+        MedicineDto restock = medicineService.getMedicineById(medicine.getId());
+        restock.setStock(20);
+        assertEquals(20, medicineService.updateMedicine(medicine.getId(), restock).getStock());
+
+        stockLedgerService.compact();
+        assertEquals(20, availableStock());
+        assertEquals(List.of(5, 5, 5, 5), stripeStocks());
+
+        List<StockMovement> ledger = stockMovementRepository.findByMedicineIdOrderByIdAsc(medicine.getId());
+        assertEquals(List.of(StockMovementReason.ORDER_PLACED, StockMovementReason.ORDER_CANCELLED,
+                        StockMovementReason.ORDER_PLACED, StockMovementReason.RESTOCK),
+                ledger.stream().map(StockMovement::getReason).toList());
+        assertEquals(List.of(-4, 4, -9, 19), ledger.stream().map(StockMovement::getQuantity).toList());
+        assertEquals(10 + ledger.stream().mapToInt(StockMovement::getQuantity).sum(), availableStock());
+    }
+
+    @Test
+    void ordersTakeFromTheStripesThatCoverThemAndOnlyAllStripesCanSayShort() {
+        // a medicine is only striped once its stock moves
+        orderService.createOrder(order(1));
+        stockLedgerService.compact();
+        assertEquals(List.of(3, 2, 2, 2), stripeStocks());
+
+        // no stripe holds 3 on its own, the top two together do
+        orderService.createOrder(order(3));
+        assertEquals(6, availableStock());
+        assertEquals(3, snapshotStock());
+
+        // more than the top stripes hold: it starts at stripe 0 and works up until it has enough
+        orderService.createOrder(order(5));
+        assertEquals(1, availableStock());
+        assertThrows(BadRequestException.class, () -> orderService.createOrder(order(2)));
+
+        List<StockMovement> ledger = stockMovementRepository.findByMedicineIdOrderByIdAsc(medicine.getId());
+        assertEquals(List.of(0, 2, 3, 0, 1), ledger.stream().map(StockMovement::getStripe).toList());
+        assertEquals(List.of(-1, -2, -1, -3, -2), ledger.stream().map(StockMovement::getQuantity).toList());
+
+        stockLedgerService.compact();
+        assertEquals(List.of(1, 0, 0, 0), stripeStocks());
+        assertEquals(1, availableStock());
+    }
+
+    @Test
+    void ordersCannotTakeMoreThanTheSnapshotPlusPendingReturns() {
+        orderService.createOrder(order(10));
+        orderService.cancelOrder(orderRepository.findByPharmacy_Id(pharmacy.getId()).get(0).getId());
+
+        assertThrows(BadRequestException.class, () -> orderService.createOrder(order(11)));
+        assertEquals(10, availableStock());
+        assertTrue(medicineService.getAvailableMedicines().stream()
+                .anyMatch(dto -> dto.getName().equals("LedgerAspirin")));
+    }
+
+    private int availableStock() {
+        return medicineService.getMedicineById(medicine.getId()).getStock();
+    }
+
+    private int snapshotStock() {
+        return jdbcTemplate.queryForObject("SELECT stock FROM medicines WHERE id = ?", Integer.class, medicine.getId());
+    }
+
+    // stripe 0 on the medicine row, then the stock_stripes rows
+    private List<Integer> stripeStocks() {
+        List<Integer> stocks = new ArrayList<>(List.of(snapshotStock()));
+        stocks.addAll(jdbcTemplate.queryForList("SELECT stock FROM stock_stripes WHERE medicine_id = ? ORDER BY stripe",
+                Integer.class, medicine.getId()));
+        return stocks;
+    }
+
+    private OrderDto order(int quantity) {
+        OrderItemDto item = new OrderItemDto();
+        item.setMedicineName(medicine.getName());
+        item.setQuantity(quantity);
+        OrderDto dto = new OrderDto();
+        dto.setPharmacyId(pharmacy.getId());
+        dto.setItems(List.of(item));
+        return dto;
+    }
+}
@@ -0,0 +1,269 @@
+package Hospital.system.Service;
+
+import Hospital.system.DTO.MedicineDto;
+import Hospital.system.DTO.OrderDto;
+import Hospital.system.DTO.OrderItemDto;
+import Hospital.system.Entity.Medicine;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.StockMovement;
+import Hospital.system.Entity.StockMovementReason;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.MedicineRepository;
+import Hospital.system.Repository.OrderRepository;
+import Hospital.system.Repository.StockMovementRepository;
+import Hospital.system.Repository.StockReservationRepository;
+import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUser;
+import Hospital.system.exception.BadRequestException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static Hospital.system.TestUsers.user;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "spring.jpa.show-sql=false",
+        "medicines.reservation.enabled=true",
+        "medicines.reservation.node-id=test-node",
+        "medicines.reservation.chunk-size=5",
+        "medicines.reservation.stripes=4",
+        "medicines.reservation.flush-interval=3600000",
+        "medicines.ledger.settle-window=0"
+})
+class StockReservationIntegrationTest {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private MedicineService medicineService;
+
+    @Autowired
+    private StockReservationService stockReservationService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private StockMovementRepository stockMovementRepository;
+
+    @Autowired
+    private StockReservationRepository stockReservationRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User pharmacy;
+    private User patient;
+    private final List<Medicine> medicines = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        pharmacy = userRepository.save(user("Flash Pharmacy", "flash.pharmacy@test.com", Role.PHARMACY));
+        patient = userRepository.save(user("Flash Patient", "flash.patient@test.com", Role.PATIENT));
+    }
+
+    @AfterEach
+    void tearDown() {
+        stockReservationService.shutdown();
+        orderRepository.deleteAll(orderRepository.findByPharmacy_Id(pharmacy.getId()));
+        for (Medicine medicine : medicines) {
+            stockMovementRepository.deleteAll(stockMovementRepository.findByMedicineIdOrderByIdAsc(medicine.getId()));
+        }
+        stockReservationRepository.deleteAll(stockReservationRepository.findByNodeId("test-node"));
+        medicineRepository.deleteAll(medicines);
+        userRepository.delete(patient);
+        userRepository.delete(pharmacy);
+    }
+
+    @Test
+    void concurrentOrders_AreServedFromChunksWithoutOverselling() throws InterruptedException {
+        Medicine vaccine = medicine("FlashVaccine", 60);
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        Queue<Throwable> unexpected = new ConcurrentLinkedQueue<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch done = new CountDownLatch(200);
+        for (int i = 0; i < 200; i++) {
+            int quantity = 1 + i % 2;
+            executor.execute(() -> {
+                try {
+                    orderAs(patient, item(vaccine, quantity));
+                    sold.addAndGet(quantity);
+                } catch (BadRequestException e) {
+                    rejected.incrementAndGet();
+                } catch (Throwable e) {
+                    unexpected.add(e);
+                } finally {
+                    SecurityContextHolder.clearContext();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(2, TimeUnit.MINUTES), "orders did not finish in time");
+        executor.shutdown();
+
+        assertTrue(unexpected.isEmpty(), () -> "unexpected failures: " + unexpected);
+        assertTrue(rejected.get() > 0, "demand should exceed stock");
+        assertTrue(sold.get() <= 60);
+        assertEquals(sold.get(), soldInOrders(vaccine));
+
+        // chunks, not orders, touched the medicine row
+        long chunks = stockMovementRepository.findByMedicineIdOrderByIdAsc(vaccine.getId()).stream()
+                .filter(movement -> movement.getReason() == StockMovementReason.RESERVED)
+                .count();
+        assertTrue(chunks < sold.get(), () -> chunks + " chunks for " + sold.get() + " units");
+        // and the orders themselves wrote no ledger rows
+        assertEquals(chunks, stockMovementRepository.findByMedicineIdOrderByIdAsc(vaccine.getId()).size());
+
+        stockReservationService.flush();
+        assertEquals(stockReservationService.held(vaccine.getId()), heldInDatabase(vaccine));
+
+        stockReservationService.shutdown();
+        assertEquals(60 - sold.get(), availableStock(vaccine));
+        assertEquals(0, heldInDatabase(vaccine));
+    }
+
+    @Test
+    void shutdown_LogsWhatWasServedAndReturnsTheRest() {
+        Medicine vaccine = medicine("ShutdownVaccine", 20);
+        orderAs(patient, item(vaccine, 1));
+        orderAs(patient, item(vaccine, 2));
+        assertEquals(2, stockReservationService.held(vaccine.getId()));
+        assertEquals(15, availableStock(vaccine));
+
+        // the pharmacy counts the 17 on its shelf, two of them still held by the node: nothing to adjust
+        MedicineDto count = medicineService.getMedicineById(vaccine.getId());
+        count.setStock(17);
+        medicineService.updateMedicine(vaccine.getId(), count);
+        assertEquals(15, availableStock(vaccine));
+
+        stockReservationService.shutdown();
+
+        assertEquals(0, stockReservationService.held(vaccine.getId()));
+        assertEquals(17, availableStock(vaccine));
+        assertEquals(0, heldInDatabase(vaccine));
+        List<StockMovement> ledger = stockMovementRepository.findByMedicineIdOrderByIdAsc(vaccine.getId());
+        assertEquals(List.of(StockMovementReason.RESERVED, StockMovementReason.RESERVATION_SERVED,
+                        StockMovementReason.RESERVATION_RELEASED),
+                ledger.stream().map(StockMovement::getReason).toList());
+        assertEquals(List.of(-5, -3, 2), ledger.stream().map(StockMovement::getQuantity).toList());
+    }
+
+    @Test
+    void reconcile_AfterACrash_WritesOffWhatTheNodeHeld() {
+        Medicine vaccine = medicine("CrashVaccine", 20);
+        orderAs(patient, item(vaccine, 1));
+        orderAs(patient, item(vaccine, 2));
+        assertEquals(15, availableStock(vaccine));
+
+        // nothing was flushed: the in-memory counts of what was served are simply gone, as after a crash
+        assertEquals(0, heldInDatabase(vaccine));
+        stockReservationService.reconcile();
+
+        // the node held 5, some of them sold; none go back, so none can be sold twice
+        assertEquals(0, stockReservationService.held(vaccine.getId()));
+        assertEquals(15, availableStock(vaccine));
+        assertEquals(0, heldInDatabase(vaccine));
+        assertEquals(3, soldInOrders(vaccine));
+
+        // a second run finds nothing left
+        stockReservationService.reconcile();
+        assertEquals(15, availableStock(vaccine));
+        assertEquals(List.of(-5, -5), stockMovementRepository.findByMedicineIdOrderByIdAsc(vaccine.getId()).stream()
+                .map(StockMovement::getQuantity).toList());
+    }
+
+    @Test
+    void rolledBackOrders_GiveTheirUnitsBack() {
+        Medicine vaccine = medicine("RollbackVaccine", 10);
+        Medicine soldOut = medicine("SoldOutVaccine", 0);
+
+        // the chunk taken for this order rolls back together with it
+        assertThrows(BadRequestException.class, () -> orderAs(patient, item(vaccine, 1), item(soldOut, 1)));
+        assertEquals(0, stockReservationService.held(vaccine.getId()));
+        assertEquals(10, snapshotStock(vaccine));
+
+        orderAs(patient, item(vaccine, 1));
+        assertEquals(4, stockReservationService.held(vaccine.getId()));
+
+        // units served from memory go back to memory
+        assertThrows(BadRequestException.class, () -> orderAs(patient, item(vaccine, 3), item(soldOut, 1)));
+        assertEquals(4, stockReservationService.held(vaccine.getId()));
+        assertEquals(1, soldInOrders(vaccine));
+    }
+
+    private Medicine medicine(String name, int stock) {
+        Medicine medicine = medicineRepository.save(Medicine.builder()
+                .name(name)
+                .price(5.0)
+                .stock(stock)
+                .pharmacy(pharmacy)
+                .build());
+        medicines.add(medicine);
+        return medicine;
+    }
+
+    private int availableStock(Medicine medicine) {
+        return medicineService.getMedicineById(medicine.getId()).getStock();
+    }
+
+    private int snapshotStock(Medicine medicine) {
+        return jdbcTemplate.queryForObject("SELECT stock FROM medicines WHERE id = ?", Integer.class, medicine.getId());
+    }
+
+    private int heldInDatabase(Medicine medicine) {
+        return stockReservationRepository.findByNodeIdAndMedicineId("test-node", medicine.getId())
+                .map(reservation -> reservation.getQuantity())
+                .orElse(0);
+    }
+
+    private int soldInOrders(Medicine medicine) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(quantity), 0) FROM order_items WHERE medicine_id = ?", Integer.class, medicine.getId());
+    }
+
+    private void orderAs(User patient, OrderItemDto... items) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                CurrentUser.of(patient), null, List.of(new SimpleGrantedAuthority("ROLE_PATIENT"))));
+        OrderDto dto = new OrderDto();
+        dto.setPharmacyId(pharmacy.getId());
+        dto.setItems(List.of(items));
+        orderService.createOrder(dto);
+    }
+
+    private static OrderItemDto item(Medicine medicine, int quantity) {
+        OrderItemDto item = new OrderItemDto();
+        item.setMedicineName(medicine.getName());
+        item.setQuantity(quantity);
+        return item;
+    }
+}
@@ -0,0 +1,20 @@
+package Hospital.system;
+
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+
+/** Users for tests and benchmarks that save their own fixtures. */
+public final class TestUsers {
+
+    private TestUsers() {
+    }
+
+    public static User user(String name, String email, Role role) {
+        return User.builder()
+                .name(name)
+                .email(email)
+                .password("password123")
+                .role(role)
+                .build();
+    }
+}
@@ -0,0 +1,154 @@
+package Hospital.system.benchmark;
+
+import Hospital.system.Entity.Appointment;
+import Hospital.system.Entity.AppointmentStatus;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.AppointmentRepository;
+import Hospital.system.Repository.UserRepository;
+import Hospital.system.Service.DoctorCalendarIndex;
+import Hospital.system.SystemApplication;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Availability and conflict checks for 500 doctors: the previous query path against DoctorCalendarIndex.
+ * <p>
+ * The query path is what DoctorAvailabilityService and AppointmentService did before the index:
+ * load the day's appointments and scan them once per slot, and an overlap query per booking.
+ * The database is H2 in memory, so the query numbers are a lower bound for MySQL over the network.
+ * <p>
+ * Run with {@code mvn test-compile} and then the {@link #main} method, or
+ * {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main DoctorCalendarBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DoctorCalendarBenchmark {
+
+    private static final int DOCTORS = 500;
+
+    private ConfigurableApplicationContext context;
+    private AppointmentRepository appointmentRepository;
+    private DoctorCalendarIndex calendarIndex;
+    private List<Long> doctorIds;
+    private LocalDate day;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(SystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:calendar;MODE=MySQL;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.flyway.enabled=false",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--security.password.bcrypt-strength=4",
+                        "--logging.level.root=WARN");
+        appointmentRepository = context.getBean(AppointmentRepository.class);
+        calendarIndex = context.getBean(DoctorCalendarIndex.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+
+        User patient = userRepository.save(User.builder()
+                .name("Patient").email("patient@bench.com").password("password123").role(Role.PATIENT).build());
+        day = LocalDate.now().plusDays(1);
+        doctorIds = new ArrayList<>();
+        List<Appointment> appointments = new ArrayList<>();
+        for (int i = 0; i < DOCTORS; i++) {
+            User doctor = userRepository.save(User.builder()
+                    .name("Doctor " + i).email("doctor" + i + "@bench.com").password("password123").role(Role.DOCTOR).build());
+            doctorIds.add(doctor.getId());
+            // half the day booked, on alternating hours
+            for (int slot = i % 2; slot < DoctorCalendarIndex.SLOTS_PER_DAY; slot += 2) {
+                appointments.add(Appointment.builder()
+                        .doctor(doctor)
+                        .patient(patient)
+                        .appointmentTime(day.atTime(DoctorCalendarIndex.START_WORK).plusHours(slot))
+                        .status(AppointmentStatus.BOOKED)
+                        .build());
+            }
+        }
+        appointmentRepository.saveAll(appointments);
+
+        // steady state: every doctor's day has been looked at once
+        doctorIds.forEach(id -> calendarIndex.occupiedSlots(id, day));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<LocalDateTime> availabilityQueryPath() {
+        Long doctorId = randomDoctor();
+        LocalDateTime dayStart = day.atTime(DoctorCalendarIndex.START_WORK);
+        LocalDateTime dayEnd = day.atTime(DoctorCalendarIndex.END_WORK);
+        List<Appointment> appointments = appointmentRepository.findAppointmentsForDoctorExcludingStatus(
+                doctorId, AppointmentStatus.CANCELLED, dayStart, dayEnd);
+
+        List<LocalDateTime> available = new ArrayList<>();
+        for (LocalDateTime slot = dayStart; !slot.isAfter(dayEnd.minusHours(1)); slot = slot.plusHours(1)) {
+            LocalDateTime slotStart = slot;
+            if (appointments.stream().noneMatch(a -> a.getAppointmentTime().equals(slotStart))) {
+                available.add(slot);
+            }
+        }
+        return available;
+    }
+
+    @Benchmark
+    public List<LocalDateTime> availabilityIndex() {
+        int occupied = calendarIndex.occupiedSlots(randomDoctor(), day);
+        List<LocalDateTime> available = new ArrayList<>();
+        for (int slot = 0; slot < DoctorCalendarIndex.SLOTS_PER_DAY; slot++) {
+            if ((occupied & (1 << slot)) == 0) {
+                available.add(day.atTime(DoctorCalendarIndex.START_WORK).plusHours(slot));
+            }
+        }
+        return available;
+    }
+
+    // existsOverlappingAppointment uses MySQL's DATE_ADD, which H2 lacks; this is the same range check in JPQL
+    @Benchmark
+    public boolean conflictQueryPath() {
+        LocalDateTime start = day.atTime(15, 0);
+        return !appointmentRepository.findAppointmentTimesForDoctorExcludingStatus(
+                randomDoctor(), AppointmentStatus.CANCELLED, start.minusHours(1), start.plusHours(1)).isEmpty();
+    }
+
+    @Benchmark
+    public boolean conflictIndex() {
+        return !calendarIndex.isFree(randomDoctor(), day.atTime(15, 0));
+    }
+
+    private Long randomDoctor() {
+        return doctorIds.get(ThreadLocalRandom.current().nextInt(doctorIds.size()));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(DoctorCalendarBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
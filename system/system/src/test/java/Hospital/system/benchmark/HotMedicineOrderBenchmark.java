@@ -0,0 +1,133 @@
+package Hospital.system.benchmark;
+
+import Hospital.system.DTO.OrderDto;
+import Hospital.system.DTO.OrderItemDto;
+import Hospital.system.Entity.Medicine;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.MedicineRepository;
+import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUser;
+import Hospital.system.Service.OrderService;
+import Hospital.system.SystemApplication;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Orders per second on one hot medicine, with every client ordering it at the same time.
+ * <p>
+ * {@code reservation=false} takes stock as a ledger insert on one of the medicine's stock stripes, so concurrent
+ * orders wait on one of {@code medicines.ledger.stripes} row locks instead of all on the medicine row.
+ * {@code reservation=true} serves orders from the node's in-memory reservation and only locks a stripe once per
+ * {@code chunk-size} units.
+ * Both go through OrderService against an in-memory H2 database.
+ * <p>
+ * Run with {@code mvn test-compile} and then the {@link #main} method, or
+ * {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main HotMedicineOrderBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(16)
+@Fork(1)
+public class HotMedicineOrderBenchmark {
+
+    private static final String MEDICINE = "Seasonal Vaccine";
+
+    @Param({"false", "true"})
+    public boolean reservation;
+
+    ConfigurableApplicationContext context;
+    OrderService orderService;
+    User pharmacy;
+    final AtomicInteger patients = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(SystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:hot-medicine;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.hikari.maximum-pool-size=20",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.flyway.enabled=false",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--medicines.reservation.enabled=" + reservation,
+                        "--medicines.reservation.chunk-size=200");
+        orderService = context.getBean(OrderService.class);
+
+        UserRepository users = context.getBean(UserRepository.class);
+        pharmacy = users.save(User.builder()
+                .name("Bench Pharmacy")
+                .email("pharmacy@bench.test")
+                .password("password123")
+                .role(Role.PHARMACY)
+                .build());
+        context.getBean(MedicineRepository.class).save(Medicine.builder()
+                .name(MEDICINE)
+                .price(10.0)
+                .stock(Integer.MAX_VALUE / 2)
+                .pharmacy(pharmacy)
+                .build());
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    // one logged-in patient per client thread
+    @State(Scope.Thread)
+    public static class Patient {
+
+        @Setup(Level.Trial)
+        public void login(HotMedicineOrderBenchmark benchmark) {
+            int n = benchmark.patients.incrementAndGet();
+            User patient = benchmark.context.getBean(UserRepository.class).save(User.builder()
+                    .name("Patient " + n)
+                    .email("patient" + n + "@bench.test")
+                    .password("password123")
+                    .role(Role.PATIENT)
+                    .build());
+            SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                    CurrentUser.of(patient), null, List.of(new SimpleGrantedAuthority("ROLE_PATIENT"))));
+        }
+    }
+
+    @Benchmark
+    public OrderDto placeOrder(Patient patient) {
+        OrderItemDto item = new OrderItemDto();
+        item.setMedicineName(MEDICINE);
+        item.setQuantity(1);
+        OrderDto order = new OrderDto();
+        order.setPharmacyId(pharmacy.getId());
+        order.setItems(List.of(item));
+        return orderService.createOrder(order);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(HotMedicineOrderBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,150 @@
+package Hospital.system.benchmark;
+
+import Hospital.system.DTO.InboxEntryDto;
+import Hospital.system.DTO.MessageDto;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.UserRepository;
+import Hospital.system.Security.CurrentUser;
+import Hospital.system.Service.MessageService;
+import Hospital.system.SystemApplication;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static Hospital.system.TestUsers.user;
+
+/**
+ * The first page of a doctor's inbox with 5,000 patients, two messages each way per patient.
+ * <p>
+ * {@code historyGrouped} is what a client had to do before conversation_heads: page through every message of
+ * the doctor with getMessagesByUser and keep the latest one per patient. {@code inbox} reads a page of
+ * conversation_heads, {@code inboxDeep} the page 4,000 conversations down, which keyset paging keeps as cheap.
+ * The database is H2 in memory, so the history numbers are a lower bound for MySQL over the network.
+ * <p>
+ * Run with {@code mvn test-compile} and then the {@link #main} method, or
+ * {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main InboxBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InboxBenchmark {
+
+    private static final int PATIENTS = 5_000;
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+    private Long doctorId;
+    private String deepCursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(SystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:inbox;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.flyway.enabled=false",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN");
+        messageService = context.getBean(MessageService.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+
+        User doctor = userRepository.save(user("Doctor", "doctor@bench.com", Role.DOCTOR));
+        doctorId = doctor.getId();
+        List<User> patients = new ArrayList<>();
+        for (int i = 0; i < PATIENTS; i++) {
+            patients.add(user("Patient " + i, "patient" + i + "@bench.com", Role.PATIENT));
+        }
+        patients = userRepository.saveAll(patients);
+        for (int round = 0; round < 2; round++) {
+            for (User patient : patients) {
+                send(patient.getId(), doctorId, "Question " + round + " from " + patient.getName());
+                send(doctorId, patient.getId(), "Answer " + round + " for " + patient.getName());
+            }
+        }
+
+        // the benchmark threads read the doctor's inbox
+        SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_GLOBAL);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                CurrentUser.of(doctor), null, List.of(new SimpleGrantedAuthority("ROLE_DOCTOR"))));
+        String cursor = null;
+        for (int i = 0; i < 4_000 / MAX_PAGE_SIZE; i++) {
+            List<InboxEntryDto> page = messageService.getInbox(cursor, MAX_PAGE_SIZE);
+            cursor = page.get(page.size() - 1).getCursor();
+        }
+        deepCursor = cursor;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<MessageDto> historyGrouped() {
+        Map<Long, MessageDto> latest = new LinkedHashMap<>();
+        String before = null;
+        List<MessageDto> page;
+        do {
+            page = messageService.getMessagesByUser(doctorId, before, null, MAX_PAGE_SIZE);
+            for (MessageDto message : page) {
+                Long other = message.getSenderId().equals(doctorId) ? message.getReceiverId() : message.getSenderId();
+                latest.merge(other, message, (a, b) -> a.getCursor().compareTo(b.getCursor()) >= 0 ? a : b);
+            }
+            before = page.isEmpty() ? null : page.get(0).getCursor();
+        } while (page.size() == MAX_PAGE_SIZE);
+        return latest.values().stream()
+                .sorted(Comparator.comparing(MessageDto::getTime).thenComparing(MessageDto::getId).reversed())
+                .limit(PAGE_SIZE)
+                .toList();
+    }
+
+    @Benchmark
+    public List<InboxEntryDto> inbox() {
+        return messageService.getInbox(null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<InboxEntryDto> inboxDeep() {
+        return messageService.getInbox(deepCursor, PAGE_SIZE);
+    }
+
+    private void send(Long senderId, Long receiverId, String content) {
+        MessageDto dto = new MessageDto();
+        dto.setSenderId(senderId);
+        dto.setReceiverId(receiverId);
+        dto.setContent(content);
+        messageService.sendMessage(dto);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(InboxBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,191 @@
+package Hospital.system.benchmark;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Before/after report for the V2 index migration: seeds a dataset on the schema just before it, prints EXPLAIN and
+ * the average latency of each hot query, applies V2 and prints them again.
+ * <p>
+ * Defaults to an in-memory H2 database in MySQL mode. To run it against MySQL, pass an empty scratch database:
+ * {@code java -cp target/test-classes:<test classpath> Hospital.system.benchmark.IndexExplainReport
+ * jdbc:mysql://localhost:3306/index_report root secret}
+ */
+public class IndexExplainReport {
+
+    private static final int DOCTORS = 50;
+    private static final int PATIENTS = 2_000;
+    private static final int PHARMACIES = 20;
+    private static final int APPOINTMENTS = 100_000;
+    private static final int ORDERS = 50_000;
+    private static final int MESSAGES = 100_000;
+    private static final int RUNS = 200;
+
+    private static final String[] APPOINTMENT_STATUSES = {"PENDING", "BOOKED", "COMPLETED", "CANCELLED"};
+    private static final String[] ORDER_STATUSES = {"PLACED", "SHIPPED", "COMPLETED", "CANCELLED"};
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 9, 0);
+
+    // the SQL Hibernate issues for each repository method, with representative literals
+    private static final Map<String, String> QUERIES = new LinkedHashMap<>();
+
+    static {
+        QUERIES.put("AppointmentRepository.findByDoctor_IdAndStatus",
+                "select * from appointments where doctor_id = 7 and status = 'BOOKED'");
+        QUERIES.put("AppointmentRepository.findByPatient_IdAndStatus",
+                "select * from appointments where patient_id = 77 and status = 'PENDING'");
+        QUERIES.put("AppointmentRepository.findAppointmentsForDoctorExcludingStatus",
+                "select * from appointments where doctor_id = 7 and status <> 'CANCELLED'"
+                        + " and appointment_time >= '2025-03-01 09:00:00' and appointment_time < '2025-03-02 09:00:00'");
+        QUERIES.put("AppointmentRepository.findAppointmentTimesForDoctorsExcludingStatus",
+                "select doctor_id, appointment_time from appointments where doctor_id in (1, 2, 3, 4, 5, 6, 7, 8, 9, 10)"
+                        + " and status <> 'CANCELLED' and appointment_time > '2025-03-01 08:00:00'"
+                        + " and appointment_time < '2025-03-01 21:00:00'");
+        QUERIES.put("OrderRepository.findByPatient_IdAndStatus",
+                "select * from orders where patient_id = 77 and status = 'PLACED'");
+        QUERIES.put("OrderRepository.findByPharmacy_IdAndStatus",
+                "select * from orders where pharmacy_id = 5 and status = 'SHIPPED'");
+        QUERIES.put("MessageRepository.findBySender_IdAndReceiver_IdOrderByTimeAsc",
+                "select * from messages where sender_id = 77 and receiver_id = 7 order by time asc");
+        QUERIES.put("UserRepository.findByRole (paged by id)",
+                "select * from users where role = 'DOCTOR' order by id limit 50");
+    }
+
+    public static void main(String[] args) throws SQLException {
+        String url = args.length > 0 ? args[0] : "jdbc:h2:mem:index_report;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        String user = args.length > 1 ? args[1] : "sa";
+        String password = args.length > 2 ? args[2] : "";
+        DataSource dataSource = new DriverManagerDataSource(url, user, password);
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+
+        Flyway.configure().dataSource(dataSource).target("1.2").load().migrate();
+        seed(jdbc);
+        Map<String, Result> before = measure(dataSource, jdbc);
+
+        Flyway.configure().dataSource(dataSource).target("2").load().migrate();
+        Map<String, Result> after = measure(dataSource, jdbc);
+
+        System.out.printf("Dataset: %d doctors, %d patients, %d appointments, %d orders, %d messages on %s%n%n",
+                DOCTORS, PATIENTS, APPOINTMENTS, ORDERS, MESSAGES, product(dataSource));
+        System.out.printf("| Query | Before (us) | After (us) |%n|---|---:|---:|%n");
+        for (String name : QUERIES.keySet()) {
+            System.out.printf("| %s | %d | %d |%n", name, before.get(name).micros(), after.get(name).micros());
+        }
+        for (String name : QUERIES.keySet()) {
+            System.out.printf("%n### %s%n%n```sql%n%s%n```%n%nBefore:%n```%n%s%n```%nAfter:%n```%n%s%n```%n",
+                    name, QUERIES.get(name), before.get(name).plan(), after.get(name).plan());
+        }
+    }
+
+    private record Result(String plan, long micros) {
+    }
+
+    private static Map<String, Result> measure(DataSource dataSource, JdbcTemplate jdbc) throws SQLException {
+        analyze(dataSource, jdbc);
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (Map.Entry<String, String> query : QUERIES.entrySet()) {
+            String plan = explain(dataSource, query.getValue());
+            for (int i = 0; i < RUNS / 10; i++) {
+                jdbc.queryForList(query.getValue());
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < RUNS; i++) {
+                jdbc.queryForList(query.getValue());
+            }
+            results.put(query.getKey(), new Result(plan, (System.nanoTime() - start) / RUNS / 1_000));
+        }
+        return results;
+    }
+
+    private static String explain(DataSource dataSource, String sql) throws SQLException {
+        List<String> lines = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             ResultSet rs = connection.createStatement().executeQuery("explain " + sql)) {
+            ResultSetMetaData meta = rs.getMetaData();
+            while (rs.next()) {
+                if (meta.getColumnCount() == 1) {
+                    lines.add(rs.getString(1));
+                    continue;
+                }
+                // MySQL: one row per table access, keep the columns that show index use
+                StringBuilder row = new StringBuilder();
+                for (int i = 1; i <= meta.getColumnCount(); i++) {
+                    String column = meta.getColumnLabel(i);
+                    if (List.of("table", "type", "key", "key_len", "rows", "filtered", "Extra").contains(column)) {
+                        row.append(column).append('=').append(rs.getString(i)).append(' ');
+                    }
+                }
+                lines.add(row.toString().trim());
+            }
+        }
+        return String.join("\n", lines);
+    }
+
+    private static void analyze(DataSource dataSource, JdbcTemplate jdbc) throws SQLException {
+        if (product(dataSource).startsWith("MySQL")) {
+            jdbc.execute("analyze table users, appointments, orders, messages");
+        } else {
+            jdbc.execute("analyze");
+        }
+    }
+
+    private static String product(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.getMetaData().getDatabaseProductName() + " " + connection.getMetaData().getDatabaseProductVersion();
+        }
+    }
+
+    private static void seed(JdbcTemplate jdbc) {
+        Random random = new Random(42);
+        List<Object[]> users = new ArrayList<>();
+        for (int i = 1; i <= DOCTORS + PATIENTS + PHARMACIES; i++) {
+            String role = i <= DOCTORS ? "DOCTOR" : i <= DOCTORS + PATIENTS ? "PATIENT" : "PHARMACY";
+            users.add(new Object[]{i, "User " + i, "user" + i + "@seed.test", "x", role});
+        }
+        jdbc.batchUpdate("insert into users (id, name, email, password, role) values (?, ?, ?, ?, ?)", users);
+
+        List<Object[]> appointments = new ArrayList<>();
+        for (int i = 1; i <= APPOINTMENTS; i++) {
+            long doctor = 1 + random.nextInt(DOCTORS);
+            long patient = DOCTORS + 1 + random.nextInt(PATIENTS);
+            LocalDateTime time = START.plusDays(random.nextInt(365)).plusHours(random.nextInt(12));
+            appointments.add(new Object[]{i, doctor, patient, Timestamp.valueOf(time),
+                    APPOINTMENT_STATUSES[random.nextInt(APPOINTMENT_STATUSES.length)]});
+        }
+        jdbc.batchUpdate("insert into appointments (id, doctor_id, patient_id, appointment_time, status) values (?, ?, ?, ?, ?)",
+                appointments);
+
+        List<Object[]> orders = new ArrayList<>();
+        for (int i = 1; i <= ORDERS; i++) {
+            long patient = DOCTORS + 1 + random.nextInt(PATIENTS);
+            long pharmacy = DOCTORS + PATIENTS + 1 + random.nextInt(PHARMACIES);
+            orders.add(new Object[]{i, patient, pharmacy, Timestamp.valueOf(START.plusMinutes(i)), 10.0,
+                    ORDER_STATUSES[random.nextInt(ORDER_STATUSES.length)]});
+        }
+        jdbc.batchUpdate("insert into orders (id, patient_id, pharmacy_id, order_time, total_price, status) values (?, ?, ?, ?, ?, ?)",
+                orders);
+
+        List<Object[]> messages = new ArrayList<>();
+        for (int i = 1; i <= MESSAGES; i++) {
+            long doctor = 1 + random.nextInt(DOCTORS);
+            long patient = DOCTORS + 1 + random.nextInt(PATIENTS);
+            boolean fromPatient = random.nextBoolean();
+            messages.add(new Object[]{i, fromPatient ? patient : doctor, fromPatient ? doctor : patient,
+                    Timestamp.valueOf(START.plusSeconds(i * 30L)), "message " + i});
+        }
+        jdbc.batchUpdate("insert into messages (id, sender_id, receiver_id, time, content) values (?, ?, ?, ?, ?)", messages);
+    }
+}
@@ -0,0 +1,129 @@
+package Hospital.system.benchmark;
+
+import Hospital.system.Entity.Medicine;
+import Hospital.system.Entity.Order;
+import Hospital.system.Entity.OrderItem;
+import Hospital.system.Entity.OrderStatus;
+import Hospital.system.Entity.PatientRecord;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.MedicineRepository;
+import Hospital.system.Repository.OrderRepository;
+import Hospital.system.Repository.PatientRecordRepository;
+import Hospital.system.Repository.UserRepository;
+import Hospital.system.SystemApplication;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static Hospital.system.TestUsers.user;
+
+/**
+ * Time to write an order with 40 items, and a bulk import of 500 patient records.
+ * <p>
+ * {@code batchSize=1} sends every insert on its own, as IDENTITY ids forced before; {@code batchSize=50} lets
+ * Hibernate group them into JDBC batches now that ids are assigned up front. In-memory H2 has no network
+ * between the two, so the gap only grows against a remote MySQL.
+ * <p>
+ * Run with {@code mvn test-compile} and then the {@link #main} method, or
+ * {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main InsertBatchingBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class InsertBatchingBenchmark {
+
+    @Param({"1", "50"})
+    public int batchSize;
+
+    ConfigurableApplicationContext context;
+    OrderRepository orderRepository;
+    PatientRecordRepository patientRecordRepository;
+    User patient;
+    User doctor;
+    User pharmacy;
+    List<Medicine> medicines;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(SystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:insert-batching;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.flyway.enabled=false",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize,
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN");
+        orderRepository = context.getBean(OrderRepository.class);
+        patientRecordRepository = context.getBean(PatientRecordRepository.class);
+
+        UserRepository users = context.getBean(UserRepository.class);
+        patient = users.save(user("Bench Patient", "patient@bench.test", Role.PATIENT));
+        doctor = users.save(user("Bench Doctor", "doctor@bench.test", Role.DOCTOR));
+        pharmacy = users.save(user("Bench Pharmacy", "pharmacy@bench.test", Role.PHARMACY));
+
+        medicines = new ArrayList<>();
+        MedicineRepository medicineRepository = context.getBean(MedicineRepository.class);
+        for (int i = 0; i < 40; i++) {
+            medicines.add(medicineRepository.save(Medicine.builder()
+                    .name("Bench Medicine " + i)
+                    .price(3.0)
+                    .stock(1000)
+                    .pharmacy(pharmacy)
+                    .build()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public Order createOrder() {
+        Order order = Order.builder()
+                .patient(patient)
+                .pharmacy(pharmacy)
+                .status(OrderStatus.PLACED)
+                .totalPrice(120.0)
+                .build();
+        List<OrderItem> items = new ArrayList<>();
+        for (Medicine medicine : medicines) {
+            items.add(OrderItem.builder().order(order).medicine(medicine).quantity(1).price(3.0).build());
+        }
+        order.setItems(items);
+        return orderRepository.save(order);
+    }
+
+    @Benchmark
+    public List<PatientRecord> bulkImport() {
+        List<PatientRecord> records = new ArrayList<>(500);
+        for (int i = 0; i < 500; i++) {
+            records.add(PatientRecord.builder().patient(patient).doctor(doctor).notes("Imported visit " + i).build());
+        }
+        return patientRecordRepository.saveAll(records);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(InsertBatchingBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
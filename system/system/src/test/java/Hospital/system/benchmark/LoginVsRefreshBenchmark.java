@@ -0,0 +1,106 @@
+package Hospital.system.benchmark;
+
+import Hospital.system.DTO.LoginDto;
+import Hospital.system.DTO.UserRegistrationDto;
+import Hospital.system.Service.AuthService;
+import Hospital.system.SystemApplication;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained throughput of renewing a session through {@code /api/auth/login} versus {@code /api/auth/refresh}.
+ * <p>
+ * Both go through AuthService against an in-memory H2 database with the real password encoder.
+ * {@code login} pays for a BCrypt match per call; {@code refresh} only hashes and rotates the refresh token.
+ * The ratio of the two scores is how many more session renewals per second the same CPU can serve.
+ * <p>
+ * Run with {@code mvn test-compile} and then the {@link #main} method, or
+ * {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main LoginVsRefreshBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(4)
+@Fork(1)
+public class LoginVsRefreshBenchmark {
+
+    private static final String EMAIL = "bench@hospital.com";
+    private static final String PASSWORD = "password123";
+
+    @State(Scope.Benchmark)
+    public static class Application {
+        ConfigurableApplicationContext context;
+        AuthService authService;
+        LoginDto loginDto;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            context = new SpringApplicationBuilder(SystemApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .run("--spring.datasource.url=jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1",
+                            "--spring.datasource.username=sa",
+                            "--spring.datasource.password=",
+                            "--spring.datasource.driver-class-name=org.h2.Driver",
+                            "--spring.jpa.hibernate.ddl-auto=create-drop",
+                            "--spring.flyway.enabled=false",
+                            "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                            "--spring.jpa.show-sql=false",
+                            "--logging.level.root=WARN");
+            authService = context.getBean(AuthService.class);
+
+            UserRegistrationDto registration = new UserRegistrationDto();
+            registration.setName("Bench");
+            registration.setEmail(EMAIL);
+            registration.setPassword(PASSWORD);
+            registration.setRole("PATIENT");
+            authService.registerUser(registration);
+
+            loginDto = new LoginDto();
+            loginDto.setEmail(EMAIL);
+            loginDto.setPassword(PASSWORD);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+        }
+    }
+
+    // each client thread keeps its own rotation chain, like separate devices would
+    @State(Scope.Thread)
+    public static class Client {
+        String refreshToken;
+
+        @Setup(Level.Trial)
+        public void login(Application application) {
+            refreshToken = application.authService.login(application.loginDto).getRefreshToken();
+        }
+    }
+
+    @Benchmark
+    public String login(Application application) {
+        return application.authService.login(application.loginDto).getToken();
+    }
+
+    @Benchmark
+    public String refresh(Application application, Client client) {
+        client.refreshToken = application.authService.refresh(client.refreshToken).getRefreshToken();
+        return client.refreshToken;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LoginVsRefreshBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,109 @@
+package Hospital.system.benchmark;
+
+import Hospital.system.DTO.MessageDto;
+import Hospital.system.Entity.Role;
+import Hospital.system.Entity.User;
+import Hospital.system.Repository.UserRepository;
+import Hospital.system.Service.MessageBatchWriter;
+import Hospital.system.Service.MessageService;
+import Hospital.system.SystemApplication;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static Hospital.system.TestUsers.user;
+
+/**
+ * Messages per second from 16 concurrent senders to 20 doctors: each send in its own transaction
+ * ({@code groupCommit=false}) against the group-commit writer ({@code groupCommit=true}).
+ * <p>
+ * The database is H2 in memory, where a commit costs no fsync and no network round trip, so this shows what the
+ * writer's queue and thread hop cost rather than what it saves: against MySQL every per-request send waits for
+ * its own redo log flush, which the writer pays once per batch.
+ * <p>
+ * Run with {@code mvn test-compile} and then the {@link #main} method, or
+ * {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main MessageGroupCommitBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(16)
+@Fork(1)
+public class MessageGroupCommitBenchmark {
+
+    private static final int DOCTORS = 20;
+    private static final int PATIENTS = 500;
+
+    @Param({"false", "true"})
+    public boolean groupCommit;
+
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+    private MessageBatchWriter messageBatchWriter;
+    private List<Long> doctorIds;
+    private List<Long> patientIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(SystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:group-commit;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.flyway.enabled=false",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--messages.group-commit.enabled=" + groupCommit,
+                        "--logging.level.root=WARN");
+        messageService = context.getBean(MessageService.class);
+        messageBatchWriter = context.getBean(MessageBatchWriter.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < DOCTORS; i++) {
+            users.add(user("Doctor " + i, "doctor" + i + "@bench.com", Role.DOCTOR));
+        }
+        for (int i = 0; i < PATIENTS; i++) {
+            users.add(user("Patient " + i, "patient" + i + "@bench.com", Role.PATIENT));
+        }
+        List<Long> ids = userRepository.saveAll(users).stream().map(User::getId).toList();
+        doctorIds = ids.subList(0, DOCTORS);
+        patientIds = ids.subList(DOCTORS, ids.size());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MessageDto send() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        MessageDto dto = new MessageDto();
+        dto.setSenderId(patientIds.get(random.nextInt(patientIds.size())));
+        dto.setReceiverId(doctorIds.get(random.nextInt(doctorIds.size())));
+        dto.setContent("Is my prescription ready?");
+        return groupCommit ? messageBatchWriter.submit(dto).join() : messageService.sendMessage(dto);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(MessageGroupCommitBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
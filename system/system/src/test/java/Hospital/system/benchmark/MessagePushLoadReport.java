@@ -0,0 +1,147 @@
+package Hospital.system.benchmark;
+
+import Hospital.system.DTO.MessageDto;
+import Hospital.system.Service.MessageHub;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test for {@link MessageHub}: 10,000 simulated sessions on one node, 1% of them stalled readers whose
+ * writes never complete (a peer that stopped reading), and several sender threads publishing to random receivers.
+ * Prints how long a publish takes the sender, whether every healthy session got all its frames and how many
+ * stalled sessions were cut off. The queue is smaller than the default so stalled sessions overflow within the run.
+ * <p>
+ * The sessions are in-memory stand-ins for Tomcat's async remote endpoint, so this measures the hub and not
+ * Tomcat's socket handling: 10,000 real loopback connections need 20,000 file descriptors on one machine.
+ * MessageWebSocketIntegrationTest covers the real path.
+ * Run with {@code java -cp target/test-classes:<test classpath> Hospital.system.benchmark.MessagePushLoadReport}.
+ */
+public class MessagePushLoadReport {
+
+    private static final int SESSIONS = 10_000;
+    private static final int STALLED_EVERY = 100;
+    private static final int QUEUE_SIZE = 16;
+    private static final int SENDERS = 8;
+    private static final int MESSAGES_PER_SENDER = 25_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        MessageHub hub = new MessageHub(new ObjectMapper().registerModule(new JavaTimeModule()),
+                new SimpleMeterRegistry(), QUEUE_SIZE, 0);
+        AtomicLong expected = new AtomicLong();
+        AtomicLong delivered = new AtomicLong();
+        AtomicInteger closed = new AtomicInteger();
+        for (int i = 0; i < SESSIONS; i++) {
+            hub.register((long) i, UUID.randomUUID(), Instant.now().plus(1, ChronoUnit.HOURS),
+                    session(i, stalled(i), delivered, closed));
+        }
+
+        long[][] latencies = new long[SENDERS][MESSAGES_PER_SENDER];
+        CountDownLatch done = new CountDownLatch(SENDERS);
+        long start = System.nanoTime();
+        for (int s = 0; s < SENDERS; s++) {
+            long[] own = latencies[s];
+            Thread sender = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < MESSAGES_PER_SENDER; i++) {
+                    MessageDto message = new MessageDto();
+                    message.setId((long) i);
+                    message.setSenderId(-1L);
+                    int receiver = random.nextInt(SESSIONS);
+                    if (!stalled(receiver)) {
+                        expected.incrementAndGet();
+                    }
+                    message.setReceiverId((long) receiver);
+                    message.setContent("Load test message " + i);
+                    message.setTime(LocalDateTime.now());
+                    long before = System.nanoTime();
+                    hub.publish(message);
+                    own[i] = System.nanoTime() - before;
+                }
+                done.countDown();
+            });
+            sender.start();
+        }
+        done.await();
+        long publishNanos = System.nanoTime() - start;
+        for (int i = 0; i < 100 && delivered.get() < expected.get(); i++) {
+            Thread.sleep(50);
+        }
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        int published = SENDERS * MESSAGES_PER_SENDER;
+        System.out.printf("Sessions: %d (%d stalled), senders: %d, messages: %d%n",
+                SESSIONS, SESSIONS / STALLED_EVERY, SENDERS, published);
+        System.out.printf("Publish throughput: %.0f messages/s%n", published / (publishNanos / 1e9));
+        System.out.printf("Publish latency: p50 %d us, p99 %d us, p99.9 %d us, max %d us%n",
+                percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999), all[all.length - 1] / 1_000);
+        System.out.printf("Frames delivered to healthy sessions: %d of %d, stalled sessions disconnected: %d%n",
+                delivered.get(), expected.get(), closed.get());
+        System.exit(0);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(p * sorted.length))] / 1_000;
+    }
+
+    private static boolean stalled(int session) {
+        return session % STALLED_EVERY == 0;
+    }
+
+    // a Spring session over a jakarta.websocket session whose async writes complete at once, or never
+    private static WebSocketSession session(int id, boolean stalled, AtomicLong delivered, AtomicInteger closed) {
+        RemoteEndpoint.Async remote = proxy(RemoteEndpoint.Async.class, (method, args) -> {
+            if (method.equals("sendText") && args.length == 2 && !stalled) {
+                delivered.incrementAndGet();
+                ((SendHandler) args[1]).onResult(new SendResult());
+            }
+            return null;
+        });
+        Session endpoint = proxy(Session.class, (method, args) -> method.equals("getAsyncRemote") ? remote : null);
+        return proxy(NativeWebSocketSession.class, (method, args) -> switch (method) {
+            case "getNativeSession" -> endpoint;
+            case "close" -> {
+                if (args != null && args.length == 1 && CloseStatus.SESSION_NOT_RELIABLE.equals(args[0])) {
+                    closed.incrementAndGet();
+                }
+                yield null;
+            }
+            case "getId" -> String.valueOf(id);
+            case "isOpen" -> true;
+            default -> null;
+        });
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args) throws Exception;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(MessagePushLoadReport.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> type.getSimpleName();
+                    default -> handler.invoke(method.getName(), args);
+                });
+    }
+}